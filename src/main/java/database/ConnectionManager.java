@@ -10,6 +10,11 @@ import java.sql.SQLException;
 @Slf4j
 public class ConnectionManager {
 
+    /**
+     * Пул соединений. Включается только в долгоживущих процессах через {@link #enablePooling(int)}.
+     */
+    private static volatile ConnectionPool pool;
+
     private ConnectionManager() {
     }
 
@@ -18,6 +23,11 @@ public class ConnectionManager {
         String username = PropertiesUtils.getProperty("db.username", "root");
         String password = PropertiesUtils.getProperty("db.password", "root");
 
+        ConnectionPool currentPool = pool;
+        if (currentPool != null) {
+            return currentPool.borrow();
+        }
+
         try {
             log.debug("Подключение к базе данных...");
             Connection connection = DriverManager.getConnection(url, username, password);
@@ -31,5 +41,45 @@ public class ConnectionManager {
             throw e;
         }
     }
-}
 
+    /**
+     * @return Количество соединений, которые можно получить без ожидания: свободные места пула
+     * или {@link Integer#MAX_VALUE}, если пул не включен.
+     */
+    public static int availableConnections() {
+        ConnectionPool currentPool = pool;
+        return currentPool != null ? currentPool.available() : Integer.MAX_VALUE;
+    }
+
+    /**
+     * Включает пул соединений: последующие вызовы {@link #getConnection()} переиспользуют открытые соединения.
+     *
+     * @param maxSize Максимальное количество одновременно используемых соединений.
+     * @throws SQLException Если не удалось открыть соединения для прогрева пула.
+     */
+    public static synchronized void enablePooling(int maxSize) throws SQLException {
+        if (pool != null) {
+            return;
+        }
+        ConnectionPool newPool = new ConnectionPool(
+                PropertiesUtils.getProperty("db.url"),
+                PropertiesUtils.getProperty("db.username", "root"),
+                PropertiesUtils.getProperty("db.password", "root"),
+                maxSize,
+                DatabaseDialects.get().resetSession(),
+                Long.parseLong(PropertiesUtils.getProperty("db.pool.borrow.timeout.ms", "30000")));
+        newPool.warmUp(Math.min(2, maxSize));
+        pool = newPool;
+        log.info("Пул соединений включен, максимальный размер: {}", maxSize);
+    }
+
+    /**
+     * Отключает пул соединений и закрывает простаивающие соединения.
+     */
+    public static synchronized void disablePooling() {
+        if (pool != null) {
+            pool.close();
+            pool = null;
+        }
+    }
+}
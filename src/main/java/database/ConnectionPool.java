@@ -0,0 +1,185 @@
+package database;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Простой пул соединений с базой данных.
+ * <p>
+ * Используется в долгоживущих процессах (например, в режиме демона), чтобы не открывать новое соединение
+ * на каждую команду. Выдаваемые соединения являются прокси: вызов {@link Connection#close()} не закрывает
+ * физическое соединение, а откатывает незавершенную транзакцию, сбрасывает состояние сеанса и возвращает
+ * его в пул. Если сбросить состояние не удалось, соединение закрывается, чтобы следующая команда не унаследовала
+ * параметры сеанса, временные таблицы или advisory-блокировки предыдущей.
+ * </p>
+ * <p>
+ * Ожидание свободного соединения ограничено: если все соединения заняты дольше заданного времени (например,
+ * одна команда одновременно держит соединения миграции, блокировки, наблюдения за ходом выполнения и
+ * построения индексов), {@link #borrow()} завершается ошибкой, а не ждет бесконечно.
+ * </p>
+ */
+@Slf4j
+public class ConnectionPool {
+
+    private final String url;
+    private final String username;
+    private final String password;
+    private final String resetStatement;
+    private final Semaphore permits;
+    private final long borrowTimeoutMs;
+    private final ConcurrentLinkedDeque<Connection> idle = new ConcurrentLinkedDeque<>();
+
+    /**
+     * @param url      URL базы данных.
+     * @param username Имя пользователя.
+     * @param password Пароль.
+     * @param maxSize  Максимальное количество одновременно выданных соединений.
+     * @param resetStatement Запрос сброса состояния сеанса при возврате соединения в пул
+     *                       (см. {@link DatabaseDialect#resetSession()}) или {@code null}.
+     * @param borrowTimeoutMs Максимальное ожидание свободного соединения в миллисекундах.
+     */
+    public ConnectionPool(String url, String username, String password, int maxSize, String resetStatement,
+                          long borrowTimeoutMs) {
+        this.url = url;
+        this.username = username;
+        this.password = password;
+        this.resetStatement = resetStatement;
+        this.permits = new Semaphore(maxSize, true);
+        this.borrowTimeoutMs = borrowTimeoutMs;
+    }
+
+    /**
+     * @return Количество соединений, которые можно получить сейчас без ожидания.
+     */
+    public int available() {
+        return permits.availablePermits();
+    }
+
+    /**
+     * Выдает соединение из пула. Если все соединения заняты, ожидает возврата одного из них
+     * не дольше заданного при создании пула времени.
+     *
+     * @return Соединение, которое необходимо закрыть после использования.
+     * @throws SQLException Если не удалось установить новое соединение или свободное соединение не появилось
+     *                      за время ожидания.
+     */
+    public Connection borrow() throws SQLException {
+        try {
+            if (!permits.tryAcquire(borrowTimeoutMs, TimeUnit.MILLISECONDS)) {
+                throw new SQLException("Нет свободного соединения в пуле за " + borrowTimeoutMs
+                        + " мс: все соединения заняты; увеличьте daemon.pool.size", "08004");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Ожидание соединения из пула прервано", e);
+        }
+
+        try {
+            Connection physical;
+            while ((physical = idle.pollFirst()) != null) {
+                if (physical.isValid(2)) {
+                    return wrap(physical);
+                }
+                closePhysical(physical);
+            }
+            return wrap(DriverManager.getConnection(url, username, password));
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Открывает соединения заранее, чтобы первая команда не тратила время на подключение.
+     *
+     * @param count Количество соединений для прогрева.
+     */
+    public void warmUp(int count) throws SQLException {
+        for (int i = 0; i < count; i++) {
+            idle.addFirst(DriverManager.getConnection(url, username, password));
+        }
+        log.debug("Пул соединений прогрет: {} соединений.", count);
+    }
+
+    /**
+     * Закрывает все простаивающие соединения пула.
+     */
+    public void close() {
+        Connection physical;
+        while ((physical = idle.pollFirst()) != null) {
+            closePhysical(physical);
+        }
+    }
+
+    private void release(Connection physical) {
+        try {
+            if (!physical.isClosed()) {
+                if (!physical.getAutoCommit()) {
+                    physical.rollback();
+                    physical.setAutoCommit(true);
+                }
+                if (resetStatement != null) {
+                    try (Statement statement = physical.createStatement()) {
+                        statement.execute(resetStatement);
+                    }
+                }
+                idle.addFirst(physical);
+            }
+        } catch (SQLException e) {
+            log.warn("Соединение не возвращено в пул: {}", e.getMessage());
+            closePhysical(physical);
+        } finally {
+            permits.release();
+        }
+    }
+
+    private Connection wrap(Connection physical) {
+        InvocationHandler handler = new InvocationHandler() {
+            private boolean closed;
+
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                switch (method.getName()) {
+                    case "close":
+                        if (!closed) {
+                            closed = true;
+                            release(physical);
+                        }
+                        return null;
+                    case "isClosed":
+                        return closed || physical.isClosed();
+                    default:
+                        if (closed) {
+                            throw new SQLException("Соединение уже возвращено в пул");
+                        }
+                        try {
+                            return method.invoke(physical, args);
+                        } catch (InvocationTargetException e) {
+                            throw e.getCause();
+                        }
+                }
+            }
+        };
+        return (Connection) Proxy.newProxyInstance(
+                Connection.class.getClassLoader(), new Class<?>[]{Connection.class}, handler);
+    }
+
+    private static void closePhysical(Connection physical) {
+        try {
+            physical.close();
+        } catch (SQLException e) {
+            log.warn("Ошибка при закрытии соединения: {}", e.getMessage());
+        }
+    }
+}
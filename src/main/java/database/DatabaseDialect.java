@@ -0,0 +1,299 @@
+package database;
+
+import java.io.Reader;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Statement;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Диалект базы данных: SQL, который отличается между СУБД.
+ * <p>
+ * Реализации регистрируются в {@code META-INF/services/database.DatabaseDialect} и загружаются через
+ * {@link java.util.ServiceLoader}. Диалект выбирается свойством {@code db.dialect} или по URL соединения
+ * (см. {@link DatabaseDialects}). По умолчанию используется {@link PostgresDialect}.
+ * </p>
+ */
+public interface DatabaseDialect {
+
+    /**
+     * @return Имя диалекта, используемое в свойстве {@code db.dialect}.
+     */
+    String name();
+
+    /**
+     * Проверяет, подходит ли диалект для указанного URL соединения.
+     *
+     * @param jdbcUrl URL соединения.
+     * @return {@code true}, если диалект работает с этой СУБД.
+     */
+    boolean supports(String jdbcUrl);
+
+    /**
+     * @return DDL таблицы {@code migration_history} актуальной схемы.
+     */
+    String createHistoryTable();
+
+    /**
+     * @return Запросы, приводящие таблицу {@code migration_history} старого формата к актуальной схеме.
+     */
+    List<String> upgradeHistoryTable();
+
+    /**
+     * @return Индексы таблицы {@code migration_history}.
+     */
+    List<String> historyIndexes();
+
+    /**
+     * @return DDL таблицы {@code migration_history_archive}.
+     */
+    String createArchiveTable();
+
+    /**
+     * @return DDL однострочной таблицы {@code migration_state} с хэшем набора миграций, примененного последним
+     * {@code migrate}.
+     */
+    String createStateTable();
+
+    /**
+     * @return DDL, добавляющий в таблицу {@code migration_state} прежнего формата колонку {@code files_digest};
+     * не изменяет таблицу актуального формата.
+     */
+    String upgradeStateTable();
+
+    /**
+     * Запрос записи хэша набора миграций в {@code migration_state}. Параметры — хэш содержимого и хэш
+     * метаданных файлов набора (см. {@code migration_utils.MigrationState}); вместе с ними сохраняется
+     * наибольший {@code id} таблицы {@code migration_history}.
+     *
+     * @return Текст запроса.
+     */
+    String upsertState();
+
+    /**
+     * @return Запрос имен колонок таблицы {@code migration_history} в текущей схеме (колонка {@code column_name}).
+     */
+    String selectHistoryColumns();
+
+    /**
+     * Запрос вставки или обновления записи истории. Параметры: версия, описание, статус,
+     * контрольная сумма, время выполнения, тип записи, отпечаток схемы и сжатый список объектов схемы
+     * (последние два могут быть {@code NULL}).
+     *
+     * @return Текст запроса.
+     */
+    String upsertMigration();
+
+    /**
+     * Условие сравнения версии записи истории с параметром {@code ?} как последовательности чисел.
+     *
+     * @param operator Оператор сравнения, например {@code >=}.
+     * @return Фрагмент SQL с одним параметром.
+     */
+    String compareVersion(String operator);
+
+    /**
+     * Пытается захватить блокировку миграций без ожидания.
+     *
+     * @param connection Соединение, которому будет принадлежать блокировка.
+     * @param lockId     Идентификатор блокировки.
+     * @return {@code true}, если блокировка захвачена.
+     * @throws SQLException Если возникает ошибка при выполнении запроса.
+     */
+    boolean tryLock(Connection connection, long lockId) throws SQLException;
+
+    /**
+     * Захватывает блокировку миграций, ожидая ее освобождения.
+     *
+     * @param connection Соединение, которому будет принадлежать блокировка.
+     * @param lockId     Идентификатор блокировки.
+     * @throws SQLException Если возникает ошибка при выполнении запроса.
+     */
+    void lock(Connection connection, long lockId) throws SQLException;
+
+    /**
+     * Освобождает блокировку миграций.
+     *
+     * @param connection Соединение, которому принадлежит блокировка.
+     * @param lockId     Идентификатор блокировки.
+     * @throws SQLException Если возникает ошибка при выполнении запроса.
+     */
+    void unlock(Connection connection, long lockId) throws SQLException;
+
+    /**
+     * Очищает все пользовательские таблицы текущей схемы и сбрасывает их последовательности.
+     *
+     * @param connection     Соединение с базой данных.
+     * @param excludedTables Таблицы, которые не очищаются.
+     * @throws SQLException Если возникает ошибка при выполнении запросов.
+     */
+    void truncateTables(Connection connection, Set<String> excludedTables) throws SQLException;
+
+    /**
+     * Возвращает идентификатор серверного процесса соединения для наблюдения за ходом выполнения запросов.
+     *
+     * @param connection Соединение, выполняющее миграцию.
+     * @return Идентификатор процесса или {@code null}, если диалект не поддерживает наблюдение.
+     * @throws SQLException Если возникает ошибка при выполнении запроса.
+     */
+    default Integer backendPid(Connection connection) throws SQLException {
+        return null;
+    }
+
+    /**
+     * Запрос хода выполнения текущего запроса серверного процесса (параметр — идентификатор процесса).
+     * Колонки результата: {@code phase} (описание этапа), {@code work_done} и {@code work_total}
+     * (выполненный и общий объем работы, {@code NULL}, если неизвестен), {@code rows_done} (обработано строк).
+     *
+     * @return Текст запроса или {@code null}, если диалект не поддерживает наблюдение.
+     */
+    default String selectStatementProgress() {
+        return null;
+    }
+
+    /**
+     * Запрос сеансов, чьи открытые транзакции удерживают блокировки на указанных таблицах.
+     * Параметры: массив имен таблиц ({@code text[]}) и минимальный возраст транзакции в миллисекундах.
+     * Колонки результата: {@code pid}, {@code usename}, {@code application_name}, {@code state},
+     * {@code xact_age_ms}, {@code relname}, {@code table_name} (имя таблицы из параметра) и {@code mode}
+     * (режим блокировки в формате {@code pg_locks.mode}).
+     *
+     * @return Текст запроса или {@code null}, если диалект не поддерживает проверку.
+     */
+    default String selectBlockingSessions() {
+        return null;
+    }
+
+    /**
+     * Запрос табличных блокировок, удерживаемых текущим сеансом, без параметров.
+     * Колонки результата: {@code relname} (имя таблицы) и {@code mode} (режим блокировки).
+     *
+     * @return Текст запроса или {@code null}, если диалект не поддерживает чтение блокировок.
+     */
+    default String selectOwnLocks() {
+        return null;
+    }
+
+    /**
+     * Запрос объектов схем базы данных для отпечатка схемы (см. {@code migration_utils.SchemaFingerprint}).
+     * Все параметры запроса — массив имен схем ({@code text[]}). Колонки результата: {@code kind} (вид объекта),
+     * {@code name} (полное имя объекта) и {@code definition} (определение, изменение которого считается
+     * изменением объекта). Служебные таблицы миграций в результат не входят.
+     *
+     * @return Текст запроса или {@code null}, если диалект не поддерживает отпечаток схемы.
+     */
+    default String selectSchemaObjects() {
+        return null;
+    }
+
+    /**
+     * Запрос отставания потоковых реплик, выполняемый на основном сервере, без параметров.
+     * Колонки результата: {@code lag_ms} (наибольшее отставание воспроизведения в миллисекундах)
+     * и {@code lag_bytes} (наибольшее отставание воспроизведения в байтах журнала); {@code 0}, если реплик нет.
+     *
+     * @return Текст запроса или {@code null}, если диалект не поддерживает проверку отставания.
+     */
+    default String selectReplicationLag() {
+        return null;
+    }
+
+    /**
+     * Запрос отставания, выполняемый на самой реплике, без параметров. Колонки результата те же, что
+     * у {@link #selectReplicationLag()}.
+     *
+     * @return Текст запроса или {@code null}, если диалект не поддерживает проверку отставания.
+     */
+    default String selectReplicaLag() {
+        return null;
+    }
+
+    /**
+     * Запрос сброса состояния сеанса перед возвратом соединения в пул: параметров сеанса, временных таблиц,
+     * подготовленных запросов и сессионных advisory-блокировок.
+     *
+     * @return Текст запроса или {@code null}, если диалект не поддерживает сброс.
+     */
+    default String resetSession() {
+        return null;
+    }
+
+    /**
+     * Принудительно завершает сеанс.
+     *
+     * @param connection Соединение с базой данных.
+     * @param pid        Идентификатор серверного процесса сеанса.
+     * @return {@code true}, если сеанс завершен.
+     * @throws SQLException Если возникает ошибка при выполнении запроса.
+     */
+    default boolean terminateSession(Connection connection, int pid) throws SQLException {
+        throw new SQLFeatureNotSupportedException("Завершение сеансов не поддерживается диалектом " + name());
+    }
+
+    /**
+     * Отменяет текущий запрос сеанса, не завершая сам сеанс.
+     *
+     * @param connection Соединение с базой данных (не то, чей запрос отменяется).
+     * @param pid        Идентификатор серверного процесса сеанса.
+     * @return {@code true}, если запрос на отмену принят.
+     * @throws SQLException Если возникает ошибка при выполнении запроса.
+     */
+    default boolean cancelSession(Connection connection, int pid) throws SQLException {
+        throw new SQLFeatureNotSupportedException("Отмена запросов сеанса не поддерживается диалектом " + name());
+    }
+
+    /**
+     * Устанавливает параметр сеанса, например {@code maintenance_work_mem}.
+     *
+     * @param connection Соединение с базой данных.
+     * @param name       Имя параметра.
+     * @param value      Новое значение или {@code null}, чтобы вернуть значение по умолчанию.
+     * @param local      {@code true} — только до конца текущей транзакции ({@code SET LOCAL}).
+     * @return Прежнее значение параметра или {@code null}, если параметр не был задан.
+     * @throws SQLException Если возникает ошибка при выполнении запроса.
+     */
+    default String setSessionSetting(Connection connection, String name, String value, boolean local)
+            throws SQLException {
+        throw new SQLFeatureNotSupportedException("Параметры сеанса не поддерживаются диалектом " + name());
+    }
+
+    /**
+     * Выполняет запрос {@code COPY ... FROM STDIN}, передавая серверу данные из потока.
+     *
+     * @param connection Соединение с базой данных.
+     * @param sql        Запрос {@code COPY ... FROM STDIN}.
+     * @param data       Данные в формате запроса (без завершающей строки {@code \.}).
+     * @return Количество загруженных строк.
+     * @throws SQLException Если возникает ошибка при выполнении запроса.
+     */
+    default long copyIn(Connection connection, String sql, Reader data) throws SQLException {
+        throw new SQLFeatureNotSupportedException("COPY FROM STDIN не поддерживается диалектом " + name());
+    }
+
+    /**
+     * Находит среди указанных индексов недостроенные (например, после ошибки {@code CREATE INDEX CONCURRENTLY}).
+     *
+     * @param connection Соединение с базой данных.
+     * @param indexNames Имена индексов в том виде, в котором они записаны в миграции.
+     * @return Имена недостроенных индексов из {@code indexNames}.
+     * @throws SQLException Если возникает ошибка при выполнении запроса.
+     */
+    default List<String> findInvalidIndexes(Connection connection, Collection<String> indexNames) throws SQLException {
+        return List.of();
+    }
+
+    /**
+     * Удаляет индекс, если он существует. Соединение должно быть в режиме автофиксации.
+     *
+     * @param connection Соединение с базой данных.
+     * @param indexName  Имя индекса в том виде, в котором оно записано в миграции.
+     * @throws SQLException Если возникает ошибка при выполнении запроса.
+     */
+    default void dropIndex(Connection connection, String indexName) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("DROP INDEX IF EXISTS " + indexName);
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package database;
+
+import lombok.extern.slf4j.Slf4j;
+import utils.PropertiesUtils;
+
+import java.util.ServiceLoader;
+
+/**
+ * Выбор диалекта базы данных среди реализаций {@link DatabaseDialect}, зарегистрированных через
+ * {@link ServiceLoader}.
+ * <p>
+ * Диалект задается свойством {@code db.dialect} (например, {@code postgresql} или {@code h2}); если свойство
+ * не указано, выбирается первый диалект, поддерживающий {@code db.url}, а при его отсутствии — PostgreSQL.
+ * </p>
+ */
+@Slf4j
+public final class DatabaseDialects {
+
+    private static volatile DatabaseDialect current;
+
+    private DatabaseDialects() {
+    }
+
+    /**
+     * @return Диалект для текущей конфигурации соединения.
+     */
+    public static DatabaseDialect get() {
+        DatabaseDialect dialect = current;
+        if (dialect == null) {
+            synchronized (DatabaseDialects.class) {
+                if (current == null) {
+                    current = resolve(PropertiesUtils.getProperty("db.dialect", ""),
+                            PropertiesUtils.getProperty("db.url", ""));
+                    log.debug("Диалект базы данных: {}", current.name());
+                }
+                dialect = current;
+            }
+        }
+        return dialect;
+    }
+
+    /**
+     * Находит диалект по имени или по URL соединения.
+     *
+     * @param name    Имя диалекта или пустая строка.
+     * @param jdbcUrl URL соединения.
+     * @return Найденный диалект.
+     * @throws IllegalArgumentException Если диалект с указанным именем не зарегистрирован.
+     */
+    public static DatabaseDialect resolve(String name, String jdbcUrl) {
+        for (DatabaseDialect dialect : ServiceLoader.load(DatabaseDialect.class)) {
+            if (name.isEmpty() ? dialect.supports(jdbcUrl) : dialect.name().equalsIgnoreCase(name)) {
+                return dialect;
+            }
+        }
+        if (!name.isEmpty()) {
+            throw new IllegalArgumentException("Диалект базы данных не найден: " + name);
+        }
+        return new PostgresDialect();
+    }
+}
@@ -0,0 +1,317 @@
+package database;
+
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Диалект встроенной базы данных H2 в режиме совместимости с PostgreSQL
+ * ({@code jdbc:h2:mem:<имя>;MODE=PostgreSQL;DATABASE_TO_LOWER=TRUE}).
+ * <p>
+ * Предназначен для тестов: база данных в памяти позволяет выполнять {@code migrate} и откаты
+ * внутри процесса без внешнего сервера. База данных в памяти доступна только текущей JVM, поэтому
+ * блокировка миграций реализована семафором процесса вместо advisory-блокировки.
+ * </p>
+ */
+public class H2Dialect implements DatabaseDialect {
+
+    /**
+     * Ширина части версии в ключе сравнения версий (см. {@link #compareVersion(String)}).
+     */
+    private static final int VERSION_PART_WIDTH = 20;
+
+    private static final String CREATE_MIGRATION_TABLE = """
+        CREATE TABLE IF NOT EXISTS migration_history (
+            id SERIAL PRIMARY KEY,
+            version VARCHAR(255) NOT NULL UNIQUE,
+            description VARCHAR(255),
+            status BOOLEAN DEFAULT FALSE,
+            reverted BOOLEAN DEFAULT FALSE,
+            applied_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+            checksum VARCHAR(64),
+            execution_time INTEGER,
+            installed_by VARCHAR(100),
+            type VARCHAR(20) DEFAULT 'SQL',
+            schema_fingerprint VARCHAR(64),
+            schema_objects TEXT,
+            session_settings VARCHAR(1000)
+        )
+    """;
+
+    private static final List<String> UPGRADE_MIGRATION_TABLE = List.of(
+            "ALTER TABLE migration_history ADD COLUMN IF NOT EXISTS checksum VARCHAR(64)",
+            "ALTER TABLE migration_history ADD COLUMN IF NOT EXISTS execution_time INTEGER",
+            "ALTER TABLE migration_history ADD COLUMN IF NOT EXISTS installed_by VARCHAR(100)",
+            "ALTER TABLE migration_history ADD COLUMN IF NOT EXISTS type VARCHAR(20) DEFAULT 'SQL'",
+            "ALTER TABLE migration_history ADD COLUMN IF NOT EXISTS schema_fingerprint VARCHAR(64)",
+            "ALTER TABLE migration_history ADD COLUMN IF NOT EXISTS schema_objects TEXT",
+            "ALTER TABLE migration_history ADD COLUMN IF NOT EXISTS session_settings VARCHAR(1000)"
+    );
+
+    /**
+     * H2 не поддерживает частичные индексы, поэтому индексы строятся по всей таблице.
+     */
+    private static final List<String> CREATE_MIGRATION_INDEXES = List.of(
+            "CREATE INDEX IF NOT EXISTS migration_history_applied_at_idx ON migration_history (applied_at, id)",
+            "CREATE INDEX IF NOT EXISTS migration_history_version_idx ON migration_history (version)"
+    );
+
+    private static final String CREATE_ARCHIVE_TABLE = """
+        CREATE TABLE IF NOT EXISTS migration_history_archive (
+            id INTEGER NOT NULL,
+            version VARCHAR(255) NOT NULL,
+            description VARCHAR(255),
+            status BOOLEAN,
+            applied_at TIMESTAMP,
+            checksum VARCHAR(64),
+            execution_time INTEGER,
+            installed_by VARCHAR(100),
+            archived_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP
+        )
+    """;
+
+    /**
+     * Однострочная таблица состояния для быстрой проверки актуальности при {@code migrate}.
+     */
+    private static final String CREATE_STATE_TABLE = """
+        CREATE TABLE IF NOT EXISTS migration_state (
+            id INTEGER PRIMARY KEY CHECK (id = 1),
+            digest VARCHAR(64) NOT NULL,
+            files_digest VARCHAR(64),
+            history_id INTEGER,
+            updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP
+        )
+    """;
+
+    private static final String UPGRADE_STATE_TABLE =
+            "ALTER TABLE migration_state ADD COLUMN IF NOT EXISTS files_digest VARCHAR(64)";
+
+    private static final String UPSERT_STATE = """
+        MERGE INTO migration_state (id, digest, files_digest, history_id, updated_at) KEY (id)
+        VALUES (1, ?, ?, (SELECT MAX(id) FROM migration_history), CURRENT_TIMESTAMP)
+    """;
+
+    private static final String SELECT_HISTORY_COLUMNS = """
+        SELECT column_name
+        FROM information_schema.columns
+        WHERE LOWER(table_schema) = LOWER(CURRENT_SCHEMA)
+        AND LOWER(table_name) = 'migration_history'
+    """;
+
+    private static final String UPSERT_MIGRATION = """
+        MERGE INTO migration_history h
+        USING (SELECT CAST(? AS VARCHAR(255)) AS version, CAST(? AS VARCHAR(255)) AS description,
+                      CAST(? AS BOOLEAN) AS status, CAST(? AS VARCHAR(64)) AS checksum,
+                      CAST(? AS INTEGER) AS execution_time, CAST(? AS VARCHAR(20)) AS type,
+                      CAST(? AS VARCHAR(64)) AS schema_fingerprint, CAST(? AS TEXT) AS schema_objects,
+                      CAST(? AS VARCHAR(1000)) AS session_settings) s
+        ON h.version = s.version
+        WHEN MATCHED THEN UPDATE SET
+            description = s.description,
+            status = s.status,
+            applied_at = CASE WHEN h.reverted = TRUE OR h.checksum IS DISTINCT FROM s.checksum
+                              THEN CURRENT_TIMESTAMP ELSE h.applied_at END,
+            reverted = FALSE,
+            checksum = s.checksum,
+            execution_time = s.execution_time,
+            installed_by = CURRENT_USER,
+            type = s.type,
+            schema_fingerprint = s.schema_fingerprint,
+            schema_objects = s.schema_objects,
+            session_settings = s.session_settings
+        WHEN NOT MATCHED THEN INSERT (version, description, status, reverted, applied_at, checksum, execution_time, installed_by, type,
+                                      schema_fingerprint, schema_objects, session_settings)
+            VALUES (s.version, s.description, s.status, FALSE, CURRENT_TIMESTAMP, s.checksum, s.execution_time, CURRENT_USER, s.type,
+                    s.schema_fingerprint, s.schema_objects, s.session_settings)
+    """;
+
+    private static final String SELECT_TABLES = """
+        SELECT table_name
+        FROM information_schema.tables
+        WHERE LOWER(table_schema) = LOWER(CURRENT_SCHEMA)
+        AND table_type = 'BASE TABLE'
+    """;
+
+    /**
+     * Объекты схем для отпечатка схемы по {@code INFORMATION_SCHEMA}: таблицы и представления, колонки,
+     * индексы и ограничения. Массив схем передается в каждый из четырех параметров.
+     */
+    private static final String SELECT_SCHEMA_OBJECTS = """
+        SELECT CASE WHEN t.table_type = 'VIEW' THEN 'view' ELSE 'table' END AS kind,
+               t.table_schema || '.' || t.table_name AS name,
+               t.table_type || COALESCE(' ' || v.view_definition, '') AS definition
+        FROM information_schema.tables t
+        LEFT JOIN information_schema.views v ON v.table_schema = t.table_schema AND v.table_name = t.table_name
+        WHERE t.table_schema = ANY (?)
+        AND t.table_name NOT IN ('migration_history', 'migration_history_archive', 'migration_state')
+        UNION ALL
+        SELECT 'column', c.table_schema || '.' || c.table_name || '.' || c.column_name,
+               c.data_type
+                   || COALESCE('(' || c.character_maximum_length || ')', '')
+                   || COALESCE('(' || c.numeric_precision || ',' || c.numeric_scale || ')', '')
+                   || CASE WHEN c.is_nullable = 'NO' THEN ' NOT NULL' ELSE '' END
+                   || COALESCE(' DEFAULT ' || c.column_default, '')
+        FROM information_schema.columns c
+        WHERE c.table_schema = ANY (?)
+        AND c.table_name NOT IN ('migration_history', 'migration_history_archive', 'migration_state')
+        UNION ALL
+        SELECT 'index', i.index_schema || '.' || i.index_name,
+               i.table_name || ' ' || i.index_type_name || ' ('
+                   || LISTAGG(ic.column_name || ' ' || ic.ordering_specification, ', ')
+                          WITHIN GROUP (ORDER BY ic.ordinal_position) || ')'
+        FROM information_schema.indexes i
+        JOIN information_schema.index_columns ic
+            ON ic.index_schema = i.index_schema AND ic.index_name = i.index_name AND ic.table_name = i.table_name
+        WHERE i.index_schema = ANY (?)
+        AND i.table_name NOT IN ('migration_history', 'migration_history_archive', 'migration_state')
+        GROUP BY i.index_schema, i.index_name, i.table_name, i.index_type_name
+        UNION ALL
+        SELECT 'constraint', tc.table_schema || '.' || tc.table_name || '.' || tc.constraint_name,
+               tc.constraint_type || ' ('
+                   || COALESCE(LISTAGG(k.column_name, ', ') WITHIN GROUP (ORDER BY k.ordinal_position), '') || ')'
+                   || COALESCE(' ' || MAX(cc.check_clause), '')
+        FROM information_schema.table_constraints tc
+        LEFT JOIN information_schema.key_column_usage k
+            ON k.constraint_schema = tc.constraint_schema AND k.constraint_name = tc.constraint_name
+        LEFT JOIN information_schema.check_constraints cc
+            ON cc.constraint_schema = tc.constraint_schema AND cc.constraint_name = tc.constraint_name
+        WHERE tc.table_schema = ANY (?)
+        AND tc.table_name NOT IN ('migration_history', 'migration_history_archive', 'migration_state')
+        GROUP BY tc.table_schema, tc.table_name, tc.constraint_name, tc.constraint_type
+    """;
+
+    private static final Map<Long, Semaphore> LOCKS = new ConcurrentHashMap<>();
+
+    @Override
+    public String name() {
+        return "h2";
+    }
+
+    @Override
+    public boolean supports(String jdbcUrl) {
+        return jdbcUrl.startsWith("jdbc:h2:");
+    }
+
+    @Override
+    public String createHistoryTable() {
+        return CREATE_MIGRATION_TABLE;
+    }
+
+    @Override
+    public List<String> upgradeHistoryTable() {
+        return UPGRADE_MIGRATION_TABLE;
+    }
+
+    @Override
+    public List<String> historyIndexes() {
+        return CREATE_MIGRATION_INDEXES;
+    }
+
+    @Override
+    public String createArchiveTable() {
+        return CREATE_ARCHIVE_TABLE;
+    }
+
+    @Override
+    public String createStateTable() {
+        return CREATE_STATE_TABLE;
+    }
+
+    @Override
+    public String upgradeStateTable() {
+        return UPGRADE_STATE_TABLE;
+    }
+
+    @Override
+    public String upsertState() {
+        return UPSERT_STATE;
+    }
+
+    @Override
+    public String selectHistoryColumns() {
+        return SELECT_HISTORY_COLUMNS;
+    }
+
+    @Override
+    public String upsertMigration() {
+        return UPSERT_MIGRATION;
+    }
+
+    @Override
+    public String selectSchemaObjects() {
+        return SELECT_SCHEMA_OBJECTS;
+    }
+
+    /**
+     * Версии сравниваются по частям: завершающие нулевые части отбрасываются ({@code 2.0} равно {@code 2}),
+     * а каждая часть дополняется нулями слева до {@value #VERSION_PART_WIDTH} символов, поэтому строковое
+     * сравнение ключей совпадает с числовым ({@code 1.10} больше {@code 1.9}).
+     */
+    @Override
+    public String compareVersion(String operator) {
+        return versionKey("version") + " " + operator + " " + versionKey("?");
+    }
+
+    /**
+     * Ключ сравнения версии. В режиме совместимости с PostgreSQL функция {@code REGEXP_REPLACE} заменяет все
+     * совпадения только с флагом {@code g}, а группы в замене обозначаются {@code \1}.
+     */
+    private static String versionKey(String expression) {
+        String trimmed = "REGEXP_REPLACE(" + expression + ", '(\\.0+)+$', '')";
+        String prefixed = "REGEXP_REPLACE(" + trimmed + ", '(^|\\.)', '\\1"
+                + "0".repeat(VERSION_PART_WIDTH) + "', 'g')";
+        return "REGEXP_REPLACE(" + prefixed + ", '0*([^.]{" + VERSION_PART_WIDTH + "})(?=\\.|$)', '\\1', 'g')";
+    }
+
+    @Override
+    public boolean tryLock(Connection connection, long lockId) {
+        return semaphore(lockId).tryAcquire();
+    }
+
+    @Override
+    public void lock(Connection connection, long lockId) throws SQLException {
+        try {
+            semaphore(lockId).acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Ожидание блокировки миграций прервано", e);
+        }
+    }
+
+    @Override
+    public void unlock(Connection connection, long lockId) {
+        semaphore(lockId).release();
+    }
+
+    @Override
+    public void truncateTables(Connection connection, Set<String> excludedTables) throws SQLException {
+        List<String> tables = new ArrayList<>();
+        try (Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery(SELECT_TABLES)) {
+            while (rs.next()) {
+                String table = rs.getString("table_name");
+                if (!excludedTables.contains(table.toLowerCase())) {
+                    tables.add(table);
+                }
+            }
+        }
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("SET REFERENTIAL_INTEGRITY FALSE");
+            try {
+                for (String table : tables) {
+                    statement.execute("TRUNCATE TABLE \"" + table.replace("\"", "\"\"") + "\" RESTART IDENTITY");
+                }
+            } finally {
+                statement.execute("SET REFERENTIAL_INTEGRITY TRUE");
+            }
+        }
+    }
+
+    private static Semaphore semaphore(long lockId) {
+        return LOCKS.computeIfAbsent(lockId, id -> new Semaphore(1));
+    }
+}
@@ -0,0 +1,521 @@
+package database;
+
+import org.postgresql.PGConnection;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Диалект PostgreSQL. Используется по умолчанию.
+ * Блокировка миграций реализована сессионной advisory-блокировкой, очистка схемы — одним {@code TRUNCATE}.
+ */
+public class PostgresDialect implements DatabaseDialect {
+
+    /**
+     * Недостроенные индексы среди переданных имен. Имена разрешаются с учетом {@code search_path},
+     * как в запросах миграции.
+     */
+    private static final String SELECT_INVALID_INDEXES = """
+        SELECT n.name
+        FROM unnest(?::text[]) AS n(name)
+        JOIN pg_index i ON i.indexrelid = to_regclass(n.name)
+        WHERE NOT i.indisvalid
+    """;
+
+    /**
+     * Схема таблицы {@code migration_history} версии 2: помимо базовых полей хранит контрольную сумму скрипта,
+     * время выполнения миграции в миллисекундах, пользователя, применившего миграцию, тип записи,
+     * отпечаток схемы базы данных после миграции и параметры сеанса, с которыми она выполнялась.
+     */
+    private static final String CREATE_MIGRATION_TABLE = """
+        CREATE TABLE IF NOT EXISTS migration_history (
+            id SERIAL PRIMARY KEY,
+            version VARCHAR(255) NOT NULL UNIQUE,
+            description VARCHAR(255),
+            status BOOLEAN DEFAULT FALSE,
+            reverted BOOLEAN DEFAULT FALSE,
+            applied_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+            checksum VARCHAR(64),
+            execution_time INTEGER,
+            installed_by VARCHAR(100),
+            type VARCHAR(20) DEFAULT 'SQL',
+            schema_fingerprint VARCHAR(64),
+            schema_objects TEXT,
+            session_settings VARCHAR(1000)
+        )
+    """;
+
+    /**
+     * Приводит таблицу {@code migration_history} старого формата к схеме версии 2.
+     */
+    private static final String UPGRADE_MIGRATION_TABLE = """
+        ALTER TABLE migration_history
+            ADD COLUMN IF NOT EXISTS checksum VARCHAR(64),
+            ADD COLUMN IF NOT EXISTS execution_time INTEGER,
+            ADD COLUMN IF NOT EXISTS installed_by VARCHAR(100),
+            ADD COLUMN IF NOT EXISTS type VARCHAR(20) DEFAULT 'SQL',
+            ADD COLUMN IF NOT EXISTS schema_fingerprint VARCHAR(64),
+            ADD COLUMN IF NOT EXISTS schema_objects TEXT,
+            ADD COLUMN IF NOT EXISTS session_settings VARCHAR(1000)
+    """;
+
+    /**
+     * Частичные индексы под запросы, которые фильтруют по {@code reverted = FALSE}
+     * и сортируют по дате применения или по версии.
+     */
+    private static final List<String> CREATE_MIGRATION_INDEXES = List.of(
+            """
+            CREATE INDEX IF NOT EXISTS migration_history_applied_at_idx
+                ON migration_history (applied_at, id)
+                WHERE reverted = FALSE
+            """,
+            """
+            CREATE INDEX IF NOT EXISTS migration_history_version_idx
+                ON migration_history (version)
+                WHERE reverted = FALSE
+            """
+    );
+
+    private static final String CREATE_ARCHIVE_TABLE = """
+        CREATE TABLE IF NOT EXISTS migration_history_archive (
+            id INTEGER NOT NULL,
+            version VARCHAR(255) NOT NULL,
+            description VARCHAR(255),
+            status BOOLEAN,
+            applied_at TIMESTAMP,
+            checksum VARCHAR(64),
+            execution_time INTEGER,
+            installed_by VARCHAR(100),
+            archived_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP
+        )
+    """;
+
+    /**
+     * Однострочная таблица состояния для быстрой проверки актуальности при {@code migrate}.
+     */
+    private static final String CREATE_STATE_TABLE = """
+        CREATE TABLE IF NOT EXISTS migration_state (
+            id INTEGER PRIMARY KEY CHECK (id = 1),
+            digest VARCHAR(64) NOT NULL,
+            files_digest VARCHAR(64),
+            history_id INTEGER,
+            updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP
+        )
+    """;
+
+    private static final String UPGRADE_STATE_TABLE =
+            "ALTER TABLE migration_state ADD COLUMN IF NOT EXISTS files_digest VARCHAR(64)";
+
+    private static final String UPSERT_STATE = """
+        INSERT INTO migration_state (id, digest, files_digest, history_id, updated_at)
+        VALUES (1, ?, ?, (SELECT MAX(id) FROM migration_history), CURRENT_TIMESTAMP)
+        ON CONFLICT (id) DO UPDATE SET
+            digest = EXCLUDED.digest,
+            files_digest = EXCLUDED.files_digest,
+            history_id = EXCLUDED.history_id,
+            updated_at = EXCLUDED.updated_at
+    """;
+
+    private static final String SELECT_HISTORY_COLUMNS = """
+        SELECT column_name
+        FROM information_schema.columns
+        WHERE table_schema = current_schema()
+        AND table_name = 'migration_history'
+    """;
+
+    private static final String UPSERT_MIGRATION = """
+        INSERT INTO migration_history (version, description, status, reverted, applied_at, checksum, execution_time, installed_by, type,
+                                       schema_fingerprint, schema_objects, session_settings)
+        VALUES (?, ?, ?, FALSE, CURRENT_TIMESTAMP, ?, ?, CURRENT_USER, ?, ?, ?, ?)
+        ON CONFLICT (version) DO UPDATE SET
+            description = EXCLUDED.description,
+            status = EXCLUDED.status,
+            reverted = FALSE,
+            applied_at = CASE WHEN migration_history.reverted = TRUE
+                                OR migration_history.checksum IS DISTINCT FROM EXCLUDED.checksum
+                              THEN CURRENT_TIMESTAMP ELSE migration_history.applied_at END,
+            checksum = EXCLUDED.checksum,
+            execution_time = EXCLUDED.execution_time,
+            installed_by = EXCLUDED.installed_by,
+            type = EXCLUDED.type,
+            schema_fingerprint = EXCLUDED.schema_fingerprint,
+            schema_objects = EXCLUDED.schema_objects,
+            session_settings = EXCLUDED.session_settings;
+    """;
+
+    private static final String SELECT_SESSION_SETTING = "SELECT current_setting(?, true)";
+
+    /**
+     * {@code set_config} с {@code is_local = true} действует как {@code SET LOCAL}, а значение {@code NULL}
+     * возвращает значение по умолчанию, как {@code RESET}.
+     */
+    private static final String SET_SESSION_SETTING = "SELECT set_config(?, ?, ?)";
+
+    /**
+     * Версия в виде числового массива для сравнения диапазонов ("10" больше "9").
+     * Для версий не из чисел, например ключей повторяемых миграций, возвращает {@code NULL}.
+     */
+    private static final String VERSION_AS_ARRAY =
+            "(CASE WHEN version ~ '^[0-9]+(\\.[0-9]+)*$' THEN string_to_array(version, '.')::numeric[] END)";
+
+    private static final String SELECT_TABLES = """
+        SELECT table_name
+        FROM information_schema.tables
+        WHERE table_schema = 'public'
+        AND table_type = 'BASE TABLE'
+    """;
+
+    /**
+     * Ход выполнения по представлениям {@code pg_stat_progress_*}: построение индекса, {@code COPY}
+     * и {@code CLUSTER}/{@code VACUUM FULL}. Для прочих запросов выводится состояние и ожидание процесса.
+     */
+    private static final String SELECT_STATEMENT_PROGRESS = """
+        SELECT
+            CASE
+                WHEN ci.pid IS NOT NULL THEN ci.command || ': ' || ci.phase
+                WHEN cp.pid IS NOT NULL THEN cp.command || ' ' || cp.type
+                WHEN cl.pid IS NOT NULL THEN cl.command || ': ' || cl.phase
+                ELSE a.state || COALESCE(' (' || a.wait_event_type || ': ' || a.wait_event || ')', '')
+            END AS phase,
+            CASE
+                WHEN ci.pid IS NOT NULL THEN CASE WHEN ci.tuples_total > 0 THEN ci.tuples_done ELSE ci.blocks_done END
+                WHEN cp.pid IS NOT NULL THEN cp.bytes_processed
+                WHEN cl.pid IS NOT NULL THEN cl.heap_blks_scanned
+            END AS work_done,
+            CASE
+                WHEN ci.pid IS NOT NULL THEN NULLIF(CASE WHEN ci.tuples_total > 0 THEN ci.tuples_total ELSE ci.blocks_total END, 0)
+                WHEN cp.pid IS NOT NULL THEN NULLIF(cp.bytes_total, 0)
+                WHEN cl.pid IS NOT NULL THEN NULLIF(cl.heap_blks_total, 0)
+            END AS work_total,
+            COALESCE(ci.tuples_done, cp.tuples_processed, cl.heap_tuples_written) AS rows_done
+        FROM pg_stat_activity a
+        LEFT JOIN pg_stat_progress_create_index ci ON ci.pid = a.pid
+        LEFT JOIN pg_stat_progress_copy cp ON cp.pid = a.pid
+        LEFT JOIN pg_stat_progress_cluster cl ON cl.pid = a.pid
+        WHERE a.pid = ?
+    """;
+
+    /**
+     * Сеансы с транзакциями не моложе заданного возраста, удерживающие блокировки на таблицах миграции.
+     */
+    private static final String SELECT_BLOCKING_SESSIONS = """
+        SELECT DISTINCT a.pid, a.usename, a.application_name, a.state,
+               (EXTRACT(EPOCH FROM (now() - a.xact_start)) * 1000)::bigint AS xact_age_ms,
+               c.relname, t.name AS table_name, l.mode
+        FROM pg_locks l
+        JOIN unnest(?::text[]) AS t(name) ON l.relation = to_regclass(t.name)
+        JOIN pg_class c ON c.oid = l.relation
+        JOIN pg_stat_activity a ON a.pid = l.pid
+        WHERE l.granted
+        AND a.pid <> pg_backend_pid()
+        AND a.xact_start IS NOT NULL
+        AND now() - a.xact_start >= ? * INTERVAL '1 millisecond'
+        ORDER BY xact_age_ms DESC
+    """;
+
+    /**
+     * Блокировки отношений, удерживаемые текущим сеансом (кроме системного каталога).
+     */
+    private static final String SELECT_OWN_LOCKS = """
+        SELECT c.relname, l.mode
+        FROM pg_locks l
+        JOIN pg_class c ON c.oid = l.relation
+        WHERE l.pid = pg_backend_pid()
+        AND l.locktype = 'relation'
+        AND l.granted
+        AND c.relnamespace <> 'pg_catalog'::regnamespace
+        AND c.relkind IN ('r', 'p', 'm')
+    """;
+
+    /**
+     * Отставание потоковых реплик по {@code pg_stat_replication}. {@code replay_lag} становится {@code NULL},
+     * когда реплика догнала основной сервер; {@code replay_lsn} виден только ролям с правами {@code pg_monitor}.
+     */
+    private static final String SELECT_REPLICATION_LAG = """
+        SELECT COALESCE(MAX(EXTRACT(EPOCH FROM replay_lag) * 1000), 0)::bigint AS lag_ms,
+               COALESCE(MAX(pg_wal_lsn_diff(pg_current_wal_lsn(), replay_lsn)), 0)::bigint AS lag_bytes
+        FROM pg_stat_replication
+    """;
+
+    /**
+     * Отставание на самой реплике: время с последней воспроизведенной транзакции (если принятый журнал
+     * воспроизведен не полностью) и объем принятого, но не воспроизведенного журнала.
+     */
+    private static final String SELECT_REPLICA_LAG = """
+        SELECT CASE WHEN pg_last_wal_receive_lsn() IS NOT DISTINCT FROM pg_last_wal_replay_lsn() THEN 0
+                    ELSE COALESCE((EXTRACT(EPOCH FROM now() - pg_last_xact_replay_timestamp()) * 1000)::bigint, 0)
+               END AS lag_ms,
+               COALESCE(pg_wal_lsn_diff(pg_last_wal_receive_lsn(), pg_last_wal_replay_lsn()), 0)::bigint AS lag_bytes
+    """;
+
+    /**
+     * Объекты управляемых схем для отпечатка схемы: отношения, колонки, индексы, ограничения и функции.
+     * Служебные таблицы миграций не учитываются.
+     */
+    private static final String SELECT_SCHEMA_OBJECTS = """
+        WITH ns AS (
+            SELECT oid, nspname FROM pg_namespace WHERE nspname = ANY (?::text[])
+        ), rel AS (
+            SELECT c.oid, c.relname, c.relkind, ns.nspname
+            FROM pg_class c
+            JOIN ns ON ns.oid = c.relnamespace
+            WHERE c.relkind IN ('r', 'p', 'v', 'm', 'S', 'f')
+            AND c.relname NOT IN ('migration_history', 'migration_history_archive', 'migration_state')
+        )
+        SELECT CASE WHEN relkind IN ('v', 'm') THEN 'view' WHEN relkind = 'S' THEN 'sequence' ELSE 'table' END AS kind,
+               nspname || '.' || relname AS name,
+               relkind::text || COALESCE(' ' || CASE WHEN relkind IN ('v', 'm') THEN pg_get_viewdef(oid) END, '')
+                   AS definition
+        FROM rel
+        UNION ALL
+        SELECT 'column', rel.nspname || '.' || rel.relname || '.' || a.attname,
+               format_type(a.atttypid, a.atttypmod)
+                   || CASE WHEN a.attnotnull THEN ' NOT NULL' ELSE '' END
+                   || COALESCE(' DEFAULT ' || pg_get_expr(d.adbin, d.adrelid), '')
+        FROM rel
+        JOIN pg_attribute a ON a.attrelid = rel.oid AND a.attnum > 0 AND NOT a.attisdropped
+        LEFT JOIN pg_attrdef d ON d.adrelid = a.attrelid AND d.adnum = a.attnum
+        WHERE rel.relkind <> 'S'
+        UNION ALL
+        SELECT 'index', rel.nspname || '.' || ic.relname, pg_get_indexdef(i.indexrelid)
+        FROM rel
+        JOIN pg_index i ON i.indrelid = rel.oid
+        JOIN pg_class ic ON ic.oid = i.indexrelid
+        UNION ALL
+        SELECT 'constraint', rel.nspname || '.' || rel.relname || '.' || con.conname, pg_get_constraintdef(con.oid)
+        FROM rel
+        JOIN pg_constraint con ON con.conrelid = rel.oid
+        UNION ALL
+        SELECT 'function', ns.nspname || '.' || p.proname || '(' || pg_get_function_identity_arguments(p.oid) || ')',
+               COALESCE(pg_get_function_result(p.oid), '') || ' ' || p.provolatile || ' ' || md5(p.prosrc)
+        FROM pg_proc p
+        JOIN ns ON ns.oid = p.pronamespace
+        WHERE p.prokind IN ('f', 'p')
+    """;
+
+    @Override
+    public String name() {
+        return "postgresql";
+    }
+
+    @Override
+    public boolean supports(String jdbcUrl) {
+        return jdbcUrl.startsWith("jdbc:postgresql:");
+    }
+
+    @Override
+    public String createHistoryTable() {
+        return CREATE_MIGRATION_TABLE;
+    }
+
+    @Override
+    public List<String> upgradeHistoryTable() {
+        return List.of(UPGRADE_MIGRATION_TABLE);
+    }
+
+    @Override
+    public List<String> historyIndexes() {
+        return CREATE_MIGRATION_INDEXES;
+    }
+
+    @Override
+    public String createArchiveTable() {
+        return CREATE_ARCHIVE_TABLE;
+    }
+
+    @Override
+    public String createStateTable() {
+        return CREATE_STATE_TABLE;
+    }
+
+    @Override
+    public String upgradeStateTable() {
+        return UPGRADE_STATE_TABLE;
+    }
+
+    @Override
+    public String upsertState() {
+        return UPSERT_STATE;
+    }
+
+    @Override
+    public String selectHistoryColumns() {
+        return SELECT_HISTORY_COLUMNS;
+    }
+
+    @Override
+    public String upsertMigration() {
+        return UPSERT_MIGRATION;
+    }
+
+    @Override
+    public String compareVersion(String operator) {
+        return VERSION_AS_ARRAY + " " + operator + " string_to_array(?, '.')::numeric[]";
+    }
+
+    @Override
+    public boolean tryLock(Connection connection, long lockId) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement("SELECT pg_try_advisory_lock(?)")) {
+            statement.setLong(1, lockId);
+            try (ResultSet rs = statement.executeQuery()) {
+                return rs.next() && rs.getBoolean(1);
+            }
+        }
+    }
+
+    @Override
+    public void lock(Connection connection, long lockId) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement("SELECT pg_advisory_lock(?)")) {
+            statement.setLong(1, lockId);
+            statement.execute();
+        }
+    }
+
+    @Override
+    public void unlock(Connection connection, long lockId) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement("SELECT pg_advisory_unlock(?)")) {
+            statement.setLong(1, lockId);
+            statement.execute();
+        }
+    }
+
+    @Override
+    public void truncateTables(Connection connection, Set<String> excludedTables) throws SQLException {
+        List<String> tables = new ArrayList<>();
+        try (Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery(SELECT_TABLES)) {
+            while (rs.next()) {
+                String table = rs.getString("table_name");
+                if (!excludedTables.contains(table)) {
+                    tables.add("public.\"" + table.replace("\"", "\"\"") + "\"");
+                }
+            }
+        }
+        if (tables.isEmpty()) {
+            return;
+        }
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("TRUNCATE TABLE " + String.join(", ", tables) + " RESTART IDENTITY CASCADE");
+        }
+    }
+
+    @Override
+    public Integer backendPid(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery("SELECT pg_backend_pid()")) {
+            return rs.next() ? rs.getInt(1) : null;
+        }
+    }
+
+    @Override
+    public String selectStatementProgress() {
+        return SELECT_STATEMENT_PROGRESS;
+    }
+
+    @Override
+    public String selectBlockingSessions() {
+        return SELECT_BLOCKING_SESSIONS;
+    }
+
+    @Override
+    public String selectSchemaObjects() {
+        return SELECT_SCHEMA_OBJECTS;
+    }
+
+    @Override
+    public String selectReplicationLag() {
+        return SELECT_REPLICATION_LAG;
+    }
+
+    @Override
+    public String selectOwnLocks() {
+        return SELECT_OWN_LOCKS;
+    }
+
+    @Override
+    public String selectReplicaLag() {
+        return SELECT_REPLICA_LAG;
+    }
+
+    @Override
+    public String resetSession() {
+        return "DISCARD ALL";
+    }
+
+    @Override
+    public boolean terminateSession(Connection connection, int pid) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement("SELECT pg_terminate_backend(?)")) {
+            statement.setInt(1, pid);
+            try (ResultSet rs = statement.executeQuery()) {
+                return rs.next() && rs.getBoolean(1);
+            }
+        }
+    }
+
+    @Override
+    public boolean cancelSession(Connection connection, int pid) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement("SELECT pg_cancel_backend(?)")) {
+            statement.setInt(1, pid);
+            try (ResultSet rs = statement.executeQuery()) {
+                return rs.next() && rs.getBoolean(1);
+            }
+        }
+    }
+
+    @Override
+    public String setSessionSetting(Connection connection, String name, String value, boolean local)
+            throws SQLException {
+        String previous;
+        try (PreparedStatement statement = connection.prepareStatement(SELECT_SESSION_SETTING)) {
+            statement.setString(1, name);
+            try (ResultSet rs = statement.executeQuery()) {
+                previous = rs.next() ? rs.getString(1) : null;
+            }
+        }
+        try (PreparedStatement statement = connection.prepareStatement(SET_SESSION_SETTING)) {
+            statement.setString(1, name);
+            statement.setString(2, value);
+            statement.setBoolean(3, local);
+            statement.executeQuery().close();
+        }
+        return previous;
+    }
+
+    @Override
+    public long copyIn(Connection connection, String sql, Reader data) throws SQLException {
+        try {
+            return connection.unwrap(PGConnection.class).getCopyAPI().copyIn(sql, data);
+        } catch (IOException e) {
+            throw new SQLException("Ошибка при чтении данных COPY", e);
+        }
+    }
+
+    @Override
+    public List<String> findInvalidIndexes(Connection connection, Collection<String> indexNames) throws SQLException {
+        List<String> invalid = new ArrayList<>();
+        Array names = connection.createArrayOf("text", indexNames.toArray());
+        try (PreparedStatement statement = connection.prepareStatement(SELECT_INVALID_INDEXES)) {
+            statement.setArray(1, names);
+            try (ResultSet rs = statement.executeQuery()) {
+                while (rs.next()) {
+                    invalid.add(rs.getString("name"));
+                }
+            }
+        } finally {
+            names.free();
+        }
+        return invalid;
+    }
+
+    @Override
+    public void dropIndex(Connection connection, String indexName) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("DROP INDEX CONCURRENTLY IF EXISTS " + indexName);
+        }
+    }
+}
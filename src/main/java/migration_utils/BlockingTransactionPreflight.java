@@ -0,0 +1,248 @@
+package migration_utils;
+
+import database.DatabaseDialect;
+import database.DatabaseDialects;
+import lombok.extern.slf4j.Slf4j;
+import utils.PropertiesUtils;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.sql.Array;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Предварительная проверка перед {@code migrate}: нет ли долгих или простаивающих транзакций, удерживающих
+ * блокировки на таблицах, которые затрагивают ожидающие миграции.
+ * <p>
+ * Миграция, вставшая в очередь за сеансом в состоянии {@code idle in transaction}, блокирует и все запросы,
+ * пришедшие после нее. Поэтому проверка выполняется до захвата блокировки миграций и до первого запроса
+ * миграции. Поведение при обнаружении таких сеансов задается свойством {@code preflight.policy}:
+ * <ul>
+ *     <li>{@code wait} (по умолчанию) — ждать завершения транзакций не дольше {@code preflight.timeout.ms};</li>
+ *     <li>{@code abort} — сразу прервать {@code migrate};</li>
+ *     <li>{@code terminate} — завершить сеансы, транзакции которых старше {@code preflight.terminate.age.ms},
+ *         и ждать остальные;</li>
+ *     <li>{@code off} — не выполнять проверку.</li>
+ * </ul>
+ * Учитываются только транзакции не моложе {@code preflight.min.age.ms} и только блокировки, режим которых
+ * конфликтует с режимом, нужным запросам миграций (см. {@link TableLockMode}): например, читающая транзакция
+ * не считается блокирующей для {@code INSERT}, но считается для {@code ALTER TABLE}.
+ * </p>
+ */
+@Slf4j
+public class BlockingTransactionPreflight {
+
+    public enum Policy {
+        WAIT, ABORT, TERMINATE, OFF
+    }
+
+    /**
+     * Сеанс, удерживающий блокировку на таблице миграции.
+     *
+     * @param pid             Идентификатор серверного процесса.
+     * @param user            Пользователь.
+     * @param applicationName Имя приложения.
+     * @param state           Состояние сеанса, например {@code idle in transaction}.
+     * @param transactionAgeMs Возраст транзакции в миллисекундах.
+     * @param table           Таблица.
+     * @param lockMode        Режим удерживаемой блокировки.
+     */
+    public record BlockingSession(int pid, String user, String applicationName, String state,
+                                  long transactionAgeMs, String table, String lockMode) {
+    }
+
+    /**
+     * Разобранные блокировки файла миграции; действительны, пока не изменились файл и значения плейсхолдеров.
+     */
+    private record FileLocks(long lastModified, long length, Map<String, String> placeholders,
+                             Map<String, Set<TableLockMode>> locks) {
+    }
+
+    private static final long POLL_INTERVAL_MS = 1000;
+
+    private static final Map<Path, FileLocks> FILE_LOCKS = new ConcurrentHashMap<>();
+
+    private final Policy policy;
+    private final long timeoutMs;
+    private final long minAgeMs;
+    private final long terminateAgeMs;
+
+    public BlockingTransactionPreflight(Policy policy, long timeoutMs, long minAgeMs, long terminateAgeMs) {
+        this.policy = policy;
+        this.timeoutMs = timeoutMs;
+        this.minAgeMs = minAgeMs;
+        this.terminateAgeMs = terminateAgeMs;
+    }
+
+    /**
+     * @return Проверка с параметрами из {@code application.properties}.
+     */
+    public static BlockingTransactionPreflight fromProperties() {
+        return new BlockingTransactionPreflight(
+                Policy.valueOf(PropertiesUtils.getProperty("preflight.policy", "wait").toUpperCase(Locale.ROOT)),
+                Long.parseLong(PropertiesUtils.getProperty("preflight.timeout.ms", "60000")),
+                Long.parseLong(PropertiesUtils.getProperty("preflight.min.age.ms", "1000")),
+                Long.parseLong(PropertiesUtils.getProperty("preflight.terminate.age.ms", "300000")));
+    }
+
+    public Policy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * Определяет таблицы, которые затрагивают миграции, и режимы блокировок, нужные на них запросам миграций.
+     * Результат разбора файла кэшируется до изменения его размера или даты изменения, поэтому сжатые
+     * миграции не распаковываются заново при каждой проверке.
+     *
+     * @param files        Файлы ожидающих миграций.
+     * @param placeholders Значения плейсхолдеров.
+     * @return Режимы блокировок по именам таблиц в том виде, в котором они записаны в миграциях.
+     * @throws SQLException Если файл миграции не удалось разобрать.
+     */
+    public static Map<String, Set<TableLockMode>> requiredLocks(List<File> files, Map<String, String> placeholders)
+            throws SQLException {
+        Map<String, Set<TableLockMode>> result = new LinkedHashMap<>();
+        for (File file : files) {
+            requiredLocks(file, placeholders).forEach((table, modes) ->
+                    result.computeIfAbsent(table, name -> EnumSet.noneOf(TableLockMode.class)).addAll(modes));
+        }
+        return result;
+    }
+
+    private static Map<String, Set<TableLockMode>> requiredLocks(File file, Map<String, String> placeholders)
+            throws SQLException {
+        Path path = file.toPath().toAbsolutePath();
+        long lastModified = file.lastModified();
+        long length = file.length();
+        FileLocks cached = FILE_LOCKS.get(path);
+        if (cached != null && cached.lastModified() == lastModified && cached.length() == length
+                && cached.placeholders().equals(placeholders)) {
+            return cached.locks();
+        }
+
+        Map<String, Set<TableLockMode>> locks = new LinkedHashMap<>();
+        MigrationExecutor.forEachStatement(MigrationExecutor.prepare(file, placeholders), (statement, copyData) -> {
+            TableLockMode mode = TableLockMode.requiredBy(statement.sql());
+            for (String table : TableReferenceExtractor.extract(statement.sql())) {
+                locks.computeIfAbsent(table, name -> EnumSet.noneOf(TableLockMode.class)).add(mode);
+            }
+        });
+        FILE_LOCKS.put(path, new FileLocks(lastModified, length, new HashMap<>(placeholders), locks));
+        return locks;
+    }
+
+    /**
+     * Проверяет таблицы и применяет политику, пока блокирующих сеансов не останется.
+     *
+     * @param connection Соединение для проверки (не должно удерживать блокировок на этих таблицах).
+     * @param tables     Таблицы, которые затрагивают ожидающие миграции, и нужные на них режимы блокировок
+     *                   (см. {@link #requiredLocks(List, Map)}).
+     * @param cancellation Контроллер отмены, прерывающий ожидание, или {@code null}.
+     * @throws SQLException          Если возникает ошибка при выполнении запросов или выполнение отменено.
+     * @throws IllegalStateException Если блокирующие сеансы остались после ожидания или политика {@code abort}.
+     */
+    public void check(Connection connection, Map<String, Set<TableLockMode>> tables,
+                      MigrationCancellation cancellation) throws SQLException {
+        DatabaseDialect dialect = DatabaseDialects.get();
+        if (policy == Policy.OFF || tables.isEmpty() || dialect.selectBlockingSessions() == null) {
+            return;
+        }
+
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        while (true) {
+            List<BlockingSession> sessions = findBlockingSessions(connection, dialect, tables);
+            if (sessions.isEmpty()) {
+                log.info("Предварительная проверка: блокирующих транзакций на {} таблицах не найдено.", tables.size());
+                return;
+            }
+            for (BlockingSession session : sessions) {
+                log.warn("Таблица {} заблокирована ({}) сеансом pid={} пользователя {} ({}), состояние: {}, "
+                                + "возраст транзакции: {} мс.",
+                        session.table(), session.lockMode(), session.pid(), session.user(),
+                        session.applicationName(), session.state(), session.transactionAgeMs());
+            }
+
+            if (policy == Policy.ABORT) {
+                throw new IllegalStateException("Миграция прервана: таблицы заблокированы другими транзакциями ("
+                        + sessions.size() + " сеансов).");
+            }
+            if (policy == Policy.TERMINATE && terminateOldSessions(connection, dialect, sessions)) {
+                continue;
+            }
+            if (System.currentTimeMillis() >= deadline) {
+                throw new IllegalStateException("Блокирующие транзакции не завершились за " + timeoutMs + " мс.");
+            }
+            log.info("Ожидание завершения блокирующих транзакций...");
+            if (cancellation != null) {
+                cancellation.pause(POLL_INTERVAL_MS);
+                continue;
+            }
+            try {
+                Thread.sleep(POLL_INTERVAL_MS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Ожидание блокирующих транзакций прервано", e);
+            }
+        }
+    }
+
+    private boolean terminateOldSessions(Connection connection, DatabaseDialect dialect,
+                                         List<BlockingSession> sessions) throws SQLException {
+        boolean terminated = false;
+        for (BlockingSession session : sessions) {
+            if (session.transactionAgeMs() >= terminateAgeMs && dialect.terminateSession(connection, session.pid())) {
+                log.warn("Сеанс pid={} завершен: транзакция старше {} мс.", session.pid(), terminateAgeMs);
+                terminated = true;
+            }
+        }
+        return terminated;
+    }
+
+    private List<BlockingSession> findBlockingSessions(Connection connection, DatabaseDialect dialect,
+                                                       Map<String, Set<TableLockMode>> tables) throws SQLException {
+        List<BlockingSession> sessions = new ArrayList<>();
+        Array tableArray = connection.createArrayOf("text", tables.keySet().toArray());
+        try (PreparedStatement statement = connection.prepareStatement(dialect.selectBlockingSessions())) {
+            statement.setArray(1, tableArray);
+            statement.setLong(2, minAgeMs);
+            try (ResultSet rs = statement.executeQuery()) {
+                while (rs.next()) {
+                    if (!conflicts(tables.get(rs.getString("table_name")), rs.getString("mode"))) {
+                        continue;
+                    }
+                    sessions.add(new BlockingSession(
+                            rs.getInt("pid"),
+                            rs.getString("usename"),
+                            rs.getString("application_name"),
+                            rs.getString("state"),
+                            rs.getLong("xact_age_ms"),
+                            rs.getString("relname"),
+                            rs.getString("mode")));
+                }
+            }
+        } finally {
+            tableArray.free();
+        }
+        return sessions;
+    }
+
+    private static boolean conflicts(Set<TableLockMode> required, String heldMode) {
+        TableLockMode held = TableLockMode.fromPgName(heldMode);
+        if (held == null || required == null) {
+            return false;
+        }
+        return required.stream().anyMatch(mode -> mode.conflictsWith(held));
+    }
+}
@@ -0,0 +1,100 @@
+package migration_utils;
+
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+
+/**
+ * Параметры команды {@code info}.
+ * <p>
+ * Все фильтры передаются в SQL-запрос, а история читается страницами по ключу {@code (applied_at, id)},
+ * поэтому объем памяти и время вывода не зависят от размера истории.
+ * </p>
+ *
+ * @param limit          Максимальное количество выводимых записей или {@code null}, если ограничения нет.
+ * @param since          Выводить записи, примененные не раньше указанного момента.
+ * @param versionFrom    Нижняя граница диапазона версий (включительно).
+ * @param versionTo      Верхняя граница диапазона версий (включительно).
+ * @param afterAppliedAt Дата применения последней записи предыдущей страницы (продолжение вывода).
+ * @param afterId        Идентификатор последней записи предыдущей страницы.
+ * @param compact        Машиночитаемый вывод: одна строка на запись, поля разделены табуляцией.
+ */
+public record InfoOptions(Integer limit, Timestamp since, String versionFrom, String versionTo,
+                          Timestamp afterAppliedAt, Integer afterId, boolean compact) {
+
+    /**
+     * Параметры по умолчанию: вся история в табличном виде.
+     */
+    public static InfoOptions defaults() {
+        return new InfoOptions(null, null, null, null, null, null, false);
+    }
+
+    /**
+     * Разбирает аргументы команды {@code info}:
+     * {@code --limit N}, {@code --since DATE}, {@code --version-range FROM..TO}, {@code --after TIMESTAMP,ID}
+     * и {@code --format compact}.
+     *
+     * @param args Аргументы команды без имени самой команды.
+     * @return Параметры команды.
+     * @throws IllegalArgumentException Если аргумент не распознан или имеет неверный формат.
+     */
+    public static InfoOptions parse(String[] args) {
+        Integer limit = null;
+        Timestamp since = null;
+        String versionFrom = null;
+        String versionTo = null;
+        Timestamp afterAppliedAt = null;
+        Integer afterId = null;
+        boolean compact = false;
+
+        for (int i = 0; i < args.length; i++) {
+            String option = args[i];
+            if (i + 1 >= args.length) {
+                throw new IllegalArgumentException("Не указано значение для опции " + option);
+            }
+            String value = args[++i];
+            switch (option) {
+                case "--limit" -> limit = Integer.parseInt(value);
+                case "--since" -> since = parseTimestamp(value);
+                case "--version-range" -> {
+                    int separator = value.indexOf("..");
+                    if (separator < 0) {
+                        throw new IllegalArgumentException("Диапазон версий должен иметь формат FROM..TO: " + value);
+                    }
+                    versionFrom = separator == 0 ? null : value.substring(0, separator);
+                    versionTo = separator + 2 == value.length() ? null : value.substring(separator + 2);
+                }
+                case "--after" -> {
+                    int separator = value.lastIndexOf(',');
+                    if (separator < 0) {
+                        throw new IllegalArgumentException("Позиция должна иметь формат TIMESTAMP,ID: " + value);
+                    }
+                    afterAppliedAt = parseTimestamp(value.substring(0, separator));
+                    afterId = Integer.parseInt(value.substring(separator + 1));
+                }
+                case "--format" -> {
+                    if (!"compact".equals(value) && !"table".equals(value)) {
+                        throw new IllegalArgumentException("Неизвестный формат вывода: " + value);
+                    }
+                    compact = "compact".equals(value);
+                }
+                default -> throw new IllegalArgumentException("Неизвестная опция команды info: " + option);
+            }
+        }
+        return new InfoOptions(limit, since, versionFrom, versionTo, afterAppliedAt, afterId, compact);
+    }
+
+    private static Timestamp parseTimestamp(String value) {
+        try {
+            return Timestamp.valueOf(LocalDateTime.parse(value.replace(' ', 'T')));
+        } catch (DateTimeParseException e) {
+            try {
+                return Timestamp.valueOf(LocalDate.parse(value).atStartOfDay());
+            } catch (DateTimeParseException dateError) {
+                throw new IllegalArgumentException(
+                        "Дата должна иметь формат YYYY-MM-DD или YYYY-MM-DDTHH:MM:SS: " + value, dateError);
+            }
+        }
+    }
+}
@@ -0,0 +1,307 @@
+package migration_utils;
+
+import database.ConnectionManager;
+import database.DatabaseDialect;
+import database.DatabaseDialects;
+import lombok.extern.slf4j.Slf4j;
+import utils.PropertiesUtils;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Отмена выполнения {@code migrate}: по сигналу завершения процесса (например, Ctrl-C) или по истечении
+ * бюджета времени одной миграции ({@code migrate.migration.timeout.ms}, {@code 0} — без ограничения).
+ * <p>
+ * При отмене выполняющиеся запросы миграции прерываются через {@link Statement#cancel()}, а если это
+ * не удалось — через отмену запроса серверного процесса с отдельного соединения (см.
+ * {@link DatabaseDialect#cancelSession(Connection, int)}) — того процесса, который выполняет запрос, в том числе
+ * на соединениях параллельного построения индексов. Отмена повторяется раз в секунду, пока {@code migrate}
+ * не завершится, а между запросами проверяется через {@link #checkpoint()}. Ожидания реплик и блокирующих
+ * транзакций выполняются через {@link #pause(long)} и прерываются отменой сразу. После ошибки
+ * {@link #handleFailure(Connection, Exception)} откатывает открытую транзакцию и записывает прерванную миграцию
+ * в историю со статусом {@code FALSE}; такая запись не считается примененной и выполняется повторно.
+ * </p>
+ * <p>
+ * Обработчик завершения JVM ждет не дольше {@code migrate.cancel.grace.ms}, пока {@code migrate} откатит
+ * транзакцию и освободит блокировку миграций.
+ * </p>
+ */
+@Slf4j
+public class MigrationCancellation implements AutoCloseable {
+
+    private static final long RETRY_INTERVAL_MS = 1000;
+
+    /**
+     * Зарегистрированный запрос; снимается с регистрации при закрытии.
+     */
+    public interface Registration extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    private final long migrationTimeoutMs;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().daemon().name("migrate-watchdog").factory());
+    private final Set<Statement> statements = ConcurrentHashMap.newKeySet();
+    private final Map<Statement, Integer> backendPids = new ConcurrentHashMap<>();
+    private final AtomicBoolean cancelled = new AtomicBoolean();
+    private final CountDownLatch cancelSignal = new CountDownLatch(1);
+    private final CountDownLatch finished = new CountDownLatch(1);
+
+    private volatile String reason;
+    private volatile Integer pid;
+    private volatile File currentFile;
+    private volatile String currentType;
+    private volatile long currentStart;
+    private ScheduledFuture<?> budget;
+    private Thread shutdownHook;
+
+    /**
+     * @param migrationTimeoutMs Бюджет времени одной миграции в миллисекундах; {@code 0} — без ограничения.
+     */
+    public MigrationCancellation(long migrationTimeoutMs) {
+        this.migrationTimeoutMs = migrationTimeoutMs;
+    }
+
+    /**
+     * Создает контроллер отмены с параметрами из {@code application.properties} и регистрирует
+     * обработчик завершения JVM.
+     *
+     * @return Контроллер отмены для одного запуска {@code migrate}.
+     */
+    public static MigrationCancellation fromProperties() {
+        MigrationCancellation cancellation = new MigrationCancellation(
+                Long.parseLong(PropertiesUtils.getProperty("migrate.migration.timeout.ms", "0")));
+        cancellation.installShutdownHook(
+                Long.parseLong(PropertiesUtils.getProperty("migrate.cancel.grace.ms", "10000")));
+        return cancellation;
+    }
+
+    /**
+     * Регистрирует обработчик завершения JVM, который отменяет выполнение и ждет отката транзакции.
+     *
+     * @param graceMs Максимальное время ожидания завершения {@code migrate} в миллисекундах.
+     */
+    public void installShutdownHook(long graceMs) {
+        shutdownHook = new Thread(() -> {
+            cancel("получен сигнал завершения процесса");
+            try {
+                if (!finished.await(graceMs, TimeUnit.MILLISECONDS)) {
+                    log.error("Миграции не завершились за {} мс после отмены.", graceMs);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, "migrate-shutdown");
+        Runtime.getRuntime().addShutdownHook(shutdownHook);
+    }
+
+    /**
+     * Запоминает соединение миграции, чтобы при необходимости отменить его запрос с другого соединения.
+     *
+     * @param connection Соединение, выполняющее миграции.
+     * @throws SQLException Если не удалось получить идентификатор серверного процесса.
+     */
+    public void attach(Connection connection) throws SQLException {
+        pid = DatabaseDialects.get().backendPid(connection);
+    }
+
+    /**
+     * Отмечает начало миграции и запускает отсчет ее бюджета времени.
+     *
+     * @param file Файл миграции.
+     * @param type Тип записи истории ({@code SQL} или {@code REPEATABLE}).
+     * @throws SQLException Если выполнение уже отменено.
+     */
+    public synchronized void beginMigration(File file, String type) throws SQLException {
+        checkpoint();
+        currentFile = file;
+        currentType = type;
+        currentStart = System.currentTimeMillis();
+        if (migrationTimeoutMs > 0) {
+            budget = scheduler.schedule(() -> cancel("миграция " + file.getName() + " превысила бюджет "
+                    + migrationTimeoutMs + " мс"), migrationTimeoutMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Отмечает успешное завершение текущей миграции.
+     */
+    public synchronized void endMigration() {
+        if (budget != null) {
+            budget.cancel(false);
+            budget = null;
+        }
+        currentFile = null;
+    }
+
+    /**
+     * Регистрирует запрос, который нужно прервать при отмене.
+     *
+     * @param statement Запрос миграции.
+     * @return Регистрация, которую нужно закрыть после выполнения запроса.
+     */
+    public Registration track(Statement statement) {
+        return track(statement, null);
+    }
+
+    /**
+     * Регистрирует запрос, выполняемый на отдельном соединении, например при параллельном построении индексов.
+     *
+     * @param statement Запрос миграции.
+     * @param pid       Идентификатор серверного процесса соединения запроса или {@code null}, если он неизвестен.
+     * @return Регистрация, которую нужно закрыть после выполнения запроса.
+     */
+    public Registration track(Statement statement, Integer pid) {
+        statements.add(statement);
+        if (pid != null) {
+            backendPids.put(statement, pid);
+        }
+        return () -> {
+            statements.remove(statement);
+            backendPids.remove(statement);
+        };
+    }
+
+    /**
+     * Отменяет выполнение: прерывает выполняющиеся запросы и повторяет это, пока {@code migrate} не завершится.
+     *
+     * @param reason Причина отмены для журнала.
+     */
+    public void cancel(String reason) {
+        if (!cancelled.compareAndSet(false, true)) {
+            return;
+        }
+        this.reason = reason;
+        cancelSignal.countDown();
+        log.warn("Выполнение миграций отменяется: {}.", reason);
+        try {
+            scheduler.scheduleWithFixedDelay(this::cancelStatements, 0, RETRY_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        } catch (RuntimeException e) {
+            // Планировщик уже остановлен: migrate завершился
+            log.debug("Отмена после завершения миграций: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * @return {@code true}, если выполнение отменено.
+     */
+    public boolean isCancelled() {
+        return cancelled.get();
+    }
+
+    /**
+     * Проверяет, не отменено ли выполнение.
+     *
+     * @throws SQLException С кодом {@code 57014}, если выполнение отменено.
+     */
+    public void checkpoint() throws SQLException {
+        if (cancelled.get()) {
+            throw new SQLException("Выполнение миграций отменено: " + reason, "57014");
+        }
+    }
+
+    /**
+     * Приостанавливает выполнение на указанное время; отмена прерывает паузу сразу.
+     *
+     * @param millis Время паузы в миллисекундах.
+     * @throws SQLException С кодом {@code 57014}, если выполнение отменено до или во время паузы.
+     */
+    public void pause(long millis) throws SQLException {
+        checkpoint();
+        try {
+            cancelSignal.await(millis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Ожидание прервано", "57014", e);
+        }
+        checkpoint();
+    }
+
+    /**
+     * Обрабатывает ошибку {@code migrate}: откатывает открытую транзакцию и, если выполнение было отменено,
+     * записывает прерванную миграцию в историю со статусом {@code FALSE}. Ошибки отката и записи добавляются
+     * к исходной ошибке.
+     *
+     * @param connection Соединение, выполняющее миграции.
+     * @param error      Ошибка {@code migrate}.
+     */
+    public void handleFailure(Connection connection, Exception error) {
+        try {
+            if (!connection.getAutoCommit()) {
+                connection.rollback();
+            }
+        } catch (SQLException e) {
+            error.addSuppressed(e);
+            return;
+        }
+
+        File file = currentFile;
+        if (!cancelled.get() || file == null) {
+            return;
+        }
+        try {
+            MigrationExecutor.recordCancelled(connection, file, currentType,
+                    (int) (System.currentTimeMillis() - currentStart));
+            if (!connection.getAutoCommit()) {
+                connection.commit();
+            }
+            log.warn("Миграция {} прервана и записана в историю со статусом FALSE.", file.getName());
+        } catch (SQLException e) {
+            error.addSuppressed(e);
+        }
+    }
+
+    private void cancelStatements() {
+        for (Statement statement : statements) {
+            try {
+                statement.cancel();
+            } catch (SQLException e) {
+                log.warn("Не удалось отменить запрос: {}", e.getMessage());
+                cancelBackend(backendPids.getOrDefault(statement, pid));
+            }
+        }
+    }
+
+    private void cancelBackend(Integer backendPid) {
+        if (backendPid == null) {
+            return;
+        }
+        try (Connection connection = ConnectionManager.getConnection()) {
+            if (DatabaseDialects.get().cancelSession(connection, backendPid)) {
+                log.warn("Запрос серверного процесса pid={} отменен.", backendPid);
+            }
+        } catch (SQLException e) {
+            log.error("Не удалось отменить запрос серверного процесса pid={}: {}", backendPid, e.getMessage());
+        }
+    }
+
+    /**
+     * Останавливает отсчет бюджета, снимает обработчик завершения JVM и сообщает ему о завершении
+     * {@code migrate}. Вызывается после освобождения блокировки миграций.
+     */
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+        if (shutdownHook != null && Thread.currentThread() != shutdownHook) {
+            try {
+                Runtime.getRuntime().removeShutdownHook(shutdownHook);
+            } catch (IllegalStateException e) {
+                // JVM уже завершается: обработчик ждет этого вызова
+            }
+        }
+        finished.countDown();
+    }
+}
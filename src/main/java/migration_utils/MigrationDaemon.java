@@ -0,0 +1,226 @@
+package migration_utils;
+
+import database.ConnectionManager;
+import lombok.extern.slf4j.Slf4j;
+import utils.PropertiesUtils;
+
+import java.io.*;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Режим демона для {@link MigrationTool}.
+ * <p>
+ * Демон запускается один раз и слушает локальный Unix-сокет. Команды, переданные клиентом, выполняются
+ * в уже прогретой JVM с открытыми соединениями из пула, а вывод команды (логи и {@code System.out})
+ * передается обратно клиенту. Команды, изменяющие базу данных, выполняются строго по очереди в одном потоке,
+ * чтобы не держать лишние соединения в ожидании блокировки миграций; читающие команды выполняются сразу.
+ * </p>
+ *
+ * <p><b>Протокол:</b> клиент отправляет одну строку с командой и аргументами, после чего получает
+ * вывод команды до закрытия соединения. Команды {@code daemon} и {@code client} внутри демона
+ * не выполняются.</p>
+ */
+@Slf4j
+public class MigrationDaemon {
+
+    private static final String DEFAULT_SOCKET_PATH =
+            Path.of(System.getProperty("java.io.tmpdir"), "flywayclone.sock").toString();
+
+    /**
+     * Команды, которые захватывают блокировку миграций и потому ставятся в общую очередь.
+     */
+    private static final Set<String> LOCKING_COMMANDS = Set.of("migrate", "rollback", "rollbackToTag", "baseline", "squash");
+
+    private static final String SHUTDOWN_COMMAND = "shutdown";
+
+    /**
+     * Команды, которые запускают демон или подключаются к нему и внутри демона не выполняются.
+     */
+    private static final Set<String> NESTED_COMMANDS = Set.of("daemon", "client");
+
+    /**
+     * Поток вывода, в который пишет текущий поток выполнения команды.
+     */
+    private static final ThreadLocal<PrintStream> CLIENT_OUTPUT = new ThreadLocal<>();
+
+    private static volatile boolean running;
+
+    private static volatile Path boundPath;
+
+    private MigrationDaemon() {
+    }
+
+    /**
+     * Возвращает путь к сокету демона: из {@code daemon.socket.path} или во временной директории.
+     */
+    public static String getSocketPath() {
+        return PropertiesUtils.getProperty("daemon.socket.path", DEFAULT_SOCKET_PATH);
+    }
+
+    /**
+     * Запускает демон и блокирует текущий поток до получения команды {@code shutdown}.
+     *
+     * @param socketPath Путь к Unix-сокету.
+     */
+    public static void start(String socketPath) {
+        Path path = Path.of(socketPath);
+        int poolSize = Integer.parseInt(PropertiesUtils.getProperty("daemon.pool.size", "8"));
+
+        PrintStream originalOut = System.out;
+        System.setOut(new PrintStream(new ClientRoutingOutputStream(originalOut), true, StandardCharsets.UTF_8));
+
+        ExecutorService commandQueue = Executors.newSingleThreadExecutor();
+        try (ServerSocketChannel server = ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+            Files.deleteIfExists(path);
+            server.bind(UnixDomainSocketAddress.of(path));
+            boundPath = path;
+
+            ConnectionManager.enablePooling(poolSize);
+            // Инициализация статических полей до первой команды клиента
+            Class.forName(MigrationManager.class.getName());
+
+            running = true;
+            log.info("Демон миграций запущен. Сокет: {}", path);
+
+            while (running) {
+                SocketChannel client = server.accept();
+                Thread.ofVirtual().name("daemon-client").start(() -> handleClient(client, commandQueue));
+            }
+        } catch (IOException | ReflectiveOperationException | SQLException e) {
+            log.error("Ошибка в работе демона миграций.", e);
+        } finally {
+            running = false;
+            commandQueue.shutdown();
+            ConnectionManager.disablePooling();
+            System.setOut(originalOut);
+            try {
+                Files.deleteIfExists(path);
+            } catch (IOException e) {
+                log.warn("Не удалось удалить файл сокета {}", path);
+            }
+            log.info("Демон миграций остановлен.");
+        }
+    }
+
+    /**
+     * Передает команду запущенному демону и выводит ее результат в {@code System.out}.
+     *
+     * @param socketPath Путь к Unix-сокету демона.
+     * @param args       Команда и ее аргументы.
+     * @return {@code true}, если команда была передана демону.
+     */
+    public static boolean sendCommand(String socketPath, String[] args) {
+        try (SocketChannel channel = SocketChannel.open(StandardProtocolFamily.UNIX)) {
+            channel.connect(UnixDomainSocketAddress.of(socketPath));
+
+            OutputStream out = Channels.newOutputStream(channel);
+            out.write((String.join(" ", args) + "\n").getBytes(StandardCharsets.UTF_8));
+            out.flush();
+            channel.shutdownOutput();
+
+            Channels.newInputStream(channel).transferTo(System.out);
+            System.out.flush();
+            return true;
+        } catch (IOException e) {
+            log.error("Не удалось подключиться к демону миграций по сокету {}: {}", socketPath, e.getMessage());
+            return false;
+        }
+    }
+
+    private static void handleClient(SocketChannel client, ExecutorService commandQueue) {
+        try (client;
+             BufferedReader reader = new BufferedReader(
+                     new InputStreamReader(Channels.newInputStream(client), StandardCharsets.UTF_8));
+             PrintStream output = new PrintStream(Channels.newOutputStream(client), true, StandardCharsets.UTF_8)) {
+
+            String line = reader.readLine();
+            if (line == null || line.isBlank()) {
+                return;
+            }
+            String[] args = line.trim().split("\\s+");
+
+            if (SHUTDOWN_COMMAND.equals(args[0])) {
+                output.println("Остановка демона миграций.");
+                stop();
+                return;
+            }
+            if (NESTED_COMMANDS.contains(args[0])) {
+                output.println("Команда " + args[0] + " не выполняется внутри демона.");
+                return;
+            }
+
+            Runnable command = () -> runWithOutput(args, output);
+            if (LOCKING_COMMANDS.contains(args[0])) {
+                Future<?> result = commandQueue.submit(command);
+                result.get();
+            } else {
+                command.run();
+            }
+        } catch (Exception e) {
+            log.error("Ошибка при обработке команды клиента.", e);
+        }
+    }
+
+    private static void runWithOutput(String[] args, PrintStream output) {
+        CLIENT_OUTPUT.set(output);
+        try {
+            MigrationTool.processCommand(args);
+        } finally {
+            CLIENT_OUTPUT.remove();
+        }
+    }
+
+    private static void stop() {
+        running = false;
+        // Разблокирует accept() в основном потоке демона
+        try (SocketChannel channel = SocketChannel.open(StandardProtocolFamily.UNIX)) {
+            channel.connect(UnixDomainSocketAddress.of(boundPath));
+        } catch (IOException ignored) {
+            // Демон уже не принимает соединения
+        }
+    }
+
+    /**
+     * Поток вывода, который перенаправляет запись в поток клиента, если текущий поток выполняет
+     * команду клиента, и в исходный {@code System.out} в остальных случаях.
+     */
+    private static final class ClientRoutingOutputStream extends OutputStream {
+        private final PrintStream fallback;
+
+        private ClientRoutingOutputStream(PrintStream fallback) {
+            this.fallback = fallback;
+        }
+
+        private PrintStream target() {
+            PrintStream client = CLIENT_OUTPUT.get();
+            return client != null ? client : fallback;
+        }
+
+        @Override
+        public void write(int b) {
+            target().write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            target().write(b, off, len);
+        }
+
+        @Override
+        public void flush() {
+            target().flush();
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package migration_utils;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Директивы миграции, заданные комментариями в начале скрипта:
+ * <pre>
+ * -- transactional: false
+ * -- parallel-indexes: 4
+ * -- set: maintenance_work_mem=2GB, max_parallel_maintenance_workers=8
+ * </pre>
+ * <ul>
+ *     <li>{@code transactional} — выполнять ли миграцию в общей транзакции {@code migrate} (по умолчанию
+ *         {@code true}). Нетранзакционная миграция выполняется в режиме автофиксации после фиксации предыдущих
+ *         миграций; это нужно, например, для {@code CREATE INDEX CONCURRENTLY}.</li>
+ *     <li>{@code parallel-indexes} — сколько запросов {@code CREATE INDEX} нетранзакционной миграции
+ *         выполнять одновременно (по умолчанию 1, см. {@link ParallelIndexBuilder}).</li>
+ *     <li>{@code set} — параметры сеанса, с которыми выполняется миграция (см. {@link SessionSettings}).
+ *         Директив {@code set} может быть несколько.</li>
+ * </ul>
+ * Директивы читаются из начальных строк скрипта, состоящих из комментариев {@code --} и пустых строк;
+ * остальные комментарии вида {@code -- имя: значение} игнорируются.
+ *
+ * @param transactional   Выполнять ли миграцию в общей транзакции.
+ * @param parallelIndexes Максимальное количество одновременно создаваемых индексов.
+ * @param settings        Параметры сеанса из директив {@code set} в порядке перечисления.
+ */
+public record MigrationDirectives(boolean transactional, int parallelIndexes, Map<String, String> settings) {
+
+    public static final MigrationDirectives DEFAULT = new MigrationDirectives(true, 1, Map.of());
+
+    private static final Pattern DIRECTIVE = Pattern.compile("^--\\s*([a-z-]+)\\s*:\\s*(.*?)\\s*$");
+
+    /**
+     * Читает директивы из начала скрипта.
+     *
+     * @param sql Текст скрипта.
+     * @return Директивы миграции.
+     * @throws IllegalArgumentException Если значение директивы имеет неверный формат.
+     */
+    public static MigrationDirectives parse(String sql) {
+        try {
+            return parse(new StringReader(sql));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Читает директивы из начала файла миграции, не читая файл целиком (в том числе сжатый).
+     *
+     * @param file Файл миграции.
+     * @return Директивы миграции.
+     * @throws IllegalArgumentException Если значение директивы имеет неверный формат.
+     * @throws UncheckedIOException     Если файл не удалось прочитать.
+     */
+    public static MigrationDirectives read(File file) {
+        try (Reader reader = new InputStreamReader(MigrationFileReader.openSqlStream(file), StandardCharsets.UTF_8)) {
+            return parse(reader);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Ошибка при чтении файла миграции: " + file.getName(), e);
+        }
+    }
+
+    private static MigrationDirectives parse(Reader source) throws IOException {
+        boolean transactional = DEFAULT.transactional();
+        int parallelIndexes = DEFAULT.parallelIndexes();
+        Map<String, String> settings = new LinkedHashMap<>();
+
+        BufferedReader reader = new BufferedReader(source);
+        String line;
+        while ((line = reader.readLine()) != null) {
+            line = line.strip();
+            if (line.isEmpty()) {
+                continue;
+            }
+            if (!line.startsWith("--")) {
+                break;
+            }
+            Matcher matcher = DIRECTIVE.matcher(line);
+            if (!matcher.matches()) {
+                continue;
+            }
+            String value = matcher.group(2);
+            switch (matcher.group(1)) {
+                case "transactional" -> transactional = parseBoolean(value);
+                case "parallel-indexes" -> parallelIndexes = parsePositive(value);
+                case "set" -> settings.putAll(SessionSettings.parse(value));
+                default -> {
+                }
+            }
+        }
+
+        if (transactional && parallelIndexes > 1) {
+            throw new IllegalArgumentException("Директива parallel-indexes допустима только вместе с "
+                    + "-- transactional: false");
+        }
+        return new MigrationDirectives(transactional, parallelIndexes, Collections.unmodifiableMap(settings));
+    }
+
+    private static boolean parseBoolean(String value) {
+        if (!"true".equalsIgnoreCase(value) && !"false".equalsIgnoreCase(value)) {
+            throw new IllegalArgumentException("Директива transactional должна быть true или false: " + value);
+        }
+        return Boolean.parseBoolean(value);
+    }
+
+    private static int parsePositive(String value) {
+        try {
+            int result = Integer.parseInt(value);
+            if (result > 0) {
+                return result;
+            }
+        } catch (NumberFormatException ignored) {
+            // Сообщение об ошибке ниже
+        }
+        throw new IllegalArgumentException("Директива parallel-indexes должна быть положительным числом: " + value);
+    }
+}
@@ -1,8 +1,21 @@
 package migration_utils;
 
 
+import database.DatabaseDialect;
+import database.DatabaseDialects;
+import monitoring.HistoryWriteEvent;
+import monitoring.MigrationEvent;
+import monitoring.StatementEvent;
+import monitoring.StatementProgressMonitor;
+
 import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
 import java.sql.*;
+import java.util.HashMap;
+import java.util.Map;
 
 /**
  * Класс для выполнения миграций в базе данных.
@@ -10,21 +23,13 @@ import java.sql.*;
  */
 
 public class MigrationExecutor {
-    private static final String EXECUTE_NEW_MIGRATION = """
-                    INSERT INTO migration_history (version, description, status, reverted, applied_at)
-                    VALUES (?, ?, ?, FALSE, CURRENT_TIMESTAMP)
-                    ON CONFLICT (version) DO UPDATE SET
-                        description = EXCLUDED.description,
-                        status = EXCLUDED.status,
-                        reverted = FALSE,
-                        applied_at = CASE WHEN migration_history.reverted = TRUE THEN CURRENT_TIMESTAMP ELSE migration_history.applied_at END;
-                """;
-
     /**
      * Выполняет миграцию:
      * <ol>
      *   <li>Выполняет SQL-запрос из файла миграции.
-     *   <li>Добавляет запись о выполненной миграции в таблицу {@code migration_history}.
+     *   <li>Добавляет запись о выполненной миграции в таблицу {@code migration_history}
+     *       вместе с контрольной суммой скрипта, временем выполнения и отпечатком схемы
+     *       (см. {@link SchemaFingerprint}).
      * <ol/>
      *
      * @param connection Соединение с базой данных, используемое для выполнения SQL-запросов.
@@ -32,45 +37,413 @@ public class MigrationExecutor {
      * @throws SQLException Если возникает ошибка при выполнении SQL-запросов.
      */
     public static void execute(Connection connection, File file) throws SQLException {
-        String sql = MigrationFileReader.readSqlFromFile(file);
-        String version = MigrationFileReader.getVersionFromFile(file);
-        String description = "Migration " + file.getName();
+        execute(connection, file, MigrationTemplates.defaultPlaceholders());
+    }
+
+    /**
+     * Выполняет миграцию с указанными значениями плейсхолдеров {@code ${имя}}.
+     * Скрипт разбирается один раз и кэшируется, поэтому применение одной миграции к нескольким схемам
+     * не требует повторного чтения и разбора файла.
+     *
+     * @param connection   Соединение с базой данных.
+     * @param file         Файл миграции.
+     * @param placeholders Значения плейсхолдеров. Плейсхолдер {@code ${schema}} по умолчанию равен
+     *                     текущей схеме соединения.
+     * @throws SQLException Если возникает ошибка при выполнении SQL-запросов.
+     */
+    public static void execute(Connection connection, File file, Map<String, String> placeholders) throws SQLException {
+        execute(connection, file, MigrationFileReader.getVersionFromFile(file),
+                migrationDescription(file), MigrationPlan.TYPE_SQL, placeholders, null);
+    }
+
+    /**
+     * Выполняет повторяемую миграцию и обновляет ее запись в истории (ключ — имя файла без расширения).
+     *
+     * @param connection Соединение с базой данных.
+     * @param file       Файл повторяемой миграции ({@code R__<описание>.sql}).
+     * @throws SQLException Если возникает ошибка при выполнении SQL-запросов.
+     */
+    public static void executeRepeatable(Connection connection, File file) throws SQLException {
+        executeRepeatable(connection, file, null);
+    }
+
+    /**
+     * Выполняет повторяемую миграцию с возможностью отмены (см. {@link MigrationCancellation}).
+     *
+     * @param connection   Соединение с базой данных.
+     * @param file         Файл повторяемой миграции.
+     * @param cancellation Контроллер отмены или {@code null}.
+     * @throws SQLException Если возникает ошибка при выполнении SQL-запросов или выполнение отменено.
+     */
+    public static void executeRepeatable(Connection connection, File file, MigrationCancellation cancellation)
+            throws SQLException {
+        execute(connection, file, MigrationFileReader.getRepeatableKey(file),
+                repeatableDescription(file), MigrationPlan.TYPE_REPEATABLE,
+                MigrationTemplates.defaultPlaceholders(), cancellation);
+    }
+
+    /**
+     * Выполняет сжатый базовый скрипт, созданный командой {@code squash}, и записывает его в историю
+     * как базовую версию. Миграции до этой версии включительно далее считаются примененными.
+     *
+     * @param connection Соединение с базой данных.
+     * @param file       Файл сжатого базового скрипта ({@code B<версия>__<описание>.sql}).
+     * @throws SQLException Если возникает ошибка при выполнении SQL-запросов.
+     */
+    public static void executeSquashedBaseline(Connection connection, File file) throws SQLException {
+        execute(connection, file, MigrationFileReader.getVersionFromFile(file),
+                "Squashed baseline " + file.getName(), MigrationPlan.TYPE_BASELINE,
+                MigrationTemplates.defaultPlaceholders(), null);
+    }
+
+    /**
+     * Выполняет подготовленную миграцию (см. {@link MigrationPrefetcher}).
+     *
+     * @param connection Соединение с базой данных.
+     * @param migration  Подготовленная миграция.
+     * @throws SQLException Если возникает ошибка при выполнении SQL-запросов.
+     */
+    public static void execute(Connection connection, PreparedMigration migration) throws SQLException {
+        execute(connection, migration, null, null);
+    }
+
+    /**
+     * Выполняет подготовленную миграцию, приостанавливаясь внутри нее при отставании реплик.
+     *
+     * @param connection   Соединение с базой данных.
+     * @param migration    Подготовленная миграция.
+     * @param throttle     Проверка отставания реплик или {@code null}.
+     * @param cancellation Контроллер отмены (см. {@link MigrationCancellation}) или {@code null}.
+     * @throws SQLException          Если возникает ошибка при выполнении SQL-запросов или выполнение отменено.
+     * @throws IllegalStateException Если реплики не догнали основной сервер за допустимое время ожидания.
+     */
+    public static void execute(Connection connection, PreparedMigration migration, ReplicationLagThrottle throttle,
+                               MigrationCancellation cancellation) throws SQLException {
+        File file = migration.file();
+        execute(connection, migration, MigrationFileReader.getVersionFromFile(file),
+                migrationDescription(file), MigrationPlan.TYPE_SQL, throttle, cancellation);
+    }
+
+    /**
+     * Читает, разбирает и подставляет плейсхолдеры в скрипт миграции без обращения к базе данных.
+     * Сжатые миграции не читаются заранее, а выполняются потоково.
+     *
+     * @param file         Файл миграции.
+     * @param placeholders Значения плейсхолдеров.
+     * @return Подготовленная миграция.
+     * @throws IllegalArgumentException Если для плейсхолдера не задано значение или директива миграции неверна.
+     */
+    public static PreparedMigration prepare(File file, Map<String, String> placeholders) {
+        if (MigrationFileReader.isCompressed(file)) {
+            return PreparedMigration.streamed(file, placeholders, MigrationDirectives.read(file));
+        }
+        MigrationTemplates.CompiledScript script = MigrationTemplates.compile(file);
+        String sql = MigrationTemplates.render(file, script, placeholders);
+        return new PreparedMigration(file, script.checksum(), SqlStatementSplitter.split(sql), placeholders,
+                MigrationDirectives.parse(sql));
+    }
+
+    /**
+     * Дополняет значения плейсхолдеров встроенными: {@code ${schema}} по умолчанию равен текущей схеме соединения.
+     *
+     * @param connection   Соединение с базой данных.
+     * @param placeholders Заданные значения плейсхолдеров.
+     * @return Значения плейсхолдеров, готовые для {@link #prepare(File, Map)}.
+     * @throws SQLException Если не удалось получить текущую схему.
+     */
+    public static Map<String, String> withBuiltInPlaceholders(Connection connection,
+                                                              Map<String, String> placeholders) throws SQLException {
+        if (placeholders.containsKey("schema")) {
+            return placeholders;
+        }
+        Map<String, String> result = new HashMap<>(placeholders);
+        result.put("schema", connection.getSchema());
+        return result;
+    }
+
+    private static void execute(Connection connection, File file, String version, String description,
+                                String type, Map<String, String> placeholders,
+                                MigrationCancellation cancellation) throws SQLException {
+        boolean usesSchema = MigrationFileReader.isCompressed(file)
+                || MigrationTemplates.compile(file).template().getNames().contains("schema");
+        Map<String, String> values = usesSchema ? withBuiltInPlaceholders(connection, placeholders) : placeholders;
+        execute(connection, prepare(file, values), version, description, type, null, cancellation);
+    }
 
-        // Выполнение SQL-запроса миграции
-        executeSqlStatement(connection, sql);
+    /**
+     * Выполняет миграцию и записывает ее в историю. Нетранзакционная миграция (директива
+     * {@code -- transactional: false}) выполняется в режиме автофиксации: предыдущие изменения соединения
+     * фиксируются до нее, а запись в историю фиксируется сразу после ее успешного выполнения.
+     * Параметры сеанса миграции (см. {@link SessionSettings}) устанавливаются перед первым запросом,
+     * записываются в историю и восстанавливаются после миграции.
+     */
+    private static void execute(Connection connection, PreparedMigration migration, String version,
+                                String description, String type, ReplicationLagThrottle throttle,
+                                MigrationCancellation cancellation) throws SQLException {
+        MigrationEvent event = new MigrationEvent();
+        event.begin();
+
+        boolean switchAutoCommit = !migration.directives().transactional() && !connection.getAutoCommit();
+        if (switchAutoCommit) {
+            connection.commit();
+            connection.setAutoCommit(true);
+        }
+        int[] statements = new int[1];
+        SessionSettings.Applied settings = null;
+        try {
+            settings = SessionSettings.apply(connection,
+                    SessionSettings.withDefaults(migration.directives().settings()), !connection.getAutoCommit());
 
-        // Запись миграции в историю
-        recordMigration(connection, version, description, true);
+            // Выполнение SQL-запросов миграции
+            long startTime = System.currentTimeMillis();
+            String checksum = executeSqlStatements(connection, version, migration, settings.settings(), throttle,
+                    cancellation, statements);
+            int executionTime = (int) (System.currentTimeMillis() - startTime);
+
+            // Запись миграции в историю
+            recordMigration(connection, version, description, true, checksum, executionTime, type,
+                    settings.describe());
+            settings.restore(connection);
+        } catch (SQLException | RuntimeException e) {
+            // В транзакции параметры вернет откат, в режиме автофиксации их нужно восстановить
+            if (settings != null && connection.getAutoCommit()) {
+                try {
+                    settings.restore(connection);
+                } catch (SQLException restoreError) {
+                    e.addSuppressed(restoreError);
+                }
+            }
+            throw e;
+        } finally {
+            if (switchAutoCommit) {
+                connection.setAutoCommit(false);
+            }
+        }
+
+        event.end();
+        if (event.shouldCommit()) {
+            event.version = version;
+            event.type = type;
+            event.file = migration.file().getName();
+            event.statements = statements[0];
+            event.commit();
+        }
     }
 
     /**
-     * Выполняет SQL-запрос.
+     * Добавляет синтетическую базовую запись в таблицу {@code migration_history}.
+     * Сами скрипты миграций при этом не выполняются.
      *
      * @param connection Соединение с базой данных.
-     * @param sql        SQL-запрос для выполнения.
+     * @param version    Базовая версия.
+     * @param checksum   Контрольная сумма файлов миграций, покрытых базовой версией.
      * @throws SQLException Если возникает ошибка при выполнении запроса.
      */
-    private static void executeSqlStatement(Connection connection, String sql) throws SQLException {
-        try (PreparedStatement statement = connection.prepareStatement(sql)) {
-            statement.executeUpdate();
+    public static void recordBaseline(Connection connection, String version, String checksum) throws SQLException {
+        recordMigration(connection, version, "<< Baseline >>", true, checksum, 0, MigrationPlan.TYPE_BASELINE, null);
+    }
+
+    /**
+     * Действие над запросом миграции при переборе {@link #forEachStatement(PreparedMigration, StatementAction)}.
+     */
+    @FunctionalInterface
+    public interface StatementAction {
+
+        /**
+         * @param statement Запрос с подставленными плейсхолдерами.
+         * @param copyData  Данные запроса {@code COPY ... FROM STDIN} или {@code null} для остальных запросов.
+         *                  Непрочитанные данные пропускаются.
+         * @throws SQLException Если возникает ошибка при выполнении запроса.
+         */
+        void accept(SqlStatementSplitter.SqlStatement statement, Reader copyData) throws SQLException;
+    }
+
+    /**
+     * Перебирает запросы подготовленной миграции. Запросы сжатой миграции читаются из файла потоково,
+     * а ее контрольная сумма вычисляется по ходу чтения.
+     *
+     * @param migration Подготовленная миграция.
+     * @param action    Действие над каждым запросом.
+     * @return Контрольная сумма исходного текста скрипта.
+     * @throws SQLException         Если действие завершилось ошибкой.
+     * @throws UncheckedIOException Если файл сжатой миграции не удалось прочитать.
+     */
+    public static String forEachStatement(PreparedMigration migration, StatementAction action) throws SQLException {
+        if (!migration.isStreamed()) {
+            for (SqlStatementSplitter.SqlStatement statement : migration.statements()) {
+                action.accept(statement, statement.copyData() != null ? new StringReader(statement.copyData()) : null);
+            }
+            return migration.checksum();
+        }
+
+        File file = migration.file();
+        try (MigrationFileReader.ChecksumReader reader = MigrationFileReader.openChecksumReader(file)) {
+            SqlStatementSplitter splitter = new SqlStatementSplitter(reader);
+            while (splitter.hasNext()) {
+                SqlStatementSplitter.SqlStatement statement = splitter.next();
+                String sql = MigrationTemplates.render(file, statement.sql(), migration.placeholders());
+                action.accept(new SqlStatementSplitter.SqlStatement(sql, statement.line()),
+                        statement.isCopyFromStdin() ? splitter.openCopyData() : null);
+            }
+            return reader.checksum();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Ошибка при чтении файла миграции: " + file.getName(), e);
         }
     }
 
+    /**
+     * Выполняет SQL-скрипт миграции по одному запросу.
+     * Ход выполнения долгих запросов периодически выводится в журнал (см. {@link StatementProgressMonitor}).
+     * Данные {@code COPY ... FROM STDIN} передаются серверу потоком.
+     *
+     * @param connection Соединение с базой данных.
+     * @param version    Версия миграции.
+     * @param migration  Подготовленная миграция.
+     * @param settings   Параметры сеанса миграции для соединений параллельного построения индексов.
+     * @param throttle   Проверка отставания реплик после изменивших строки запросов или {@code null}.
+     * @param cancellation Контроллер отмены, прерывающий выполняющиеся запросы, или {@code null}.
+     * @param count      Счетчик выполненных запросов (первый элемент массива).
+     * @return Контрольная сумма скрипта.
+     * @throws SQLException Если возникает ошибка при выполнении запроса.
+     */
+    private static String executeSqlStatements(Connection connection, String version, PreparedMigration migration,
+                                               Map<String, String> settings, ReplicationLagThrottle throttle,
+                                               MigrationCancellation cancellation, int[] count) throws SQLException {
+        DatabaseDialect dialect = DatabaseDialects.get();
+        Integer pid = StatementProgressMonitor.isEnabled() ? dialect.backendPid(connection) : null;
+        int parallelIndexes = migration.directives().parallelIndexes() > 1
+                ? ParallelIndexBuilder.parallelism(migration.directives().parallelIndexes(), version) : 1;
+        try (Statement statement = connection.createStatement();
+             MigrationCancellation.Registration ignored = cancellation != null ? cancellation.track(statement) : null;
+             ParallelIndexBuilder indexBuilder = parallelIndexes > 1
+                     ? new ParallelIndexBuilder(dialect, version, parallelIndexes, settings, cancellation) : null) {
+            try {
+                String checksum = forEachStatement(migration, (sqlStatement, copyData) -> {
+                    if (cancellation != null) {
+                        cancellation.checkpoint();
+                    }
+                    if (indexBuilder != null) {
+                        ParallelIndexBuilder.IndexBuild build = ParallelIndexBuilder.parse(sqlStatement);
+                        if (build != null) {
+                            indexBuilder.submit(build);
+                            count[0]++;
+                            return;
+                        }
+                        indexBuilder.await(connection);
+                    }
+                    long rows = executeStatement(connection, statement, dialect, pid, version, sqlStatement, copyData);
+                    count[0]++;
+                    if (throttle != null) {
+                        throttle.afterStatement(connection, rows);
+                    }
+                });
+                if (indexBuilder != null) {
+                    indexBuilder.verify(connection);
+                }
+                return checksum;
+            } catch (SQLException | RuntimeException e) {
+                if (indexBuilder != null) {
+                    indexBuilder.abort(connection, e);
+                }
+                throw e;
+            }
+        }
+    }
+
+    private static long executeStatement(Connection connection, Statement statement, DatabaseDialect dialect,
+                                         Integer pid, String version, SqlStatementSplitter.SqlStatement sqlStatement,
+                                         Reader copyData) throws SQLException {
+        StatementEvent event = new StatementEvent();
+        event.begin();
+
+        long rowCount;
+        try (StatementProgressMonitor ignored = StatementProgressMonitor.start(dialect, pid,
+                "миграция " + version + ", строка " + sqlStatement.line())) {
+            if (copyData != null) {
+                rowCount = dialect.copyIn(connection, sqlStatement.sql(), copyData);
+            } else {
+                statement.execute(sqlStatement.sql());
+                rowCount = Math.max(statement.getUpdateCount(), 0);
+            }
+        }
+
+        event.end();
+        if (event.shouldCommit()) {
+            event.version = version;
+            event.line = sqlStatement.line();
+            event.sqlHash = Integer.toHexString(sqlStatement.sql().hashCode());
+            event.rowCount = rowCount;
+            event.commit();
+        }
+        return rowCount;
+    }
+
+    /**
+     * Записывает прерванную миграцию в историю со статусом {@code FALSE}: такая запись не считается
+     * примененной, и миграция будет выполнена при следующем {@code migrate}.
+     *
+     * @param connection    Соединение с базой данных.
+     * @param file          Файл миграции.
+     * @param type          Тип записи ({@code SQL} или {@code REPEATABLE}).
+     * @param executionTime Время выполнения до отмены в миллисекундах.
+     * @throws SQLException Если возникает ошибка при выполнении запроса.
+     */
+    public static void recordCancelled(Connection connection, File file, String type, int executionTime)
+            throws SQLException {
+        boolean repeatable = MigrationPlan.TYPE_REPEATABLE.equals(type);
+        recordMigration(connection,
+                repeatable ? MigrationFileReader.getRepeatableKey(file) : MigrationFileReader.getVersionFromFile(file),
+                repeatable ? repeatableDescription(file) : migrationDescription(file),
+                false, null, executionTime, type, null);
+    }
+
+    private static String migrationDescription(File file) {
+        return "Migration " + file.getName();
+    }
+
+    private static String repeatableDescription(File file) {
+        return "Repeatable " + file.getName();
+    }
+
     /**
      * Добавляет запись о выполненной миграции в таблицу {@code migration_history}.
      *
      * @param connection Соединение с базой данных.
      * @param version    Версия миграции.
      * @param description Описание миграции.
-     * @param status     Статус миграции (true — выполнена успешно).
+     * @param status     Статус миграции (true — выполнена успешно, false — прервана).
+     * @param checksum   Контрольная сумма SQL-скрипта миграции.
+     * @param executionTime Время выполнения миграции в миллисекундах.
+     * @param type       Тип записи ({@code SQL} или {@code BASELINE}).
+     * @param settings   Параметры сеанса, с которыми выполнялась миграция, или {@code null}.
      * @throws SQLException Если возникает ошибка при выполнении запроса.
      */
-    private static void recordMigration(Connection connection, String version, String description, boolean status) throws SQLException {
-        try (PreparedStatement statement = connection.prepareStatement(EXECUTE_NEW_MIGRATION)) {
+    private static void recordMigration(Connection connection, String version, String description, boolean status,
+                                        String checksum, int executionTime, String type, String settings)
+            throws SQLException {
+        // Отпечаток схемы после миграции для команды drift
+        SchemaFingerprint fingerprint = status && SchemaFingerprint.isEnabled()
+                ? SchemaFingerprint.capture(connection) : null;
+
+        HistoryWriteEvent event = new HistoryWriteEvent();
+        event.begin();
+        try (PreparedStatement statement = connection.prepareStatement(DatabaseDialects.get().upsertMigration())) {
             statement.setString(1, version);
             statement.setString(2, description);
             statement.setBoolean(3, status);
+            statement.setString(4, checksum);
+            statement.setInt(5, executionTime);
+            statement.setString(6, type);
+            statement.setString(7, fingerprint != null ? fingerprint.digest() : null);
+            statement.setString(8, fingerprint != null ? fingerprint.encodeObjects() : null);
+            statement.setString(9, settings);
             statement.executeUpdate();
         }
+        event.end();
+        if (event.shouldCommit()) {
+            event.version = version;
+            event.type = type;
+            event.commit();
+        }
     }
 }
@@ -4,12 +4,19 @@ import lombok.extern.slf4j.Slf4j;
 
 import java.io.*;
 import java.net.URISyntaxException;
+import java.math.BigInteger;
 import java.net.URL;
 import java.nio.charset.StandardCharsets;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Comparator;
+import java.util.HexFormat;
 import java.util.List;
 import java.util.Objects;
+import java.util.zip.GZIPInputStream;
 
 /**
  * Класс, реализующий методы для работы с миграционными файлами:
@@ -25,10 +32,24 @@ import java.util.Objects;
  *     <li><b><описание></b> — произвольное описание миграции.</li>
  * </ul>
  * </p>
+ * <p>
+ * Миграции с большим объемом данных можно хранить сжатыми: "V<номер версии>__<описание>.sql.gz"
+ * (gzip) или ".sql.zst" (zstd, требует библиотеку {@code com.github.luben:zstd-jni} в classpath).
+ * Сжатые файлы распаковываются потоково и никогда не читаются в память целиком, а их контрольная сумма
+ * вычисляется по распакованному содержимому и совпадает с контрольной суммой несжатого файла.
+ * </p>
  */
 
 public class MigrationFileReader {
 
+    /**
+     * Расширение файла миграции: {@code .sql}, {@code .sql.gz} или {@code .sql.zst}.
+     */
+    private static final String SQL_EXTENSION = "\\.sql(?:\\.gz|\\.zst)?";
+
+    private static final String ZSTD_INPUT_STREAM = "com.github.luben.zstd.ZstdInputStream";
+    private static final int BUFFER_SIZE = 64 * 1024;
+
     /**
      * Находит и возвращает список файлов миграций в указанной директории.
      * Файлы должны соответствовать формату "V<номер версии>__<описание>.sql".
@@ -40,25 +61,93 @@ public class MigrationFileReader {
      */
 
     public static List<File> findMigrationFiles(String directoryPath) {
+        return findFiles(directoryPath, "V\\d+__.*" + SQL_EXTENSION);
+    }
+
+    /**
+     * Находит сжатые базовые скрипты, созданные командой {@code squash}.
+     * Файлы должны соответствовать формату "B<номер версии>__<описание>.sql".
+     *
+     * @param directoryPath Путь к директории, содержащей файлы миграций.
+     * @return Список базовых скриптов, отсортированных по версии.
+     */
+
+    public static List<File> findSquashedBaselineFiles(String directoryPath) {
+        return findFiles(directoryPath, "B\\d+__.*" + SQL_EXTENSION);
+    }
+
+    /**
+     * Находит повторяемые миграции в указанной директории.
+     * Файлы должны соответствовать формату "R__<описание>.sql" и возвращаются отсортированными по имени.
+     *
+     * @param directoryPath Путь к директории, содержащей файлы миграций.
+     * @return Список повторяемых миграций.
+     */
+
+    public static List<File> findRepeatableMigrationFiles(String directoryPath) {
+        return findFiles(directoryPath, "R__.*" + SQL_EXTENSION).stream()
+                .sorted(Comparator.comparing(File::getName))
+                .toList();
+    }
+
+    private static List<File> findFiles(String directoryPath, String fileNamePattern) {
+        File directory = resolveDirectory(directoryPath);
+
+        try {
+            return Arrays.stream(Objects.requireNonNull(directory.listFiles()))
+                    .filter(file -> file.getName().matches(fileNamePattern))
+                    .sorted(Comparator.comparing(MigrationFileReader::getVersionFromFile, MigrationFileReader::compareVersions))
+                    .toList();
+        } catch (NullPointerException e) {
+            throw new IllegalArgumentException("Ошибка при доступе к директории миграций: " + directoryPath, e);
+        }
+    }
+
+    /**
+     * Определяет каталог миграций. Абсолютный путь используется как каталог файловой системы,
+     * относительный ищется среди ресурсов classpath. Если ресурс с таким именем найден в нескольких местах
+     * (например, одноименный пакет тестов), выбирается каталог, содержащий SQL-файлы.
+     */
+    private static File resolveDirectory(String directoryPath) {
+        File path = new File(directoryPath);
+        if (path.isAbsolute()) {
+            if (!path.isDirectory()) {
+                throw new IllegalArgumentException("Каталог миграций не найден: " + directoryPath);
+            }
+            return path;
+        }
+
         try {
             ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
-            URL resourceUrl = classLoader.getResource(directoryPath);
+            List<URL> resourceUrls = Collections.list(classLoader.getResources(directoryPath));
 
-            if (resourceUrl == null) {
+            if (resourceUrls.isEmpty()) {
                 throw new IllegalArgumentException("Ресурс не найден: " + directoryPath);
             }
 
-            File directory = new File(resourceUrl.toURI());
+            File firstDirectory = null;
+            for (URL resourceUrl : resourceUrls) {
+                if (!"file".equals(resourceUrl.getProtocol())) {
+                    continue;
+                }
+                File directory = new File(resourceUrl.toURI());
+                if (!directory.isDirectory()) {
+                    continue;
+                }
+                if (firstDirectory == null) {
+                    firstDirectory = directory;
+                }
+                File[] sqlFiles = directory.listFiles((dir, name) -> name.contains(".sql"));
+                if (sqlFiles != null && sqlFiles.length > 0) {
+                    return directory;
+                }
+            }
 
-            if (!directory.exists() || !directory.isDirectory()) {
+            if (firstDirectory == null) {
                 throw new IllegalArgumentException("Каталог миграций не найден: " + directoryPath);
             }
-
-            return Arrays.stream(Objects.requireNonNull(directory.listFiles()))
-                    .filter(file -> file.getName().matches("V\\d+__.*\\.sql"))
-                    .sorted(Comparator.comparing(MigrationFileReader::getVersionFromFile))
-                    .toList();
-        } catch (URISyntaxException | NullPointerException e) {
+            return firstDirectory;
+        } catch (URISyntaxException | IOException e) {
             throw new IllegalArgumentException("Ошибка при доступе к директории миграций: " + directoryPath, e);
         }
     }
@@ -76,6 +165,108 @@ public class MigrationFileReader {
         return migrationFile.getName().split("__")[0].substring(1);
     }
 
+    /**
+     * Возвращает ключ повторяемой миграции, под которым она хранится в истории:
+     * имя файла без расширения, например "R__create_views".
+     *
+     * @param migrationFile Файл повторяемой миграции.
+     * @return Ключ повторяемой миграции.
+     */
+
+    public static String getRepeatableKey(File migrationFile) {
+        return migrationFile.getName().replaceFirst(SQL_EXTENSION + "$", "");
+    }
+
+    /**
+     * @param migrationFile Файл миграции.
+     * @return {@code true}, если файл сжат ({@code .sql.gz} или {@code .sql.zst}) и читается потоково.
+     */
+
+    public static boolean isCompressed(File migrationFile) {
+        String name = migrationFile.getName();
+        return name.endsWith(".sql.gz") || name.endsWith(".sql.zst");
+    }
+
+    /**
+     * Открывает поток распакованного содержимого файла миграции.
+     * Несжатые файлы открываются как есть.
+     *
+     * @param migrationFile Файл миграции.
+     * @return Буферизованный поток байтов SQL-скрипта.
+     * @throws IOException Если файл не удалось открыть.
+     */
+
+    public static InputStream openSqlStream(File migrationFile) throws IOException {
+        InputStream input = new BufferedInputStream(new FileInputStream(migrationFile), BUFFER_SIZE);
+        String name = migrationFile.getName();
+        try {
+            if (name.endsWith(".gz")) {
+                return new BufferedInputStream(new GZIPInputStream(input, BUFFER_SIZE), BUFFER_SIZE);
+            }
+            if (name.endsWith(".zst")) {
+                return new BufferedInputStream(openZstdStream(input), BUFFER_SIZE);
+            }
+            return input;
+        } catch (IOException | RuntimeException e) {
+            input.close();
+            throw e;
+        }
+    }
+
+    private static InputStream openZstdStream(InputStream input) throws IOException {
+        try {
+            return (InputStream) Class.forName(ZSTD_INPUT_STREAM)
+                    .getConstructor(InputStream.class)
+                    .newInstance(input);
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException("Для чтения миграций .sql.zst добавьте в classpath библиотеку "
+                    + "com.github.luben:zstd-jni", e);
+        } catch (ReflectiveOperationException e) {
+            throw new IOException("Не удалось открыть поток zstd", e);
+        }
+    }
+
+    /**
+     * Открывает распакованный SQL-скрипт для потокового чтения с вычислением контрольной суммы
+     * по мере чтения.
+     *
+     * @param migrationFile Файл миграции.
+     * @return Поток символов SQL-скрипта.
+     * @throws IOException Если файл не удалось открыть.
+     */
+
+    public static ChecksumReader openChecksumReader(File migrationFile) throws IOException {
+        return new ChecksumReader(openSqlStream(migrationFile));
+    }
+
+    /**
+     * Сравнивает версии миграций по числовым сегментам, разделенным точкой,
+     * чтобы, например, версия "10" считалась больше версии "9".
+     *
+     * @param first  Первая версия.
+     * @param second Вторая версия.
+     * @return Отрицательное число, ноль или положительное число, как в {@link Comparator#compare(Object, Object)}.
+     */
+
+    public static int compareVersions(String first, String second) {
+        String[] firstParts = first.split("\\.");
+        String[] secondParts = second.split("\\.");
+        for (int i = 0; i < Math.max(firstParts.length, secondParts.length); i++) {
+            String a = i < firstParts.length ? firstParts[i] : "0";
+            String b = i < secondParts.length ? secondParts[i] : "0";
+            int result;
+            try {
+                result = new BigInteger(a).compareTo(new BigInteger(b));
+            } catch (NumberFormatException e) {
+                result = a.compareTo(b);
+            }
+            if (result != 0) {
+                return result;
+            }
+        }
+        return 0;
+    }
+
     /**
      * Читает SQL-скрипт из файла миграции и возвращает его в виде строки.
      *
@@ -86,10 +277,8 @@ public class MigrationFileReader {
     public static String readSqlFromFile(File migrationFile) {
         StringBuilder sqlBuilder = new StringBuilder();
 
-        try (FileInputStream fis = new FileInputStream(migrationFile)) {
-            byte[] data = new byte[(int) migrationFile.length()];
-            fis.read(data);
-            sqlBuilder.append(new String(data, StandardCharsets.UTF_8));
+        try (InputStream input = openSqlStream(migrationFile)) {
+            sqlBuilder.append(new String(input.readAllBytes(), StandardCharsets.UTF_8));
         } catch (IOException e) {
             System.err.println("Ошибка при чтении файла миграции: " + migrationFile.getName());
             e.printStackTrace();
@@ -98,4 +287,77 @@ public class MigrationFileReader {
         return sqlBuilder.toString();
     }
 
+    /**
+     * Вычисляет контрольную сумму SQL-скрипта миграции (SHA-256 в шестнадцатеричном виде).
+     *
+     * @param sql Содержимое миграции.
+     * @return Контрольная сумма из 64 символов.
+     */
+
+    public static String calculateChecksum(String sql) {
+        return HexFormat.of().formatHex(newDigest().digest(sql.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Вычисляет контрольную сумму распакованного содержимого файла миграции, не читая его в память целиком.
+     * Для несжатых файлов в кодировке UTF-8 результат совпадает с {@link #calculateChecksum(String)}.
+     *
+     * @param migrationFile Файл миграции.
+     * @return Контрольная сумма из 64 символов.
+     * @throws UncheckedIOException Если файл не удалось прочитать.
+     */
+
+    public static String calculateChecksum(File migrationFile) {
+        MessageDigest digest = newDigest();
+        try (InputStream input = new DigestInputStream(openSqlStream(migrationFile), digest)) {
+            input.transferTo(OutputStream.nullOutputStream());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Ошибка при чтении файла миграции: " + migrationFile.getName(), e);
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("Алгоритм SHA-256 недоступен", e);
+        }
+    }
+
+    /**
+     * Поток символов SQL-скрипта в UTF-8, вычисляющий контрольную сумму прочитанных байтов.
+     */
+    public static final class ChecksumReader extends InputStreamReader {
+
+        private final InputStream input;
+        private final MessageDigest digest;
+
+        private ChecksumReader(InputStream input) {
+            this(input, newDigest());
+        }
+
+        private ChecksumReader(InputStream input, MessageDigest digest) {
+            this(new DigestInputStream(input, digest), digest);
+        }
+
+        private ChecksumReader(DigestInputStream input, MessageDigest digest) {
+            super(input, StandardCharsets.UTF_8);
+            this.input = input;
+            this.digest = digest;
+        }
+
+        /**
+         * Дочитывает скрипт до конца и возвращает его контрольную сумму.
+         *
+         * @return Контрольная сумма из 64 символов, как у {@link #calculateChecksum(File)}.
+         * @throws IOException Если файл не удалось дочитать.
+         */
+        public String checksum() throws IOException {
+            // Символы, уже буферизованные декодером, учтены в дайджесте при чтении байтов
+            input.transferTo(OutputStream.nullOutputStream());
+            return HexFormat.of().formatHex(digest.digest());
+        }
+    }
+
 }
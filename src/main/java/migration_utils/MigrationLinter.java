@@ -0,0 +1,235 @@
+package migration_utils;
+
+import lombok.extern.slf4j.Slf4j;
+import utils.PropertiesUtils;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiPredicate;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Проверка файлов миграций на известные причины долгих и блокирующих миграций без подключения к базе данных.
+ * <p>
+ * Скрипты разбираются на запросы так же, как при выполнении (см. {@link MigrationExecutor#forEachStatement}),
+ * и каждый запрос проверяется набором правил по регулярным выражениям после удаления комментариев и литералов.
+ * Запросы к таблицам, созданным ранее в том же файле, не проверяются: на пустой таблице эти операции дешевы.
+ * Файлы проверяются параллельно, порядок замечаний совпадает с порядком файлов и строк.
+ * </p>
+ * <p>
+ * Перед {@code migrate} проверяются ожидающие миграции, если это включено свойством {@code lint.policy}:
+ * {@code warn} — вывести замечания и продолжить, {@code abort} — прервать {@code migrate} при замечаниях
+ * уровня {@code ERROR}, {@code off} (по умолчанию) — не проверять.
+ * </p>
+ */
+@Slf4j
+public final class MigrationLinter {
+
+    public enum Severity {
+        ERROR, WARNING
+    }
+
+    public enum Policy {
+        OFF, WARN, ABORT
+    }
+
+    /**
+     * Замечание линтера.
+     *
+     * @param severity Уровень.
+     * @param file     Имя файла миграции.
+     * @param line     Номер строки в файле.
+     * @param rule     Имя правила.
+     * @param message  Описание проблемы.
+     */
+    public record Finding(Severity severity, String file, int line, String rule, String message) {
+
+        @Override
+        public String toString() {
+            return severity + " " + file + ":" + line + " [" + rule + "] " + message;
+        }
+    }
+
+    /**
+     * Правило: каждое совпадение шаблона, для которого выполняется условие (совпадение и текст запроса),
+     * дает замечание. Группа {@code table} шаблона содержит имя таблицы, подставляемое в сообщение
+     * вместо {@code {table}}.
+     */
+    private record Rule(String name, Severity severity, Pattern pattern, BiPredicate<Matcher, String> condition,
+                        String message) {
+    }
+
+    private static final String IDENTIFIER = "(?:\"(?:[^\"]|\"\")+\"|[A-Za-z_][A-Za-z0-9_$]*)";
+    private static final String TABLE = "(?<table>" + IDENTIFIER + "(?:\\." + IDENTIFIER + ")?)";
+    private static final String ALTER_TABLE = "\\bALTER\\s+TABLE\\s+(?:IF\\s+EXISTS\\s+)?(?:ONLY\\s+)?" + TABLE;
+
+    private static final Pattern WHERE = Pattern.compile("\\bWHERE\\b", Pattern.CASE_INSENSITIVE);
+
+    /**
+     * Функции, значение по умолчанию с которыми вычисляется для каждой строки и требует перезаписи таблицы.
+     */
+    private static final Pattern VOLATILE_FUNCTION = Pattern.compile(
+            "\\b(?:random|gen_random_uuid|uuid_generate_v[14]|clock_timestamp|timeofday|nextval|txid_current)\\s*\\(",
+            Pattern.CASE_INSENSITIVE);
+
+    private static final Pattern CREATE_TABLE = Pattern.compile(
+            "\\bCREATE\\s+(?:(?:GLOBAL\\s+|LOCAL\\s+)?(?:TEMP|TEMPORARY)\\s+|UNLOGGED\\s+)?TABLE\\s+"
+                    + "(?:IF\\s+NOT\\s+EXISTS\\s+)?" + TABLE,
+            Pattern.CASE_INSENSITIVE);
+
+    private static final List<Rule> RULES = List.of(
+            new Rule("create-index-without-concurrently", Severity.WARNING, Pattern.compile(
+                    "\\bCREATE\\s+(?:UNIQUE\\s+)?INDEX\\s+(?!CONCURRENTLY\\b)(?:IF\\s+NOT\\s+EXISTS\\s+)?"
+                            + "(?:" + IDENTIFIER + "\\s+)?ON\\s+(?:ONLY\\s+)?" + TABLE,
+                    Pattern.CASE_INSENSITIVE), (matcher, sql) -> true,
+                    "CREATE INDEX без CONCURRENTLY блокирует запись в таблицу {table} на все время построения индекса"),
+            new Rule("add-column-volatile-default", Severity.ERROR, Pattern.compile(
+                    ALTER_TABLE + "[^;]*?\\bADD\\s+(?:COLUMN\\s+)?(?:IF\\s+NOT\\s+EXISTS\\s+)?" + IDENTIFIER
+                            + "\\s[^;]*?\\bDEFAULT\\s+(?<default>[^,;]*)",
+                    Pattern.CASE_INSENSITIVE),
+                    (matcher, sql) -> VOLATILE_FUNCTION.matcher(matcher.group("default")).find(),
+                    "ADD COLUMN с изменчивым значением по умолчанию перезаписывает таблицу {table} "
+                            + "под блокировкой ACCESS EXCLUSIVE"),
+            new Rule("update-without-where", Severity.WARNING, Pattern.compile(
+                    "\\A\\s*UPDATE\\s+(?:ONLY\\s+)?" + TABLE, Pattern.CASE_INSENSITIVE),
+                    (matcher, sql) -> !hasWhere(matcher, sql),
+                    "UPDATE без WHERE изменяет все строки {table} одной транзакцией; для больших таблиц "
+                            + "обновляйте порциями"),
+            new Rule("delete-without-where", Severity.WARNING, Pattern.compile(
+                    "\\A\\s*DELETE\\s+FROM\\s+(?:ONLY\\s+)?" + TABLE, Pattern.CASE_INSENSITIVE),
+                    (matcher, sql) -> !hasWhere(matcher, sql),
+                    "DELETE без WHERE удаляет все строки {table} одной транзакцией; для очистки таблицы "
+                            + "быстрее TRUNCATE, для больших объемов — удаление порциями"),
+            new Rule("column-type-change", Severity.WARNING, Pattern.compile(
+                    ALTER_TABLE + "[^;]*?\\bALTER\\s+(?:COLUMN\\s+)?" + IDENTIFIER
+                            + "\\s+(?:SET\\s+DATA\\s+)?TYPE\\b",
+                    Pattern.CASE_INSENSITIVE), (matcher, sql) -> true,
+                    "изменение типа колонки может перезаписать таблицу {table} и ее индексы под блокировкой "
+                            + "ACCESS EXCLUSIVE (кроме совместимых изменений, например увеличения длины varchar)"),
+            new Rule("truncate-cascade", Severity.ERROR, Pattern.compile(
+                    "\\bTRUNCATE\\s+(?:TABLE\\s+)?(?:ONLY\\s+)?" + TABLE + "[^;]*?\\bCASCADE\\b",
+                    Pattern.CASE_INSENSITIVE), (matcher, sql) -> true,
+                    "TRUNCATE ... CASCADE очищает также все таблицы, ссылающиеся на {table}")
+    );
+
+    private MigrationLinter() {
+    }
+
+    /**
+     * @return Политика проверки перед {@code migrate} из свойства {@code lint.policy}; при неизвестном значении —
+     * {@code warn}.
+     */
+    public static Policy policyFromProperties() {
+        String value = PropertiesUtils.getProperty("lint.policy", "off");
+        try {
+            return Policy.valueOf(value.strip().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            log.error("Неизвестное значение lint.policy={} (допустимо off, warn, abort), используется warn.", value);
+            return Policy.WARN;
+        }
+    }
+
+    /**
+     * Проверяет файлы миграций.
+     *
+     * @param files Файлы миграций.
+     * @return Замечания в порядке файлов и строк.
+     */
+    public static List<Finding> lint(List<File> files) {
+        return files.parallelStream()
+                .flatMap(file -> lint(file).stream())
+                .toList();
+    }
+
+    private static List<Finding> lint(File file) {
+        // Значение ${schema} без подключения к базе данных неизвестно и на проверку не влияет
+        Map<String, String> placeholders = new HashMap<>(MigrationTemplates.defaultPlaceholders());
+        placeholders.putIfAbsent("schema", "public");
+
+        List<Finding> findings = new ArrayList<>();
+        Set<String> createdTables = new HashSet<>();
+        try {
+            MigrationExecutor.forEachStatement(MigrationExecutor.prepare(file, placeholders), (statement, copyData) -> {
+                String sql = TableReferenceExtractor.stripCommentsAndLiterals(statement.sql());
+                Matcher created = CREATE_TABLE.matcher(sql);
+                while (created.find()) {
+                    createdTables.add(normalize(created.group("table")));
+                }
+                for (Rule rule : RULES) {
+                    Matcher matcher = rule.pattern().matcher(sql);
+                    while (matcher.find()) {
+                        String table = matcher.group("table");
+                        if (createdTables.contains(normalize(table)) || !rule.condition().test(matcher, sql)) {
+                            continue;
+                        }
+                        findings.add(new Finding(rule.severity(), file.getName(),
+                                lineOf(statement.line(), sql, matcher.start("table")), rule.name(),
+                                rule.message().replace("{table}", table)));
+                    }
+                }
+            });
+        } catch (Exception e) {
+            findings.add(new Finding(Severity.ERROR, file.getName(), 0, "parse-error",
+                    "не удалось разобрать файл: " + e.getMessage()));
+        }
+        findings.sort(Comparator.comparingInt(Finding::line));
+        return findings;
+    }
+
+    /**
+     * @return {@code true}, если после совпадения есть {@code WHERE} самого запроса, а не подзапроса в скобках.
+     */
+    private static boolean hasWhere(Matcher matcher, String sql) {
+        Matcher where = WHERE.matcher(sql).region(matcher.end(), sql.length());
+        int depth = 0;
+        int position = matcher.end();
+        while (where.find()) {
+            for (; position < where.start(); position++) {
+                char c = sql.charAt(position);
+                if (c == '(') {
+                    depth++;
+                } else if (c == ')') {
+                    depth--;
+                }
+            }
+            if (depth == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Номер строки позиции запроса. Номер строки запроса относится к его первому символу вне комментариев,
+     * а текст запроса начинается с предшествующих комментариев.
+     */
+    private static int lineOf(int statementLine, String sql, int position) {
+        int start = 0;
+        while (start < position && Character.isWhitespace(sql.charAt(start))) {
+            start++;
+        }
+        int line = statementLine;
+        for (int i = start; i < position; i++) {
+            if (sql.charAt(i) == '\n') {
+                line++;
+            }
+        }
+        return line;
+    }
+
+    /**
+     * @return Имя таблицы без схемы: без кавычек, если они указаны, иначе в нижнем регистре.
+     */
+    private static String normalize(String table) {
+        String name = table.substring(table.lastIndexOf('.') + 1);
+        return name.startsWith("\"") ? name.substring(1, name.length() - 1) : name.toLowerCase(Locale.ROOT);
+    }
+}
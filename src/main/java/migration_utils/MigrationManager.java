@@ -1,14 +1,21 @@
 package migration_utils;
 
 import database.ConnectionManager;
+import database.DatabaseDialect;
+import database.DatabaseDialects;
 import lombok.extern.slf4j.Slf4j;
+import monitoring.LockEvent;
 import utils.PropertiesUtils;
 
 import java.io.File;
+import java.io.PrintStream;
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
 
 import static migration_utils.MigrationExecutor.execute;
 
@@ -33,6 +40,12 @@ public class MigrationManager {
     private static final String PATH_TO_MIGRATION_FOLDER =
             PropertiesUtils.getProperty("path.to.migration.folder", "migrations");
 
+    /**
+     * Количество миграций, которые читаются и разбираются заранее, пока выполняется текущая.
+     */
+    private static final int PREFETCH_DEPTH =
+            Integer.parseInt(PropertiesUtils.getProperty("migrate.prefetch.depth", "4"));
+
     static {
         log.info("Путь к папке миграций: {}", PATH_TO_MIGRATION_FOLDER);
     }
@@ -40,55 +53,63 @@ public class MigrationManager {
     private static final String SELECT_LAST_MIGRATION = """
         SELECT * FROM migration_history 
         WHERE reverted = FALSE 
+        AND type <> 'REPEATABLE'
         ORDER BY applied_at DESC 
         LIMIT 1
     """;
 
-    private static final String SELECT_CURRENT_VERSION = """
+    /**
+     * Версии примененных миграций. Актуальная версия выбирается из них сравнением
+     * {@link MigrationFileReader#compareVersions}, а не строковой сортировкой, при которой {@code 9} больше {@code 10}.
+     */
+    private static final String SELECT_APPLIED_VERSIONS = """
         SELECT version FROM migration_history
         WHERE reverted = FALSE
-        ORDER BY version DESC LIMIT 1
+        AND status = TRUE
+        AND type <> 'REPEATABLE'
     """;
 
-    private static final String SELECT_ALL_MIGRATIONS = """
-        SELECT version, description, applied_at, reverted 
-        FROM migration_history 
-        WHERE reverted = FALSE 
-        ORDER BY applied_at
+    /**
+     * Страница истории для команды {@code info}. Вместо {@code %s} подставляются условия фильтрации.
+     */
+    private static final String SELECT_MIGRATIONS_PAGE = """
+        SELECT id, version, description, applied_at, reverted, type
+        FROM migration_history
+        WHERE reverted = FALSE%s
+        ORDER BY applied_at, id
+        LIMIT ?
     """;
 
-    private static final String CLEAR_DATABASE = """
-        DO $$ DECLARE
-            r RECORD;
-        BEGIN
-            FOR r IN (
-                SELECT table_name 
-                FROM information_schema.tables 
-                WHERE table_schema = 'public' 
-                AND table_name <> 'migration_history'
-            ) LOOP
-                EXECUTE 'TRUNCATE TABLE public.' || r.table_name || ' RESTART IDENTITY CASCADE';
-            END LOOP;
-        END $$;
-    """;
+    private static final int INFO_PAGE_SIZE = 500;
 
-    private static final String CREATE_MIGRATION_TABLE = """
-        CREATE TABLE IF NOT EXISTS migration_history (
-            id SERIAL PRIMARY KEY,
-            version VARCHAR(255) NOT NULL UNIQUE,
-            description VARCHAR(255),
-            status BOOLEAN DEFAULT FALSE,
-            reverted BOOLEAN DEFAULT FALSE,
-            applied_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP
-        )
-    """;
+    /**
+     * Колонки, наличие которых означает, что таблица истории уже соответствует текущей схеме.
+     */
+    private static final Set<String> HISTORY_COLUMNS = Set.of(
+            "id", "version", "description", "status", "reverted", "applied_at",
+            "checksum", "execution_time", "installed_by", "type", "schema_fingerprint", "schema_objects",
+            "session_settings");
+
+    /**
+     * Таблицы, которые не очищаются при откате.
+     */
+    private static final Set<String> HISTORY_TABLES = Set.of("migration_history", "migration_history_archive", "migration_state");
+
+    /**
+     * Идентификатор блокировки миграций.
+     */
+    private static final long MIGRATION_LOCK_ID = 19;
 
+    /**
+     * Миграции, которые можно откатить. Последние по версии выбираются сравнением
+     * {@link MigrationFileReader#compareVersions}.
+     */
     private static final String SELECT_MIGRATIONS_FOR_ROLLBACK = """
         SELECT id, version 
         FROM migration_history 
         WHERE reverted = FALSE 
-        ORDER BY version DESC 
-        LIMIT ?;
+        AND status = TRUE
+        AND type = 'SQL';
     """;
 
     private static final String UPDATE_MIGRATION_REVERTED = """
@@ -97,50 +118,205 @@ public class MigrationManager {
         WHERE version = ?;
     """;
 
+    /**
+     * Помечает откатанными миграции после тега. Вместо {@code %s} подставляется сравнение версий диалекта
+     * ({@link DatabaseDialect#compareVersion}), вместо параметра — тег.
+     */
     private static final String UPDATE_MIGRATIONS_AFTER_TAG = """
         UPDATE migration_history 
         SET reverted = TRUE 
-        WHERE version > ?;
+        WHERE %s
+        AND type <> 'REPEATABLE';
+    """;
+
+    private static final String ARCHIVE_MIGRATION = """
+        INSERT INTO migration_history_archive (id, version, description, status, applied_at, checksum, execution_time, installed_by)
+        SELECT id, version, description, status, applied_at, checksum, execution_time, installed_by
+        FROM migration_history
+        WHERE version = ?
+        AND reverted = FALSE;
+    """;
+
+    private static final String ARCHIVE_MIGRATIONS_AFTER_TAG = """
+        INSERT INTO migration_history_archive (id, version, description, status, applied_at, checksum, execution_time, installed_by)
+        SELECT id, version, description, status, applied_at, checksum, execution_time, installed_by
+        FROM migration_history
+        WHERE %s
+        AND type <> 'REPEATABLE'
+        AND reverted = FALSE;
+    """;
+
+    /**
+     * Удаляет из истории записи, скопированные в архив запросом {@link #ARCHIVE_MIGRATION}.
+     */
+    private static final String DELETE_ARCHIVED_MIGRATION = """
+        DELETE FROM migration_history
+        WHERE version = ?
+        AND reverted = FALSE;
+    """;
+
+    /**
+     * Удаляет из истории записи, скопированные в архив запросом {@link #ARCHIVE_MIGRATIONS_AFTER_TAG}.
+     */
+    private static final String DELETE_ARCHIVED_MIGRATIONS_AFTER_TAG = """
+        DELETE FROM migration_history
+        WHERE %s
+        AND type <> 'REPEATABLE'
+        AND reverted = FALSE;
+    """;
+
+    /**
+     * Последний сохраненный отпечаток схемы для команды {@code drift}.
+     */
+    private static final String SELECT_LAST_FINGERPRINT = """
+        SELECT version, schema_fingerprint, schema_objects
+        FROM migration_history
+        WHERE reverted = FALSE
+        AND status = TRUE
+        AND schema_fingerprint IS NOT NULL
+        ORDER BY applied_at DESC, id DESC
+        LIMIT 1
+    """;
+
+    private static final String COUNT_APPLIED_MIGRATIONS = """
+        SELECT COUNT(*)
+        FROM migration_history
+        WHERE reverted = FALSE
+        AND status = TRUE;
     """;
 
     private static final String CHECK_MIGRATION_ALREADY_APPLIED = """
         SELECT COUNT(*) 
         FROM migration_history 
         WHERE version = ? 
-        AND reverted = FALSE;
+        AND reverted = FALSE
+        AND status = TRUE
+        AND type = 'SQL';
     """;
 
     /**
      * Выполняет миграции, которые еще не были применены.
-     * Проверяет наличие каждой миграции в базе данных и применяет те, которые еще не были выполнены.
-     * Миграции выполняются в порядке возрастания версии.
+     * Строит план миграций по истории из базы данных и применяет те, которые еще не были выполнены.
+     * Миграции, покрытые базовой версией ({@code baseline}), пропускаются.
+     * Миграции выполняются в порядке возрастания версии; следующие файлы читаются и разбираются заранее
+     * (см. {@link MigrationPrefetcher}). До захвата блокировки выполняется проверка блокирующих транзакций
+     * (см. {@link BlockingTransactionPreflight}). При отставании реплик выполнение приостанавливается
+     * (см. {@link ReplicationLagThrottle}). По сигналу завершения процесса или по истечении бюджета времени
+     * миграции выполняющийся запрос прерывается, транзакция откатывается, а блокировка освобождается
+     * (см. {@link MigrationCancellation}).
      */
     public static void migrate() {
-        acquireLock();
-        try(Connection connection = ConnectionManager.getConnection()) {
-            connection.setAutoCommit(false);
+        if (MigrationState.isEnabled() && isUpToDate()) {
+            log.info("База данных актуальна: набор миграций не изменился с последнего запуска migrate.");
+            return;
+        }
 
-            ensureMigrationTableExists();
+        // Контроллер отмены создается до предварительной проверки, чтобы сигнал завершения прерывал и ее ожидание
+        MigrationCancellation cancellation = MigrationCancellation.fromProperties();
+        try {
+            try {
+                runLintGate();
+                runPreflight(cancellation);
+            } catch (Exception e) {
+                log.error("Предварительная проверка перед миграцией не пройдена.", e);
+                return;
+            }
 
-            List<File> migartionFilesList = MigrationFileReader.findMigrationFiles(PATH_TO_MIGRATION_FOLDER);
-            for (File file : migartionFilesList) {
-                if (!isMigrationAlreadyApplied(file, connection)){
-                    execute(connection, file);
+            Connection lockConnection = acquireLock();
+            try (Connection connection = ConnectionManager.getConnection()) {
+                connection.setAutoCommit(false);
+                cancellation.attach(connection);
+                try {
+                    applyPendingMigrations(connection, cancellation);
+                    connection.commit();
+                } catch (Exception e) {
+                    cancellation.handleFailure(connection, e);
+                    throw e;
                 }
+            } catch (Exception e) {
+                log.error("Ошибка во время миграции.", e);
+            } finally {
+                releaseLock(lockConnection);
             }
-            connection.commit();
-        } catch (Exception e) {
-            log.error("Ошибка во время миграции.", e);
         } finally {
-            releaseLock();
+            cancellation.close();
+        }
+    }
+
+    private static void applyPendingMigrations(Connection connection, MigrationCancellation cancellation)
+            throws Exception {
+        ensureMigrationTableExists();
+
+        if (countAppliedMigrations(connection) == 0) {
+            applySquashedBaseline(connection);
+        }
+
+        List<File> migartionFilesList = MigrationFileReader.findMigrationFiles(PATH_TO_MIGRATION_FOLDER);
+        List<File> repeatableFiles = MigrationFileReader.findRepeatableMigrationFiles(PATH_TO_MIGRATION_FOLDER);
+        MigrationPlan plan = MigrationPlan.build(connection, migartionFilesList, repeatableFiles);
+        if (plan.getBaselineVersion() != null) {
+            log.info("Миграции до версии {} включительно покрыты базовой версией и пропускаются.", plan.getBaselineVersion());
+        }
+        Map<String, String> placeholders = MigrationExecutor.withBuiltInPlaceholders(connection,
+                MigrationTemplates.defaultPlaceholders());
+        try (ReplicationLagThrottle throttle = ReplicationLagThrottle.fromProperties(cancellation)) {
+            try (MigrationPrefetcher prefetcher =
+                         new MigrationPrefetcher(plan.getPendingFiles(), placeholders, PREFETCH_DEPTH)) {
+                while (prefetcher.hasNext()) {
+                    PreparedMigration migration = prefetcher.next();
+                    if (throttle != null) {
+                        throttle.await(connection);
+                    }
+                    cancellation.beginMigration(migration.file(), MigrationPlan.TYPE_SQL);
+                    MigrationExecutor.execute(connection, migration, throttle, cancellation);
+                    cancellation.endMigration();
+                }
+            }
+
+            List<File> changedRepeatables = plan.getPendingRepeatableFiles();
+            log.info("Повторяемые миграции: {} изменено из {}.", changedRepeatables.size(), repeatableFiles.size());
+            for (File file : changedRepeatables) {
+                if (throttle != null) {
+                    throttle.await(connection);
+                }
+                cancellation.beginMigration(file, MigrationPlan.TYPE_REPEATABLE);
+                MigrationExecutor.executeRepeatable(connection, file, cancellation);
+                cancellation.endMigration();
+            }
+            if (throttle != null && throttle.getWaitedMs() > 0) {
+                log.info("Ожидание реплик заняло {} мс.", throttle.getWaitedMs());
+            }
+        }
+        MigrationState.write(connection, MigrationState.digest(migartionFilesList, repeatableFiles),
+                MigrationState.filesDigest(migartionFilesList, repeatableFiles));
+    }
+
+    /**
+     * Проверяет одним запросом, применен ли уже текущий набор миграций. Любая ошибка означает,
+     * что нужно выполнить полный {@code migrate}.
+     */
+    private static boolean isUpToDate() {
+        try {
+            try (Connection connection = ConnectionManager.getConnection()) {
+                return MigrationState.isUpToDate(connection,
+                        MigrationFileReader.findMigrationFiles(PATH_TO_MIGRATION_FOLDER),
+                        MigrationFileReader.findRepeatableMigrationFiles(PATH_TO_MIGRATION_FOLDER));
+            }
+        } catch (Exception e) {
+            log.debug("Быстрая проверка актуальности пропущена: {}", e.getMessage());
+            return false;
         }
     }
 
     /**
      * Выводит информацию о последней примененной миграции.
      * Запрашивает из базы данных последнюю миграцию, которая была применена, и выводит её данные.
+     * Таблица истории старой схемы предварительно обновляется, так как запрос использует колонку {@code type}.
+     *
+     * @return Версия последней примененной миграции или {@code null}, если миграции не применялись.
      */
-    public static void getLastAppliedMigration() {
+    public static String getLastAppliedMigration() {
+        ensureMigrationTableExists();
         try (Connection connection = ConnectionManager.getConnection()) {
             try (PreparedStatement statement = connection.prepareStatement(SELECT_LAST_MIGRATION)) {
                 ResultSet resultSet = statement.executeQuery();
@@ -154,15 +330,16 @@ public class MigrationManager {
 
                     log.info("Последняя примененная миграция - Версия: {}, Описание: {}, Дата применения: {}, Откатана: {}, Статус: {}",
                             version, description, appliedAt, reverted ? "Да" : "Нет", status);
-                } else {
-                    log.info("Миграции еще не применялись.");
+                    return version;
                 }
+                log.info("Миграции еще не применялись.");
             } catch (SQLException e) {
                 log.error("Ошибка при выполнении запроса к базе данных: {}", e.getMessage());
             }
         } catch (SQLException e) {
             log.error("Ошибка при подключении к базе данных: {}", e.getMessage());
         }
+        return null;
     }
 
     /**
@@ -172,25 +349,37 @@ public class MigrationManager {
      * @param number_of_migrations Количество миграций, которые нужно откатить.
      */
     public static void rollback(int number_of_migrations) {
+        Connection lockConnection = acquireLock();
         try (Connection connection = ConnectionManager.getConnection()) {
             connection.setAutoCommit(false);
 
+            ensureMigrationTableExists();
+
             try (PreparedStatement statement = connection.prepareStatement(SELECT_MIGRATIONS_FOR_ROLLBACK)) {
-                statement.setInt(1, number_of_migrations);
                 try (ResultSet set = statement.executeQuery()) {
-                    List<String> versionsToRollback = new ArrayList<>();
+                    List<String> appliedVersions = new ArrayList<>();
                     while (set.next()) {
-                        versionsToRollback.add(set.getString("version"));
+                        appliedVersions.add(set.getString("version"));
                     }
+                    List<String> versionsToRollback = appliedVersions.stream()
+                            .sorted((first, second) -> MigrationFileReader.compareVersions(second, first))
+                            .limit(number_of_migrations)
+                            .toList();
                     if (versionsToRollback.isEmpty()) {
                         log.info("Нет миграций для отката");
                         return;
                     }
-                    clearDatabase(connection);
-                    ensureMigrationTableExists();
                     List<File> migrationFiles = MigrationFileReader.findMigrationFiles(PATH_TO_MIGRATION_FOLDER);
+                    MigrationPlan plan = MigrationPlan.build(connection, migrationFiles);
+                    if (!isRollbackAboveBaseline(plan, versionsToRollback.getLast())) {
+                        return;
+                    }
+                    clearDatabase(connection);
                     for (File file : migrationFiles) {
                         String version = MigrationFileReader.getVersionFromFile(file);
+                        if (plan.isCoveredByBaseline(version)) {
+                            continue;
+                        }
                         if (!versionsToRollback.contains(version) && isMigrationAlreadyApplied(file, connection)) {
                             execute(connection, file);
                         }
@@ -202,6 +391,8 @@ public class MigrationManager {
             log.info("Откат последних {} миграций выполнен.", number_of_migrations);
         } catch (Exception e) {
             log.error("Ошибка при выполнении отката последних миграций.", e);
+        } finally {
+            releaseLock(lockConnection);
         }
     }
 
@@ -212,20 +403,32 @@ public class MigrationManager {
      * @param tag Тег, до которого нужно откатить миграции.
      */
     public static void rollbackToTag(String tag){
+        Connection lockConnection = acquireLock();
         try (Connection connection = ConnectionManager.getConnection()) {
             connection.setAutoCommit(false);
 
-            clearDatabase(connection);
-
             ensureMigrationTableExists();
 
             List<File> migrationFiles = MigrationFileReader.findMigrationFiles(PATH_TO_MIGRATION_FOLDER);
+            MigrationPlan plan = MigrationPlan.build(connection, migrationFiles);
+            if (plan.isCoveredByBaseline(tag)) {
+                log.error("Откат до версии {} невозможен: она не выше базовой версии {}, а данные, существовавшие "
+                        + "до базовой версии, нельзя восстановить выполнением миграций.", tag, plan.getBaselineVersion());
+                return;
+            }
+            warnAboutBaseline(plan);
+
+            clearDatabase(connection);
+
             for (File file : migrationFiles) {
                 String version = MigrationFileReader.getVersionFromFile(file);
-                if (version.compareTo(tag) > 0) {
+                if (MigrationFileReader.compareVersions(version, tag) > 0) {
                     log.info("Достигнута указанная версия {}. Остановка выполнения миграций.", tag);
                     break;
                 }
+                if (plan.isCoveredByBaseline(version)) {
+                    continue;
+                }
                 execute(connection, file);
             }
             markMigrationsAsRevertedAfterTag(connection, tag);
@@ -233,54 +436,332 @@ public class MigrationManager {
             log.info("Откат до указанной версии -- {} -- выполнен.", tag);
         } catch (Exception e) {
             log.error("Ошибка при выполнении отката до версии.", e);
+        } finally {
+            releaseLock(lockConnection);
         }
     }
 
+    /**
+     * Принимает существующую базу данных под управление без выполнения миграций.
+     * Добавляет в историю синтетическую базовую запись с контрольной суммой всех файлов миграций
+     * до указанной версии включительно. Эти миграции далее считаются примененными и пропускаются
+     * командой {@code migrate}. Пользовательские таблицы не затрагиваются.
+     *
+     * @param version Базовая версия.
+     */
+    public static void baseline(String version) {
+        Connection lockConnection = acquireLock();
+        try (Connection connection = ConnectionManager.getConnection()) {
+            connection.setAutoCommit(false);
+
+            ensureMigrationTableExists();
+
+            if (countAppliedMigrations(connection) > 0) {
+                log.error("История миграций не пуста. Базовую версию можно установить только для базы данных без примененных миграций.");
+                return;
+            }
+
+            StringBuilder coveredChecksums = new StringBuilder();
+            int coveredCount = 0;
+            for (File file : MigrationFileReader.findMigrationFiles(PATH_TO_MIGRATION_FOLDER)) {
+                String fileVersion = MigrationFileReader.getVersionFromFile(file);
+                if (MigrationFileReader.compareVersions(fileVersion, version) <= 0) {
+                    String checksum = MigrationTemplates.checksum(file);
+                    coveredChecksums.append(fileVersion).append(':').append(checksum).append('\n');
+                    coveredCount++;
+                }
+            }
+
+            MigrationState.invalidate(connection);
+            MigrationExecutor.recordBaseline(connection, version,
+                    MigrationFileReader.calculateChecksum(coveredChecksums.toString()));
+            connection.commit();
+            log.info("Установлена базовая версия {}. Покрыто файлов миграций: {}.", version, coveredCount);
+        } catch (Exception e) {
+            log.error("Ошибка при установке базовой версии.", e);
+        } finally {
+            releaseLock(lockConnection);
+        }
+    }
 
     /**
-     * Выводит информацию о текущем состоянии базы данных, включая текущую версию и список примененных миграций.
+     * Формирует сжатый базовый скрипт из текущего состояния каталога базы данных.
+     * База данных должна находиться ровно в указанной версии: все миграции до нее применены,
+     * а более поздние — нет. Новые окружения применяют этот скрипт вместо истории миграций до этой версии,
+     * а существующие базы данных продолжают опираться на исходную историю.
+     *
+     * @param version Версия, до которой включительно сжимаются миграции.
      */
-    public static void info() {
+    public static void squash(String version) {
+        Connection lockConnection = acquireLock();
         try (Connection connection = ConnectionManager.getConnection()) {
-            try (PreparedStatement statement = connection.prepareStatement(SELECT_CURRENT_VERSION)) {
-                ResultSet set = statement.executeQuery();
-                if (set.next()) {
-                    String currentVersion = set.getString("version");
-                    log.info("Актуальная версия базы данных: {}", currentVersion);
-                } else {
-                    log.info("Миграции не применялись. База данных находится в начальном состоянии.");
+            ensureMigrationTableExists();
+
+            MigrationPlan plan = MigrationPlan.build(connection, MigrationFileReader.findMigrationFiles(PATH_TO_MIGRATION_FOLDER));
+            for (MigrationPlan.Entry entry : plan.getEntries()) {
+                boolean covered = MigrationFileReader.compareVersions(entry.version(), version) <= 0;
+                boolean applied = entry.state() != MigrationPlan.State.PENDING;
+                if (covered != applied) {
+                    log.error("База данных не находится в версии {}: миграция {} {}.", version, entry.file().getName(),
+                            applied ? "уже применена" : "не применена");
+                    return;
                 }
             }
 
-            try (PreparedStatement ps = connection.prepareStatement(SELECT_ALL_MIGRATIONS)) {
-                ResultSet rs = ps.executeQuery();
+            MigrationSquasher.squash(version);
+        } catch (Exception e) {
+            log.error("Ошибка при формировании сжатого базового скрипта.", e);
+        } finally {
+            releaseLock(lockConnection);
+        }
+    }
+
+    /**
+     * Выполняет ожидающие миграции на одноразовой копии базы данных и выводит отчет о времени выполнения
+     * и захваченных блокировках. Целевая база данных не изменяется.
+     */
+    public static void rehearse() {
+        try {
+            MigrationRehearsal.rehearse();
+        } catch (Exception e) {
+            log.error("Ошибка при репетиции миграций.", e);
+        }
+    }
+
+    /**
+     * Проверяет, не менялась ли схема базы данных в обход миграций: снимает отпечаток схемы и сравнивает его
+     * с отпечатком, сохраненным после последней примененной миграции (см. {@link SchemaFingerprint}).
+     * Отличия выводятся в журнал по одному объекту.
+     *
+     * @return Описания отличий; пустой список, если схема совпадает с сохраненной или сравнивать не с чем.
+     */
+    public static List<String> drift() {
+        try (Connection connection = ConnectionManager.getConnection()) {
+            ensureMigrationTableExists();
+
+            String version;
+            SchemaFingerprint expected;
+            try (PreparedStatement statement = connection.prepareStatement(SELECT_LAST_FINGERPRINT);
+                 ResultSet rs = statement.executeQuery()) {
+                if (!rs.next()) {
+                    log.info("В истории миграций нет сохраненного отпечатка схемы, сравнивать не с чем.");
+                    return List.of();
+                }
+                version = rs.getString("version");
+                expected = SchemaFingerprint.decode(rs.getString("schema_fingerprint"), rs.getString("schema_objects"));
+            }
 
+            SchemaFingerprint actual = SchemaFingerprint.capture(connection);
+            if (actual == null) {
+                log.warn("Диалект {} не поддерживает отпечаток схемы.", DatabaseDialects.get().name());
+                return List.of();
+            }
+            List<String> differences = actual.diff(expected);
+            if (differences.isEmpty()) {
+                log.info("Схема базы данных совпадает с состоянием после миграции {}.", version);
+            } else {
+                log.warn("Схема базы данных отличается от состояния после миграции {}: {} отличий.", version,
+                        differences.size());
+                differences.forEach(difference -> log.warn("  {}", difference));
+            }
+            return differences;
+        } catch (SQLException e) {
+            log.error("Ошибка при проверке расхождения схемы: {}", e.getMessage(), e);
+            return List.of();
+        }
+    }
+
+    /**
+     * Проверяет файлы миграций на известные причины долгих и блокирующих миграций без подключения к базе данных
+     * (см. {@link MigrationLinter}). Замечания выводятся в журнал.
+     *
+     * @param paths Файлы и каталоги миграций; если не указаны — все миграции из {@code path.to.migration.folder}.
+     * @return Замечания в порядке файлов и строк.
+     */
+    public static List<MigrationLinter.Finding> lint(List<String> paths) {
+        List<File> files = new ArrayList<>();
+        for (String path : paths.isEmpty() ? List.of(PATH_TO_MIGRATION_FOLDER) : paths) {
+            if (new File(path).isFile()) {
+                files.add(new File(path));
+            } else {
+                files.addAll(MigrationFileReader.findMigrationFiles(path));
+                files.addAll(MigrationFileReader.findRepeatableMigrationFiles(path));
+            }
+        }
+
+        List<MigrationLinter.Finding> findings = MigrationLinter.lint(files);
+        logFindings(findings);
+        log.info("Проверено файлов миграций: {}, замечаний: {}.", files.size(), findings.size());
+        return findings;
+    }
+
+    /**
+     * Выводит информацию о текущем состоянии базы данных, включая текущую версию, список примененных миграций
+     * и план миграций с отметкой версий, покрытых базовой записью.
+     */
+    public static void info() {
+        info(InfoOptions.defaults());
+    }
+
+    /**
+     * Выводит информацию о текущем состоянии базы данных с учетом фильтров.
+     * История читается страницами по ключу {@code (applied_at, id)} через курсор, поэтому расход памяти
+     * не зависит от размера истории. В компактном режиме записи выводятся в {@code System.out}
+     * по одной строке с полями, разделенными табуляцией. Таблица истории старой схемы предварительно
+     * обновляется до актуальной, иначе запросы к колонке {@code type} завершатся ошибкой.
+     *
+     * @param options Параметры вывода.
+     */
+    public static void info(InfoOptions options) {
+        ensureMigrationTableExists();
+        try (Connection connection = ConnectionManager.getConnection()) {
+            if (!options.compact()) {
+                try (PreparedStatement statement = connection.prepareStatement(SELECT_APPLIED_VERSIONS);
+                     ResultSet set = statement.executeQuery()) {
+                    String currentVersion = null;
+                    while (set.next()) {
+                        String version = set.getString("version");
+                        if (currentVersion == null || MigrationFileReader.compareVersions(version, currentVersion) > 0) {
+                            currentVersion = version;
+                        }
+                    }
+                    if (currentVersion != null) {
+                        log.info("Актуальная версия базы данных: {}", currentVersion);
+                    } else {
+                        log.info("Миграции не применялись. База данных находится в начальном состоянии.");
+                    }
+                }
                 log.info("Список примененных миграций:");
-                log.info(String.format("| %-20s | %-50s | %-20s | %-10s |", "Версия", "Описание", "Дата применения", "Откатана"));
-                log.info("|" + "-".repeat(83) + "|");
-
-                while (rs.next()) {
-                    String version = rs.getString("version");
-                    String description = rs.getString("description");
-                    String appliedAt = rs.getTimestamp("applied_at").toString();
-                    boolean reverted = rs.getBoolean("reverted");
-
-                    log.info(String.format("| %-20s | %-50s | %-20s | %-10s |",
-                            version,
-                            description,
-                            appliedAt,
-                            reverted ? "Да" : "Нет"));
+                log.info(String.format("| %-20s | %-50s | %-20s | %-10s | %-10s |", "Версия", "Описание", "Дата применения", "Откатана", "Тип"));
+                log.info("|" + "-".repeat(96) + "|");
+            }
+
+            // Курсор PostgreSQL с заданным fetch size работает только внутри транзакции
+            connection.setAutoCommit(false);
+            PrintStream out = System.out;
+            boolean infoEnabled = log.isInfoEnabled();
+            Timestamp afterAppliedAt = options.afterAppliedAt();
+            Integer afterId = options.afterId();
+            int remaining = options.limit() != null ? options.limit() : Integer.MAX_VALUE;
+            boolean hasMore = true;
+
+            while (remaining > 0 && hasMore) {
+                int pageSize = Math.min(INFO_PAGE_SIZE, remaining);
+                int pageRows = 0;
+                // Лишняя запись сверх страницы показывает, есть ли продолжение, и не выводится
+                try (PreparedStatement ps = prepareInfoPage(connection, options, afterAppliedAt, afterId, pageSize + 1);
+                     ResultSet rs = ps.executeQuery()) {
+                    hasMore = false;
+                    while (rs.next()) {
+                        if (pageRows == pageSize) {
+                            hasMore = true;
+                            break;
+                        }
+                        pageRows++;
+                        afterAppliedAt = rs.getTimestamp("applied_at");
+                        afterId = rs.getInt("id");
+                        String version = rs.getString("version");
+                        String description = rs.getString("description");
+                        String type = rs.getString("type");
+
+                        if (options.compact()) {
+                            out.append(version).append('\t')
+                                    .append(type).append('\t')
+                                    .append(String.valueOf(afterAppliedAt)).append('\t')
+                                    .append(String.valueOf(afterId)).append('\t')
+                                    .append(description).append('\n');
+                        } else if (infoEnabled) {
+                            log.info(String.format("| %-20s | %-50s | %-20s | %-10s | %-10s |",
+                                    version,
+                                    description,
+                                    afterAppliedAt,
+                                    rs.getBoolean("reverted") ? "Да" : "Нет",
+                                    type));
+                        }
+                    }
                 }
+                remaining -= pageRows;
+            }
+            connection.commit();
 
-                log.info("|" + "-".repeat(83) + "|");
+            if (options.compact()) {
+                if (hasMore && afterId != null) {
+                    out.append("# next: --after ").append(String.valueOf(afterAppliedAt).replace(' ', 'T'))
+                            .append(',').append(String.valueOf(afterId)).append('\n');
+                }
+                out.flush();
+                return;
+            }
+            log.info("|" + "-".repeat(96) + "|");
+
+            MigrationPlan plan = MigrationPlan.build(connection,
+                    MigrationFileReader.findMigrationFiles(PATH_TO_MIGRATION_FOLDER),
+                    MigrationFileReader.findRepeatableMigrationFiles(PATH_TO_MIGRATION_FOLDER));
+            log.info("План миграций:");
+            for (MigrationPlan.Entry entry : plan.getEntries()) {
+                log.info("| {} | {} | {} |", entry.version(), entry.file().getName(), entry.state());
+            }
+            for (MigrationPlan.Entry entry : plan.getRepeatableEntries()) {
+                log.info("| {} | {} | {} |", "R", entry.file().getName(), entry.state());
             }
         } catch (SQLException e) {
             log.error("Ошибка при получении статуса базы данных.", e);
         }
     }
 
+    /**
+     * Готовит запрос очередной страницы истории: фильтры команды {@code info} и позиция после
+     * последней выведенной записи передаются в SQL, чтобы использовать индекс по {@code (applied_at, id)}.
+     */
+    private static PreparedStatement prepareInfoPage(Connection connection, InfoOptions options,
+                                                     Timestamp afterAppliedAt, Integer afterId,
+                                                     int pageSize) throws SQLException {
+        StringBuilder conditions = new StringBuilder();
+        List<Object> parameters = new ArrayList<>();
+        if (options.since() != null) {
+            conditions.append(" AND applied_at >= ?");
+            parameters.add(options.since());
+        }
+        if (options.versionFrom() != null) {
+            conditions.append(" AND ").append(DatabaseDialects.get().compareVersion(">="));
+            parameters.add(options.versionFrom());
+        }
+        if (options.versionTo() != null) {
+            conditions.append(" AND ").append(DatabaseDialects.get().compareVersion("<="));
+            parameters.add(options.versionTo());
+        }
+        if (afterAppliedAt != null && afterId != null) {
+            conditions.append(" AND (applied_at, id) > (?, ?)");
+            parameters.add(afterAppliedAt);
+            parameters.add(afterId);
+        }
+
+        PreparedStatement statement = connection.prepareStatement(SELECT_MIGRATIONS_PAGE.formatted(conditions));
+        statement.setFetchSize(pageSize);
+        int index = 1;
+        for (Object parameter : parameters) {
+            statement.setObject(index++, parameter);
+        }
+        statement.setInt(index, pageSize);
+        return statement;
+    }
+
     private static void markMigrationsAsRevertedAfterTag(Connection connection, String tag) throws SQLException {
-        try (PreparedStatement ps = connection.prepareStatement(UPDATE_MIGRATIONS_AFTER_TAG)) {
+        MigrationState.invalidate(connection);
+        String afterTag = DatabaseDialects.get().compareVersion(">");
+        if (isArchiveEnabled()) {
+            try (PreparedStatement archive = connection.prepareStatement(ARCHIVE_MIGRATIONS_AFTER_TAG.formatted(afterTag));
+                 PreparedStatement delete = connection.prepareStatement(
+                         DELETE_ARCHIVED_MIGRATIONS_AFTER_TAG.formatted(afterTag))) {
+                archive.setString(1, tag);
+                archive.executeUpdate();
+                delete.setString(1, tag);
+                int deleted = delete.executeUpdate();
+                log.info("Миграции после версии {} перенесены в архив: {}.", tag, deleted);
+            }
+            return;
+        }
+        try (PreparedStatement ps = connection.prepareStatement(UPDATE_MIGRATIONS_AFTER_TAG.formatted(afterTag))) {
             ps.setString(1, tag);
             ps.executeUpdate();
             log.info("Миграции после версии {} помечены как откатанные.", tag);
@@ -288,23 +769,158 @@ public class MigrationManager {
     }
 
     private static void clearDatabase(Connection connection) throws SQLException {
-        try (Statement stmt = connection.createStatement()) {
-            stmt.execute(CLEAR_DATABASE);
-            System.out.println("Все данные очищены, кроме migration_history.");
+        DatabaseDialects.get().truncateTables(connection, HISTORY_TABLES);
+        System.out.println("Все данные очищены, кроме migration_history.");
+    }
+
+    /**
+     * Проверяет ожидающие миграции линтером, если это включено свойством {@code lint.policy}.
+     * При политике {@code abort} замечания уровня {@code ERROR} прерывают {@code migrate}.
+     */
+    private static void runLintGate() throws SQLException {
+        MigrationLinter.Policy policy = MigrationLinter.policyFromProperties();
+        if (policy == MigrationLinter.Policy.OFF) {
+            return;
+        }
+
+        List<File> pendingFiles;
+        try (Connection connection = ConnectionManager.getConnection()) {
+            pendingFiles = findPendingFiles(connection);
+        }
+        List<MigrationLinter.Finding> findings = MigrationLinter.lint(pendingFiles);
+        logFindings(findings);
+
+        long errors = findings.stream().filter(f -> f.severity() == MigrationLinter.Severity.ERROR).count();
+        if (policy == MigrationLinter.Policy.ABORT && errors > 0) {
+            throw new IllegalStateException("Миграция прервана: линтер нашел ошибок в ожидающих миграциях: "
+                    + errors + ".");
+        }
+    }
+
+    private static void logFindings(List<MigrationLinter.Finding> findings) {
+        for (MigrationLinter.Finding finding : findings) {
+            if (finding.severity() == MigrationLinter.Severity.ERROR) {
+                log.error("{}", finding);
+            } else {
+                log.warn("{}", finding);
+            }
         }
     }
 
+    /**
+     * Находит таблицы, которые затрагивают ожидающие миграции, и проверяет, не удерживают ли их
+     * блокировки другие транзакции. Выполняется без блокировки миграций и без изменения истории;
+     * ожидание прерывается отменой {@code migrate}.
+     */
+    private static void runPreflight(MigrationCancellation cancellation) throws SQLException {
+        BlockingTransactionPreflight preflight = BlockingTransactionPreflight.fromProperties();
+        if (preflight.getPolicy() == BlockingTransactionPreflight.Policy.OFF
+                || DatabaseDialects.get().selectBlockingSessions() == null) {
+            return;
+        }
+
+        try (Connection connection = ConnectionManager.getConnection()) {
+            List<File> pendingFiles = findPendingFiles(connection);
+
+            Map<String, String> placeholders = MigrationExecutor.withBuiltInPlaceholders(connection,
+                    MigrationTemplates.defaultPlaceholders());
+            preflight.check(connection, BlockingTransactionPreflight.requiredLocks(pendingFiles, placeholders),
+                    cancellation);
+        }
+    }
+
+    /**
+     * Определяет ожидающие миграции без захвата блокировки и без изменения таблицы истории:
+     * сначала версионные, затем измененные повторяемые. Если таблица истории отсутствует или имеет
+     * старый формат, ожидающими считаются все миграции.
+     *
+     * @param connection Соединение с базой данных.
+     * @return Файлы миграций в порядке выполнения.
+     * @throws SQLException Если не удалось прочитать историю миграций.
+     */
+    static List<File> findPendingFiles(Connection connection) throws SQLException {
+        List<File> migrationFiles = MigrationFileReader.findMigrationFiles(PATH_TO_MIGRATION_FOLDER);
+        List<File> repeatableFiles = MigrationFileReader.findRepeatableMigrationFiles(PATH_TO_MIGRATION_FOLDER);
+        List<File> pendingFiles = new ArrayList<>();
+        if (readHistoryColumns(connection).containsAll(HISTORY_COLUMNS)) {
+            MigrationPlan plan = MigrationPlan.build(connection, migrationFiles, repeatableFiles);
+            pendingFiles.addAll(plan.getPendingFiles());
+            pendingFiles.addAll(plan.getPendingRepeatableFiles());
+        } else {
+            pendingFiles.addAll(migrationFiles);
+            pendingFiles.addAll(repeatableFiles);
+        }
+        return pendingFiles;
+    }
+
+    private static Set<String> readHistoryColumns(Connection connection) throws SQLException {
+        Set<String> columns = new HashSet<>();
+        try (Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery(DatabaseDialects.get().selectHistoryColumns())) {
+            while (rs.next()) {
+                columns.add(rs.getString("column_name").toLowerCase());
+            }
+        }
+        return columns;
+    }
+
+    /**
+     * Создает таблицу {@code migration_history}, если она отсутствует, либо однократно обновляет
+     * таблицу старого формата до текущей схемы. Вызывается только при удерживаемой блокировке миграций,
+     * поэтому обновление не выполняется параллельно несколькими процессами.
+     */
     private static void ensureMigrationTableExists() {
+        DatabaseDialect dialect = DatabaseDialects.get();
         try (Connection connection = ConnectionManager.getConnection();
              Statement statement = connection.createStatement()) {
 
-            statement.execute(CREATE_MIGRATION_TABLE);
+            Set<String> columns = readHistoryColumns(connection);
+
+            if (!columns.containsAll(HISTORY_COLUMNS)) {
+                connection.setAutoCommit(false);
+                if (columns.isEmpty()) {
+                    statement.execute(dialect.createHistoryTable());
+                    log.info("Создана таблица migration_history.");
+                } else {
+                    for (String upgrade : dialect.upgradeHistoryTable()) {
+                        statement.execute(upgrade);
+                    }
+                    log.info("Таблица migration_history обновлена до актуальной схемы.");
+                }
+                for (String index : dialect.historyIndexes()) {
+                    statement.execute(index);
+                }
+                connection.commit();
+                connection.setAutoCommit(true);
+            }
+
+            if (isArchiveEnabled()) {
+                statement.execute(dialect.createArchiveTable());
+            }
+            statement.execute(dialect.createStateTable());
+            statement.execute(dialect.upgradeStateTable());
         } catch (SQLException e) {
             throw new RuntimeException("Ошибка при проверке или создании таблицы migration_history", e);
         }
     }
 
     private static void markMigrationsAsReverted(Connection connection, List<String> versions) throws SQLException {
+        MigrationState.invalidate(connection);
+        if (isArchiveEnabled()) {
+            try (PreparedStatement archive = connection.prepareStatement(ARCHIVE_MIGRATION);
+                 PreparedStatement delete = connection.prepareStatement(DELETE_ARCHIVED_MIGRATION)) {
+                for (String version : versions) {
+                    archive.setString(1, version);
+                    archive.addBatch();
+                    delete.setString(1, version);
+                    delete.addBatch();
+                }
+                archive.executeBatch();
+                int[] deleteCounts = delete.executeBatch();
+                log.info("Перенесено в архив: {} миграций.", deleteCounts.length);
+            }
+            return;
+        }
         try (PreparedStatement ps = connection.prepareStatement(UPDATE_MIGRATION_REVERTED)) {
             for (String version : versions) {
                 ps.setString(1, version);
@@ -315,6 +931,61 @@ public class MigrationManager {
         }
     }
 
+    /**
+     * Включает перенос откатанных записей в таблицу {@code migration_history_archive}: записи копируются
+     * в архив и удаляются из {@code migration_history} в транзакции отката.
+     */
+    private static boolean isArchiveEnabled() {
+        return Boolean.parseBoolean(PropertiesUtils.getProperty("history.archive.enabled", "false"));
+    }
+
+    private static int countAppliedMigrations(Connection connection) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(COUNT_APPLIED_MIGRATIONS);
+             ResultSet rs = statement.executeQuery()) {
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+
+    /**
+     * Применяет к пустой базе данных самый поздний сжатый базовый скрипт, если он есть.
+     */
+    private static void applySquashedBaseline(Connection connection) throws SQLException {
+        List<File> squashedFiles = MigrationFileReader.findSquashedBaselineFiles(PATH_TO_MIGRATION_FOLDER);
+        if (squashedFiles.isEmpty()) {
+            return;
+        }
+        File latest = squashedFiles.get(squashedFiles.size() - 1);
+        log.info("История миграций пуста. Применяется сжатый базовый скрипт {}", latest.getName());
+        MigrationExecutor.executeSquashedBaseline(connection, latest);
+    }
+
+    /**
+     * Проверяет, что откат не затрагивает версии, покрытые базовой версией ({@code baseline}): откат очищает
+     * таблицы и выполняет миграции заново, а данные принятой под управление базы данных так не восстановить.
+     *
+     * @param plan          План миграций.
+     * @param oldestVersion Самая старая откатываемая версия.
+     * @return {@code true}, если откат можно выполнить.
+     */
+    private static boolean isRollbackAboveBaseline(MigrationPlan plan, String oldestVersion) {
+        if (plan.isCoveredByBaseline(oldestVersion)) {
+            log.error("Откат версии {} невозможен: она не выше базовой версии {}.", oldestVersion,
+                    plan.getBaselineVersion());
+            return false;
+        }
+        warnAboutBaseline(plan);
+        return true;
+    }
+
+    private static void warnAboutBaseline(MigrationPlan plan) {
+        if (plan.getBaselineVersion() != null) {
+            log.warn("База данных принята под управление базовой версией {}: откат очищает таблицы и выполняет "
+                    + "только миграции после нее, данные, существовавшие до базовой версии, не восстанавливаются.",
+                    plan.getBaselineVersion());
+        }
+    }
+
     private static boolean isMigrationAlreadyApplied(File migrationFile, Connection connection) throws SQLException {
         String migrationVersion = MigrationFileReader.getVersionFromFile(migrationFile);
         try (PreparedStatement statement = connection.prepareStatement(CHECK_MIGRATION_ALREADY_APPLIED)) {
@@ -325,29 +996,62 @@ public class MigrationManager {
         }
     }
 
-    private static void acquireLock() {
-        String sql = "SELECT pg_advisory_lock(19)";
+    /**
+     * Захватывает блокировку миграций (в PostgreSQL — advisory-блокировку).
+     * Блокировка принадлежит сессии, поэтому возвращаемое соединение должно оставаться открытым
+     * до вызова {@link #releaseLock(Connection)}.
+     *
+     * @return Соединение, удерживающее блокировку.
+     */
+    private static Connection acquireLock() {
+        DatabaseDialect dialect = DatabaseDialects.get();
+
+        LockEvent event = new LockEvent();
+        event.begin();
 
-        try (Connection connection = ConnectionManager.getConnection();
-             PreparedStatement statement = connection.prepareStatement(sql)) {
-            statement.execute();
+        Connection connection = null;
+        try {
+            connection = ConnectionManager.getConnection();
+            boolean acquired = dialect.tryLock(connection, MIGRATION_LOCK_ID);
+            if (!acquired) {
+                log.info("Блокировка миграций удерживается другим процессом. Ожидание освобождения...");
+                dialect.lock(connection, MIGRATION_LOCK_ID);
+            }
+
+            event.end();
+            if (event.shouldCommit()) {
+                event.lockId = MIGRATION_LOCK_ID;
+                event.waited = !acquired;
+                event.commit();
+            }
+            return connection;
         } catch (SQLException e) {
             log.error("Ошибка во время захвата блокировки.", e);
+            closeQuietly(connection);
             throw new RuntimeException("Error acquiring migration lock", e);
         }
     }
 
-    private static void releaseLock() {
-        String sql = "SELECT pg_advisory_unlock(19)";
-        try (Connection connection = ConnectionManager.getConnection();
-             PreparedStatement statement = connection.prepareStatement(sql)) {
-            statement.execute();
+    private static void releaseLock(Connection lockConnection) {
+        try (Connection connection = lockConnection) {
+            DatabaseDialects.get().unlock(connection, MIGRATION_LOCK_ID);
         } catch (SQLException e) {
             log.error("Ошибка во время освобождения блокировки.", e);
             throw new RuntimeException("Error releasing migration lock", e);
         }
     }
 
+    private static void closeQuietly(Connection connection) {
+        if (connection == null) {
+            return;
+        }
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            log.warn("Не удалось закрыть соединение: {}", e.getMessage());
+        }
+    }
+
 }
 
 
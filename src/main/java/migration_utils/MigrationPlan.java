@@ -0,0 +1,201 @@
+package migration_utils;
+
+import monitoring.PlanEvent;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.*;
+
+/**
+ * План миграций: сопоставление локальных файлов миграций с таблицей {@code migration_history}.
+ * <p>
+ * История загружается одним запросом, после чего для каждого файла определяется его состояние:
+ * <ul>
+ *     <li>{@link State#APPLIED} — миграция уже применена;</li>
+ *     <li>{@link State#BASELINE} — версия не выше базовой ({@code baseline}) и считается примененной;</li>
+ *     <li>{@link State#PENDING} — миграция ожидает применения.</li>
+ * </ul>
+ * Повторяемые миграции ({@code R__<описание>.sql}) находятся в состоянии {@link State#PENDING}, если их
+ * контрольная сумма отличается от сохраненной в истории, и применяются после версионных миграций.
+ * </p>
+ */
+public class MigrationPlan {
+
+    /**
+     * Тип записи истории для обычной SQL-миграции.
+     */
+    public static final String TYPE_SQL = "SQL";
+
+    /**
+     * Тип синтетической записи истории, созданной командой {@code baseline}.
+     */
+    public static final String TYPE_BASELINE = "BASELINE";
+
+    /**
+     * Тип записи истории для повторяемой миграции.
+     */
+    public static final String TYPE_REPEATABLE = "REPEATABLE";
+
+    private static final String SELECT_APPLIED_MIGRATIONS = """
+        SELECT version, type, checksum
+        FROM migration_history
+        WHERE reverted = FALSE
+        AND status = TRUE
+    """;
+
+    public enum State {
+        APPLIED, BASELINE, PENDING
+    }
+
+    /**
+     * Элемент плана.
+     *
+     * @param file    Файл миграции.
+     * @param version Версия миграции (для повторяемой миграции — ее ключ).
+     * @param state   Состояние миграции относительно истории.
+     */
+    public record Entry(File file, String version, State state) {
+    }
+
+    private final List<Entry> entries;
+    private final List<Entry> repeatableEntries;
+    private final String baselineVersion;
+
+    private MigrationPlan(List<Entry> entries, List<Entry> repeatableEntries, String baselineVersion) {
+        this.entries = entries;
+        this.repeatableEntries = repeatableEntries;
+        this.baselineVersion = baselineVersion;
+    }
+
+    /**
+     * Строит план миграций для указанных файлов.
+     *
+     * @param connection     Соединение с базой данных.
+     * @param migrationFiles Файлы миграций, отсортированные по версии.
+     * @return План миграций.
+     * @throws SQLException Если не удалось прочитать историю миграций.
+     */
+    public static MigrationPlan build(Connection connection, List<File> migrationFiles) throws SQLException {
+        return build(connection, migrationFiles, List.of());
+    }
+
+    /**
+     * Строит план миграций для версионных и повторяемых миграций.
+     * Контрольные суммы повторяемых миграций сравниваются с историей, загруженной тем же единственным запросом.
+     *
+     * @param connection      Соединение с базой данных.
+     * @param migrationFiles  Файлы версионных миграций, отсортированные по версии.
+     * @param repeatableFiles Файлы повторяемых миграций.
+     * @return План миграций.
+     * @throws SQLException Если не удалось прочитать историю миграций.
+     */
+    public static MigrationPlan build(Connection connection, List<File> migrationFiles,
+                                      List<File> repeatableFiles) throws SQLException {
+        PlanEvent event = new PlanEvent();
+        event.begin();
+
+        Set<String> appliedVersions = new HashSet<>();
+        Map<String, String> repeatableChecksums = new HashMap<>();
+        String baselineVersion = null;
+
+        try (PreparedStatement statement = connection.prepareStatement(SELECT_APPLIED_MIGRATIONS);
+             ResultSet rs = statement.executeQuery()) {
+            while (rs.next()) {
+                String version = rs.getString("version");
+                String type = rs.getString("type");
+                if (TYPE_REPEATABLE.equals(type)) {
+                    repeatableChecksums.put(version, rs.getString("checksum"));
+                    continue;
+                }
+                appliedVersions.add(version);
+                if (TYPE_BASELINE.equals(type)
+                        && (baselineVersion == null || MigrationFileReader.compareVersions(version, baselineVersion) > 0)) {
+                    baselineVersion = version;
+                }
+            }
+        }
+
+        List<Entry> entries = new ArrayList<>(migrationFiles.size());
+        for (File file : migrationFiles) {
+            String version = MigrationFileReader.getVersionFromFile(file);
+            State state;
+            if (baselineVersion != null && MigrationFileReader.compareVersions(version, baselineVersion) <= 0) {
+                state = State.BASELINE;
+            } else if (appliedVersions.contains(version)) {
+                state = State.APPLIED;
+            } else {
+                state = State.PENDING;
+            }
+            entries.add(new Entry(file, version, state));
+        }
+
+        List<Entry> repeatableEntries = new ArrayList<>(repeatableFiles.size());
+        for (File file : repeatableFiles) {
+            String key = MigrationFileReader.getRepeatableKey(file);
+            String checksum = MigrationTemplates.checksum(file);
+            State state = checksum.equals(repeatableChecksums.get(key)) ? State.APPLIED : State.PENDING;
+            repeatableEntries.add(new Entry(file, key, state));
+        }
+
+        MigrationPlan plan = new MigrationPlan(Collections.unmodifiableList(entries),
+                Collections.unmodifiableList(repeatableEntries), baselineVersion);
+
+        event.end();
+        if (event.shouldCommit()) {
+            event.migrationFiles = migrationFiles.size();
+            event.pendingMigrations = plan.getPendingFiles().size();
+            event.pendingRepeatables = plan.getPendingRepeatableFiles().size();
+            event.baselineVersion = baselineVersion;
+            event.commit();
+        }
+        return plan;
+    }
+
+    public List<Entry> getEntries() {
+        return entries;
+    }
+
+    /**
+     * @return Файлы миграций, ожидающих применения, в порядке возрастания версии.
+     */
+    public List<File> getPendingFiles() {
+        return entries.stream()
+                .filter(entry -> entry.state() == State.PENDING)
+                .map(Entry::file)
+                .toList();
+    }
+
+    public List<Entry> getRepeatableEntries() {
+        return repeatableEntries;
+    }
+
+    /**
+     * @return Повторяемые миграции, которые новы или изменились с момента последнего применения.
+     */
+    public List<File> getPendingRepeatableFiles() {
+        return repeatableEntries.stream()
+                .filter(entry -> entry.state() == State.PENDING)
+                .map(Entry::file)
+                .toList();
+    }
+
+    /**
+     * @return Базовая версия или {@code null}, если команда {@code baseline} не выполнялась.
+     */
+    public String getBaselineVersion() {
+        return baselineVersion;
+    }
+
+    /**
+     * Проверяет, покрывается ли версия базовой записью.
+     *
+     * @param version Версия миграции.
+     * @return {@code true}, если версия не выше базовой.
+     */
+    public boolean isCoveredByBaseline(String version) {
+        return baselineVersion != null && MigrationFileReader.compareVersions(version, baselineVersion) <= 0;
+    }
+}
@@ -0,0 +1,120 @@
+package migration_utils;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.File;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Упреждающее чтение миграций.
+ * <p>
+ * Виртуальный поток читает, хеширует, подставляет плейсхолдеры и разбирает следующие миграции, пока текущая
+ * выполняется в базе данных. Подготовленные миграции передаются через очередь ограниченной емкости:
+ * при заполнении очереди чтение приостанавливается, поэтому в очереди находится не более {@code depth}
+ * подготовленных скриптов. Разобранные шаблоны небольших файлов дополнительно остаются в кэше
+ * {@link MigrationTemplates}, крупные файлы в нем не хранятся (см. {@code migrate.template.cache.max.bytes}).
+ * Миграции выдаются строго в порядке версий; ошибка подготовки файла выбрасывается из {@link #next()}
+ * только после выдачи всех предшествующих миграций.
+ * </p>
+ */
+@Slf4j
+public class MigrationPrefetcher implements Iterator<PreparedMigration>, AutoCloseable {
+
+    /**
+     * Результат подготовки одного файла: миграция или ошибка.
+     */
+    private record Item(PreparedMigration migration, Throwable error) {
+    }
+
+    private final BlockingQueue<Item> queue;
+    private final Thread worker;
+    private final int total;
+    private int consumed;
+
+    /**
+     * Запускает упреждающее чтение.
+     *
+     * @param files        Файлы миграций в порядке выполнения.
+     * @param placeholders Значения плейсхолдеров.
+     * @param depth        Максимальное количество подготовленных миграций в очереди.
+     */
+    public MigrationPrefetcher(List<File> files, Map<String, String> placeholders, int depth) {
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, depth));
+        this.total = files.size();
+        this.worker = Thread.ofVirtual()
+                .name("migration-prefetch")
+                .start(() -> prefetch(files, placeholders));
+    }
+
+    private void prefetch(List<File> files, Map<String, String> placeholders) {
+        try {
+            for (File file : files) {
+                Item item;
+                try {
+                    item = new Item(MigrationExecutor.prepare(file, placeholders), null);
+                } catch (Throwable e) {
+                    // Любая ошибка передается в next(), иначе ожидающий поток выполнения не дождется миграции
+                    item = new Item(null, e);
+                }
+                queue.put(item);
+                if (item.error() != null) {
+                    return;
+                }
+            }
+        } catch (InterruptedException e) {
+            log.debug("Упреждающее чтение миграций остановлено.");
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        return consumed < total;
+    }
+
+    /**
+     * Возвращает следующую подготовленную миграцию, ожидая ее подготовки при необходимости.
+     *
+     * @return Подготовленная миграция.
+     * @throws RuntimeException Ошибка подготовки файла миграции.
+     * @throws Error             Ошибка виртуальной машины при подготовке файла, например нехватка памяти.
+     */
+    @Override
+    public PreparedMigration next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        Item item;
+        try {
+            item = queue.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Ожидание подготовки миграции прервано", e);
+        }
+        if (item.error() != null) {
+            consumed = total;
+            if (item.error() instanceof RuntimeException e) {
+                throw e;
+            }
+            if (item.error() instanceof Error e) {
+                throw e;
+            }
+            throw new IllegalStateException("Ошибка подготовки миграции", item.error());
+        }
+        consumed++;
+        return item.migration();
+    }
+
+    /**
+     * Останавливает упреждающее чтение, например если выполнение миграции завершилось ошибкой.
+     */
+    @Override
+    public void close() {
+        worker.interrupt();
+        queue.clear();
+    }
+}
@@ -0,0 +1,315 @@
+package migration_utils;
+
+import database.DatabaseDialect;
+import database.DatabaseDialects;
+import lombok.extern.slf4j.Slf4j;
+import utils.PropertiesUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.sql.*;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Репетиция {@code migrate} на одноразовой копии базы данных.
+ * <p>
+ * Копия создается на сервере репетиции, заданном свойством {@code rehearse.url} (URL служебной базы данных
+ * этого сервера, например {@code jdbc:postgresql://localhost:5432/postgres}; учетные данные —
+ * {@code rehearse.username} и {@code rehearse.password}, по умолчанию те же, что у целевой базы данных).
+ * Если свойство не задано, копия создается на целевом сервере. Копия восстанавливается из локального дампа
+ * (свойство {@code rehearse.dump.path}) либо, если дамп не задан и копия создается на том же сервере, что и
+ * целевая база данных, создается командой {@code CREATE DATABASE ... TEMPLATE} из целевой базы данных. На копии
+ * выполняется план ожидающих миграций с замером времени каждого запроса и фиксацией блокировок, которые
+ * он захватывает, после чего копия удаляется (если не задано {@code rehearse.keep=true}), а в
+ * {@code System.out} выводится отчет.
+ * </p>
+ * <p>
+ * Для {@code TEMPLATE} к исходной базе данных не должно быть других подключений; для рабочей базы данных
+ * следует использовать дамп.
+ * </p>
+ */
+@Slf4j
+public class MigrationRehearsal {
+
+    private static final Pattern DATABASE_IN_URL = Pattern.compile("^(jdbc:postgresql://[^/]*/)([^?]+)(.*)$");
+
+    private static final String DUMP_PATH = PropertiesUtils.getProperty("rehearse.dump.path", "");
+    private static final String PG_RESTORE_PATH = PropertiesUtils.getProperty("rehearse.pg_restore.path", "pg_restore");
+    private static final String PSQL_PATH = PropertiesUtils.getProperty("rehearse.psql.path", "psql");
+    private static final boolean KEEP_CLONE =
+            Boolean.parseBoolean(PropertiesUtils.getProperty("rehearse.keep", "false"));
+    private static final int SLOWEST_STATEMENTS = 10;
+
+    /**
+     * Сервер, на котором создается копия.
+     *
+     * @param source   Имя целевой базы данных.
+     * @param adminUrl URL служебной базы данных сервера копии, через которую копия создается и удаляется.
+     * @param cloneUrl URL копии.
+     * @param separate {@code true}, если копия создается не на сервере целевой базы данных.
+     */
+    public record CloneServer(String source, String adminUrl, String cloneUrl, boolean separate) {
+    }
+
+    /**
+     * Результат выполнения одного запроса на копии.
+     *
+     * @param migration Имя файла миграции.
+     * @param line      Номер строки запроса в файле.
+     * @param sql       Текст запроса.
+     * @param millis    Время выполнения в миллисекундах.
+     * @param locks     Блокировки, впервые захваченные этим запросом ({@code таблица:режим}).
+     */
+    public record StatementTiming(String migration, int line, String sql, long millis, List<String> locks) {
+    }
+
+    private MigrationRehearsal() {
+    }
+
+    /**
+     * Выполняет репетицию ожидающих миграций и выводит отчет.
+     *
+     * @throws SQLException Если возникает ошибка при работе с базой данных.
+     * @throws IOException  Если не удалось восстановить дамп.
+     */
+    public static void rehearse() throws SQLException, IOException {
+        String username = PropertiesUtils.getProperty("rehearse.username",
+                PropertiesUtils.getProperty("db.username", "root"));
+        String password = PropertiesUtils.getProperty("rehearse.password",
+                PropertiesUtils.getProperty("db.password", "root"));
+        String suffix = "_rehearsal_" + LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMddHHmmss"));
+        CloneServer server = resolveServer(PropertiesUtils.getProperty("db.url"),
+                PropertiesUtils.getProperty("rehearse.url", ""), suffix);
+        if (server.separate() && DUMP_PATH.isEmpty()) {
+            throw new IllegalArgumentException("Копия на сервере rehearse.url создается только из дампа: "
+                    + "задайте rehearse.dump.path.");
+        }
+        if (!server.separate()) {
+            log.warn("Копия создается на сервере целевой базы данных; для репетиции на отдельном сервере "
+                    + "задайте rehearse.url.");
+        }
+        String clone = server.source() + suffix;
+        String adminUrl = server.adminUrl();
+        String cloneUrl = server.cloneUrl();
+
+        long cloneStart = System.nanoTime();
+        try (Connection admin = DriverManager.getConnection(adminUrl, username, password)) {
+            createClone(admin, server.source(), clone, cloneUrl, username, password);
+        }
+        long cloneMillis = (System.nanoTime() - cloneStart) / 1_000_000;
+        log.info("Копия {} создана за {} мс.", clone, cloneMillis);
+
+        try {
+            List<StatementTiming> timings;
+            long runStart = System.nanoTime();
+            try (Connection connection = DriverManager.getConnection(cloneUrl, username, password)) {
+                timings = runPendingPlan(connection);
+            }
+            long runMillis = (System.nanoTime() - runStart) / 1_000_000;
+            printReport(System.out, clone, cloneMillis, runMillis, timings);
+        } finally {
+            if (KEEP_CLONE) {
+                log.info("Копия {} сохранена (rehearse.keep=true).", clone);
+            } else {
+                try (Connection admin = DriverManager.getConnection(adminUrl, username, password);
+                     Statement statement = admin.createStatement()) {
+                    statement.execute("DROP DATABASE IF EXISTS " + quote(clone));
+                    log.info("Копия {} удалена.", clone);
+                }
+            }
+        }
+    }
+
+    /**
+     * Определяет сервер, на котором создается копия.
+     *
+     * @param targetUrl   URL целевой базы данных ({@code db.url}).
+     * @param rehearseUrl URL служебной базы данных сервера репетиции ({@code rehearse.url}) или пустая строка,
+     *                    если копия создается на целевом сервере (через служебную базу данных {@code postgres}).
+     * @param cloneSuffix Суффикс, добавляемый к имени целевой базы данных в имени копии.
+     * @return Сервер копии.
+     * @throws IllegalArgumentException Если URL не имеет вид {@code jdbc:postgresql://host:port/database}.
+     */
+    public static CloneServer resolveServer(String targetUrl, String rehearseUrl, String cloneSuffix) {
+        Matcher target = matchDatabaseUrl(targetUrl);
+        String source = target.group(2);
+        if (rehearseUrl == null || rehearseUrl.isBlank()) {
+            return new CloneServer(source, target.group(1) + "postgres" + target.group(3),
+                    target.group(1) + source + cloneSuffix + target.group(3), false);
+        }
+        Matcher rehearse = matchDatabaseUrl(rehearseUrl);
+        return new CloneServer(source, rehearseUrl,
+                rehearse.group(1) + source + cloneSuffix + rehearse.group(3),
+                !rehearse.group(1).equalsIgnoreCase(target.group(1)));
+    }
+
+    private static Matcher matchDatabaseUrl(String url) {
+        Matcher matcher = DATABASE_IN_URL.matcher(url);
+        if (!matcher.matches()) {
+            throw new IllegalArgumentException("Репетиция поддерживается только для URL вида "
+                    + "jdbc:postgresql://host:port/database: " + url);
+        }
+        return matcher;
+    }
+
+    private static void createClone(Connection admin, String source, String clone, String cloneUrl,
+                                    String username, String password) throws SQLException, IOException {
+        try (Statement statement = admin.createStatement()) {
+            if (DUMP_PATH.isEmpty()) {
+                statement.execute("CREATE DATABASE " + quote(clone) + " TEMPLATE " + quote(source));
+                return;
+            }
+            statement.execute("CREATE DATABASE " + quote(clone));
+        }
+
+        List<String> command = DUMP_PATH.endsWith(".sql")
+                ? List.of(PSQL_PATH, "--quiet", "--set=ON_ERROR_STOP=1", "--file=" + DUMP_PATH,
+                "--dbname=" + cloneUrl.replaceFirst("^jdbc:", ""), "--username=" + username)
+                : List.of(PG_RESTORE_PATH, "--no-owner", "--no-privileges", "--exit-on-error",
+                "--dbname=" + cloneUrl.replaceFirst("^jdbc:", ""), "--username=" + username, DUMP_PATH);
+        ProcessBuilder builder = new ProcessBuilder(command).inheritIO();
+        builder.environment().put("PGPASSWORD", password);
+        try {
+            int exitCode = builder.start().waitFor();
+            if (exitCode != 0) {
+                throw new IOException("Восстановление дампа " + DUMP_PATH + " завершилось с кодом " + exitCode);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Восстановление дампа прервано", e);
+        }
+    }
+
+    /**
+     * Выполняет ожидающие миграции на копии в одной транзакции, как {@code migrate}, замеряя каждый запрос.
+     * Нетранзакционные миграции выполняются в режиме автофиксации; индексы в них строятся последовательно.
+     * Параметры сеанса миграций устанавливаются так же, как в {@code migrate}. Таблица истории не изменяется.
+     *
+     * @param connection Соединение с копией.
+     * @return Время и новые блокировки каждого запроса; последним идет {@code COMMIT}.
+     * @throws SQLException Если возникает ошибка при выполнении миграции; транзакция откатывается.
+     */
+    public static List<StatementTiming> runPendingPlan(Connection connection) throws SQLException {
+        List<File> pendingFiles = MigrationManager.findPendingFiles(connection);
+        log.info("Репетиция: ожидающих миграций {}.", pendingFiles.size());
+
+        Map<String, String> placeholders = MigrationExecutor.withBuiltInPlaceholders(connection,
+                MigrationTemplates.defaultPlaceholders());
+        List<StatementTiming> timings = new ArrayList<>();
+        Set<String> heldLocks = new HashSet<>();
+
+        connection.setAutoCommit(false);
+        DatabaseDialect dialect = DatabaseDialects.get();
+        try (Statement statement = connection.createStatement()) {
+            for (File file : pendingFiles) {
+                PreparedMigration migration = MigrationExecutor.prepare(file, placeholders);
+                boolean transactional = migration.directives().transactional();
+                if (!transactional) {
+                    // Как и в migrate, нетранзакционная миграция выполняется после фиксации предыдущих
+                    connection.commit();
+                    connection.setAutoCommit(true);
+                }
+                SessionSettings.Applied settings = SessionSettings.apply(connection,
+                        SessionSettings.withDefaults(migration.directives().settings()), transactional);
+                MigrationExecutor.forEachStatement(migration, (sqlStatement, copyData) -> {
+                    long start = System.nanoTime();
+                    try {
+                        if (copyData != null) {
+                            dialect.copyIn(connection, sqlStatement.sql(), copyData);
+                        } else {
+                            statement.execute(sqlStatement.sql());
+                        }
+                    } catch (SQLException e) {
+                        log.error("Репетиция: ошибка в {}, строка {}.", file.getName(), sqlStatement.line());
+                        throw e;
+                    }
+                    long millis = (System.nanoTime() - start) / 1_000_000;
+
+                    List<String> newLocks = new ArrayList<>();
+                    for (String lock : readOwnLocks(connection)) {
+                        if (heldLocks.add(lock)) {
+                            newLocks.add(lock);
+                        }
+                    }
+                    timings.add(new StatementTiming(file.getName(), sqlStatement.line(), sqlStatement.sql(),
+                            millis, newLocks));
+                });
+                settings.restore(connection);
+                if (!transactional) {
+                    connection.setAutoCommit(false);
+                }
+            }
+            long commitStart = System.nanoTime();
+            connection.commit();
+            timings.add(new StatementTiming("COMMIT", 0, "COMMIT",
+                    (System.nanoTime() - commitStart) / 1_000_000, List.of()));
+        } catch (SQLException e) {
+            // Ошибка в нетранзакционной миграции возникает в режиме автофиксации, где откат недопустим
+            if (!connection.getAutoCommit()) {
+                connection.rollback();
+            }
+            throw e;
+        }
+        return timings;
+    }
+
+    private static List<String> readOwnLocks(Connection connection) throws SQLException {
+        String query = DatabaseDialects.get().selectOwnLocks();
+        if (query == null) {
+            return List.of();
+        }
+        List<String> locks = new ArrayList<>();
+        try (Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery(query)) {
+            while (rs.next()) {
+                locks.add(rs.getString("relname") + ":" + rs.getString("mode"));
+            }
+        }
+        return locks;
+    }
+
+    private static void printReport(PrintStream out, String clone, long cloneMillis, long runMillis,
+                                    List<StatementTiming> timings) {
+        out.println("Репетиция миграций на копии " + clone);
+        out.println(String.format("| %-40s | %-6s | %-10s | %-40s | %-50s |",
+                "Миграция", "Строка", "Время, мс", "Новые блокировки", "Запрос"));
+        out.println("|" + "-".repeat(160) + "|");
+
+        Map<String, Long> perMigration = new LinkedHashMap<>();
+        for (StatementTiming timing : timings) {
+            perMigration.merge(timing.migration(), timing.millis(), Long::sum);
+            out.println(String.format("| %-40s | %-6d | %-10d | %-40s | %-50s |",
+                    timing.migration(), timing.line(), timing.millis(),
+                    String.join(", ", timing.locks()), abbreviate(timing.sql())));
+        }
+
+        out.println("Время по миграциям:");
+        perMigration.forEach((migration, millis) -> out.println(String.format("  %-40s %10d мс", migration, millis)));
+
+        out.println("Самые долгие запросы:");
+        timings.stream()
+                .sorted(Comparator.comparingLong(StatementTiming::millis).reversed())
+                .limit(SLOWEST_STATEMENTS)
+                .forEach(timing -> out.println(String.format("  %10d мс  %s:%d  %s",
+                        timing.millis(), timing.migration(), timing.line(), abbreviate(timing.sql()))));
+
+        out.println(String.format("Итого: миграций %d, запросов %d, выполнение %d мс, создание копии %d мс.",
+                perMigration.size() - (perMigration.containsKey("COMMIT") ? 1 : 0),
+                timings.size() - 1, runMillis, cloneMillis));
+        out.flush();
+    }
+
+    private static String abbreviate(String sql) {
+        String singleLine = sql.replaceAll("\\s+", " ");
+        return singleLine.length() <= 50 ? singleLine : singleLine.substring(0, 47) + "...";
+    }
+
+    private static String quote(String identifier) {
+        return "\"" + identifier.replace("\"", "\"\"") + "\"";
+    }
+}
@@ -0,0 +1,106 @@
+package migration_utils;
+
+import lombok.extern.slf4j.Slf4j;
+import utils.PropertiesUtils;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Формирует сжатый базовый скрипт ({@code B<версия>__squashed.sql}) из текущего состояния каталога базы данных.
+ * <p>
+ * Скрипт содержит схему базы данных и данные справочных таблиц (свойство {@code squash.data.tables})
+ * и получается с помощью {@code pg_dump}. Свежая база данных при выполнении {@code migrate} применяет этот скрипт
+ * вместо всей истории миграций до указанной версии, а затем только более поздние миграции.
+ * </p>
+ */
+@Slf4j
+public class MigrationSquasher {
+
+    private static final String PG_DUMP_PATH = PropertiesUtils.getProperty("squash.pg_dump.path", "pg_dump");
+    private static final String OUTPUT_FOLDER =
+            PropertiesUtils.getProperty("squash.output.folder", "src/main/resources/migrations");
+    private static final String DATA_TABLES = PropertiesUtils.getProperty("squash.data.tables", "");
+
+    private MigrationSquasher() {
+    }
+
+    /**
+     * Создает сжатый базовый скрипт для указанной версии.
+     *
+     * @param version Версия, до которой включительно сжимаются миграции.
+     * @return Путь к созданному файлу.
+     * @throws IOException Если не удалось выполнить {@code pg_dump} или записать файл.
+     */
+    public static Path squash(String version) throws IOException {
+        Path outputFolder = Path.of(OUTPUT_FOLDER);
+        Files.createDirectories(outputFolder);
+        Path output = outputFolder.resolve("B" + version + "__squashed.sql");
+
+        try (BufferedWriter writer = Files.newBufferedWriter(output, StandardCharsets.UTF_8)) {
+            writer.write("-- Сжатый базовый скрипт миграций до версии " + version
+                    + ", сформирован " + LocalDateTime.now() + "\n\n");
+
+            dump(writer, List.of("--schema-only"));
+
+            List<String> tables = Arrays.stream(DATA_TABLES.split(","))
+                    .map(String::trim)
+                    .filter(table -> !table.isEmpty())
+                    .toList();
+            if (!tables.isEmpty()) {
+                List<String> dataArgs = new ArrayList<>(List.of("--data-only", "--inserts"));
+                tables.forEach(table -> dataArgs.add("--table=" + table));
+                dump(writer, dataArgs);
+            }
+        }
+
+        log.info("Сжатый базовый скрипт сохранен в {}", output.toAbsolutePath());
+        return output;
+    }
+
+    private static void dump(Writer writer, List<String> modeArgs) throws IOException {
+        List<String> command = new ArrayList<>(List.of(
+                PG_DUMP_PATH,
+                "--dbname=" + PropertiesUtils.getProperty("db.url").replaceFirst("^jdbc:", ""),
+                "--username=" + PropertiesUtils.getProperty("db.username", "root"),
+                "--no-owner",
+                "--no-privileges",
+                "--exclude-table=migration_history*",
+                "--exclude-table=migration_state"));
+        command.addAll(modeArgs);
+
+        ProcessBuilder builder = new ProcessBuilder(command);
+        builder.environment().put("PGPASSWORD", PropertiesUtils.getProperty("db.password", "root"));
+        builder.redirectError(ProcessBuilder.Redirect.INHERIT);
+        Process process = builder.start();
+
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                // Мета-команды psql и вызовы set_config не выполняются через JDBC
+                if (line.startsWith("\\") || line.startsWith("SELECT pg_catalog.set_config")) {
+                    continue;
+                }
+                writer.write(line);
+                writer.write('\n');
+            }
+        }
+
+        try {
+            int exitCode = process.waitFor();
+            if (exitCode != 0) {
+                throw new IOException("pg_dump завершился с кодом " + exitCode);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Ожидание pg_dump прервано", e);
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package migration_utils;
+
+import database.DatabaseDialects;
+import lombok.extern.slf4j.Slf4j;
+import utils.PropertiesUtils;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HexFormat;
+import java.util.List;
+
+/**
+ * Быстрая проверка актуальности базы данных перед {@code migrate}.
+ * <p>
+ * После успешного {@code migrate} в однострочную таблицу {@code migration_state} записывается хэш локального
+ * набора миграций (версии и контрольные суммы версионных и повторяемых миграций) и наибольший {@code id} истории.
+ * При следующем запуске хэш набора вычисляется без обращения к базе данных и сравнивается с сохраненным одним
+ * запросом по первичному ключу. Если они совпадают, а история с тех пор не пополнялась, {@code migrate}
+ * завершается без захвата блокировки и построения плана. Откаты и {@code baseline} сбрасывают состояние.
+ * </p>
+ * <p>
+ * Чтобы не читать (и не распаковывать) все файлы набора при каждом запуске, рядом с хэшем содержимого хранится
+ * хэш метаданных файлов: путей, размеров и дат изменения. Контрольные суммы содержимого вычисляются, только
+ * если метаданные изменились, например после новой выгрузки того же набора на сервер.
+ * </p>
+ * <p>
+ * Проверка отключается свойством {@code migrate.fast.path.enabled=false}.
+ * </p>
+ */
+@Slf4j
+public final class MigrationState {
+
+    private static final boolean ENABLED =
+            Boolean.parseBoolean(PropertiesUtils.getProperty("migrate.fast.path.enabled", "true"));
+
+    private static final String SELECT_MATCHING_STATE = """
+        SELECT digest, files_digest
+        FROM migration_state
+        WHERE id = 1
+        AND history_id = (SELECT MAX(id) FROM migration_history)
+    """;
+
+    private static final String UPDATE_FILES_DIGEST =
+            "UPDATE migration_state SET files_digest = ? WHERE id = 1 AND digest = ?";
+
+    private static final String DELETE_STATE = "DELETE FROM migration_state";
+
+    private MigrationState() {
+    }
+
+    /**
+     * @return {@code true}, если быстрая проверка актуальности включена.
+     */
+    public static boolean isEnabled() {
+        return ENABLED;
+    }
+
+    /**
+     * Вычисляет хэш локального набора миграций.
+     *
+     * @param migrations  Версионные миграции.
+     * @param repeatables Повторяемые миграции.
+     * @return SHA-256 версий и контрольных сумм в шестнадцатеричном виде.
+     */
+    public static String digest(List<File> migrations, List<File> repeatables) {
+        MessageDigest digest = newDigest();
+        for (File file : migrations) {
+            update(digest, "V", MigrationFileReader.getVersionFromFile(file), MigrationTemplates.checksum(file));
+        }
+        for (File file : repeatables) {
+            update(digest, "R", MigrationFileReader.getRepeatableKey(file), MigrationTemplates.checksum(file));
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * Вычисляет хэш метаданных локального набора миграций без чтения файлов.
+     *
+     * @param migrations  Версионные миграции.
+     * @param repeatables Повторяемые миграции.
+     * @return SHA-256 версий, путей, размеров и дат изменения файлов в шестнадцатеричном виде.
+     */
+    public static String filesDigest(List<File> migrations, List<File> repeatables) {
+        MessageDigest digest = newDigest();
+        for (File file : migrations) {
+            update(digest, "V", MigrationFileReader.getVersionFromFile(file), metadata(file));
+        }
+        for (File file : repeatables) {
+            update(digest, "R", MigrationFileReader.getRepeatableKey(file), metadata(file));
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * Проверяет, применен ли уже локальный набор миграций. Если хэш метаданных файлов совпадает с сохраненным,
+     * файлы не читаются; иначе сравнивается хэш содержимого, и при совпадении сохраненный хэш метаданных
+     * обновляется, чтобы следующий запуск снова обошелся без чтения файлов.
+     *
+     * @param connection  Соединение с базой данных в режиме автофиксации.
+     * @param migrations  Версионные миграции.
+     * @param repeatables Повторяемые миграции.
+     * @return {@code true}, если сохраненное состояние совпадает; {@code false}, если оно отличается,
+     * сброшено или таблицы состояния еще нет.
+     */
+    public static boolean isUpToDate(Connection connection, List<File> migrations, List<File> repeatables) {
+        String digest;
+        String filesDigest;
+        try (Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery(SELECT_MATCHING_STATE)) {
+            if (!rs.next()) {
+                return false;
+            }
+            digest = rs.getString("digest");
+            filesDigest = rs.getString("files_digest");
+        } catch (SQLException e) {
+            log.debug("Состояние миграций недоступно: {}", e.getMessage());
+            return false;
+        }
+
+        String currentFilesDigest = filesDigest(migrations, repeatables);
+        if (currentFilesDigest.equals(filesDigest)) {
+            return true;
+        }
+        if (!digest.equals(digest(migrations, repeatables))) {
+            return false;
+        }
+        try (PreparedStatement statement = connection.prepareStatement(UPDATE_FILES_DIGEST)) {
+            statement.setString(1, currentFilesDigest);
+            statement.setString(2, digest);
+            statement.executeUpdate();
+        } catch (SQLException e) {
+            log.debug("Хэш метаданных миграций не обновлен: {}", e.getMessage());
+        }
+        return true;
+    }
+
+    /**
+     * Записывает хэш примененного набора миграций. Вызывается в транзакции {@code migrate} перед фиксацией.
+     *
+     * @param connection  Соединение с базой данных.
+     * @param digest      Хэш локального набора миграций (см. {@link #digest(List, List)}).
+     * @param filesDigest Хэш метаданных файлов набора (см. {@link #filesDigest(List, List)}) или {@code null}.
+     * @throws SQLException Если возникает ошибка при выполнении запроса.
+     */
+    public static void write(Connection connection, String digest, String filesDigest) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(DatabaseDialects.get().upsertState())) {
+            statement.setString(1, digest);
+            statement.setString(2, filesDigest);
+            statement.executeUpdate();
+        }
+    }
+
+    /**
+     * Сбрасывает сохраненное состояние, чтобы следующий {@code migrate} построил полный план.
+     *
+     * @param connection Соединение с базой данных.
+     * @throws SQLException Если возникает ошибка при выполнении запроса.
+     */
+    public static void invalidate(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.executeUpdate(DELETE_STATE);
+        }
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("Алгоритм SHA-256 недоступен", e);
+        }
+    }
+
+    private static String metadata(File file) {
+        return file.getAbsolutePath() + '\t' + file.length() + '\t' + file.lastModified();
+    }
+
+    private static void update(MessageDigest digest, String kind, String version, String value) {
+        String line = kind + '\t' + version + '\t' + value + '\n';
+        digest.update(line.getBytes(StandardCharsets.UTF_8));
+    }
+}
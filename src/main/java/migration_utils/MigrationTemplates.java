@@ -0,0 +1,148 @@
+package migration_utils;
+
+import utils.PlaceholderTemplate;
+import utils.PropertiesUtils;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Кэш разобранных скриптов миграций с плейсхолдерами {@code ${имя}}.
+ * <p>
+ * Каждый файл читается, хешируется и разбирается один раз; повторные обращения (например, при применении
+ * одних и тех же миграций к сотням схем арендаторов) только подставляют значения в готовый шаблон.
+ * Запись кэша сбрасывается при изменении размера или даты изменения файла. Шаблоны файлов больше
+ * {@code migrate.template.cache.max.bytes} (по умолчанию 1 МБ) не кэшируются, чтобы не держать в памяти
+ * все крупные скрипты набора: для них кэшируется только контрольная сумма.
+ * Контрольная сумма вычисляется по исходному тексту шаблона, поэтому не зависит от значений плейсхолдеров.
+ * </p>
+ * <p>
+ * Для сжатых миграций кэшируется только контрольная сумма, чтобы построение плана не распаковывало их
+ * при каждом обращении: плейсхолдеры в них подставляются в каждый запрос по мере чтения
+ * (см. {@link #render(File, String, Map)}).
+ * </p>
+ * <p>
+ * Значения по умолчанию задаются свойствами {@code placeholder.<имя>} в {@code application.properties}.
+ * </p>
+ */
+public final class MigrationTemplates {
+
+    private static final String PLACEHOLDER_PREFIX = "${";
+    private static final String PLACEHOLDER_SUFFIX = "}";
+
+    /**
+     * Разобранный скрипт миграции.
+     *
+     * @param checksum Контрольная сумма исходного текста скрипта.
+     * @param template Шаблон скрипта.
+     */
+    public record CompiledScript(String checksum, PlaceholderTemplate template) {
+    }
+
+    /**
+     * @param script Разобранный скрипт или {@code null}, если файл слишком велик для кэширования шаблона.
+     */
+    private record CacheEntry(long lastModified, long length, String checksum, CompiledScript script) {
+
+        private boolean matches(File file) {
+            return lastModified == file.lastModified() && length == file.length();
+        }
+    }
+
+    private static final long CACHE_MAX_BYTES =
+            Long.parseLong(PropertiesUtils.getProperty("migrate.template.cache.max.bytes", "1048576"));
+
+    private static final Map<Path, CacheEntry> CACHE = new ConcurrentHashMap<>();
+
+    private MigrationTemplates() {
+    }
+
+    /**
+     * Возвращает разобранный скрипт миграции, разбирая файл только при первом обращении или после его изменения.
+     *
+     * @param file Файл миграции.
+     * @return Разобранный скрипт.
+     */
+    public static CompiledScript compile(File file) {
+        Path path = file.toPath().toAbsolutePath();
+        long lastModified = file.lastModified();
+        long length = file.length();
+
+        CacheEntry entry = CACHE.get(path);
+        if (entry != null && entry.script() != null && entry.matches(file)) {
+            return entry.script();
+        }
+        String sql = MigrationFileReader.readSqlFromFile(file);
+        CompiledScript script = new CompiledScript(MigrationFileReader.calculateChecksum(sql),
+                PlaceholderTemplate.compile(sql, PLACEHOLDER_PREFIX, PLACEHOLDER_SUFFIX));
+        CACHE.put(path, new CacheEntry(lastModified, length, script.checksum(),
+                length <= CACHE_MAX_BYTES ? script : null));
+        return script;
+    }
+
+    /**
+     * Возвращает контрольную сумму скрипта миграции. Для сжатых файлов она вычисляется потоково
+     * по распакованному содержимому.
+     *
+     * @param file Файл миграции.
+     * @return Контрольная сумма исходного текста скрипта.
+     */
+    public static String checksum(File file) {
+        Path path = file.toPath().toAbsolutePath();
+        CacheEntry entry = CACHE.get(path);
+        if (entry != null && entry.matches(file)) {
+            return entry.checksum();
+        }
+        if (!MigrationFileReader.isCompressed(file)) {
+            return compile(file).checksum();
+        }
+        long lastModified = file.lastModified();
+        long length = file.length();
+        String checksum = MigrationFileReader.calculateChecksum(file);
+        CACHE.put(path, new CacheEntry(lastModified, length, checksum, null));
+        return checksum;
+    }
+
+    /**
+     * Подставляет значения плейсхолдеров в отдельный запрос потоково читаемой миграции.
+     *
+     * @param file         Файл миграции (используется в сообщении об ошибке).
+     * @param sql          Текст запроса.
+     * @param placeholders Значения плейсхолдеров.
+     * @return Запрос, готовый к выполнению.
+     * @throws IllegalArgumentException Если для плейсхолдера не задано значение.
+     */
+    public static String render(File file, String sql, Map<String, String> placeholders) {
+        PlaceholderTemplate template = PlaceholderTemplate.compile(sql, PLACEHOLDER_PREFIX, PLACEHOLDER_SUFFIX);
+        return template.isLiteral() ? sql : render(file, new CompiledScript(null, template), placeholders);
+    }
+
+    /**
+     * Подставляет значения плейсхолдеров в разобранный скрипт.
+     *
+     * @param file         Файл миграции (используется в сообщении об ошибке).
+     * @param script       Разобранный скрипт.
+     * @param placeholders Значения плейсхолдеров.
+     * @return SQL-скрипт, готовый к выполнению.
+     * @throws IllegalArgumentException Если для плейсхолдера не задано значение.
+     */
+    public static String render(File file, CompiledScript script, Map<String, String> placeholders) {
+        return script.template().render(name -> {
+            String value = placeholders.get(name);
+            if (value == null) {
+                throw new IllegalArgumentException("Не задано значение плейсхолдера ${" + name
+                        + "} в миграции " + file.getName());
+            }
+            return value;
+        });
+    }
+
+    /**
+     * @return Значения плейсхолдеров по умолчанию из свойств {@code placeholder.<имя>}.
+     */
+    public static Map<String, String> defaultPlaceholders() {
+        return PropertiesUtils.getPropertiesWithPrefix("placeholder.");
+    }
+}
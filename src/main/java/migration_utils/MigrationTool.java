@@ -1,8 +1,16 @@
 package migration_utils;
 
 import lombok.extern.slf4j.Slf4j;
+import monitoring.FlightRecording;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Scanner;
 
+import static report.MakeReport.export;
 import static report.MakeReport.exportCsv;
 import static report.MakeReport.exportJson;
 
@@ -17,6 +25,8 @@ import static report.MakeReport.exportJson;
 @Slf4j
 public class MigrationTool {
 
+    private static final String DEFAULT_JFR_FILE = "flywayclone.jfr";
+
     /**
      * Главный метод программы. Ожидает команды от пользователя либо через аргументы,
      * либо через ввод в консоль.
@@ -27,15 +37,54 @@ public class MigrationTool {
      *     <li>rollback N - Откатить N последних миграций.</li>
      *     <li>lastMigration - Показать последнюю примененную миграцию.</li>
      *     <li>rollbackToTag TAG - Откатить миграции до указанного тега.</li>
-     *     <li>info - Показать информацию о выполненных миграциях.</li>
+     *     <li>baseline VERSION - Принять существующую базу данных под управление с указанной базовой версией.</li>
+     *     <li>squash VERSION - Сформировать сжатый базовый скрипт из состояния базы данных в версии VERSION.</li>
+     *     <li>rehearse - Выполнить ожидающие миграции на одноразовой копии БД и показать время выполнения.</li>
+     *     <li>drift - Проверить, не менялась ли схема БД в обход миграций.</li>
+     *     <li>lint [PATH...] - Проверить файлы миграций на известные причины долгих и блокирующих миграций.</li>
+     *     <li>info [OPTIONS] - Показать информацию о выполненных миграциях (с фильтрами и постраничным чтением).</li>
+     *     <li>export [--formats F1,F2] [BASE_NAME] - Экспортировать историю в несколько форматов за один проход.</li>
+     *     <li>daemon [SOCKET] - Запустить резидентный процесс, принимающий команды через Unix-сокет.</li>
+     *     <li>client COMMAND - Передать команду запущенному демону.</li>
      *     <li>help - Показать список доступных команд.</li>
      *     <li>exit - Завершить работу.</li>
      * </ul>
+     * Опция {@code --jfr [FILE.jfr]} запускает запись JDK Flight Recorder на время работы
+     * и сохраняет ее в файл при завершении (по умолчанию {@code flywayclone.jfr}).
      * </p>
      *
      */
 
     public static void run(String[] args) {
+        List<String> arguments = new ArrayList<>(Arrays.asList(args));
+        int jfrIndex = arguments.indexOf("--jfr");
+        if (jfrIndex < 0) {
+            runCommands(args);
+            return;
+        }
+
+        arguments.remove(jfrIndex);
+        String destination = DEFAULT_JFR_FILE;
+        if (jfrIndex < arguments.size() && arguments.get(jfrIndex).endsWith(".jfr")) {
+            destination = arguments.remove(jfrIndex);
+        }
+
+        FlightRecording recording;
+        try {
+            recording = FlightRecording.start(Path.of(destination));
+        } catch (IOException e) {
+            log.error("Не удалось запустить запись JFR: {}", e.getMessage(), e);
+            runCommands(arguments.toArray(String[]::new));
+            return;
+        }
+        try {
+            runCommands(arguments.toArray(String[]::new));
+        } finally {
+            recording.stop();
+        }
+    }
+
+    private static void runCommands(String[] args) {
         if (args.length == 0) {
             System.out.println("Введите команду или 'help' для получения списка доступных команд:");
             try (Scanner scanner = new Scanner(System.in)) {
@@ -57,7 +106,7 @@ public class MigrationTool {
         }
     }
 
-    private static void processCommand(String[] args) {
+    static void processCommand(String[] args) {
         String command = args[0];
         log.debug("Получена команда: {}", command);
 
@@ -101,9 +150,56 @@ public class MigrationTool {
                     }
                     break;
 
+                case "baseline":
+                    if (args.length < 2) {
+                        log.error("Ошибка: Не указана версия. Используйте формат: baseline <VERSION>");
+                        printHelp();
+                    } else {
+                        String version = args[1];
+                        log.info("Установка базовой версии: {}", version);
+                        MigrationManager.baseline(version);
+                    }
+                    break;
+
+                case "squash":
+                    if (args.length < 2) {
+                        log.error("Ошибка: Не указана версия. Используйте формат: squash <VERSION>");
+                        printHelp();
+                    } else {
+                        String version = args[1];
+                        log.info("Формирование сжатого базового скрипта до версии: {}", version);
+                        MigrationManager.squash(version);
+                    }
+                    break;
+
+                case "rehearse":
+                    log.info("Репетиция миграций на копии базы данных...");
+                    MigrationManager.rehearse();
+                    break;
+
+                case "drift":
+                    log.info("Проверка расхождения схемы базы данных...");
+                    MigrationManager.drift();
+                    break;
+
+                case "lint":
+                    log.info("Проверка файлов миграций...");
+                    MigrationManager.lint(Arrays.asList(args).subList(1, args.length));
+                    break;
+
                 case "info":
-                    log.info("Получение информации о выполненных миграциях...");
-                    MigrationManager.info();
+                    InfoOptions options;
+                    try {
+                        options = InfoOptions.parse(Arrays.copyOfRange(args, 1, args.length));
+                    } catch (IllegalArgumentException e) {
+                        log.error("Ошибка: {}", e.getMessage());
+                        printHelp();
+                        break;
+                    }
+                    if (!options.compact()) {
+                        log.info("Получение информации о выполненных миграциях...");
+                    }
+                    MigrationManager.info(options);
                     break;
 
                 case "exportCsv":
@@ -126,6 +222,27 @@ public class MigrationTool {
                     }
                     break;
 
+                case "export":
+                    exportReports(Arrays.copyOfRange(args, 1, args.length));
+                    break;
+
+                case "daemon":
+                    MigrationDaemon.start(args.length < 2 ? MigrationDaemon.getSocketPath() : args[1]);
+                    break;
+
+                case "client":
+                    boolean customSocket = args.length > 2 && "--socket".equals(args[1]);
+                    int commandStart = customSocket ? 3 : 1;
+                    if (args.length <= commandStart) {
+                        log.error("Ошибка: Не указана команда для демона. Используйте формат: "
+                                + "client [--socket SOCKET] <COMMAND>");
+                        printHelp();
+                    } else {
+                        MigrationDaemon.sendCommand(customSocket ? args[2] : MigrationDaemon.getSocketPath(),
+                                Arrays.copyOfRange(args, commandStart, args.length));
+                    }
+                    break;
+
                 case "help":
                     printHelp();
                     break;
@@ -140,16 +257,48 @@ public class MigrationTool {
         }
     }
 
+    /**
+     * Разбирает аргументы команды {@code export [--formats F1,F2,...] [BASE_NAME]}.
+     */
+    private static void exportReports(String[] args) {
+        String formats = "csv,json";
+        String baseName = "migration_history";
+        for (int i = 0; i < args.length; i++) {
+            if ("--formats".equals(args[i])) {
+                if (i + 1 >= args.length) {
+                    throw new IllegalArgumentException("Не указано значение для опции --formats");
+                }
+                formats = args[++i];
+            } else {
+                baseName = args[i];
+            }
+        }
+        log.info("Экспорт истории миграций в форматы: {}", formats);
+        export(baseName, Arrays.asList(formats.split(",")));
+    }
+
     private static void printHelp() {
         System.out.println("Доступные команды:");
         System.out.println("  migrate              - Применить все миграции.");
         System.out.println("  rollback <N>         - Откатить N последних миграций.");
         System.out.println("  lastMigration        - Показать последнюю примененную миграцию.");
         System.out.println("  rollbackToTag <TAG>  - Откатить миграции до указанного тега.");
-        System.out.println("  info                 - Показать информацию о выполненных миграциях.");
+        System.out.println("  baseline <VERSION>   - Принять существующую БД под управление без выполнения миграций до VERSION.");
+        System.out.println("  squash <VERSION>     - Сформировать сжатый базовый скрипт для быстрой установки до VERSION.");
+        System.out.println("  rehearse             - Выполнить ожидающие миграции на копии БД и показать отчет о времени.");
+        System.out.println("  drift                - Сравнить схему БД с отпечатком после последней миграции.");
+        System.out.println("  lint [PATH...]       - Проверить файлы миграций на операции, блокирующие или перезаписывающие таблицы.");
+        System.out.println("  info [--limit N] [--since DATE] [--version-range FROM..TO] [--after TIMESTAMP,ID] [--format compact]");
+        System.out.println("                       - Показать информацию о выполненных миграциях.");
         System.out.println("  exportCsv <FILE_NAME>     - Экспортировать данные в CSV файл.");
         System.out.println("  exportJson <FILE_NAME>    - Экспортировать данные в JSON файл.");
+        System.out.println("  export [--formats csv,json,ndjson,columnar] [BASE_NAME]");
+        System.out.println("                       - Экспортировать данные в несколько форматов за один проход.");
+        System.out.println("  daemon [SOCKET]      - Запустить демон, принимающий команды через Unix-сокет.");
+        System.out.println("  client [--socket SOCKET] <COMMAND> - Выполнить команду в запущенном демоне (client shutdown - остановить демон).");
         System.out.println("  help                 - Показать это сообщение.");
         System.out.println("  exit                 - Завершить работу.");
+        System.out.println("Опции:");
+        System.out.println("  --jfr [FILE.jfr]     - Записать события JDK Flight Recorder и сохранить их при завершении.");
     }
 }
@@ -0,0 +1,290 @@
+package migration_utils;
+
+import database.ConnectionManager;
+import database.DatabaseDialect;
+import lombok.extern.slf4j.Slf4j;
+import monitoring.StatementProgressMonitor;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Параллельное создание индексов нетранзакционной миграции (директива {@code -- parallel-indexes: N}).
+ * <p>
+ * Запросы {@code CREATE [UNIQUE] INDEX [CONCURRENTLY]} выполняются одновременно не более чем на {@code N}
+ * соединениях из {@link ConnectionManager} (в режиме демона — из пула). Индексы одной таблицы строятся
+ * последовательно, чтобы не конфликтовать за блокировку таблицы. Любой другой запрос миграции является
+ * барьером: он выполняется только после завершения всех начатых построений, поэтому порядок зависимостей
+ * скрипта сохраняется.
+ * </p>
+ * <p>
+ * Каждому построению нужно соединение, а при включенном наблюдении за ходом выполнения — еще одно для опроса,
+ * поэтому в режиме демона число построений ограничивается свободными соединениями пула (см. {@link #parallelism}):
+ * иначе построения ждали бы соединений, занятых самой миграцией.
+ * </p>
+ * <p>
+ * После ошибки новые построения не начинаются, а недостроенные индексы (например, оставшиеся после ошибки
+ * {@code CREATE INDEX CONCURRENTLY}) удаляются. Индексы без имени в запросе удалить нельзя: их имя
+ * выбирает СУБД.
+ * </p>
+ */
+@Slf4j
+class ParallelIndexBuilder implements AutoCloseable {
+
+    private static final String IDENTIFIER = "(?:\"(?:[^\"]|\"\")+\"|[A-Za-z_][A-Za-z0-9_$]*)";
+    private static final String QUALIFIED = IDENTIFIER + "(?:\\." + IDENTIFIER + ")?";
+
+    private static final Pattern CREATE_INDEX = Pattern.compile(
+            "^\\s*CREATE\\s+(?:UNIQUE\\s+)?INDEX\\s+(?:CONCURRENTLY\\s+)?(?:IF\\s+NOT\\s+EXISTS\\s+)?"
+                    + "(?:(?!ON\\b)(" + QUALIFIED + ")\\s+)?ON\\s+(?:ONLY\\s+)?(" + QUALIFIED + ")",
+            Pattern.CASE_INSENSITIVE);
+
+    /**
+     * Запрос создания индекса.
+     *
+     * @param statement Запрос.
+     * @param index     Имя индекса, как оно записано в запросе, или {@code null}, если имя не указано.
+     * @param table     Таблица, как она записана в запросе.
+     */
+    record IndexBuild(SqlStatementSplitter.SqlStatement statement, String index, String table) {
+
+        /**
+         * @return Ключ последовательного выполнения: имя таблицы без схемы и кавычек.
+         */
+        String tableKey() {
+            String name = table.substring(table.lastIndexOf('.') + 1);
+            return name.startsWith("\"") ? name.substring(1, name.length() - 1) : name.toLowerCase(Locale.ROOT);
+        }
+    }
+
+    private final DatabaseDialect dialect;
+    private final String version;
+    private final Map<String, String> settings;
+    private final MigrationCancellation cancellation;
+    private final ExecutorService executor;
+    private final ThreadLocal<Connection> workerConnection = new ThreadLocal<>();
+    private final Map<Connection, SessionSettings.Applied> connections = new ConcurrentHashMap<>();
+    private final Map<Connection, Integer> backendPids = new ConcurrentHashMap<>();
+    private final Map<String, CompletableFuture<Void>> tails = new HashMap<>();
+    private final Set<String> indexes = new LinkedHashSet<>();
+    private volatile boolean failed;
+
+    /**
+     * @param dialect     Диалект базы данных.
+     * @param version     Версия миграции (для журнала).
+     * @param parallelism Максимальное количество одновременно создаваемых индексов и соединений.
+     * @param settings    Параметры сеанса миграции, устанавливаемые на соединениях построения.
+     * @param cancellation Контроллер отмены, прерывающий построения, или {@code null}.
+     */
+    ParallelIndexBuilder(DatabaseDialect dialect, String version, int parallelism, Map<String, String> settings,
+                         MigrationCancellation cancellation) {
+        this.dialect = dialect;
+        this.version = version;
+        this.settings = settings;
+        this.cancellation = cancellation;
+        this.executor = Executors.newFixedThreadPool(parallelism,
+                Thread.ofVirtual().name("index-build-" + version + "-", 0).factory());
+    }
+
+    /**
+     * Ограничивает запрошенное директивой число одновременных построений свободными соединениями пула.
+     * Соединения миграции и блокировки к этому моменту уже получены и в свободные не входят.
+     *
+     * @param requested Значение директивы {@code -- parallel-indexes}.
+     * @param version   Версия миграции (для журнала).
+     * @return Число одновременных построений; {@code 1} означает построение на основном соединении миграции.
+     */
+    static int parallelism(int requested, String version) {
+        int connectionsPerBuild = StatementProgressMonitor.isEnabled() ? 2 : 1;
+        int capacity = ConnectionManager.availableConnections() / connectionsPerBuild;
+        if (requested <= capacity) {
+            return requested;
+        }
+        int parallelism = Math.max(1, capacity);
+        log.warn("Миграция {}: в пуле свободно соединений на {} построений индексов из {} запрошенных, "
+                + "индексы строятся в {} поток(а). Увеличьте daemon.pool.size.", version, capacity, requested, parallelism);
+        return parallelism;
+    }
+
+    /**
+     * Распознает запрос создания индекса. Комментарии перед запросом не учитываются.
+     *
+     * @param statement Запрос миграции.
+     * @return Описание построения индекса или {@code null}, если это другой запрос.
+     */
+    static IndexBuild parse(SqlStatementSplitter.SqlStatement statement) {
+        Matcher matcher = CREATE_INDEX.matcher(TableReferenceExtractor.stripLeadingComments(statement.sql()));
+        return matcher.find() ? new IndexBuild(statement, matcher.group(1), matcher.group(2)) : null;
+    }
+
+    /**
+     * Начинает построение индекса после уже начатых построений индексов той же таблицы.
+     *
+     * @param build Построение индекса.
+     */
+    void submit(IndexBuild build) {
+        if (build.index() != null) {
+            indexes.add(build.index());
+        }
+        tails.compute(build.tableKey(), (table, previous) -> previous == null
+                ? CompletableFuture.runAsync(() -> run(build), executor)
+                : previous.thenRunAsync(() -> run(build), executor));
+    }
+
+    /**
+     * Ожидает завершения всех начатых построений.
+     *
+     * @throws SQLException Первая ошибка построения; недостроенные индексы к этому моменту удалены.
+     */
+    void await(Connection connection) throws SQLException {
+        if (tails.isEmpty()) {
+            return;
+        }
+        List<Throwable> errors = new ArrayList<>();
+        for (CompletableFuture<Void> tail : tails.values()) {
+            try {
+                tail.join();
+            } catch (CompletionException e) {
+                errors.add(e.getCause());
+            }
+        }
+        tails.clear();
+        if (errors.isEmpty()) {
+            return;
+        }
+
+        dropInvalidIndexes(connection);
+        Throwable first = errors.get(0);
+        SQLException exception = first instanceof SQLException sqlException
+                ? sqlException
+                : new SQLException("Ошибка при создании индекса в миграции " + version, first);
+        errors.stream().skip(1).forEach(exception::addSuppressed);
+        throw exception;
+    }
+
+    /**
+     * Проверяет, что все созданные индексы пригодны к использованию.
+     *
+     * @param connection Основное соединение миграции (в режиме автофиксации).
+     * @throws SQLException Если найдены недостроенные индексы (они удаляются).
+     */
+    void verify(Connection connection) throws SQLException {
+        await(connection);
+        List<String> invalid = dropInvalidIndexes(connection);
+        if (!invalid.isEmpty()) {
+            throw new SQLException("Индексы миграции " + version + " недостроены и удалены: "
+                    + String.join(", ", invalid));
+        }
+    }
+
+    /**
+     * Прекращает построения после ошибки миграции: ожидает уже начатые и удаляет недостроенные индексы.
+     *
+     * @param connection Основное соединение миграции.
+     * @param error      Ошибка миграции, к которой добавляются ошибки построений и очистки.
+     */
+    void abort(Connection connection, Exception error) {
+        failed = true;
+        try {
+            await(connection);
+            dropInvalidIndexes(connection);
+        } catch (SQLException e) {
+            if (e != error) {
+                error.addSuppressed(e);
+            }
+        }
+    }
+
+    private void run(IndexBuild build) {
+        if (failed) {
+            throw new CompletionException(new SQLException("Построение индекса " + build.index()
+                    + " отменено из-за ошибки другого индекса"));
+        }
+        SqlStatementSplitter.SqlStatement sqlStatement = build.statement();
+        try {
+            Connection connection = connection();
+            Integer pid = backendPids.get(connection);
+            long start = System.currentTimeMillis();
+            try (Statement statement = connection.createStatement();
+                 MigrationCancellation.Registration registration =
+                         cancellation != null ? cancellation.track(statement, pid) : null;
+                 StatementProgressMonitor ignored = StatementProgressMonitor.start(dialect, pid,
+                         "миграция " + version + ", строка " + sqlStatement.line())) {
+                if (cancellation != null) {
+                    cancellation.checkpoint();
+                }
+                statement.execute(sqlStatement.sql());
+            }
+            log.info("Индекс {} на {} построен за {} мс.", build.index() != null ? build.index() : "(без имени)",
+                    build.table(), System.currentTimeMillis() - start);
+        } catch (SQLException e) {
+            failed = true;
+            log.error("Ошибка при создании индекса (миграция {}, строка {}): {}", version, sqlStatement.line(),
+                    e.getMessage());
+            throw new CompletionException(e);
+        }
+    }
+
+    private Connection connection() throws SQLException {
+        Connection connection = workerConnection.get();
+        if (connection == null) {
+            connection = ConnectionManager.getConnection();
+            connection.setAutoCommit(true);
+            try {
+                connections.put(connection, SessionSettings.apply(connection, settings, false));
+                Integer pid = dialect.backendPid(connection);
+                if (pid != null) {
+                    backendPids.put(connection, pid);
+                }
+            } catch (SQLException e) {
+                connection.close();
+                throw e;
+            }
+            workerConnection.set(connection);
+        }
+        return connection;
+    }
+
+    private List<String> dropInvalidIndexes(Connection connection) throws SQLException {
+        if (indexes.isEmpty()) {
+            return List.of();
+        }
+        List<String> invalid = dialect.findInvalidIndexes(connection, indexes);
+        for (String index : invalid) {
+            log.warn("Удаление недостроенного индекса {}.", index);
+            dialect.dropIndex(connection, index);
+        }
+        return invalid;
+    }
+
+    /**
+     * Останавливает потоки построения и закрывает их соединения.
+     */
+    @Override
+    public void close() {
+        executor.shutdownNow();
+        for (Map.Entry<Connection, SessionSettings.Applied> entry : connections.entrySet()) {
+            Connection connection = entry.getKey();
+            try (connection) {
+                entry.getValue().restore(connection);
+            } catch (SQLException e) {
+                log.debug("Не удалось закрыть соединение построения индексов: {}", e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package migration_utils;
+
+import java.io.File;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Миграция, подготовленная к выполнению: файл прочитан, контрольная сумма вычислена,
+ * плейсхолдеры подставлены, а скрипт разбит на отдельные запросы.
+ * <p>
+ * Сжатые миграции ({@link MigrationFileReader#isCompressed(File)}) заранее не читаются: их запросы
+ * и контрольная сумма получаются при потоковом выполнении (см. {@link MigrationExecutor#forEachStatement}).
+ * </p>
+ *
+ * @param file         Файл миграции.
+ * @param checksum     Контрольная сумма исходного текста скрипта или {@code null} для потоковой миграции.
+ * @param statements   Запросы скрипта в порядке выполнения или {@code null} для потоковой миграции.
+ * @param placeholders Значения плейсхолдеров, подставляемые при потоковом чтении.
+ * @param directives   Директивы из заголовка скрипта.
+ */
+public record PreparedMigration(File file, String checksum, List<SqlStatementSplitter.SqlStatement> statements,
+                                Map<String, String> placeholders, MigrationDirectives directives) {
+
+    public PreparedMigration(File file, String checksum, List<SqlStatementSplitter.SqlStatement> statements) {
+        this(file, checksum, statements, Map.of(), MigrationDirectives.DEFAULT);
+    }
+
+    /**
+     * @param file         Сжатый файл миграции.
+     * @param placeholders Значения плейсхолдеров.
+     * @param directives   Директивы из заголовка скрипта.
+     * @return Миграция, запросы которой читаются из файла во время выполнения.
+     */
+    public static PreparedMigration streamed(File file, Map<String, String> placeholders,
+                                             MigrationDirectives directives) {
+        return new PreparedMigration(file, null, null, placeholders, directives);
+    }
+
+    /**
+     * @return {@code true}, если запросы миграции читаются из файла во время выполнения.
+     */
+    public boolean isStreamed() {
+        return statements == null;
+    }
+}
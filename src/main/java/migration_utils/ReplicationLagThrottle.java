@@ -0,0 +1,242 @@
+package migration_utils;
+
+import database.DatabaseDialect;
+import database.DatabaseDialects;
+import lombok.extern.slf4j.Slf4j;
+import utils.PropertiesUtils;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Притормаживание {@code migrate} при отставании потоковых реплик.
+ * <p>
+ * Тяжелые миграции порождают большой объем журнала, и реплики, обслуживающие чтение, начинают отдавать
+ * устаревшие данные. Если включено свойство {@code replication.throttle.enabled}, отставание проверяется
+ * перед каждой миграцией и внутри миграции после запросов, изменивших в сумме не менее
+ * {@code replication.check.rows} строк. Пока отставание больше {@code replication.max.lag.ms} миллисекунд
+ * или {@code replication.max.lag.bytes} байт ({@code 0} — не проверять), выполнение приостанавливается
+ * с опросом раз в {@code replication.poll.interval.ms}. Суммарное ожидание за весь {@code migrate}
+ * ограничено {@code replication.max.wait.ms}; после этого {@code migrate} прерывается.
+ * </p>
+ * <p>
+ * Отставание читается на основном сервере из {@code pg_stat_replication} через соединение миграции либо,
+ * если задано {@code replication.replica.url}, на реплике через отдельное соединение
+ * ({@code replication.replica.username}, {@code replication.replica.password}; по умолчанию — как у основной
+ * базы данных). Пауза внутри транзакционной миграции продлевает удержание ее блокировок; отмена {@code migrate}
+ * (см. {@link MigrationCancellation}) прерывает ее сразу.
+ * </p>
+ */
+@Slf4j
+public class ReplicationLagThrottle implements AutoCloseable {
+
+    /**
+     * Отставание реплик.
+     *
+     * @param millis Отставание воспроизведения в миллисекундах.
+     * @param bytes  Отставание воспроизведения в байтах журнала.
+     */
+    public record Lag(long millis, long bytes) {
+    }
+
+    /**
+     * Источник сведений об отставании.
+     */
+    @FunctionalInterface
+    public interface LagProbe {
+
+        /**
+         * @param connection Соединение миграции с основным сервером.
+         * @return Текущее отставание реплик.
+         * @throws SQLException Если возникает ошибка при выполнении запроса.
+         */
+        Lag measure(Connection connection) throws SQLException;
+    }
+
+    private final LagProbe probe;
+    private final long maxLagMs;
+    private final long maxLagBytes;
+    private final long maxWaitMs;
+    private final long pollIntervalMs;
+    private final long checkRows;
+    private final Connection replicaConnection;
+    private final MigrationCancellation cancellation;
+
+    private long waitedMs;
+    private long rowsSinceCheck;
+
+    /**
+     * @param probe          Источник сведений об отставании.
+     * @param maxLagMs       Допустимое отставание в миллисекундах.
+     * @param maxLagBytes    Допустимое отставание в байтах; {@code 0} — не проверять.
+     * @param maxWaitMs      Максимальное суммарное ожидание.
+     * @param pollIntervalMs Интервал опроса во время ожидания.
+     * @param checkRows      Количество измененных строк, после которого отставание проверяется внутри миграции.
+     */
+    public ReplicationLagThrottle(LagProbe probe, long maxLagMs, long maxLagBytes, long maxWaitMs,
+                                  long pollIntervalMs, long checkRows) {
+        this(probe, maxLagMs, maxLagBytes, maxWaitMs, pollIntervalMs, checkRows, null, null);
+    }
+
+    /**
+     * @param probe          Источник сведений об отставании.
+     * @param maxLagMs       Допустимое отставание в миллисекундах.
+     * @param maxLagBytes    Допустимое отставание в байтах; {@code 0} — не проверять.
+     * @param maxWaitMs      Максимальное суммарное ожидание.
+     * @param pollIntervalMs Интервал опроса во время ожидания.
+     * @param checkRows      Количество измененных строк, после которого отставание проверяется внутри миграции.
+     * @param cancellation   Контроллер отмены, прерывающий ожидание, или {@code null}.
+     */
+    public ReplicationLagThrottle(LagProbe probe, long maxLagMs, long maxLagBytes, long maxWaitMs,
+                                  long pollIntervalMs, long checkRows, MigrationCancellation cancellation) {
+        this(probe, maxLagMs, maxLagBytes, maxWaitMs, pollIntervalMs, checkRows, null, cancellation);
+    }
+
+    private ReplicationLagThrottle(LagProbe probe, long maxLagMs, long maxLagBytes, long maxWaitMs,
+                                   long pollIntervalMs, long checkRows, Connection replicaConnection,
+                                   MigrationCancellation cancellation) {
+        this.probe = probe;
+        this.maxLagMs = maxLagMs;
+        this.maxLagBytes = maxLagBytes;
+        this.maxWaitMs = maxWaitMs;
+        this.pollIntervalMs = pollIntervalMs;
+        this.checkRows = checkRows;
+        this.replicaConnection = replicaConnection;
+        this.cancellation = cancellation;
+    }
+
+    /**
+     * Создает проверку с параметрами из {@code application.properties}.
+     *
+     * @param cancellation Контроллер отмены, прерывающий ожидание, или {@code null}.
+     * @return Проверка отставания или {@code null}, если она выключена или не поддерживается диалектом.
+     * @throws SQLException Если не удалось подключиться к реплике.
+     */
+    public static ReplicationLagThrottle fromProperties(MigrationCancellation cancellation) throws SQLException {
+        if (!Boolean.parseBoolean(PropertiesUtils.getProperty("replication.throttle.enabled", "false"))) {
+            return null;
+        }
+        DatabaseDialect dialect = DatabaseDialects.get();
+        String replicaUrl = PropertiesUtils.getProperty("replication.replica.url", "");
+        String query = replicaUrl.isBlank() ? dialect.selectReplicationLag() : dialect.selectReplicaLag();
+        if (query == null) {
+            log.warn("Диалект {} не поддерживает проверку отставания реплик, проверка отключена.", dialect.name());
+            return null;
+        }
+
+        Connection replica = null;
+        LagProbe probe = connection -> readLag(connection, query);
+        if (!replicaUrl.isBlank()) {
+            replica = DriverManager.getConnection(replicaUrl,
+                    PropertiesUtils.getProperty("replication.replica.username",
+                            PropertiesUtils.getProperty("db.username", "root")),
+                    PropertiesUtils.getProperty("replication.replica.password",
+                            PropertiesUtils.getProperty("db.password", "root")));
+            Connection replicaConnection = replica;
+            probe = ignored -> readLag(replicaConnection, query);
+        }
+        return new ReplicationLagThrottle(probe,
+                Long.parseLong(PropertiesUtils.getProperty("replication.max.lag.ms", "10000")),
+                Long.parseLong(PropertiesUtils.getProperty("replication.max.lag.bytes", "0")),
+                Long.parseLong(PropertiesUtils.getProperty("replication.max.wait.ms", "600000")),
+                Long.parseLong(PropertiesUtils.getProperty("replication.poll.interval.ms", "1000")),
+                Long.parseLong(PropertiesUtils.getProperty("replication.check.rows", "10000")),
+                replica, cancellation);
+    }
+
+    /**
+     * Ожидает, пока отставание реплик не станет допустимым.
+     *
+     * @param connection Соединение миграции с основным сервером.
+     * @throws SQLException          Если возникает ошибка при выполнении запроса или выполнение отменено.
+     * @throws IllegalStateException Если суммарное ожидание превысило {@code replication.max.wait.ms}.
+     */
+    public void await(Connection connection) throws SQLException {
+        rowsSinceCheck = 0;
+        Lag lag = probe.measure(connection);
+        if (isAcceptable(lag)) {
+            return;
+        }
+
+        log.warn("Отставание реплик {} мс, {} байт превышает допустимое ({} мс, {} байт), миграции приостановлены.",
+                lag.millis(), lag.bytes(), maxLagMs, maxLagBytes);
+        long start = System.currentTimeMillis();
+        try {
+            while (!isAcceptable(lag)) {
+                if (waitedMs + (System.currentTimeMillis() - start) >= maxWaitMs) {
+                    throw new IllegalStateException("Отставание реплик не сократилось до допустимого за "
+                            + maxWaitMs + " мс ожидания: " + lag.millis() + " мс, " + lag.bytes() + " байт.");
+                }
+                pause();
+                lag = probe.measure(connection);
+            }
+        } finally {
+            waitedMs += System.currentTimeMillis() - start;
+        }
+        log.info("Реплики догнали основной сервер ({} мс, {} байт), миграции продолжены.", lag.millis(), lag.bytes());
+    }
+
+    /**
+     * Учитывает строки, измененные запросом миграции, и проверяет отставание, когда их набралось
+     * не меньше {@code replication.check.rows}.
+     *
+     * @param connection Соединение миграции с основным сервером.
+     * @param rows       Количество строк, измененных запросом.
+     * @throws SQLException          Если возникает ошибка при выполнении запроса.
+     * @throws IllegalStateException Если суммарное ожидание превысило {@code replication.max.wait.ms}.
+     */
+    public void afterStatement(Connection connection, long rows) throws SQLException {
+        rowsSinceCheck += rows;
+        if (rowsSinceCheck >= checkRows) {
+            await(connection);
+        }
+    }
+
+    /**
+     * @return Суммарное время ожидания реплик в миллисекундах.
+     */
+    public long getWaitedMs() {
+        return waitedMs;
+    }
+
+    private void pause() throws SQLException {
+        if (cancellation != null) {
+            cancellation.pause(pollIntervalMs);
+            return;
+        }
+        try {
+            Thread.sleep(pollIntervalMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Ожидание реплик прервано", e);
+        }
+    }
+
+    private boolean isAcceptable(Lag lag) {
+        return lag.millis() <= maxLagMs && (maxLagBytes <= 0 || lag.bytes() <= maxLagBytes);
+    }
+
+    private static Lag readLag(Connection connection, String query) throws SQLException {
+        try (Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery(query)) {
+            return rs.next() ? new Lag(rs.getLong("lag_ms"), rs.getLong("lag_bytes")) : new Lag(0, 0);
+        }
+    }
+
+    /**
+     * Закрывает соединение с репликой.
+     */
+    @Override
+    public void close() {
+        if (replicaConnection != null) {
+            try {
+                replicaConnection.close();
+            } catch (SQLException e) {
+                log.debug("Не удалось закрыть соединение с репликой: {}", e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,253 @@
+package migration_utils;
+
+import database.DatabaseDialect;
+import database.DatabaseDialects;
+import utils.PropertiesUtils;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Array;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Отпечаток схемы базы данных: хэш определений всех объектов управляемых схем.
+ * <p>
+ * Отпечаток снимается одним запросом к системному каталогу (см. {@link DatabaseDialect#selectSchemaObjects()})
+ * после каждой миграции и сохраняется в ее записи истории вместе со сжатым списком объектов. Команда
+ * {@code drift} снимает отпечаток заново и сравнивает его с последним сохраненным: при совпадении хэшей
+ * схема не менялась в обход миграций, иначе сравниваются списки объектов и выводятся добавленные, удаленные
+ * и измененные объекты.
+ * </p>
+ * <p>
+ * Управляемые схемы задаются свойством {@code drift.schemas} (через запятую, по умолчанию — текущая схема
+ * соединения). Снятие отпечатка отключается свойством {@code drift.fingerprint.enabled=false}.
+ * </p>
+ */
+public final class SchemaFingerprint {
+
+    private static final boolean ENABLED =
+            Boolean.parseBoolean(PropertiesUtils.getProperty("drift.fingerprint.enabled", "true"));
+    private static final String SCHEMAS = PropertiesUtils.getProperty("drift.schemas", "");
+
+    /**
+     * Количество шестнадцатеричных символов хэша отдельного объекта.
+     */
+    private static final int OBJECT_HASH_LENGTH = 16;
+
+    private static final Comparator<SchemaObject> ORDER =
+            Comparator.comparing(SchemaObject::kind).thenComparing(SchemaObject::name);
+
+    /**
+     * Объект схемы.
+     *
+     * @param kind Вид объекта: {@code table}, {@code view}, {@code sequence}, {@code column}, {@code index},
+     *             {@code constraint} или {@code function}.
+     * @param name Полное имя объекта.
+     * @param hash Хэш определения объекта.
+     */
+    public record SchemaObject(String kind, String name, String hash) {
+    }
+
+    private final String digest;
+    private final List<SchemaObject> objects;
+
+    private SchemaFingerprint(String digest, List<SchemaObject> objects) {
+        this.digest = digest;
+        this.objects = objects;
+    }
+
+    /**
+     * @return {@code true}, если отпечаток схемы снимается после каждой миграции.
+     */
+    public static boolean isEnabled() {
+        return ENABLED;
+    }
+
+    /**
+     * Снимает отпечаток управляемых схем.
+     *
+     * @param connection Соединение с базой данных; видит в том числе незафиксированные изменения своей транзакции.
+     * @return Отпечаток схемы или {@code null}, если диалект не поддерживает отпечаток схемы.
+     * @throws SQLException Если возникает ошибка при выполнении запроса.
+     */
+    public static SchemaFingerprint capture(Connection connection) throws SQLException {
+        String query = DatabaseDialects.get().selectSchemaObjects();
+        if (query == null) {
+            return null;
+        }
+
+        MessageDigest objectDigest = sha256();
+        List<SchemaObject> objects = new ArrayList<>();
+        Array schemas = connection.createArrayOf("text", schemas(connection));
+        try (PreparedStatement statement = connection.prepareStatement(query)) {
+            int parameters = statement.getParameterMetaData().getParameterCount();
+            for (int i = 1; i <= parameters; i++) {
+                statement.setArray(i, schemas);
+            }
+            try (ResultSet rs = statement.executeQuery()) {
+                while (rs.next()) {
+                    String definition = rs.getString("definition");
+                    byte[] hash = objectDigest.digest(
+                            (definition != null ? definition : "").getBytes(StandardCharsets.UTF_8));
+                    objects.add(new SchemaObject(rs.getString("kind"), rs.getString("name"),
+                            HexFormat.of().formatHex(hash).substring(0, OBJECT_HASH_LENGTH)));
+                }
+            }
+        } finally {
+            schemas.free();
+        }
+        objects.sort(ORDER);
+        return new SchemaFingerprint(digest(objects), List.copyOf(objects));
+    }
+
+    /**
+     * Восстанавливает отпечаток, сохраненный в истории миграций.
+     *
+     * @param digest  Хэш схемы.
+     * @param encoded Сжатый список объектов (см. {@link #encodeObjects()}) или {@code null}, если он не сохранен.
+     * @return Отпечаток схемы; без списка объектов сравнение возможно только по хэшу.
+     * @throws IllegalArgumentException Если список объектов поврежден.
+     */
+    public static SchemaFingerprint decode(String digest, String encoded) {
+        if (encoded == null) {
+            return new SchemaFingerprint(digest, null);
+        }
+        List<SchemaObject> objects = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new GZIPInputStream(new ByteArrayInputStream(Base64.getDecoder().decode(encoded))),
+                StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] parts = line.split("\t", -1);
+                if (parts.length != 3) {
+                    throw new IllegalArgumentException("Поврежден список объектов отпечатка схемы: " + line);
+                }
+                objects.add(new SchemaObject(parts[0], parts[1], parts[2]));
+            }
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Не удалось прочитать список объектов отпечатка схемы", e);
+        }
+        return new SchemaFingerprint(digest, List.copyOf(objects));
+    }
+
+    /**
+     * @return Хэш схемы (SHA-256 в шестнадцатеричном виде).
+     */
+    public String digest() {
+        return digest;
+    }
+
+    /**
+     * @return Объекты схемы, упорядоченные по виду и имени, или {@code null}, если список не сохранен.
+     */
+    public List<SchemaObject> objects() {
+        return objects;
+    }
+
+    /**
+     * @return Список объектов, сжатый GZIP и закодированный в Base64, для хранения в истории.
+     */
+    public String encodeObjects() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (Writer writer = new OutputStreamWriter(new GZIPOutputStream(bytes), StandardCharsets.UTF_8)) {
+            for (SchemaObject object : objects) {
+                writer.write(line(object));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return Base64.getEncoder().encodeToString(bytes.toByteArray());
+    }
+
+    /**
+     * Сравнивает текущую схему с ожидаемой.
+     *
+     * @param expected Ожидаемый отпечаток (из истории миграций).
+     * @return Описания отличий, например {@code "изменен index public.users_email_idx"}; пустой список,
+     * если схемы совпадают. Если у ожидаемого отпечатка нет списка объектов, отличие описывается одной строкой.
+     */
+    public List<String> diff(SchemaFingerprint expected) {
+        if (digest.equals(expected.digest)) {
+            return List.of();
+        }
+        if (expected.objects == null) {
+            return List.of("хэш схемы " + digest + " не совпадает с сохраненным " + expected.digest
+                    + " (список объектов не сохранен)");
+        }
+
+        Map<String, SchemaObject> previous = index(expected.objects);
+        Map<String, SchemaObject> current = index(objects);
+        List<String> differences = new ArrayList<>();
+        for (Map.Entry<String, SchemaObject> entry : previous.entrySet()) {
+            SchemaObject actual = current.get(entry.getKey());
+            if (actual == null) {
+                differences.add("удален " + entry.getKey());
+            } else if (!actual.hash().equals(entry.getValue().hash())) {
+                differences.add("изменен " + entry.getKey());
+            }
+        }
+        for (String key : current.keySet()) {
+            if (!previous.containsKey(key)) {
+                differences.add("добавлен " + key);
+            }
+        }
+        return differences;
+    }
+
+    private static Object[] schemas(Connection connection) throws SQLException {
+        if (SCHEMAS.isBlank()) {
+            return new Object[]{connection.getSchema()};
+        }
+        return Arrays.stream(SCHEMAS.split(",")).map(String::trim).filter(s -> !s.isEmpty()).toArray();
+    }
+
+    private static Map<String, SchemaObject> index(List<SchemaObject> objects) {
+        Map<String, SchemaObject> result = new TreeMap<>();
+        for (SchemaObject object : objects) {
+            result.put(object.kind() + " " + object.name(), object);
+        }
+        return result;
+    }
+
+    private static String digest(List<SchemaObject> objects) {
+        MessageDigest digest = sha256();
+        for (SchemaObject object : objects) {
+            digest.update(line(object).getBytes(StandardCharsets.UTF_8));
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private static String line(SchemaObject object) {
+        return object.kind() + '\t' + object.name() + '\t' + object.hash() + '\n';
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("Алгоритм SHA-256 недоступен", e);
+        }
+    }
+}
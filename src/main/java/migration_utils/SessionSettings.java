@@ -0,0 +1,190 @@
+package migration_utils;
+
+import database.DatabaseDialects;
+import lombok.extern.slf4j.Slf4j;
+import utils.PropertiesUtils;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.StringJoiner;
+import java.util.regex.Pattern;
+
+/**
+ * Параметры сеанса, с которыми выполняется миграция, например {@code maintenance_work_mem} для построения индексов.
+ * <p>
+ * Параметры задаются директивой {@code -- set: имя=значение, ...} в заголовке миграции (см.
+ * {@link MigrationDirectives}) и значениями по умолчанию для всех миграций в свойстве
+ * {@code migrate.session.settings} того же формата; директива миграции переопределяет значение по умолчанию.
+ * В транзакционной миграции параметры устанавливаются до конца транзакции ({@code SET LOCAL}), в нетранзакционной —
+ * на сеанс. После миграции прежние значения восстанавливаются, поэтому следующие миграции общей транзакции
+ * и возвращаемое в пул соединение их не наследуют.
+ * </p>
+ */
+@Slf4j
+public final class SessionSettings {
+
+    private static final Pattern NAME = Pattern.compile("[a-z_][a-z0-9_]*(\\.[a-z_][a-z0-9_]*)?");
+
+    /**
+     * Запятая, за которой следует очередное {@code имя=}: запятые внутри значения (например, в
+     * {@code search_path=a, b}) разделителем не считаются.
+     */
+    private static final Pattern SEPARATOR = Pattern.compile(",\\s*(?=[A-Za-z_][A-Za-z0-9_.]*\\s*=)");
+
+    private static final Map<String, String> DEFAULTS =
+            parse(PropertiesUtils.getProperty("migrate.session.settings", ""));
+
+    private SessionSettings() {
+    }
+
+    /**
+     * Установленные для миграции параметры и их прежние значения.
+     */
+    public static final class Applied {
+
+        private static final Applied NONE = new Applied(Map.of(), Map.of(), false);
+
+        private final Map<String, String> settings;
+        private final Map<String, String> previous;
+        private final boolean local;
+
+        private Applied(Map<String, String> settings, Map<String, String> previous, boolean local) {
+            this.settings = settings;
+            this.previous = previous;
+            this.local = local;
+        }
+
+        /**
+         * @return Установленные параметры в порядке установки.
+         */
+        public Map<String, String> settings() {
+            return settings;
+        }
+
+        /**
+         * @return Установленные параметры в виде {@code имя=значение, ...} или {@code null}, если их нет.
+         */
+        public String describe() {
+            return format(settings);
+        }
+
+        /**
+         * Восстанавливает прежние значения параметров.
+         *
+         * @param connection Соединение, на котором параметры были установлены.
+         * @throws SQLException Если возникает ошибка при выполнении запроса.
+         */
+        public void restore(Connection connection) throws SQLException {
+            for (Map.Entry<String, String> entry : previous.entrySet()) {
+                DatabaseDialects.get().setSessionSetting(connection, entry.getKey(), entry.getValue(), local);
+            }
+        }
+    }
+
+    /**
+     * Разбирает список параметров вида {@code имя=значение, имя=значение}. Значение можно заключить
+     * в одинарные кавычки.
+     *
+     * @param value Список параметров.
+     * @return Параметры в порядке перечисления.
+     * @throws IllegalArgumentException Если имя или значение параметра имеет неверный формат.
+     */
+    public static Map<String, String> parse(String value) {
+        Map<String, String> settings = new LinkedHashMap<>();
+        if (value == null || value.isBlank()) {
+            return settings;
+        }
+        for (String item : SEPARATOR.split(value.strip())) {
+            int separator = item.indexOf('=');
+            if (separator < 0) {
+                throw new IllegalArgumentException("Параметр сеанса должен иметь вид имя=значение: " + item);
+            }
+            String name = item.substring(0, separator).strip().toLowerCase(Locale.ROOT);
+            String setting = unquote(item.substring(separator + 1).strip());
+            if (!NAME.matcher(name).matches()) {
+                throw new IllegalArgumentException("Неверное имя параметра сеанса: " + name);
+            }
+            if (setting.isEmpty()) {
+                throw new IllegalArgumentException("Не задано значение параметра сеанса " + name);
+            }
+            settings.put(name, setting);
+        }
+        return settings;
+    }
+
+    /**
+     * @param settings Параметры из директивы миграции.
+     * @return Параметры по умолчанию из {@code migrate.session.settings}, дополненные и переопределенные
+     * параметрами миграции.
+     */
+    public static Map<String, String> withDefaults(Map<String, String> settings) {
+        if (DEFAULTS.isEmpty()) {
+            return settings;
+        }
+        Map<String, String> result = new LinkedHashMap<>(DEFAULTS);
+        result.putAll(settings);
+        return result;
+    }
+
+    /**
+     * Устанавливает параметры сеанса. Если диалект не поддерживает параметры сеанса, они не устанавливаются.
+     *
+     * @param connection Соединение, выполняющее миграцию.
+     * @param settings   Параметры.
+     * @param local      {@code true} — до конца текущей транзакции, {@code false} — на сеанс.
+     * @return Установленные параметры и их прежние значения.
+     * @throws SQLException Если возникает ошибка при установке параметра, например неизвестное имя.
+     */
+    public static Applied apply(Connection connection, Map<String, String> settings, boolean local)
+            throws SQLException {
+        if (settings.isEmpty()) {
+            return Applied.NONE;
+        }
+        Map<String, String> previous = new LinkedHashMap<>();
+        try {
+            for (Map.Entry<String, String> entry : settings.entrySet()) {
+                previous.put(entry.getKey(), DatabaseDialects.get()
+                        .setSessionSetting(connection, entry.getKey(), entry.getValue(), local));
+            }
+        } catch (SQLFeatureNotSupportedException e) {
+            log.warn("Параметры сеанса {} не установлены: {}", format(settings), e.getMessage());
+            return Applied.NONE;
+        } catch (SQLException e) {
+            if (!local) {
+                try {
+                    new Applied(settings, previous, false).restore(connection);
+                } catch (SQLException restoreError) {
+                    e.addSuppressed(restoreError);
+                }
+            }
+            throw e;
+        }
+        log.debug("Параметры сеанса: {}.", format(settings));
+        return new Applied(Collections.unmodifiableMap(new LinkedHashMap<>(settings)), previous, local);
+    }
+
+    /**
+     * @param settings Параметры.
+     * @return Параметры в виде {@code имя=значение, ...} или {@code null}, если их нет.
+     */
+    public static String format(Map<String, String> settings) {
+        if (settings.isEmpty()) {
+            return null;
+        }
+        StringJoiner joiner = new StringJoiner(", ");
+        settings.forEach((name, value) -> joiner.add(name + '=' + value));
+        return joiner.toString();
+    }
+
+    private static String unquote(String value) {
+        if (value.length() >= 2 && value.startsWith("'") && value.endsWith("'")) {
+            return value.substring(1, value.length() - 1);
+        }
+        return value;
+    }
+}
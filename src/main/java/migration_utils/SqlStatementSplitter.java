@@ -0,0 +1,415 @@
+package migration_utils;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.regex.Pattern;
+
+/**
+ * Разбивает SQL-скрипт на отдельные запросы по символу {@code ;}.
+ * <p>
+ * Скрипт читается потоково, поэтому в памяти находится только текущий запрос. Точка с запятой не считается
+ * разделителем внутри строковых литералов, идентификаторов в двойных кавычках, комментариев
+ * ({@code --} и {@code /* *}{@code /}) и блоков в долларовых кавычках ({@code $$ ... $$}, {@code $tag$ ... $tag$}).
+ * </p>
+ * <p>
+ * После запроса {@code COPY ... FROM STDIN} следуют строки данных до строки {@code \.}, как в дампах {@code psql}.
+ * При потоковом чтении данные доступны через {@link #openCopyData()} сразу после получения такого запроса
+ * и пропускаются, если не были прочитаны; {@link #split(String)} сохраняет их в {@link SqlStatement#copyData()}.
+ * </p>
+ */
+public class SqlStatementSplitter implements Iterator<SqlStatementSplitter.SqlStatement> {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private static final Pattern COPY_FROM_STDIN = Pattern.compile("^COPY\\b.*\\bFROM\\s+STDIN\\b.*",
+            Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+
+    /**
+     * Отдельный SQL-запрос скрипта.
+     *
+     * @param sql      Текст запроса без завершающей точки с запятой.
+     * @param line     Номер строки скрипта, с которой начинается запрос (с единицы).
+     * @param copyData Данные запроса {@code COPY ... FROM STDIN}, если скрипт разобран целиком, иначе {@code null}.
+     */
+    public record SqlStatement(String sql, int line, String copyData) {
+
+        public SqlStatement(String sql, int line) {
+            this(sql, line, null);
+        }
+
+        /**
+         * @return {@code true}, если запрос загружает данные, следующие за ним в скрипте. Комментарии
+         * перед запросом не учитываются.
+         */
+        public boolean isCopyFromStdin() {
+            return COPY_FROM_STDIN.matcher(TableReferenceExtractor.stripLeadingComments(sql)).matches();
+        }
+    }
+
+    private final Reader reader;
+
+    /**
+     * Прочитанные из {@link #reader} блоком символы: посимвольное чтение из {@code InputStreamReader}
+     * (сжатые миграции) обходится дорого.
+     */
+    private final char[] buffer = new char[BUFFER_SIZE];
+    private int bufferPosition;
+    private int bufferLimit;
+    private int pushedBack = -2;
+    private int line = 1;
+    private SqlStatement next;
+    private boolean finished;
+    private CopyDataReader copyData;
+
+    public SqlStatementSplitter(Reader reader) {
+        this.reader = reader;
+    }
+
+    /**
+     * Разбивает скрипт, целиком находящийся в памяти.
+     *
+     * @param sql SQL-скрипт.
+     * @return Список запросов в порядке следования.
+     */
+    public static List<SqlStatement> split(String sql) {
+        List<SqlStatement> statements = new ArrayList<>();
+        SqlStatementSplitter splitter = new SqlStatementSplitter(new StringReader(sql));
+        while (splitter.hasNext()) {
+            SqlStatement statement = splitter.next();
+            if (statement.isCopyFromStdin()) {
+                try (Reader data = splitter.openCopyData()) {
+                    statement = new SqlStatement(statement.sql(), statement.line(), readAll(data));
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Ошибка при чтении данных COPY", e);
+                }
+            }
+            statements.add(statement);
+        }
+        return statements;
+    }
+
+    /**
+     * Открывает данные запроса {@code COPY ... FROM STDIN}, только что полученного из {@link #next()}.
+     * Данные читаются потоково до строки {@code \.} (не включая ее).
+     *
+     * @return Данные запроса.
+     * @throws IllegalStateException Если последний полученный запрос не является {@code COPY ... FROM STDIN}.
+     */
+    public Reader openCopyData() {
+        if (copyData == null || copyData.opened) {
+            throw new IllegalStateException("Последний запрос не является COPY ... FROM STDIN");
+        }
+        copyData.opened = true;
+        return copyData;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (next == null && !finished) {
+            try {
+                skipCopyData();
+                next = readStatement();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Ошибка при чтении SQL-скрипта", e);
+            }
+            finished = next == null;
+        }
+        return next != null;
+    }
+
+    @Override
+    public SqlStatement next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        SqlStatement result = next;
+        next = null;
+        copyData = result.isCopyFromStdin() ? new CopyDataReader() : null;
+        return result;
+    }
+
+    private void skipCopyData() throws IOException {
+        if (copyData != null) {
+            copyData.skipRemaining();
+            copyData = null;
+        }
+    }
+
+    private static String readAll(Reader reader) throws IOException {
+        StringBuilder result = new StringBuilder();
+        char[] buffer = new char[8192];
+        int read;
+        while ((read = reader.read(buffer)) != -1) {
+            result.append(buffer, 0, read);
+        }
+        return result.toString();
+    }
+
+    /**
+     * Данные {@code COPY ... FROM STDIN}: строки после запроса до строки {@code \.}.
+     */
+    private final class CopyDataReader extends Reader {
+
+        private boolean opened;
+        private boolean started;
+        private boolean atLineStart = true;
+        private boolean done;
+        private final StringBuilder pending = new StringBuilder();
+        private int pendingPosition;
+
+        @Override
+        public int read(char[] buffer, int offset, int length) throws IOException {
+            if (length == 0) {
+                return 0;
+            }
+            int count = 0;
+            while (count < length) {
+                int c = nextChar();
+                if (c == -1) {
+                    break;
+                }
+                buffer[offset + count++] = (char) c;
+            }
+            return count == 0 ? -1 : count;
+        }
+
+        private int nextChar() throws IOException {
+            if (pendingPosition < pending.length()) {
+                return pending.charAt(pendingPosition++);
+            }
+            pending.setLength(0);
+            pendingPosition = 0;
+            if (done) {
+                return -1;
+            }
+            if (!started) {
+                // Остаток строки с запросом COPY к данным не относится
+                started = true;
+                int c;
+                while ((c = SqlStatementSplitter.this.read()) != -1 && c != '\n') {
+                }
+                if (c == -1) {
+                    done = true;
+                    return -1;
+                }
+            }
+
+            int c = SqlStatementSplitter.this.read();
+            if (c == -1) {
+                done = true;
+                return -1;
+            }
+            if (atLineStart && c == '\\') {
+                int following = SqlStatementSplitter.this.read();
+                if (following == '.') {
+                    int end = SqlStatementSplitter.this.read();
+                    if (end == '\r') {
+                        end = SqlStatementSplitter.this.read();
+                    }
+                    if (end == '\n' || end == -1) {
+                        done = true;
+                        return -1;
+                    }
+                    pending.append('.').append((char) end);
+                    atLineStart = false;
+                    return c;
+                }
+                if (following != -1) {
+                    pending.append((char) following);
+                }
+                atLineStart = following == '\n';
+                return c;
+            }
+            atLineStart = c == '\n';
+            return c;
+        }
+
+        void skipRemaining() throws IOException {
+            started = started || opened;
+            while (nextChar() != -1) {
+            }
+        }
+
+        @Override
+        public void close() {
+            // Данные дочитываются при переходе к следующему запросу
+        }
+    }
+
+    private SqlStatement readStatement() throws IOException {
+        StringBuilder sql = new StringBuilder();
+        boolean meaningful = false;
+        int startLine = -1;
+
+        int c;
+        while ((c = read()) != -1) {
+            if (c == ';') {
+                if (meaningful) {
+                    return new SqlStatement(sql.toString().trim(), startLine);
+                }
+                sql.setLength(0);
+                continue;
+            }
+
+            if (!meaningful && !Character.isWhitespace(c) && !isCommentStart(c)) {
+                meaningful = true;
+                startLine = line;
+            }
+
+            sql.append((char) c);
+            switch (c) {
+                case '\'' -> readQuoted(sql, '\'', isEscapeStringPrefix(sql));
+                case '"' -> readQuoted(sql, '"', false);
+                case '-' -> readLineCommentIfPresent(sql);
+                case '/' -> readBlockCommentIfPresent(sql);
+                case '$' -> readDollarQuotedIfPresent(sql);
+                default -> {
+                }
+            }
+        }
+
+        return meaningful ? new SqlStatement(sql.toString().trim(), startLine) : null;
+    }
+
+    private boolean isCommentStart(int c) throws IOException {
+        if (c != '-' && c != '/') {
+            return false;
+        }
+        int following = peek();
+        return (c == '-' && following == '-') || (c == '/' && following == '*');
+    }
+
+    private static boolean isEscapeStringPrefix(StringBuilder sql) {
+        int length = sql.length();
+        if (length < 2) {
+            return false;
+        }
+        char prefix = sql.charAt(length - 2);
+        boolean standalone = length < 3 || !Character.isLetterOrDigit(sql.charAt(length - 3));
+        return (prefix == 'E' || prefix == 'e') && standalone;
+    }
+
+    private void readQuoted(StringBuilder sql, char quote, boolean backslashEscapes) throws IOException {
+        int c;
+        while ((c = read()) != -1) {
+            sql.append((char) c);
+            if (backslashEscapes && c == '\\') {
+                int escaped = read();
+                if (escaped != -1) {
+                    sql.append((char) escaped);
+                }
+            } else if (c == quote) {
+                if (peek() == quote) {
+                    sql.append((char) read());
+                } else {
+                    return;
+                }
+            }
+        }
+    }
+
+    private void readLineCommentIfPresent(StringBuilder sql) throws IOException {
+        if (peek() != '-') {
+            return;
+        }
+        int c;
+        while ((c = read()) != -1) {
+            sql.append((char) c);
+            if (c == '\n') {
+                return;
+            }
+        }
+    }
+
+    private void readBlockCommentIfPresent(StringBuilder sql) throws IOException {
+        if (peek() != '*') {
+            return;
+        }
+        sql.append((char) read());
+        int depth = 1;
+        int c;
+        while (depth > 0 && (c = read()) != -1) {
+            sql.append((char) c);
+            if (c == '*' && peek() == '/') {
+                sql.append((char) read());
+                depth--;
+            } else if (c == '/' && peek() == '*') {
+                sql.append((char) read());
+                depth++;
+            }
+        }
+    }
+
+    private void readDollarQuotedIfPresent(StringBuilder sql) throws IOException {
+        // Параметры вида $1 не являются началом блока в долларовых кавычках
+        int length = sql.length();
+        if (length >= 2 && (Character.isLetterOrDigit(sql.charAt(length - 2)) || sql.charAt(length - 2) == '_')) {
+            return;
+        }
+
+        StringBuilder tag = new StringBuilder("$");
+        int c;
+        while ((c = peek()) != -1 && (Character.isLetterOrDigit(c) || c == '_')) {
+            tag.append((char) read());
+        }
+        sql.append(tag, 1, tag.length());
+        if (peek() != '$' || (tag.length() > 1 && Character.isDigit(tag.charAt(1)))) {
+            return;
+        }
+        sql.append((char) read());
+        tag.append('$');
+
+        String delimiter = tag.toString();
+        int matched = 0;
+        while ((c = read()) != -1) {
+            sql.append((char) c);
+            if (c == delimiter.charAt(matched)) {
+                matched++;
+                if (matched == delimiter.length()) {
+                    return;
+                }
+            } else {
+                matched = c == '$' ? 1 : 0;
+            }
+        }
+    }
+
+    private int read() throws IOException {
+        int c;
+        if (pushedBack != -2) {
+            c = pushedBack;
+            pushedBack = -2;
+        } else {
+            c = readBuffered();
+        }
+        if (c == '\n') {
+            line++;
+        }
+        return c;
+    }
+
+    private int peek() throws IOException {
+        if (pushedBack == -2) {
+            pushedBack = readBuffered();
+        }
+        return pushedBack;
+    }
+
+    private int readBuffered() throws IOException {
+        if (bufferPosition == bufferLimit) {
+            int count = reader.read(buffer, 0, buffer.length);
+            if (count <= 0) {
+                return -1;
+            }
+            bufferPosition = 0;
+            bufferLimit = count;
+        }
+        return buffer[bufferPosition++];
+    }
+}
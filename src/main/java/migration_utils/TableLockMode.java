@@ -0,0 +1,101 @@
+package migration_utils;
+
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * Режимы табличных блокировок PostgreSQL в порядке возрастания силы и матрица их конфликтов
+ * (см. раздел «Explicit Locking» документации PostgreSQL).
+ * <p>
+ * Используется предварительной проверкой {@link BlockingTransactionPreflight}: сеанс считается блокирующим,
+ * только если удерживаемый им режим конфликтует с режимом, который нужен запросу миграции. Например, открытая
+ * транзакция, прочитавшая таблицу ({@code AccessShareLock}), не мешает {@code INSERT}, но задерживает
+ * {@code ALTER TABLE}.
+ * </p>
+ */
+public enum TableLockMode {
+
+    ACCESS_SHARE("AccessShareLock", 0b1000_0000),
+    ROW_SHARE("RowShareLock", 0b1100_0000),
+    ROW_EXCLUSIVE("RowExclusiveLock", 0b1111_0000),
+    SHARE_UPDATE_EXCLUSIVE("ShareUpdateExclusiveLock", 0b1111_1000),
+    SHARE("ShareLock", 0b1110_1100),
+    SHARE_ROW_EXCLUSIVE("ShareRowExclusiveLock", 0b1111_1100),
+    EXCLUSIVE("ExclusiveLock", 0b1111_1110),
+    ACCESS_EXCLUSIVE("AccessExclusiveLock", 0b1111_1111);
+
+    private static final Pattern CREATE_INDEX_CONCURRENTLY = Pattern.compile(
+            "^CREATE\\s+(?:UNIQUE\\s+)?INDEX\\s+CONCURRENTLY\\b");
+    private static final Pattern CREATE_INDEX = Pattern.compile("^CREATE\\s+(?:UNIQUE\\s+)?INDEX\\b");
+    private static final Pattern ROW_LOCKING_SELECT = Pattern.compile("\\bFOR\\s+(?:NO\\s+KEY\\s+)?(?:UPDATE|SHARE)\\b");
+    private static final Pattern WRITING_CTE = Pattern.compile("\\b(?:INSERT|UPDATE|DELETE|MERGE)\\b");
+    private static final Pattern DATA_CHANGE = Pattern.compile("^(?:INSERT|UPDATE|DELETE|MERGE|COPY)\\b");
+    private static final Pattern MAINTENANCE = Pattern.compile("^(?:ANALYZE|VACUUM(?!\\s+(?:\\(\\s*)?FULL\\b))\\b");
+
+    private final String pgName;
+
+    /**
+     * Режимы, с которыми конфликтует данный: бит с номером {@link #ordinal()} режима.
+     */
+    private final int conflicts;
+
+    TableLockMode(String pgName, int conflicts) {
+        this.pgName = pgName;
+        this.conflicts = conflicts;
+    }
+
+    /**
+     * @param other Другой режим.
+     * @return {@code true}, если блокировки в этих режимах не могут удерживаться одновременно разными сеансами.
+     */
+    public boolean conflictsWith(TableLockMode other) {
+        return (conflicts & (1 << other.ordinal())) != 0;
+    }
+
+    /**
+     * @param name Режим в формате колонки {@code pg_locks.mode}, например {@code RowExclusiveLock}.
+     * @return Режим или {@code null}, если это не табличная блокировка (например, предикатная {@code SIReadLock}).
+     */
+    public static TableLockMode fromPgName(String name) {
+        for (TableLockMode mode : values()) {
+            if (mode.pgName.equals(name)) {
+                return mode;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Определяет режим блокировки, который запрос захватывает на затрагиваемые таблицы. Неизвестные команды
+     * (в том числе {@code ALTER TABLE}, {@code DROP}, {@code TRUNCATE}) считаются требующими
+     * {@code ACCESS EXCLUSIVE}: лишнее предупреждение лучше пропущенной блокировки.
+     *
+     * @param sql SQL-запрос.
+     * @return Режим блокировки.
+     */
+    public static TableLockMode requiredBy(String sql) {
+        String statement = TableReferenceExtractor.stripCommentsAndLiterals(sql).strip().toUpperCase(Locale.ROOT);
+        if (CREATE_INDEX_CONCURRENTLY.matcher(statement).find()) {
+            return SHARE_UPDATE_EXCLUSIVE;
+        }
+        if (CREATE_INDEX.matcher(statement).find()) {
+            return SHARE;
+        }
+        if (statement.startsWith("WITH") && WRITING_CTE.matcher(statement).find()) {
+            return ROW_EXCLUSIVE;
+        }
+        if (statement.startsWith("SELECT") || statement.startsWith("WITH")) {
+            return ROW_LOCKING_SELECT.matcher(statement).find() ? ROW_SHARE : ACCESS_SHARE;
+        }
+        if (DATA_CHANGE.matcher(statement).find()) {
+            return ROW_EXCLUSIVE;
+        }
+        if (MAINTENANCE.matcher(statement).find()) {
+            return SHARE_UPDATE_EXCLUSIVE;
+        }
+        if (statement.startsWith("CREATE TRIGGER")) {
+            return SHARE_ROW_EXCLUSIVE;
+        }
+        return ACCESS_EXCLUSIVE;
+    }
+}
@@ -0,0 +1,129 @@
+package migration_utils;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Приблизительное определение таблиц, которые затрагивает SQL-запрос, без разбора полной грамматики.
+ * <p>
+ * Ищутся имена после {@code ALTER TABLE}, {@code CREATE INDEX ... ON}, {@code DROP TABLE}, {@code TRUNCATE},
+ * {@code INSERT INTO}, {@code UPDATE}, {@code DELETE FROM}, {@code COPY}, {@code LOCK}, {@code REFERENCES},
+ * {@code FROM} и {@code JOIN}. Лишние совпадения допустимы: имена, для которых в базе данных нет таблицы,
+ * при проверке блокировок просто не находятся.
+ * </p>
+ */
+public final class TableReferenceExtractor {
+
+    private static final String IDENTIFIER = "(?:\"(?:[^\"]|\"\")+\"|[A-Za-z_][A-Za-z0-9_$]*)";
+
+    private static final Pattern TABLE_REFERENCE = Pattern.compile(
+            "\\b(?:ALTER\\s+TABLE(?:\\s+IF\\s+EXISTS)?(?:\\s+ONLY)?"
+                    + "|DROP\\s+TABLE(?:\\s+IF\\s+EXISTS)?"
+                    + "|TRUNCATE(?:\\s+TABLE)?(?:\\s+ONLY)?"
+                    + "|INSERT\\s+INTO"
+                    + "|UPDATE(?:\\s+ONLY)?"
+                    + "|DELETE\\s+FROM(?:\\s+ONLY)?"
+                    + "|COPY"
+                    + "|LOCK(?:\\s+TABLE)?(?:\\s+ONLY)?"
+                    + "|REFERENCES"
+                    + "|JOIN"
+                    + "|FROM(?:\\s+ONLY)?"
+                    + "|ON(?:\\s+ONLY)?)"
+                    + "\\s+(" + IDENTIFIER + "(?:\\." + IDENTIFIER + ")?)",
+            Pattern.CASE_INSENSITIVE);
+
+    /**
+     * Слова, которые могут следовать за ключевыми словами шаблона, но не являются именами таблиц.
+     */
+    private static final Set<String> NOT_TABLES = Set.of(
+            "conflict", "delete", "update", "commit", "table", "only", "select", "lateral", "unnest", "generate_series");
+
+    private TableReferenceExtractor() {
+    }
+
+    /**
+     * Находит имена таблиц в SQL-запросе.
+     *
+     * @param sql SQL-запрос.
+     * @return Имена таблиц в порядке первого появления, в том виде, в котором они записаны в запросе
+     * (с именем схемы и кавычками, если они указаны).
+     */
+    public static Set<String> extract(String sql) {
+        Set<String> tables = new LinkedHashSet<>();
+        Matcher matcher = TABLE_REFERENCE.matcher(stripCommentsAndLiterals(sql));
+        while (matcher.find()) {
+            String table = matcher.group(1);
+            if (!NOT_TABLES.contains(table.toLowerCase())) {
+                tables.add(table);
+            }
+        }
+        return tables;
+    }
+
+    /**
+     * Отбрасывает пробелы и комментарии перед первым словом запроса, например заголовки
+     * {@code -- Data for Name: ...}, которые {@code pg_dump} ставит перед каждым запросом. В отличие
+     * от {@link #stripCommentsAndLiterals} остальной текст не копируется, поэтому проверка начала
+     * большого запроса обходится дешево.
+     */
+    static String stripLeadingComments(String sql) {
+        int i = 0;
+        while (i < sql.length()) {
+            if (Character.isWhitespace(sql.charAt(i))) {
+                i++;
+            } else if (sql.startsWith("--", i)) {
+                int end = sql.indexOf('\n', i);
+                i = end < 0 ? sql.length() : end + 1;
+            } else if (sql.startsWith("/*", i)) {
+                int end = sql.indexOf("*/", i + 2);
+                i = end < 0 ? sql.length() : end + 2;
+            } else {
+                break;
+            }
+        }
+        return sql.substring(i);
+    }
+
+    /**
+     * Заменяет комментарии и строковые литералы пробелами, чтобы слова внутри них не считались ссылками.
+     * Переводы строк внутри них сохраняются, чтобы номера строк результата совпадали с исходными.
+     */
+    static String stripCommentsAndLiterals(String sql) {
+        StringBuilder result = new StringBuilder(sql.length());
+        int i = 0;
+        while (i < sql.length()) {
+            int start = i;
+            char c = sql.charAt(i);
+            if (c == '-' && i + 1 < sql.length() && sql.charAt(i + 1) == '-') {
+                int end = sql.indexOf('\n', i);
+                i = end < 0 ? sql.length() : end;
+            } else if (c == '/' && i + 1 < sql.length() && sql.charAt(i + 1) == '*') {
+                int end = sql.indexOf("*/", i + 2);
+                i = end < 0 ? sql.length() : end + 2;
+            } else if (c == '\'') {
+                int end = i + 1;
+                while (end < sql.length()) {
+                    if (sql.charAt(end) == '\'') {
+                        if (end + 1 < sql.length() && sql.charAt(end + 1) == '\'') {
+                            end += 2;
+                            continue;
+                        }
+                        break;
+                    }
+                    end++;
+                }
+                i = end + 1;
+            } else {
+                result.append(c);
+                i++;
+                continue;
+            }
+            result.append(' ');
+            sql.substring(start, Math.min(i, sql.length())).chars().filter(ch -> ch == '\n')
+                    .forEach(ch -> result.append('\n'));
+        }
+        return result.toString();
+    }
+}
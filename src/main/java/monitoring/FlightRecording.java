@@ -0,0 +1,59 @@
+package monitoring;
+
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.text.ParseException;
+
+/**
+ * Запись JDK Flight Recorder на время работы утилиты.
+ * <p>
+ * Используется опцией {@code --jfr}: запись запускается с профилем {@code default} и событиями жизненного цикла
+ * миграций ({@code flywayclone.*}) и сохраняется в файл при завершении работы. Полученный файл открывается
+ * стандартными средствами JDK ({@code jfr print}, JDK Mission Control).
+ * </p>
+ */
+@Slf4j
+public class FlightRecording {
+
+    private final Recording recording;
+    private final Path destination;
+
+    private FlightRecording(Recording recording, Path destination) {
+        this.recording = recording;
+        this.destination = destination;
+    }
+
+    /**
+     * Запускает запись.
+     *
+     * @param destination Файл, в который будет сохранена запись.
+     * @return Запущенная запись.
+     * @throws IOException Если не удалось загрузить профиль записи.
+     */
+    public static FlightRecording start(Path destination) throws IOException {
+        try {
+            Recording recording = new Recording(Configuration.getConfiguration("default"));
+            recording.setName("flywayclone");
+            recording.setToDisk(true);
+            recording.setDestination(destination);
+            recording.start();
+            log.info("Запущена запись JFR: {}", destination.toAbsolutePath());
+            return new FlightRecording(recording, destination);
+        } catch (ParseException e) {
+            throw new IOException("Не удалось загрузить профиль JFR", e);
+        }
+    }
+
+    /**
+     * Останавливает запись и сохраняет ее в файл.
+     */
+    public void stop() {
+        recording.stop();
+        recording.close();
+        log.info("Запись JFR сохранена в {}", destination.toAbsolutePath());
+    }
+}
@@ -0,0 +1,20 @@
+package monitoring;
+
+import jdk.jfr.*;
+
+/**
+ * Событие JFR: запись о миграции в таблицу {@code migration_history}.
+ */
+@Name("flywayclone.HistoryWrite")
+@Label("History Write")
+@Category("FlywayClone")
+@Description("Запись в таблицу migration_history")
+@StackTrace(false)
+public class HistoryWriteEvent extends Event {
+
+    @Label("Version")
+    public String version;
+
+    @Label("Type")
+    public String type;
+}
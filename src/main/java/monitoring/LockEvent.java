@@ -0,0 +1,21 @@
+package monitoring;
+
+import jdk.jfr.*;
+
+/**
+ * Событие JFR: захват блокировки миграций, включая время ожидания, если блокировку удерживал другой процесс.
+ */
+@Name("flywayclone.Lock")
+@Label("Migration Lock")
+@Category({"FlywayClone", "Lock"})
+@Description("Захват advisory-блокировки миграций")
+@StackTrace(false)
+public class LockEvent extends Event {
+
+    @Label("Lock Id")
+    public long lockId;
+
+    @Label("Waited")
+    @Description("Блокировка удерживалась другим процессом, и пришлось ждать ее освобождения")
+    public boolean waited;
+}
@@ -0,0 +1,26 @@
+package monitoring;
+
+import jdk.jfr.*;
+
+/**
+ * Событие JFR: выполнение одной миграции целиком.
+ */
+@Name("flywayclone.Migration")
+@Label("Migration Execute")
+@Category("FlywayClone")
+@Description("Выполнение файла миграции")
+@StackTrace(false)
+public class MigrationEvent extends Event {
+
+    @Label("Version")
+    public String version;
+
+    @Label("Type")
+    public String type;
+
+    @Label("File")
+    public String file;
+
+    @Label("Statements")
+    public int statements;
+}
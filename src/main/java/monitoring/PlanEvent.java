@@ -0,0 +1,26 @@
+package monitoring;
+
+import jdk.jfr.*;
+
+/**
+ * Событие JFR: построение плана миграций.
+ */
+@Name("flywayclone.Plan")
+@Label("Migration Plan")
+@Category("FlywayClone")
+@Description("Сопоставление файлов миграций с историей")
+@StackTrace(false)
+public class PlanEvent extends Event {
+
+    @Label("Migration Files")
+    public int migrationFiles;
+
+    @Label("Pending Migrations")
+    public int pendingMigrations;
+
+    @Label("Pending Repeatables")
+    public int pendingRepeatables;
+
+    @Label("Baseline Version")
+    public String baselineVersion;
+}
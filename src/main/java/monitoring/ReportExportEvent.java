@@ -0,0 +1,23 @@
+package monitoring;
+
+import jdk.jfr.*;
+
+/**
+ * Событие JFR: экспорт отчета о миграциях.
+ */
+@Name("flywayclone.ReportExport")
+@Label("Report Export")
+@Category("FlywayClone")
+@Description("Экспорт истории миграций в файл")
+@StackTrace(false)
+public class ReportExportEvent extends Event {
+
+    @Label("Format")
+    public String format;
+
+    @Label("File")
+    public String file;
+
+    @Label("Rows")
+    public long rows;
+}
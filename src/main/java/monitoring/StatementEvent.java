@@ -0,0 +1,27 @@
+package monitoring;
+
+import jdk.jfr.*;
+
+/**
+ * Событие JFR: выполнение отдельного SQL-запроса миграции.
+ */
+@Name("flywayclone.Statement")
+@Label("Statement Execute")
+@Category("FlywayClone")
+@Description("Выполнение отдельного запроса из файла миграции")
+@StackTrace(false)
+public class StatementEvent extends Event {
+
+    @Label("Version")
+    public String version;
+
+    @Label("Line")
+    public int line;
+
+    @Label("SQL Hash")
+    @Description("Хеш текста запроса для группировки одинаковых запросов")
+    public String sqlHash;
+
+    @Label("Row Count")
+    public long rowCount;
+}
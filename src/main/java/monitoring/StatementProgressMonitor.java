@@ -0,0 +1,245 @@
+package monitoring;
+
+import database.ConnectionManager;
+import database.DatabaseDialect;
+import lombok.extern.slf4j.Slf4j;
+import utils.PropertiesUtils;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Наблюдение за ходом выполнения долгого запроса миграции.
+ * <p>
+ * Монитор запускается на время выполнения каждого запроса и с интервалом {@code progress.interval.ms}
+ * (по умолчанию 5000 мс) опрашивает представления хода выполнения СУБД по идентификатору серверного процесса
+ * миграции (в PostgreSQL — {@code pg_stat_progress_create_index}, {@code pg_stat_progress_copy},
+ * {@code pg_stat_progress_cluster} и {@code pg_stat_activity}). Опрос выполняется через отдельное соединение,
+ * которое открывается только при первом опросе, поэтому быстрые запросы не создают дополнительной нагрузки.
+ * Общий поток планировщика только запускает опросы: каждый опрос выполняется в отдельном виртуальном потоке,
+ * поэтому долгое ожидание соединения или ответа не задерживает опросы других мониторов. Пока предыдущий опрос
+ * монитора не завершен, следующий пропускается. Опрос не удерживает блокировок, поэтому {@link #close()}
+ * не ждет ни соединения, ни ответа СУБД: незавершенный опрос сам замечает закрытие и освобождает соединение.
+ * В журнал выводятся этап, процент выполнения, скорость обработки строк и оценка оставшегося времени.
+ * Наблюдение отключается свойством {@code progress.enabled=false}.
+ * </p>
+ */
+@Slf4j
+public class StatementProgressMonitor implements AutoCloseable {
+
+    private static final boolean ENABLED =
+            Boolean.parseBoolean(PropertiesUtils.getProperty("progress.enabled", "true"));
+    private static final long INTERVAL_MS =
+            Long.parseLong(PropertiesUtils.getProperty("progress.interval.ms", "5000"));
+
+    private static final StatementProgressMonitor NOOP = new StatementProgressMonitor();
+
+    private static final ScheduledExecutorService SCHEDULER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "statement-progress-monitor");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final String query;
+    private final int pid;
+    private final String label;
+    private final Progress progress;
+    /**
+     * Владение соединением опроса: соединение использует и закрывает только тот, кто установил флаг.
+     */
+    private final AtomicBoolean polling = new AtomicBoolean();
+    private final ScheduledFuture<?> future;
+
+    private Connection connection;
+    private volatile boolean closed;
+
+    private StatementProgressMonitor() {
+        this.query = null;
+        this.pid = 0;
+        this.label = null;
+        this.progress = null;
+        this.future = null;
+    }
+
+    private StatementProgressMonitor(String query, int pid, String label) {
+        this.query = query;
+        this.pid = pid;
+        this.label = label;
+        this.progress = new Progress(label, System.nanoTime());
+        this.future = SCHEDULER.scheduleAtFixedRate(this::schedulePoll, INTERVAL_MS, INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return {@code true}, если наблюдение за ходом выполнения включено.
+     */
+    public static boolean isEnabled() {
+        return ENABLED;
+    }
+
+    /**
+     * Запускает наблюдение за запросом.
+     *
+     * @param dialect Диалект базы данных.
+     * @param pid     Идентификатор серверного процесса миграции или {@code null}, если наблюдение недоступно.
+     * @param label   Описание запроса для журнала, например версия миграции и номер строки.
+     * @return Монитор, который необходимо закрыть после выполнения запроса.
+     */
+    public static StatementProgressMonitor start(DatabaseDialect dialect, Integer pid, String label) {
+        String query = dialect.selectStatementProgress();
+        if (!ENABLED || pid == null || query == null) {
+            return NOOP;
+        }
+        return new StatementProgressMonitor(query, pid, label);
+    }
+
+    private void schedulePoll() {
+        if (polling.compareAndSet(false, true)) {
+            Thread.ofVirtual().name("statement-progress-poll").start(() -> {
+                try {
+                    poll();
+                } finally {
+                    polling.set(false);
+                    // Монитор закрыт во время опроса: соединение освобождает тот, кто первым снова займет флаг
+                    if (closed && polling.compareAndSet(false, true)) {
+                        releaseConnection();
+                    }
+                }
+            });
+        }
+    }
+
+    private void poll() {
+        if (closed) {
+            return;
+        }
+        try {
+            if (connection == null) {
+                connection = ConnectionManager.getConnection();
+                if (closed) {
+                    return;
+                }
+            }
+            try (PreparedStatement statement = connection.prepareStatement(query)) {
+                statement.setInt(1, pid);
+                try (ResultSet rs = statement.executeQuery()) {
+                    if (rs.next()) {
+                        log.info(progress.describe(System.nanoTime(), rs.getString("phase"),
+                                rs.getObject("work_done", Long.class), rs.getObject("work_total", Long.class),
+                                rs.getObject("rows_done", Long.class)));
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            log.debug("Не удалось получить ход выполнения запроса {}: {}", label, e.getMessage());
+        }
+    }
+
+    /**
+     * Останавливает наблюдение и закрывает соединение опроса.
+     */
+    @Override
+    public void close() {
+        if (future == null) {
+            return;
+        }
+        future.cancel(false);
+        closed = true;
+        // Если опрос еще выполняется, соединение освободит он сам по завершении
+        if (polling.compareAndSet(false, true)) {
+            releaseConnection();
+        }
+    }
+
+    private void releaseConnection() {
+        if (connection == null) {
+            return;
+        }
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            log.debug("Не удалось закрыть соединение монитора: {}", e.getMessage());
+        }
+        connection = null;
+    }
+
+    /**
+     * Ход выполнения запроса по последовательным опросам. Счетчики {@code work_done} и {@code work_total}
+     * представлений {@code pg_stat_progress_*} начинаются заново на каждом этапе, поэтому оставшееся время
+     * оценивается по скорости внутри текущего этапа, а не по времени с начала запроса.
+     */
+    static final class Progress {
+
+        private final String label;
+        private final long startNanos;
+
+        private boolean phaseObserved;
+        private String phase;
+        private long phaseStartNanos;
+        private long phaseStartWork;
+        private long lastRows;
+        private long lastPollNanos;
+
+        Progress(String label, long startNanos) {
+            this.label = label;
+            this.startNanos = startNanos;
+            this.lastPollNanos = startNanos;
+        }
+
+        /**
+         * @param now       Время опроса ({@link System#nanoTime()}).
+         * @param phase     Этап выполнения или {@code null}, если он неизвестен.
+         * @param workDone  Выполненный объем работы этапа или {@code null}.
+         * @param workTotal Общий объем работы этапа или {@code null}.
+         * @param rowsDone  Обработано строк или {@code null}.
+         * @return Сообщение для журнала.
+         */
+        String describe(long now, String phase, Long workDone, Long workTotal, Long rowsDone) {
+            long work = workDone != null ? workDone : 0;
+            if (!phaseObserved) {
+                // Первый этап считается начавшимся вместе с запросом
+                phaseObserved = true;
+                this.phase = phase;
+                phaseStartNanos = startNanos;
+                phaseStartWork = 0;
+            } else if (!Objects.equals(phase, this.phase) || work < phaseStartWork) {
+                this.phase = phase;
+                phaseStartNanos = now;
+                phaseStartWork = work;
+            }
+
+            StringBuilder message = new StringBuilder()
+                    .append("Выполняется ").append(label)
+                    .append(" (").append(Math.round((now - startNanos) / 1e9)).append(" с): ")
+                    .append(phase != null ? phase : "нет данных");
+
+            if (workDone != null && workTotal != null && workTotal > 0) {
+                double fraction = Math.min(1.0, (double) workDone / workTotal);
+                message.append(String.format(", выполнено %.1f%%", fraction * 100));
+                long progressed = workDone - phaseStartWork;
+                double phaseSeconds = (now - phaseStartNanos) / 1e9;
+                if (progressed > 0 && phaseSeconds > 0 && workDone < workTotal) {
+                    long etaSeconds = Math.round((workTotal - workDone) * phaseSeconds / progressed);
+                    message.append(", до конца этапа ~").append(etaSeconds).append(" с");
+                }
+            }
+            if (rowsDone != null) {
+                message.append(", строк: ").append(rowsDone);
+                if (now > lastPollNanos) {
+                    long rate = Math.round((rowsDone - lastRows) / ((now - lastPollNanos) / 1e9));
+                    message.append(" (").append(Math.max(rate, 0)).append(" строк/с)");
+                }
+                lastRows = rowsDone;
+            }
+            lastPollNanos = now;
+            return message.toString();
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package report;
+
+import java.io.IOException;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+
+/**
+ * Компактный двоичный отчет с поколоночным хранением.
+ * <p>
+ * Строки накапливаются блоками по {@value #BLOCK_ROWS} и записываются по колонкам, что хорошо сжимается
+ * и позволяет читать отдельные колонки, пропуская остальные. Формат файла ({@code varint} — беззнаковое число
+ * по 7 бит, младшие группы первыми; {@code zigzag} — знаковое число, отображенное в беззнаковое):
+ * <pre>
+ * "FWCR" версия:varint число_колонок:varint (имя:varint-длина+UTF-8 тип:байт)*
+ * (строк_в_блоке:varint (длина_колонки:varint данные_колонки)*)*
+ * 0:varint
+ * </pre>
+ * Кодирование колонок:
+ * <ul>
+ *     <li>{@code I} (id) — {@code zigzag} разности с предыдущим значением блока;</li>
+ *     <li>{@code S} (version, description) — длина в байтах плюс один и UTF-8, {@code 0} — {@code NULL};</li>
+ *     <li>{@code B} (status, reverted) — битовая маска, младший бит первого байта — первая строка;</li>
+ *     <li>{@code T} (applied_at) — {@code zigzag} разности микросекунд от эпохи с предыдущим значением
+ *         блока плюс один, {@code 0} — {@code NULL}.</li>
+ * </ul>
+ * </p>
+ */
+public class ColumnarReportWriter implements ReportWriter {
+
+    static final int BLOCK_ROWS = 4096;
+
+    private static final byte[] MAGIC = {'F', 'W', 'C', 'R'};
+    private static final int VERSION = 1;
+    private static final String[] COLUMN_NAMES = {"id", "version", "description", "status", "reverted", "applied_at"};
+    private static final byte[] COLUMN_TYPES = {'I', 'S', 'S', 'B', 'B', 'T'};
+
+    private final ColumnBuffer ids = new ColumnBuffer();
+    private final ColumnBuffer versions = new ColumnBuffer();
+    private final ColumnBuffer descriptions = new ColumnBuffer();
+    private final ColumnBuffer statuses = new ColumnBuffer();
+    private final ColumnBuffer reverted = new ColumnBuffer();
+    private final ColumnBuffer appliedAt = new ColumnBuffer();
+    private final ColumnBuffer[] columns = {ids, versions, descriptions, statuses, reverted, appliedAt};
+
+    private int rows;
+    private long previousId;
+    private long previousMicros;
+
+    @Override
+    public String format() {
+        return "columnar";
+    }
+
+    @Override
+    public String extension() {
+        return "fwcr";
+    }
+
+    @Override
+    public void writeHeader(ReportOutput out) throws IOException {
+        out.writeBytes(MAGIC, 0, MAGIC.length).writeVarLong(VERSION).writeVarLong(COLUMN_NAMES.length);
+        for (int i = 0; i < COLUMN_NAMES.length; i++) {
+            out.writeVarLong(COLUMN_NAMES[i].length()).writeText(COLUMN_NAMES[i]).writeByte(COLUMN_TYPES[i]);
+        }
+    }
+
+    @Override
+    public void writeRow(ReportOutput out, ReportRow row) throws IOException {
+        ids.writeVarLong(zigzag(row.getId() - previousId));
+        previousId = row.getId();
+
+        versions.writeNullableText(row.getVersion());
+        descriptions.writeNullableText(row.getDescription());
+        statuses.writeBit(rows, row.isStatus());
+        reverted.writeBit(rows, row.isReverted());
+
+        if (row.getAppliedAt() == null) {
+            appliedAt.writeVarLong(0);
+        } else {
+            long micros = row.getAppliedAt().toEpochSecond(ZoneOffset.UTC) * 1_000_000
+                    + row.getAppliedAt().getNano() / 1_000;
+            appliedAt.writeVarLong(zigzag(micros - previousMicros) + 1);
+            previousMicros = micros;
+        }
+
+        if (++rows == BLOCK_ROWS) {
+            writeBlock(out);
+        }
+    }
+
+    @Override
+    public void writeFooter(ReportOutput out) throws IOException {
+        if (rows > 0) {
+            writeBlock(out);
+        }
+        out.writeVarLong(0);
+    }
+
+    private void writeBlock(ReportOutput out) throws IOException {
+        out.writeVarLong(rows);
+        for (ColumnBuffer column : columns) {
+            out.writeVarLong(column.size).writeBytes(column.bytes, 0, column.size);
+            column.clear();
+        }
+        rows = 0;
+        previousId = 0;
+        previousMicros = 0;
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    /**
+     * Растущий буфер байтов одной колонки текущего блока.
+     */
+    private static final class ColumnBuffer {
+
+        private byte[] bytes = new byte[1024];
+        private int size;
+
+        void writeByte(int value) {
+            if (size == bytes.length) {
+                bytes = Arrays.copyOf(bytes, bytes.length * 2);
+            }
+            bytes[size++] = (byte) value;
+        }
+
+        void writeVarLong(long value) {
+            while ((value & ~0x7FL) != 0) {
+                writeByte((int) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            writeByte((int) value);
+        }
+
+        void writeBit(int index, boolean value) {
+            if (index % 8 == 0) {
+                writeByte(0);
+            }
+            if (value) {
+                bytes[size - 1] |= (byte) (1 << (index % 8));
+            }
+        }
+
+        void writeNullableText(String value) {
+            if (value == null) {
+                writeVarLong(0);
+                return;
+            }
+            writeVarLong(Utf8.encodedLength(value, 0, value.length()) + 1L);
+            int required = size + value.length() * Utf8.MAX_BYTES_PER_CHAR;
+            if (required > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, required));
+            }
+            size = Utf8.encode(value, 0, value.length(), bytes, size);
+        }
+
+        void clear() {
+            size = 0;
+        }
+    }
+}
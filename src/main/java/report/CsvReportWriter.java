@@ -0,0 +1,67 @@
+package report;
+
+import java.io.IOException;
+
+/**
+ * Отчет в формате CSV (RFC 4180): поля с запятыми, кавычками и переводами строк заключаются в кавычки.
+ */
+public class CsvReportWriter implements ReportWriter {
+
+    @Override
+    public String format() {
+        return "csv";
+    }
+
+    @Override
+    public String extension() {
+        return "csv";
+    }
+
+    @Override
+    public void writeHeader(ReportOutput out) throws IOException {
+        out.writeText("id,version,description,status,reverted,applied_at\n");
+    }
+
+    @Override
+    public void writeRow(ReportOutput out, ReportRow row) throws IOException {
+        out.writeDecimal(row.getId()).writeByte(',');
+        writeField(out, row.getVersion());
+        out.writeByte(',');
+        writeField(out, row.getDescription());
+        out.writeByte(',').writeBoolean(row.isStatus())
+                .writeByte(',').writeBoolean(row.isReverted())
+                .writeByte(',');
+        if (row.getAppliedAt() != null) {
+            out.writeTimestamp(row.getAppliedAt());
+        }
+        out.writeByte('\n');
+    }
+
+    @Override
+    public void writeFooter(ReportOutput out) {
+    }
+
+    private static void writeField(ReportOutput out, String value) throws IOException {
+        if (value == null) {
+            return;
+        }
+        boolean quoted = false;
+        for (int i = 0; i < value.length() && !quoted; i++) {
+            char c = value.charAt(i);
+            quoted = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quoted) {
+            out.writeText(value);
+            return;
+        }
+        out.writeByte('"');
+        int start = 0;
+        for (int i = 0; i < value.length(); i++) {
+            if (value.charAt(i) == '"') {
+                out.writeText(value, start, i + 1).writeByte('"');
+                start = i + 1;
+            }
+        }
+        out.writeText(value, start, value.length()).writeByte('"');
+    }
+}
@@ -0,0 +1,84 @@
+package report;
+
+import java.io.IOException;
+
+/**
+ * Отчет в формате JSON: массив объектов, по одному объекту на строку файла.
+ */
+public class JsonReportWriter implements ReportWriter {
+
+    private boolean first = true;
+
+    @Override
+    public String format() {
+        return "json";
+    }
+
+    @Override
+    public String extension() {
+        return "json";
+    }
+
+    @Override
+    public void writeHeader(ReportOutput out) throws IOException {
+        out.writeByte('[');
+    }
+
+    @Override
+    public void writeRow(ReportOutput out, ReportRow row) throws IOException {
+        out.writeText(first ? "\n  " : ",\n  ");
+        first = false;
+        writeObject(out, row);
+    }
+
+    @Override
+    public void writeFooter(ReportOutput out) throws IOException {
+        out.writeText(first ? "]\n" : "\n]\n");
+    }
+
+    /**
+     * Записывает строку истории как объект JSON.
+     */
+    static void writeObject(ReportOutput out, ReportRow row) throws IOException {
+        out.writeText("{\"id\": ").writeDecimal(row.getId());
+        out.writeText(", \"version\": ");
+        writeString(out, row.getVersion());
+        out.writeText(", \"description\": ");
+        writeString(out, row.getDescription());
+        out.writeText(", \"status\": ").writeBoolean(row.isStatus());
+        out.writeText(", \"reverted\": ").writeBoolean(row.isReverted());
+        out.writeText(", \"applied_at\": ");
+        if (row.getAppliedAt() == null) {
+            out.writeText("null");
+        } else {
+            out.writeByte('"').writeTimestamp(row.getAppliedAt()).writeByte('"');
+        }
+        out.writeByte('}');
+    }
+
+    private static void writeString(ReportOutput out, String value) throws IOException {
+        if (value == null) {
+            out.writeText("null");
+            return;
+        }
+        out.writeByte('"');
+        int start = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c != '"' && c != '\\' && c >= 0x20) {
+                continue;
+            }
+            out.writeText(value, start, i).writeByte('\\');
+            switch (c) {
+                case '"', '\\' -> out.writeByte(c);
+                case '\n' -> out.writeByte('n');
+                case '\r' -> out.writeByte('r');
+                case '\t' -> out.writeByte('t');
+                default -> out.writeText("u00").writeByte(Character.forDigit(c >> 4, 16))
+                        .writeByte(Character.forDigit(c & 0xF, 16));
+            }
+            start = i + 1;
+        }
+        out.writeText(value, start, value.length()).writeByte('"');
+    }
+}
@@ -1,17 +1,29 @@
 package report;
 
+import database.ConnectionManager;
 import lombok.extern.slf4j.Slf4j;
+import monitoring.ReportExportEvent;
 import utils.PropertiesUtils;
 
 import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.nio.file.Path;
 import java.sql.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
 
 /**
  * Класс для генерации отчетов о миграциях базы данных.
- * Поддерживает экспорт данных о миграциях в форматы CSV и JSON.
+ * Поддерживает экспорт данных о миграциях в форматы, зарегистрированные через {@link ReportWriter}
+ * (CSV, JSON, NDJSON и двоичный поколоночный формат).
  * В отчете содержатся следующие поля: id, version, description, status, reverted, applied_at.
+ * <p>
+ * История читается из базы данных один раз курсором (по {@code report.fetch.size} строк), каждая строка
+ * декодируется один раз в слот кольцевого буфера емкостью {@code report.ring.size}, откуда ее параллельно
+ * читают писатели всех запрошенных форматов. Каждый писатель пишет в свой файл через собственный буфер
+ * размером {@code report.buffer.size} байт.
+ * </p>
  */
 @Slf4j
 public class MakeReport {
@@ -19,40 +31,23 @@ public class MakeReport {
     private static final String REPORTS_DIRECTORY = "reports";
     private static final String QUERY = "SELECT id, version, description, status, reverted, applied_at FROM migration_history";
 
+    private static final int FETCH_SIZE = Integer.parseInt(PropertiesUtils.getProperty("report.fetch.size", "1000"));
+    private static final int RING_SIZE = Integer.parseInt(PropertiesUtils.getProperty("report.ring.size", "1024"));
+    private static final int BUFFER_SIZE = Integer.parseInt(PropertiesUtils.getProperty("report.buffer.size", "65536"));
+
+    /**
+     * Отчет одного формата в рамках экспорта.
+     */
+    private record Target(ReportWriter writer, Path path) {
+    }
+
     /**
      * Экспортирует данные о миграциях в формат CSV.
      *
      * @param fileName Имя файла для сохранения отчета (с расширением .csv).
      */
     public static void exportCsv(String fileName) {
-        String filePath = prepareFilePath(fileName);
-        if (filePath == null) return;
-
-        try (ResultSet resultSet = fetchMigrationHistory();
-             FileWriter fileWriter = new FileWriter(filePath)) {
-
-            fileWriter.append("id,version,description,status,reverted,applied_at\n");
-
-            while (resultSet.next()) {
-                fileWriter.append(String.valueOf(resultSet.getInt("id")))
-                        .append(',')
-                        .append(resultSet.getString("version"))
-                        .append(',')
-                        .append(resultSet.getString("description") != null ? resultSet.getString("description") : "")
-                        .append(',')
-                        .append(resultSet.getBoolean("status") ? "true" : "false")
-                        .append(',')
-                        .append(resultSet.getBoolean("reverted") ? "true" : "false")
-                        .append(',')
-                        .append(resultSet.getTimestamp("applied_at").toString())
-                        .append('\n');
-            }
-
-            log.info("Данные успешно экспортированы в файл {}", filePath);
-
-        } catch (SQLException | IOException e) {
-            log.error("Ошибка при экспорте данных в CSV: {}", e.getMessage(), e);
-        }
+        exportSingle("csv", fileName);
     }
 
     /**
@@ -61,39 +56,170 @@ public class MakeReport {
      * @param fileName Имя файла для сохранения отчета (с расширением .json).
      */
     public static void exportJson(String fileName) {
+        exportSingle("json", fileName);
+    }
+
+    private static void exportSingle(String format, String fileName) {
         String filePath = prepareFilePath(fileName);
         if (filePath == null) return;
+        export(List.of(new Target(ReportWriters.create(format), Path.of(filePath))));
+    }
 
-        try (ResultSet resultSet = fetchMigrationHistory();
-             FileWriter fileWriter = new FileWriter(filePath)) {
+    /**
+     * Экспортирует данные о миграциях сразу в несколько форматов за один проход по истории.
+     * Файлы сохраняются в директорию {@code reports} под именем {@code <baseName>.<расширение формата>}.
+     *
+     * @param baseName Имя файлов отчета без расширения.
+     * @param formats  Форматы отчета, например {@code csv}, {@code json}, {@code ndjson}, {@code columnar}.
+     * @throws IllegalArgumentException Если формат не зарегистрирован.
+     */
+    public static void export(String baseName, List<String> formats) {
+        String reportsDirPath = prepareFilePath("");
+        if (reportsDirPath == null) return;
+        export(Path.of(reportsDirPath), baseName, formats);
+    }
 
-            fileWriter.append("[\n");
+    /**
+     * Экспортирует данные о миграциях в несколько форматов в указанную директорию.
+     *
+     * @param directory Директория для отчетов.
+     * @param baseName  Имя файлов отчета без расширения.
+     * @param formats   Форматы отчета.
+     * @throws IllegalArgumentException Если формат не зарегистрирован или указан дважды.
+     */
+    public static void export(Path directory, String baseName, List<String> formats) {
+        List<Target> targets = new ArrayList<>();
+        List<String> seen = new ArrayList<>();
+        for (String format : formats) {
+            String normalized = format.trim().toLowerCase(Locale.ROOT);
+            if (seen.contains(normalized)) {
+                throw new IllegalArgumentException("Формат отчета указан дважды: " + format);
+            }
+            seen.add(normalized);
+            ReportWriter writer = ReportWriters.create(normalized);
+            targets.add(new Target(writer, directory.resolve(baseName + "." + writer.extension())));
+        }
+        export(targets);
+    }
 
-            boolean isFirst = true;
-            while (resultSet.next()) {
-                if (!isFirst) {
-                    fileWriter.append(",\n");
-                }
-                isFirst = false;
-
-                fileWriter.append("  {")
-                        .append("\"id\": ").append(String.valueOf(resultSet.getInt("id"))).append(", ")
-                        .append("\"version\": \"").append(resultSet.getString("version")).append("\", ")
-                        .append("\"description\": \"")
-                        .append(resultSet.getString("description") != null ? resultSet.getString("description") : "")
-                        .append("\", ")
-                        .append("\"status\": ").append(resultSet.getBoolean("status") ? "true" : "false").append(", ")
-                        .append("\"reverted\": ").append(resultSet.getBoolean("reverted") ? "true" : "false").append(", ")
-                        .append("\"applied_at\": \"").append(resultSet.getTimestamp("applied_at").toString()).append("\"")
-                        .append("}");
+    /**
+     * Читает историю миграций один раз и раздает строки писателям всех отчетов.
+     */
+    private static void export(List<Target> targets) {
+        RowRingBuffer ring = new RowRingBuffer(RING_SIZE, targets.size());
+        long[] rows = new long[targets.size()];
+        Throwable[] errors = new Throwable[targets.size()];
+        List<ReportExportEvent> events = new ArrayList<>();
+        List<Thread> writers = new ArrayList<>();
+
+        for (int i = 0; i < targets.size(); i++) {
+            int consumer = i;
+            Target target = targets.get(i);
+            ReportExportEvent event = new ReportExportEvent();
+            event.begin();
+            events.add(event);
+            writers.add(Thread.ofVirtual()
+                    .name("report-" + target.writer().format())
+                    .start(() -> {
+                        try {
+                            rows[consumer] = write(ring, consumer, target);
+                        } catch (Throwable e) {
+                            errors[consumer] = e;
+                            ring.abandon(consumer);
+                        }
+                    }));
+        }
+
+        boolean readFailed = false;
+        try {
+            readMigrationHistory(ring);
+        } catch (SQLException e) {
+            readFailed = true;
+            log.error("Ошибка при чтении истории миграций для отчета: {}", e.getMessage(), e);
+        } finally {
+            ring.finish();
+        }
+
+        for (int i = 0; i < targets.size(); i++) {
+            Target target = targets.get(i);
+            try {
+                writers.get(i).join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                log.error("Ожидание записи отчета {} прервано", target.path());
+                return;
             }
+            String format = target.writer().format();
+            if (errors[i] != null) {
+                log.error("Ошибка при экспорте данных в {}: {}", format.toUpperCase(Locale.ROOT),
+                        errors[i].getMessage(), errors[i]);
+            } else if (!readFailed) {
+                log.info("Данные успешно экспортированы в файл {} ({} строк)", target.path(), rows[i]);
+            }
+            commitExportEvent(events.get(i), format, target.path().toString(), rows[i]);
+        }
+    }
 
-            fileWriter.append("\n]\n");
+    /**
+     * Записывает строки из кольцевого буфера в отчет одного формата.
+     *
+     * @return Количество записанных строк.
+     */
+    private static long write(RowRingBuffer ring, int consumer, Target target) throws IOException {
+        ReportWriter writer = target.writer();
+        long count = 0;
+        try (ReportOutput out = ReportOutput.open(target.path(), BUFFER_SIZE)) {
+            writer.writeHeader(out);
+            long available;
+            while ((available = ring.await(consumer)) >= 0) {
+                for (; count < available; count++) {
+                    writer.writeRow(out, ring.get(count));
+                }
+                ring.release(consumer, count);
+            }
+            writer.writeFooter(out);
+        }
+        return count;
+    }
 
-            log.info("Данные успешно экспортированы в JSON-файл {}", filePath);
+    /**
+     * Читает историю миграций курсором и публикует строки в кольцевой буфер.
+     *
+     * @param ring Кольцевой буфер строк.
+     * @throws SQLException Если не удалось выполнить запрос к базе данных.
+     */
+    private static void readMigrationHistory(RowRingBuffer ring) throws SQLException {
+        try (Connection connection = ConnectionManager.getConnection()) {
+            // Курсор на стороне сервера используется драйвером PostgreSQL только вне режима автофиксации
+            connection.setAutoCommit(false);
+            try (Statement statement = connection.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+                statement.setFetchSize(FETCH_SIZE);
+                try (ResultSet resultSet = statement.executeQuery(QUERY)) {
+                    while (resultSet.next()) {
+                        ReportRow row = ring.claim();
+                        row.id = resultSet.getInt(1);
+                        row.version = resultSet.getString(2);
+                        row.description = resultSet.getString(3);
+                        row.status = resultSet.getBoolean(4);
+                        row.reverted = resultSet.getBoolean(5);
+                        Timestamp appliedAt = resultSet.getTimestamp(6);
+                        row.appliedAt = appliedAt != null ? appliedAt.toLocalDateTime() : null;
+                        ring.publish();
+                    }
+                }
+            } finally {
+                connection.rollback();
+            }
+        }
+    }
 
-        } catch (SQLException | IOException e) {
-            log.error("Ошибка при экспорте данных в JSON: {}", e.getMessage(), e);
+    private static void commitExportEvent(ReportExportEvent event, String format, String filePath, long rows) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.format = format;
+            event.file = filePath;
+            event.rows = rows;
+            event.commit();
         }
     }
 
@@ -115,20 +241,4 @@ public class MakeReport {
 
         return reportsDirPath + File.separator + fileName;
     }
-
-    /**
-     * Выполняет запрос к базе данных для получения истории миграций.
-     *
-     * @return Результат запроса, содержащий историю миграций.
-     * @throws SQLException Если не удалось выполнить запрос к базе данных.
-     */
-    private static ResultSet fetchMigrationHistory() throws SQLException {
-        Connection connection = DriverManager.getConnection(
-                PropertiesUtils.getProperty("db.url"),
-                PropertiesUtils.getProperty("db.username"),
-                PropertiesUtils.getProperty("db.password"));
-
-        Statement statement = connection.createStatement();
-        return statement.executeQuery(QUERY);
-    }
 }
@@ -0,0 +1,34 @@
+package report;
+
+import java.io.IOException;
+
+/**
+ * Отчет в формате NDJSON: по одному объекту JSON на строку без обрамляющего массива,
+ * что позволяет обрабатывать отчет построчно.
+ */
+public class NdjsonReportWriter implements ReportWriter {
+
+    @Override
+    public String format() {
+        return "ndjson";
+    }
+
+    @Override
+    public String extension() {
+        return "ndjson";
+    }
+
+    @Override
+    public void writeHeader(ReportOutput out) {
+    }
+
+    @Override
+    public void writeRow(ReportOutput out, ReportRow row) throws IOException {
+        JsonReportWriter.writeObject(out, row);
+        out.writeByte('\n');
+    }
+
+    @Override
+    public void writeFooter(ReportOutput out) {
+    }
+}
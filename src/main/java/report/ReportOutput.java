@@ -0,0 +1,204 @@
+package report;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+
+/**
+ * Буферизованный вывод отчета в канал.
+ * <p>
+ * Текст кодируется в UTF-8, а числа и даты форматируются прямо в буфер, поэтому запись строки отчета
+ * не создает промежуточных строк. Буфер сбрасывается в канал при заполнении и при закрытии.
+ * </p>
+ */
+public final class ReportOutput implements Closeable {
+
+    /**
+     * Наименьший размер буфера: в нем должны помещаться хотя бы два символа текста в UTF-8.
+     */
+    private static final int MIN_BUFFER_SIZE = 2 * Utf8.MAX_BYTES_PER_CHAR;
+
+    private final WritableByteChannel channel;
+    private final ByteBuffer buffer;
+    private final byte[] digits = new byte[20];
+    private long written;
+
+    public ReportOutput(WritableByteChannel channel, int bufferSize) {
+        this.channel = channel;
+        this.buffer = ByteBuffer.allocate(Math.max(bufferSize, MIN_BUFFER_SIZE));
+    }
+
+    /**
+     * Открывает файл отчета для записи, перезаписывая существующий.
+     *
+     * @param path       Путь к файлу.
+     * @param bufferSize Размер буфера в байтах.
+     * @return Вывод отчета.
+     * @throws IOException Если файл не удалось открыть.
+     */
+    public static ReportOutput open(Path path, int bufferSize) throws IOException {
+        return new ReportOutput(FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE), bufferSize);
+    }
+
+    /**
+     * @return Количество байтов, записанных в отчет (включая еще не сброшенные в канал).
+     */
+    public long getWritten() {
+        return written + buffer.position();
+    }
+
+    public ReportOutput writeByte(int value) throws IOException {
+        if (!buffer.hasRemaining()) {
+            flush();
+        }
+        buffer.put((byte) value);
+        return this;
+    }
+
+    public ReportOutput writeBytes(byte[] bytes, int offset, int length) throws IOException {
+        while (length > 0) {
+            if (!buffer.hasRemaining()) {
+                flush();
+            }
+            int chunk = Math.min(length, buffer.remaining());
+            buffer.put(bytes, offset, chunk);
+            offset += chunk;
+            length -= chunk;
+        }
+        return this;
+    }
+
+    /**
+     * Записывает текст в кодировке UTF-8.
+     */
+    public ReportOutput writeText(CharSequence text) throws IOException {
+        return writeText(text, 0, text.length());
+    }
+
+    /**
+     * Записывает фрагмент текста {@code [start, end)} в кодировке UTF-8. Текст кодируется прямо в буфер
+     * частями, которые в нем гарантированно помещаются.
+     */
+    public ReportOutput writeText(CharSequence text, int start, int end) throws IOException {
+        while (start < end) {
+            if (buffer.remaining() < MIN_BUFFER_SIZE) {
+                flush();
+            }
+            int chunkEnd = Math.min(end, start + buffer.remaining() / Utf8.MAX_BYTES_PER_CHAR);
+            if (chunkEnd < end && Character.isHighSurrogate(text.charAt(chunkEnd - 1))) {
+                // Суррогатная пара не разделяется между частями
+                chunkEnd--;
+            }
+            int position = Utf8.encode(text, start, chunkEnd, buffer.array(), buffer.position());
+            buffer.position(position);
+            start = chunkEnd;
+        }
+        return this;
+    }
+
+    /**
+     * Записывает символ Unicode в кодировке UTF-8.
+     */
+    public ReportOutput writeCodePoint(int codePoint) throws IOException {
+        if (buffer.remaining() < 4) {
+            flush();
+        }
+        buffer.position(Utf8.encode(codePoint, buffer.array(), buffer.position()));
+        return this;
+    }
+
+    /**
+     * Записывает число в десятичном виде.
+     */
+    public ReportOutput writeDecimal(long value) throws IOException {
+        if (value == Long.MIN_VALUE) {
+            return writeText("-9223372036854775808");
+        }
+        if (value < 0) {
+            writeByte('-');
+            value = -value;
+        }
+        int position = digits.length;
+        do {
+            digits[--position] = (byte) ('0' + value % 10);
+            value /= 10;
+        } while (value != 0);
+        return writeBytes(digits, position, digits.length - position);
+    }
+
+    public ReportOutput writeBoolean(boolean value) throws IOException {
+        return writeText(value ? "true" : "false");
+    }
+
+    /**
+     * Записывает дату в формате {@link java.sql.Timestamp#toString()}: {@code yyyy-mm-dd hh:mm:ss.fffffffff}
+     * без завершающих нулей дробной части.
+     */
+    public ReportOutput writeTimestamp(LocalDateTime value) throws IOException {
+        writePadded(value.getYear(), 4).writeByte('-');
+        writePadded(value.getMonthValue(), 2).writeByte('-');
+        writePadded(value.getDayOfMonth(), 2).writeByte(' ');
+        writePadded(value.getHour(), 2).writeByte(':');
+        writePadded(value.getMinute(), 2).writeByte(':');
+        writePadded(value.getSecond(), 2).writeByte('.');
+
+        int nanos = value.getNano();
+        if (nanos == 0) {
+            return writeByte('0');
+        }
+        int width = 9;
+        while (nanos % 10 == 0) {
+            nanos /= 10;
+            width--;
+        }
+        return writePadded(nanos, width);
+    }
+
+    private ReportOutput writePadded(int value, int width) throws IOException {
+        for (int bound = 10, i = 1; i < width; i++, bound *= 10) {
+            if (value < bound) {
+                writeByte('0');
+            }
+        }
+        return writeDecimal(value);
+    }
+
+    /**
+     * Записывает неотрицательное число в формате varint (по 7 бит, младшие группы первыми).
+     */
+    public ReportOutput writeVarLong(long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        return writeByte((int) value);
+    }
+
+    /**
+     * Сбрасывает буфер в канал.
+     *
+     * @throws IOException Если не удалось выполнить запись.
+     */
+    public void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            written += channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            channel.close();
+        }
+    }
+}
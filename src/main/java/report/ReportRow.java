@@ -0,0 +1,50 @@
+package report;
+
+import java.time.LocalDateTime;
+
+/**
+ * Строка истории миграций, декодированная из результата запроса один раз и общая для всех форматов экспорта.
+ * <p>
+ * Экземпляры являются слотами кольцевого буфера и переиспользуются, поэтому писатель не должен сохранять
+ * ссылку на строку после возврата из {@link ReportWriter#writeRow(ReportOutput, ReportRow)}.
+ * </p>
+ */
+public final class ReportRow {
+
+    int id;
+    String version;
+    String description;
+    boolean status;
+    boolean reverted;
+    LocalDateTime appliedAt;
+
+    public int getId() {
+        return id;
+    }
+
+    public String getVersion() {
+        return version;
+    }
+
+    /**
+     * @return Описание миграции или {@code null}.
+     */
+    public String getDescription() {
+        return description;
+    }
+
+    public boolean isStatus() {
+        return status;
+    }
+
+    public boolean isReverted() {
+        return reverted;
+    }
+
+    /**
+     * @return Дата применения миграции или {@code null}.
+     */
+    public LocalDateTime getAppliedAt() {
+        return appliedAt;
+    }
+}
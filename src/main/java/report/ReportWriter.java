@@ -0,0 +1,49 @@
+package report;
+
+import java.io.IOException;
+
+/**
+ * Формат экспорта истории миграций.
+ * <p>
+ * Реализации регистрируются в {@code META-INF/services/report.ReportWriter} и загружаются через
+ * {@link java.util.ServiceLoader} (см. {@link ReportWriters}). Для каждого экспорта создается новый экземпляр,
+ * поэтому писатель может хранить состояние между строками. Методы вызываются из одного потока.
+ * </p>
+ */
+public interface ReportWriter {
+
+    /**
+     * @return Имя формата в опции {@code --formats}, например {@code csv}.
+     */
+    String format();
+
+    /**
+     * @return Расширение файла отчета без точки.
+     */
+    String extension();
+
+    /**
+     * Записывает начало отчета.
+     *
+     * @param out Буферизованный вывод отчета.
+     * @throws IOException Если не удалось выполнить запись.
+     */
+    void writeHeader(ReportOutput out) throws IOException;
+
+    /**
+     * Записывает строку истории.
+     *
+     * @param out Буферизованный вывод отчета.
+     * @param row Строка истории (переиспользуется после возврата из метода).
+     * @throws IOException Если не удалось выполнить запись.
+     */
+    void writeRow(ReportOutput out, ReportRow row) throws IOException;
+
+    /**
+     * Записывает конец отчета.
+     *
+     * @param out Буферизованный вывод отчета.
+     * @throws IOException Если не удалось выполнить запись.
+     */
+    void writeFooter(ReportOutput out) throws IOException;
+}
@@ -0,0 +1,40 @@
+package report;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.ServiceLoader;
+
+/**
+ * Поиск форматов экспорта, зарегистрированных через {@link ServiceLoader}.
+ */
+public final class ReportWriters {
+
+    private ReportWriters() {
+    }
+
+    /**
+     * Создает новый писатель указанного формата.
+     *
+     * @param format Имя формата, например {@code csv}.
+     * @return Писатель отчета.
+     * @throws IllegalArgumentException Если формат не зарегистрирован.
+     */
+    public static ReportWriter create(String format) {
+        for (ReportWriter writer : ServiceLoader.load(ReportWriter.class)) {
+            if (writer.format().equalsIgnoreCase(format)) {
+                return writer;
+            }
+        }
+        throw new IllegalArgumentException("Неизвестный формат отчета: " + format + ". Доступные форматы: "
+                + String.join(", ", formats()));
+    }
+
+    /**
+     * @return Имена зарегистрированных форматов.
+     */
+    public static List<String> formats() {
+        List<String> formats = new ArrayList<>();
+        ServiceLoader.load(ReportWriter.class).forEach(writer -> formats.add(writer.format()));
+        return formats;
+    }
+}
@@ -0,0 +1,129 @@
+package report;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Ограниченный кольцевой буфер строк отчета с одним производителем и несколькими потребителями.
+ * <p>
+ * Слоты создаются один раз и переиспользуются: производитель декодирует строку результата прямо в слот,
+ * а каждый потребитель (писатель формата) читает все строки по порядку. Слот перезаписывается только после
+ * того, как его прочитали все потребители, поэтому медленный формат притормаживает чтение из базы данных,
+ * но память буфера не растет. Ожидание реализовано коротким активным опросом с последующей парковкой потока.
+ * </p>
+ */
+final class RowRingBuffer {
+
+    private static final int SPINS_BEFORE_PARK = 100;
+    private static final long PARK_NANOS = 20_000;
+
+    private final ReportRow[] slots;
+    private final int mask;
+
+    /**
+     * Количество опубликованных строк.
+     */
+    private final AtomicLong published = new AtomicLong();
+
+    /**
+     * Количество строк, прочитанных каждым потребителем ({@link Long#MAX_VALUE} — потребитель отключен).
+     */
+    private final AtomicLong[] consumed;
+
+    private volatile boolean finished;
+
+    RowRingBuffer(int capacity, int consumers) {
+        int size = Integer.highestOneBit(Math.max(2, capacity) * 2 - 1);
+        this.slots = new ReportRow[size];
+        for (int i = 0; i < size; i++) {
+            slots[i] = new ReportRow();
+        }
+        this.mask = size - 1;
+        this.consumed = new AtomicLong[consumers];
+        for (int i = 0; i < consumers; i++) {
+            consumed[i] = new AtomicLong();
+        }
+    }
+
+    /**
+     * Ожидает освобождения слота для следующей строки.
+     *
+     * @return Слот, который нужно заполнить и опубликовать через {@link #publish()}.
+     */
+    ReportRow claim() {
+        long sequence = published.get();
+        for (int spins = 0; sequence - minConsumed() >= slots.length; spins++) {
+            idle(spins);
+        }
+        return slots[(int) (sequence & mask)];
+    }
+
+    /**
+     * Делает заполненный слот доступным потребителям.
+     */
+    void publish() {
+        published.incrementAndGet();
+    }
+
+    /**
+     * Сообщает потребителям, что строк больше не будет.
+     */
+    void finish() {
+        finished = true;
+    }
+
+    /**
+     * Ожидает появления строк для потребителя.
+     *
+     * @param consumer Номер потребителя.
+     * @return Количество опубликованных строк, большее количества прочитанных потребителем,
+     * или {@code -1}, если все строки прочитаны и производитель завершил работу.
+     */
+    long await(int consumer) {
+        long next = consumed[consumer].get();
+        for (int spins = 0; ; spins++) {
+            long available = published.get();
+            if (available > next) {
+                return available;
+            }
+            if (finished && published.get() == next) {
+                return -1;
+            }
+            idle(spins);
+        }
+    }
+
+    ReportRow get(long sequence) {
+        return slots[(int) (sequence & mask)];
+    }
+
+    /**
+     * Освобождает прочитанные потребителем слоты.
+     */
+    void release(int consumer, long count) {
+        consumed[consumer].set(count);
+    }
+
+    /**
+     * Отключает потребителя, завершившегося с ошибкой, чтобы он не задерживал остальных.
+     */
+    void abandon(int consumer) {
+        consumed[consumer].set(Long.MAX_VALUE);
+    }
+
+    private long minConsumed() {
+        long min = Long.MAX_VALUE;
+        for (AtomicLong sequence : consumed) {
+            min = Math.min(min, sequence.get());
+        }
+        return min;
+    }
+
+    private static void idle(int spins) {
+        if (spins < SPINS_BEFORE_PARK) {
+            Thread.onSpinWait();
+        } else {
+            LockSupport.parkNanos(PARK_NANOS);
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package report;
+
+/**
+ * Кодирование текста в UTF-8 прямо в массив байтов, без промежуточных строк и {@code CharsetEncoder}.
+ * <p>
+ * Суррогатная пара кодируется одним символом из четырех байтов, а непарный суррогат, который в UTF-8
+ * не кодируется, заменяется на {@code '?'}. Так кодируют текст все форматы отчетов.
+ * </p>
+ */
+final class Utf8 {
+
+    /**
+     * Наибольшее число байтов на один символ {@code char}: суррогатная пара из двух символов занимает четыре.
+     */
+    static final int MAX_BYTES_PER_CHAR = 3;
+
+    private Utf8() {
+    }
+
+    /**
+     * @return Длина фрагмента текста {@code [start, end)} в байтах UTF-8.
+     */
+    static int encodedLength(CharSequence text, int start, int end) {
+        int length = 0;
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                length += 1;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (isPairAt(text, i, end)) {
+                length += 4;
+                i++;
+            } else {
+                length += Character.isSurrogate(c) ? 1 : 3;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Кодирует фрагмент текста {@code [start, end)}. В массиве должно быть место для
+     * {@link #encodedLength} байтов (не больше {@link #MAX_BYTES_PER_CHAR} на символ).
+     *
+     * @return Позиция в массиве после последнего записанного байта.
+     */
+    static int encode(CharSequence text, int start, int end, byte[] target, int offset) {
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                target[offset++] = (byte) c;
+            } else if (isPairAt(text, i, end)) {
+                offset = encode(Character.toCodePoint(c, text.charAt(++i)), target, offset);
+            } else {
+                offset = encode(c, target, offset);
+            }
+        }
+        return offset;
+    }
+
+    /**
+     * Кодирует символ Unicode. В массиве должно быть место для четырех байтов.
+     *
+     * @return Позиция в массиве после последнего записанного байта.
+     */
+    static int encode(int codePoint, byte[] target, int offset) {
+        if (codePoint < 0x80) {
+            target[offset++] = (byte) codePoint;
+        } else if (codePoint < 0x800) {
+            target[offset++] = (byte) (0xC0 | (codePoint >> 6));
+            target[offset++] = (byte) (0x80 | (codePoint & 0x3F));
+        } else if (codePoint < 0x10000) {
+            if (Character.isSurrogate((char) codePoint)) {
+                // Непарный суррогат не кодируется в UTF-8
+                target[offset++] = '?';
+                return offset;
+            }
+            target[offset++] = (byte) (0xE0 | (codePoint >> 12));
+            target[offset++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+            target[offset++] = (byte) (0x80 | (codePoint & 0x3F));
+        } else {
+            target[offset++] = (byte) (0xF0 | (codePoint >> 18));
+            target[offset++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+            target[offset++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+            target[offset++] = (byte) (0x80 | (codePoint & 0x3F));
+        }
+        return offset;
+    }
+
+    private static boolean isPairAt(CharSequence text, int index, int end) {
+        return Character.isHighSurrogate(text.charAt(index)) && index + 1 < end
+                && Character.isLowSurrogate(text.charAt(index + 1));
+    }
+}
@@ -0,0 +1,127 @@
+package utils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Предварительно разобранный шаблон с плейсхолдерами.
+ * <p>
+ * Текст разбирается один раз на последовательность литеральных фрагментов и плейсхолдеров, после чего шаблон
+ * можно многократно подставлять для разных наборов значений без повторного просмотра исходного текста.
+ * Формат плейсхолдера задается префиксом и суффиксом: {@code ${имя}} для SQL-скриптов миграций
+ * и {@code {имя}} для значений {@code application.properties}.
+ * </p>
+ *
+ * <p><b>Пример использования:</b></p>
+ * <pre>{@code
+ * PlaceholderTemplate template = PlaceholderTemplate.compile("CREATE TABLE ${schema}.t ()", "${", "}");
+ * String sql = template.render(Map.of("schema", "tenant_1")::get);
+ * }</pre>
+ */
+public final class PlaceholderTemplate {
+
+    /**
+     * Фрагмент шаблона: литеральный текст или имя плейсхолдера.
+     *
+     * @param text        Литеральный текст или имя плейсхолдера.
+     * @param placeholder {@code true}, если фрагмент является плейсхолдером.
+     * @param raw         Исходная запись плейсхолдера (используется, если значение не найдено).
+     */
+    private record Segment(String text, boolean placeholder, String raw) {
+    }
+
+    private final List<Segment> segments;
+    private final Set<String> names;
+    private final int literalLength;
+
+    private PlaceholderTemplate(List<Segment> segments, Set<String> names, int literalLength) {
+        this.segments = segments;
+        this.names = names;
+        this.literalLength = literalLength;
+    }
+
+    /**
+     * Разбирает текст на литеральные фрагменты и плейсхолдеры.
+     *
+     * @param text   Исходный текст.
+     * @param prefix Начало плейсхолдера, например {@code ${}.
+     * @param suffix Конец плейсхолдера, например {@code }}.
+     * @return Разобранный шаблон.
+     */
+    public static PlaceholderTemplate compile(String text, String prefix, String suffix) {
+        List<Segment> segments = new ArrayList<>();
+        Set<String> names = new LinkedHashSet<>();
+        int literalLength = 0;
+
+        int position = 0;
+        while (position < text.length()) {
+            int start = text.indexOf(prefix, position);
+            int end = start < 0 ? -1 : text.indexOf(suffix, start + prefix.length());
+            if (start < 0 || end < 0) {
+                break;
+            }
+            String name = text.substring(start + prefix.length(), end).trim();
+            if (name.isEmpty()) {
+                // Пустой плейсхолдер остается частью литерального текста
+                segments.add(new Segment(text.substring(position, end + suffix.length()), false, null));
+                literalLength += end + suffix.length() - position;
+                position = end + suffix.length();
+                continue;
+            }
+            if (start > position) {
+                segments.add(new Segment(text.substring(position, start), false, null));
+                literalLength += start - position;
+            }
+            segments.add(new Segment(name, true, text.substring(start, end + suffix.length())));
+            names.add(name);
+            position = end + suffix.length();
+        }
+        if (position < text.length()) {
+            segments.add(new Segment(text.substring(position), false, null));
+            literalLength += text.length() - position;
+        }
+
+        return new PlaceholderTemplate(List.copyOf(segments), Collections.unmodifiableSet(names), literalLength);
+    }
+
+    /**
+     * @return Имена плейсхолдеров в порядке первого появления в тексте.
+     */
+    public Set<String> getNames() {
+        return names;
+    }
+
+    /**
+     * @return {@code true}, если шаблон не содержит плейсхолдеров.
+     */
+    public boolean isLiteral() {
+        return names.isEmpty();
+    }
+
+    /**
+     * Подставляет значения плейсхолдеров.
+     * Если для плейсхолдера значение не найдено ({@code null}), в результате остается его исходная запись.
+     *
+     * @param resolver Функция, возвращающая значение плейсхолдера по имени.
+     * @return Текст с подставленными значениями.
+     */
+    public String render(Function<String, String> resolver) {
+        if (segments.size() == 1 && !segments.get(0).placeholder()) {
+            return segments.get(0).text();
+        }
+        StringBuilder result = new StringBuilder(literalLength + names.size() * 16);
+        for (Segment segment : segments) {
+            if (!segment.placeholder()) {
+                result.append(segment.text());
+                continue;
+            }
+            String value = resolver.apply(segment.text());
+            result.append(value != null ? value : segment.raw());
+        }
+        return result.toString();
+    }
+}
@@ -5,6 +5,9 @@ import lombok.extern.slf4j.Slf4j;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 
 /**
@@ -12,7 +15,9 @@ import java.util.Properties;
  * <p>
  * Класс предоставляет методы для получения свойств из файла конфигурации.
  * При загрузке файла значения свойств могут содержать плейсхолдеры в формате
- * {@code {имя_переменной}}, которые заменяются значениями системных переменных окружения.
+ * {@code {имя_переменной}} (в том числе несколько в одном значении), которые заменяются значениями
+ * системных переменных окружения.
+ * Системные свойства JVM ({@code -Dключ=значение}) имеют приоритет над значениями из файла.
  * </p>
  *
  * <p><b>Пример использования:</b></p>
@@ -67,38 +72,28 @@ public class PropertiesUtils {
     }
 
     /**
-     * Выполняет поиск и замену плейсхолдера в строке на значение переменной окружения.
+     * Выполняет замену всех плейсхолдеров в строке на значения переменных окружения.
      *
-     * @param value строка, содержащая плейсхолдер в формате {@code {имя_переменной}}.
-     * @return строка с замененным плейсхолдером, или исходная строка, если плейсхолдер не найден
-     * или соответствующая переменная окружения не определена.
+     * @param value строка, содержащая плейсхолдеры в формате {@code {имя_переменной}}.
+     * @return строка с замененными плейсхолдерами; плейсхолдеры, для которых переменная окружения
+     * не определена, остаются без изменений.
      */
     private static String resolveValue(String value) {
         if (value == null) {
             return null;
         }
-
-        int startIdx = value.indexOf('{');
-        int endIdx = value.indexOf('}');
-        if (startIdx >= 0 && endIdx > startIdx) {
-            String placeholder = value.substring(startIdx + 1, endIdx);
-            String envValue = System.getenv(placeholder);
-            if (envValue != null) {
-                return value.substring(0, startIdx) + envValue + value.substring(endIdx + 1);
-            }
-        }
-        return value;
+        return PlaceholderTemplate.compile(value, "{", "}").render(System::getenv);
     }
 
     /**
      * Получает значение свойства по ключу.
      *
      * @param key ключ свойства.
-     * @return значение свойства.
+     * @return значение системного свойства JVM с этим ключом, если оно задано, иначе значение из файла.
      * @throws IllegalArgumentException если свойство с указанным ключом не найдено.
      */
     public static String getProperty(String key) {
-        String value = properties.getProperty(key);
+        String value = System.getProperty(key, properties.getProperty(key));
         if (value == null) {
             throw new IllegalArgumentException("Свойство с ключом '" + key + "' не найдено!");
         }
@@ -110,9 +105,28 @@ public class PropertiesUtils {
      *
      * @param key ключ свойства.
      * @param defaultValue значение по умолчанию, возвращаемое, если свойство не найдено.
-     * @return значение свойства, или значение по умолчанию, если свойство не найдено.
+     * @return значение системного свойства JVM или файла (в этом порядке), или значение по умолчанию,
+     * если свойство не найдено.
      */
     public static String getProperty(String key, String defaultValue) {
-        return properties.getProperty(key, defaultValue);
+        return System.getProperty(key, properties.getProperty(key, defaultValue));
+    }
+
+    /**
+     * Получает все свойства с указанным префиксом. Префикс из ключей результата удаляется.
+     *
+     * @param prefix префикс ключей, например {@code placeholder.}.
+     * @return свойства с указанным префиксом; системные свойства JVM имеют приоритет.
+     */
+    public static Map<String, String> getPropertiesWithPrefix(String prefix) {
+        Map<String, String> result = new HashMap<>();
+        for (Properties source : List.of(properties, System.getProperties())) {
+            for (String key : source.stringPropertyNames()) {
+                if (key.startsWith(prefix)) {
+                    result.put(key.substring(prefix.length()), source.getProperty(key));
+                }
+            }
+        }
+        return result;
     }
 }
@@ -0,0 +1,101 @@
+package benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Локальный экземпляр PostgreSQL, запускаемый тестом во временном каталоге через {@code initdb} и {@code pg_ctl}.
+ * Каталог с бинарными файлами берется из свойства {@code benchmark.pg.bin}, иначе используется {@code PATH}.
+ */
+public class LocalPostgres implements AutoCloseable {
+
+    private final Path dataDirectory;
+    private final String binDirectory;
+    private final int port;
+
+    private LocalPostgres(Path dataDirectory, String binDirectory, int port) {
+        this.dataDirectory = dataDirectory;
+        this.binDirectory = binDirectory;
+        this.port = port;
+    }
+
+    /**
+     * Проверяет, доступны ли бинарные файлы PostgreSQL.
+     */
+    public static boolean isAvailable() {
+        try {
+            return new ProcessBuilder(executable(System.getProperty("benchmark.pg.bin", ""), "initdb"), "--version")
+                    .redirectErrorStream(true)
+                    .start()
+                    .waitFor() == 0;
+        } catch (IOException e) {
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * Инициализирует кластер и запускает сервер на свободном порту с доверительной аутентификацией.
+     */
+    public static LocalPostgres start() throws IOException, InterruptedException {
+        String bin = System.getProperty("benchmark.pg.bin", "");
+        Path dataDirectory = Files.createTempDirectory("flywayclone-bench-pg");
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+
+        LocalPostgres postgres = new LocalPostgres(dataDirectory, bin, port);
+        postgres.run(executable(bin, "initdb"), "-D", dataDirectory.toString(), "-U", "bench",
+                "--auth=trust", "-E", "UTF8", "--no-sync");
+        postgres.run(executable(bin, "pg_ctl"), "-D", dataDirectory.toString(), "-w", "-l",
+                dataDirectory.resolve("server.log").toString(), "-o",
+                "-p " + port + " -k " + dataDirectory + " -c listen_addresses=localhost -c fsync=off",
+                "start");
+        return postgres;
+    }
+
+    public String jdbcUrl(String database) {
+        return "jdbc:postgresql://localhost:" + port + "/" + database;
+    }
+
+    public String username() {
+        return "bench";
+    }
+
+    @Override
+    public void close() throws IOException, InterruptedException {
+        try {
+            run(executable(binDirectory, "pg_ctl"), "-D", dataDirectory.toString(), "-m", "fast", "-w", "stop");
+        } finally {
+            try (Stream<Path> files = Files.walk(dataDirectory)) {
+                files.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+            }
+        }
+    }
+
+    private void run(String... command) throws IOException, InterruptedException {
+        List<String> arguments = new ArrayList<>(List.of(command));
+        Process process = new ProcessBuilder(arguments)
+                .redirectErrorStream(true)
+                .redirectOutput(dataDirectory.resolveSibling(dataDirectory.getFileName() + ".out").toFile())
+                .start();
+        if (!process.waitFor(2, TimeUnit.MINUTES) || process.exitValue() != 0) {
+            throw new IOException("Команда завершилась с ошибкой: " + String.join(" ", arguments));
+        }
+    }
+
+    private static String executable(String bin, String name) {
+        return bin.isEmpty() ? name : Path.of(bin, name).toString();
+    }
+}
@@ -0,0 +1,80 @@
+package benchmark;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+/**
+ * Генератор синтетического набора миграций для нагрузочных сценариев.
+ * <p>
+ * Миграции чередуются по тройкам: создание таблицы, массовая вставка данных и построение индекса.
+ * Все скрипты идемпотентны по схеме ({@code IF NOT EXISTS}), так как откат очищает только данные
+ * и повторно выполняет оставшиеся миграции.
+ * </p>
+ */
+public class MigrationCorpusGenerator {
+
+    private final int migrations;
+    private final int rowsPerInsert;
+    private final Random random;
+
+    /**
+     * @param migrations    Количество миграций.
+     * @param rowsPerInsert Количество строк в каждой миграции с массовой вставкой.
+     * @param seed          Начальное значение генератора случайных чисел для воспроизводимости набора.
+     */
+    public MigrationCorpusGenerator(int migrations, int rowsPerInsert, long seed) {
+        this.migrations = migrations;
+        this.rowsPerInsert = rowsPerInsert;
+        this.random = new Random(seed);
+    }
+
+    /**
+     * Записывает миграции {@code V1..VN} в указанный каталог.
+     *
+     * @param directory Каталог для файлов миграций.
+     * @throws IOException Если не удалось записать файл.
+     */
+    public void generate(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        for (int version = 1; version <= migrations; version++) {
+            int table = (version - 1) / 3;
+            String sql = switch ((version - 1) % 3) {
+                case 0 -> """
+                        CREATE TABLE IF NOT EXISTS bench_table_%1$d (
+                            id BIGSERIAL PRIMARY KEY,
+                            payload TEXT,
+                            amount NUMERIC(12, 2),
+                            created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP
+                        );
+                        """.formatted(table);
+                case 1 -> """
+                        INSERT INTO bench_table_%1$d (payload, amount)
+                        SELECT md5(g::text || '%2$d'), (random() * %3$d)::numeric(12, 2)
+                        FROM generate_series(1, %4$d) AS g;
+                        """.formatted(table, random.nextInt(), 1 + random.nextInt(100_000), rowsPerInsert);
+                default -> """
+                        CREATE INDEX IF NOT EXISTS bench_table_%1$d_amount_idx ON bench_table_%1$d (amount);
+                        """.formatted(table);
+            };
+            Path file = directory.resolve("V" + version + "__bench_" + version + ".sql");
+            Files.writeString(file, sql, StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Скрипт предварительного наполнения базы данных, не связанный с миграциями.
+     * Позволяет оценить, как объем существующих данных влияет на откат и экспорт.
+     *
+     * @param rows Количество строк в таблице {@code bench_seed}.
+     * @return SQL-скрипт.
+     */
+    public static String seedDataset(int rows) {
+        return """
+                CREATE TABLE IF NOT EXISTS bench_seed (id BIGSERIAL PRIMARY KEY, payload TEXT);
+                INSERT INTO bench_seed (payload) SELECT md5(g::text) FROM generate_series(1, %d) AS g;
+                """.formatted(rows);
+    }
+}
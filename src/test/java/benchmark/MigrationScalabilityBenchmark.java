@@ -0,0 +1,193 @@
+package benchmark;
+
+import lombok.extern.slf4j.Slf4j;
+import migration_utils.MigrationFileReader;
+import migration_utils.MigrationManager;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import report.MakeReport;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.*;
+import java.time.LocalDate;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Сквозной нагрузочный тест: измеряет время {@code migrate}, {@code rollback(n)}, {@code rollbackToTag}
+ * и экспорта отчетов на синтетическом наборе миграций.
+ * <p>
+ * Тест запускает собственный экземпляр PostgreSQL и выполняется только в профиле {@code benchmark}:
+ * {@code mvn test -Pbenchmark -Dbenchmark.migrations=300 -Dbenchmark.rows=50000}.
+ * Результаты вместе с описанием окружения замера сохраняются в {@code target/benchmark/results.properties}.
+ * Эталон в репозитории не хранится: время сравнивается только с файлом результатов предыдущего запуска,
+ * явно указанным в {@code -Dbenchmark.baseline}.
+ * </p>
+ */
+@Slf4j
+@Tag("benchmark")
+class MigrationScalabilityBenchmark {
+
+    private static final int MIGRATIONS = Integer.getInteger("benchmark.migrations", 60);
+    private static final int ROWS = Integer.getInteger("benchmark.rows", 10_000);
+    private static final int SEED_ROWS = Integer.getInteger("benchmark.seed.rows", 100_000);
+    private static final double TOLERANCE = Double.parseDouble(System.getProperty("benchmark.tolerance", "1.5"));
+    private static final String BASELINE = System.getProperty("benchmark.baseline");
+
+    private static LocalPostgres postgres;
+
+    @BeforeAll
+    static void startDatabase() throws Exception {
+        assumeTrue(LocalPostgres.isAvailable(), "PostgreSQL (initdb, pg_ctl) не найден, нагрузочный тест пропущен");
+        postgres = LocalPostgres.start();
+
+        Path corpus = Files.createTempDirectory("flywayclone-bench-migrations");
+        new MigrationCorpusGenerator(MIGRATIONS, ROWS, 42L).generate(corpus);
+
+        System.setProperty("db.url", postgres.jdbcUrl("postgres"));
+        System.setProperty("db.username", postgres.username());
+        System.setProperty("db.password", "");
+        System.setProperty("path.to.migration.folder", corpus.toAbsolutePath().toString());
+
+        try (Connection connection = connect(); Statement statement = connection.createStatement()) {
+            statement.execute(MigrationCorpusGenerator.seedDataset(SEED_ROWS));
+        }
+    }
+
+    @AfterAll
+    static void stopDatabase() throws Exception {
+        if (postgres != null) {
+            postgres.close();
+        }
+    }
+
+    @Test
+    void testScalability() throws Exception {
+        Map<String, Long> results = new LinkedHashMap<>();
+
+        results.put("migrate", measure(MigrationManager::migrate));
+        assertEquals(MIGRATIONS, countApplied());
+
+        results.put("exportCsv", measure(() -> MakeReport.exportCsv("bench.csv")));
+        results.put("exportJson", measure(() -> MakeReport.exportJson("bench.json")));
+
+        int rollbackCount = Math.max(1, MIGRATIONS / 10);
+        results.put("rollback", measure(() -> MigrationManager.rollback(rollbackCount)));
+        assertEquals(MIGRATIONS - rollbackCount, countApplied());
+
+        String tag = String.valueOf(MIGRATIONS / 2);
+        results.put("rollbackToTag", measure(() -> MigrationManager.rollbackToTag(tag)));
+        assertEquals(tag, currentVersion(), "После rollbackToTag актуальна версия тега");
+        assertEquals(MIGRATIONS / 2, countApplied());
+
+        saveResults(results);
+        if (BASELINE != null) {
+            assertNoRegressions(results, Path.of(BASELINE));
+        }
+    }
+
+    private static long measure(Runnable scenario) {
+        long start = System.nanoTime();
+        scenario.run();
+        return (System.nanoTime() - start) / 1_000_000;
+    }
+
+    private static int countApplied() throws SQLException {
+        try (Connection connection = connect();
+             Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery("SELECT COUNT(*) FROM migration_history WHERE reverted = FALSE")) {
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+
+    private static String currentVersion() throws SQLException {
+        String current = null;
+        try (Connection connection = connect();
+             Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery(
+                     "SELECT version FROM migration_history WHERE reverted = FALSE AND type = 'SQL'")) {
+            while (rs.next()) {
+                String version = rs.getString(1);
+                if (current == null || MigrationFileReader.compareVersions(version, current) > 0) {
+                    current = version;
+                }
+            }
+        }
+        return current;
+    }
+
+    private static Properties toProperties(Map<String, Long> results) {
+        Properties properties = new Properties();
+        properties.setProperty("migrations", String.valueOf(MIGRATIONS));
+        properties.setProperty("rows", String.valueOf(ROWS));
+        properties.setProperty("seed.rows", String.valueOf(SEED_ROWS));
+        results.forEach((scenario, millis) -> properties.setProperty(scenario + ".ms", String.valueOf(millis)));
+        return properties;
+    }
+
+    /**
+     * Сохраняет результаты вместе с описанием окружения, на котором они получены. Сохраненный файл
+     * можно передать следующему запуску в {@code -Dbenchmark.baseline}.
+     */
+    private static void saveResults(Map<String, Long> results) throws IOException, SQLException {
+        Properties properties = toProperties(results);
+        properties.setProperty("recorded.at", LocalDate.now().toString());
+        properties.setProperty("recorded.java", System.getProperty("java.vm.name") + " " + System.getProperty("java.version"));
+        properties.setProperty("recorded.cpus", String.valueOf(Runtime.getRuntime().availableProcessors()));
+        try (Connection connection = connect();
+             Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery("SHOW server_version")) {
+            rs.next();
+            properties.setProperty("recorded.postgres", rs.getString(1));
+        }
+
+        Path output = Path.of("target", "benchmark", "results.properties");
+        Files.createDirectories(output.getParent());
+        try (OutputStream out = Files.newOutputStream(output)) {
+            properties.store(out, "FlywayClone scalability benchmark");
+        }
+        log.info("Результаты нагрузочного теста: {}", results);
+    }
+
+    /**
+     * Сравнивает результаты с указанным файлом результатов предыдущего запуска. Файл должен содержать
+     * замеры той же конфигурации набора миграций, иначе сравнение невозможно и тест завершается ошибкой.
+     */
+    private static void assertNoRegressions(Map<String, Long> results, Path baselineFile) throws IOException {
+        Properties baseline = new Properties();
+        try (InputStream in = Files.newInputStream(baselineFile)) {
+            baseline.load(in);
+        }
+        assertEquals(String.valueOf(MIGRATIONS), baseline.getProperty("migrations"),
+                "Эталон " + baselineFile + " снят на другом числе миграций");
+        assertEquals(String.valueOf(ROWS), baseline.getProperty("rows"),
+                "Эталон " + baselineFile + " снят на другом числе строк");
+        assertTrue(results.keySet().stream().anyMatch(scenario -> baseline.containsKey(scenario + ".ms")),
+                "Эталон " + baselineFile + " не содержит замеров");
+
+        results.forEach((scenario, millis) -> {
+            String expected = baseline.getProperty(scenario + ".ms");
+            if (expected != null) {
+                long limit = (long) (Long.parseLong(expected) * TOLERANCE);
+                assertTrue(millis <= limit,
+                        "Регрессия сценария " + scenario + ": " + millis + " мс при пороге " + limit + " мс");
+            }
+        });
+    }
+
+    private static Connection connect() throws SQLException {
+        return DriverManager.getConnection(System.getProperty("db.url"), System.getProperty("db.username"), "");
+    }
+}
@@ -0,0 +1,82 @@
+package connection;
+
+import database.ConnectionPool;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import utils.PropertiesUtils;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Возврат соединений в пул: откат транзакции, сброс состояния сеанса и закрытие соединения при ошибке сброса.
+ */
+class ConnectionPoolTest {
+
+    private ConnectionPool pool;
+
+    @AfterEach
+    void tearDown() {
+        pool.close();
+    }
+
+    @Test
+    void testReturnedConnectionIsResetAndReused() throws SQLException {
+        pool = newPool("SET @marker = NULL");
+
+        Connection physical;
+        try (Connection connection = pool.borrow(); Statement stmt = connection.createStatement()) {
+            physical = connection.unwrap(Connection.class);
+            connection.setAutoCommit(false);
+            stmt.execute("SET @marker = 1");
+        }
+
+        try (Connection connection = pool.borrow(); Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT @marker")) {
+            assertSame(physical, connection.unwrap(Connection.class), "Соединение переиспользуется");
+            assertTrue(connection.getAutoCommit(), "Режим автофиксации восстановлен");
+            rs.next();
+            assertNull(rs.getObject(1), "Переменная сеанса сброшена при возврате в пул");
+        }
+    }
+
+    @Test
+    void testConnectionIsClosedWhenResetFails() throws SQLException {
+        pool = newPool("DISCARD ALL");
+
+        Connection physical;
+        try (Connection connection = pool.borrow()) {
+            physical = connection.unwrap(Connection.class);
+        }
+
+        assertTrue(physical.isClosed(), "Соединение с несброшенным состоянием закрыто");
+        try (Connection connection = pool.borrow()) {
+            assertNotSame(physical, connection.unwrap(Connection.class));
+            assertTrue(connection.isValid(2));
+        }
+    }
+
+    @Test
+    void testBorrowFailsWhenPoolIsExhausted() throws SQLException {
+        pool = newPool(null);
+
+        try (Connection ignored = pool.borrow()) {
+            long start = System.currentTimeMillis();
+            SQLException error = assertThrows(SQLException.class, () -> pool.borrow());
+            assertTrue(error.getMessage().contains("200 мс"), error.getMessage());
+            assertTrue(System.currentTimeMillis() - start < 10_000);
+        }
+        try (Connection connection = pool.borrow()) {
+            assertTrue(connection.isValid(2), "Соединение выдается после возврата занятого");
+        }
+    }
+
+    private static ConnectionPool newPool(String resetStatement) {
+        return new ConnectionPool(PropertiesUtils.getProperty("db.url"), PropertiesUtils.getProperty("db.username"),
+                PropertiesUtils.getProperty("db.password"), 1, resetStatement, 200);
+    }
+}
@@ -0,0 +1,46 @@
+package connection;
+
+import database.H2Dialect;
+import org.junit.jupiter.api.Test;
+import utils.PropertiesUtils;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Сравнение версий в SQL диалекта H2 должно совпадать с {@code MigrationFileReader.compareVersions}.
+ */
+class H2DialectTest {
+
+    @Test
+    void testCompareVersionBySegments() throws SQLException {
+        try (Connection connection = DriverManager.getConnection(PropertiesUtils.getProperty("db.url"),
+                PropertiesUtils.getProperty("db.username"), PropertiesUtils.getProperty("db.password"))) {
+            assertTrue(compare(connection, "1.10", ">", "1.9"));
+            assertTrue(compare(connection, "10", ">", "9"));
+            assertTrue(compare(connection, "1.0.1", ">", "1"));
+            assertTrue(compare(connection, "2.0", "=", "2"));
+            assertFalse(compare(connection, "1.2.10", "<", "1.2.9"));
+            assertTrue(compare(connection, "2", "<=", "10.0.0"));
+        }
+    }
+
+    private static boolean compare(Connection connection, String version, String operator, String other)
+            throws SQLException {
+        String sql = "SELECT " + new H2Dialect().compareVersion(operator)
+                + " FROM (SELECT CAST('" + version + "' AS VARCHAR) AS version)";
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            statement.setString(1, other);
+            try (ResultSet rs = statement.executeQuery()) {
+                rs.next();
+                return rs.getBoolean(1);
+            }
+        }
+    }
+}
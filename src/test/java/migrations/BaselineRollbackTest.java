@@ -0,0 +1,107 @@
+package migrations;
+
+import migration_utils.MigrationFileReader;
+import migration_utils.MigrationManager;
+import migration_utils.MigrationPlan;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import utils.PropertiesUtils;
+
+import java.io.File;
+import java.sql.*;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Откат в базе данных, принятой под управление командой {@code baseline}: миграции, покрытые базовой версией,
+ * не выполняются повторно, а откат ниже базовой версии не выполняется.
+ */
+class BaselineRollbackTest {
+
+    private static final String CREATE_SCHEMA = """
+        CREATE SEQUENCE IF NOT EXISTS authors_id_seq;
+        CREATE SEQUENCE IF NOT EXISTS genres_id_seq;
+        CREATE SEQUENCE IF NOT EXISTS books_id_seq;
+        CREATE TABLE IF NOT EXISTS authors (id INTEGER DEFAULT NEXT VALUE FOR authors_id_seq PRIMARY KEY, name VARCHAR(255));
+        CREATE TABLE IF NOT EXISTS genres (id INTEGER DEFAULT NEXT VALUE FOR genres_id_seq PRIMARY KEY, name VARCHAR(255));
+        CREATE TABLE IF NOT EXISTS books (
+            id INTEGER DEFAULT NEXT VALUE FOR books_id_seq PRIMARY KEY,
+            title VARCHAR(255),
+            author_id INTEGER REFERENCES authors (id),
+            genre_id INTEGER REFERENCES genres (id),
+            rating NUMERIC(2, 1)
+        );
+    """;
+
+    private static final String DROP_SCHEMA = """
+        DROP TABLE IF EXISTS books;
+        DROP TABLE IF EXISTS authors;
+        DROP TABLE IF EXISTS genres;
+        DROP SEQUENCE IF EXISTS authors_id_seq;
+        DROP SEQUENCE IF EXISTS genres_id_seq;
+        DROP SEQUENCE IF EXISTS books_id_seq;
+        DROP TABLE IF EXISTS migration_history;
+        DROP TABLE IF EXISTS migration_state;
+    """;
+
+    private Connection connection;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        connection = DriverManager.getConnection(PropertiesUtils.getProperty("db.url"),
+                PropertiesUtils.getProperty("db.username"), PropertiesUtils.getProperty("db.password"));
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute(DROP_SCHEMA);
+            stmt.execute(CREATE_SCHEMA);
+            // Данные, существовавшие до принятия базы данных под управление
+            stmt.execute("INSERT INTO authors (id, name) VALUES (100, 'Лев Толстой')");
+        }
+        MigrationManager.baseline("2");
+        MigrationManager.migrate();
+    }
+
+    @AfterEach
+    void tearDown() throws SQLException {
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute(DROP_SCHEMA);
+        }
+        connection.close();
+    }
+
+    @Test
+    void testRollbackKeepsBaselineAndSkipsCoveredMigrations() throws SQLException {
+        assertEquals(5, count("SELECT COUNT(*) FROM genres"));
+
+        MigrationManager.rollback(1);
+
+        assertEquals(0, count("SELECT COUNT(*) FROM genres"));
+        assertEquals(0, count("SELECT COUNT(*) FROM migration_history WHERE version = '2' AND type = 'SQL'"),
+                "Миграция, покрытая базовой версией, не выполнялась повторно");
+        assertEquals(1, count("SELECT COUNT(*) FROM migration_history "
+                + "WHERE version = '2' AND type = 'BASELINE' AND reverted = FALSE"));
+
+        List<File> files = MigrationFileReader.findMigrationFiles(PropertiesUtils.getProperty("path.to.migration.folder"));
+        List<String> pending = MigrationPlan.build(connection, files).getPendingFiles().stream()
+                .map(MigrationFileReader::getVersionFromFile)
+                .toList();
+        assertEquals(List.of("3"), pending);
+    }
+
+    @Test
+    void testRollbackBelowBaselineIsRefused() throws SQLException {
+        MigrationManager.rollbackToTag("1");
+
+        assertEquals(1, count("SELECT COUNT(*) FROM authors WHERE id = 100"), "Данные не очищены");
+        assertEquals(5, count("SELECT COUNT(*) FROM genres"));
+        assertEquals(0, count("SELECT COUNT(*) FROM migration_history WHERE reverted = TRUE"));
+    }
+
+    private int count(String sql) throws SQLException {
+        try (Statement stmt = connection.createStatement(); ResultSet rs = stmt.executeQuery(sql)) {
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package migrations;
+
+import migration_utils.MigrationManager;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import utils.PropertiesUtils;
+
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Обновление таблицы истории старого формата и перенос откатанных записей в {@code migration_history_archive}.
+ */
+class HistoryArchiveTest {
+
+    private static final String DROP_SCHEMA = """
+        DROP TABLE IF EXISTS migration_history_archive;
+        DROP TABLE IF EXISTS migration_state;
+        DROP TABLE IF EXISTS migration_history;
+    """;
+
+    /**
+     * Таблица истории в формате до появления контрольных сумм, типов и архива.
+     */
+    private static final String CREATE_OLD_HISTORY_TABLE = """
+        CREATE TABLE migration_history (
+            id SERIAL PRIMARY KEY,
+            version VARCHAR(255) NOT NULL UNIQUE,
+            description VARCHAR(255),
+            status BOOLEAN DEFAULT FALSE,
+            reverted BOOLEAN DEFAULT FALSE,
+            applied_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP
+        )
+    """;
+
+    private Connection connection;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        System.setProperty("history.archive.enabled", "true");
+        connection = DriverManager.getConnection(PropertiesUtils.getProperty("db.url"),
+                PropertiesUtils.getProperty("db.username"), PropertiesUtils.getProperty("db.password"));
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute(DROP_SCHEMA);
+            stmt.execute(CREATE_OLD_HISTORY_TABLE);
+        }
+        try (PreparedStatement ps = connection.prepareStatement(
+                "INSERT INTO migration_history (version, description, status) VALUES (?, ?, TRUE)")) {
+            for (String version : List.of("0.1", "0.2", "0.3")) {
+                ps.setString(1, version);
+                ps.setString(2, "migration " + version);
+                ps.executeUpdate();
+            }
+        }
+    }
+
+    @AfterEach
+    void tearDown() throws SQLException {
+        System.clearProperty("history.archive.enabled");
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute(DROP_SCHEMA);
+        }
+        connection.close();
+    }
+
+    @Test
+    void testRollbackMovesRowsToArchive() throws SQLException {
+        MigrationManager.rollback(1);
+
+        assertEquals(List.of("0.1", "0.2"), versions("migration_history"), "Откатанная запись удалена из истории");
+        assertEquals(List.of("0.3"), versions("migration_history_archive"));
+
+        MigrationManager.rollbackToTag("0.1");
+
+        assertEquals(List.of("0.1"), versions("migration_history"));
+        assertEquals(List.of("0.2", "0.3"), versions("migration_history_archive"));
+        try (Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery(
+                     "SELECT COUNT(*) FROM migration_history_archive WHERE id IS NULL OR archived_at IS NULL")) {
+            rs.next();
+            assertEquals(0, rs.getInt(1), "Архив сохраняет идентификаторы и время переноса записей");
+        }
+    }
+
+    private List<String> versions(String table) throws SQLException {
+        List<String> versions = new ArrayList<>();
+        try (Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT version FROM " + table + " ORDER BY version")) {
+            while (rs.next()) {
+                versions.add(rs.getString(1));
+            }
+        }
+        return versions;
+    }
+}
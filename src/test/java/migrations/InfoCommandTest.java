@@ -0,0 +1,113 @@
+package migrations;
+
+import database.DatabaseDialects;
+import migration_utils.InfoOptions;
+import migration_utils.MigrationManager;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import utils.PropertiesUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.*;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Разбор опций команды {@code info} и постраничный вывод истории в компактном формате.
+ */
+class InfoCommandTest {
+
+    private Connection connection;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        connection = DriverManager.getConnection(PropertiesUtils.getProperty("db.url"),
+                PropertiesUtils.getProperty("db.username"), PropertiesUtils.getProperty("db.password"));
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("DROP TABLE IF EXISTS migration_history");
+            stmt.execute(DatabaseDialects.get().createHistoryTable());
+        }
+        try (PreparedStatement ps = connection.prepareStatement(
+                "INSERT INTO migration_history (version, description, status, type, applied_at) "
+                        + "VALUES (?, ?, TRUE, 'SQL', ?)")) {
+            for (int version = 1; version <= 3; version++) {
+                ps.setString(1, String.valueOf(version));
+                ps.setString(2, "migration " + version);
+                ps.setTimestamp(3, Timestamp.valueOf("2024-05-0" + version + " 10:00:00"));
+                ps.executeUpdate();
+            }
+        }
+    }
+
+    @AfterEach
+    void tearDown() throws SQLException {
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("DROP TABLE IF EXISTS migration_history");
+        }
+        connection.close();
+    }
+
+    @Test
+    void testParseOptions() {
+        InfoOptions options = InfoOptions.parse(new String[]{
+                "--limit", "10", "--since", "2024-05-01", "--version-range", "2..", "--format", "compact"});
+
+        assertEquals(10, options.limit());
+        assertEquals(Timestamp.valueOf("2024-05-01 00:00:00"), options.since());
+        assertEquals("2", options.versionFrom());
+        assertNull(options.versionTo());
+        assertTrue(options.compact());
+
+        InfoOptions after = InfoOptions.parse(new String[]{"--after", "2024-05-01T10:00:00.5,7"});
+        assertEquals(Timestamp.valueOf("2024-05-01 10:00:00.5"), after.afterAppliedAt());
+        assertEquals(7, after.afterId());
+    }
+
+    @Test
+    void testParseRejectsInvalidValues() {
+        assertThrows(IllegalArgumentException.class, () -> InfoOptions.parse(new String[]{"--since", "yesterday"}));
+        assertThrows(IllegalArgumentException.class, () -> InfoOptions.parse(new String[]{"--after", "2024-05-01"}));
+        assertThrows(IllegalArgumentException.class, () -> InfoOptions.parse(new String[]{"--limit"}));
+        assertThrows(IllegalArgumentException.class, () -> InfoOptions.parse(new String[]{"--format", "xml"}));
+    }
+
+    @Test
+    void testCompactPagesUntilHistoryEnds() {
+        List<String> firstPage = compactInfo("--limit", "2");
+        assertEquals(3, firstPage.size());
+        assertTrue(firstPage.get(0).startsWith("1\tSQL\t"));
+        assertTrue(firstPage.get(1).startsWith("2\tSQL\t"));
+        assertTrue(firstPage.get(2).startsWith("# next: --after 2024-05-02T10:00"), firstPage.get(2));
+
+        String cursor = firstPage.get(2).substring("# next: --after ".length());
+        List<String> lastPage = compactInfo("--limit", "2", "--after", cursor);
+        assertEquals(1, lastPage.size(), "Продолжение не выводится, когда история закончилась");
+        assertTrue(lastPage.get(0).startsWith("3\tSQL\t"));
+
+        assertEquals(3, compactInfo("--limit", "3").size(), "Ровно limit записей без продолжения");
+    }
+
+    private static List<String> compactInfo(String... args) {
+        String[] options = new String[args.length + 2];
+        options[0] = "--format";
+        options[1] = "compact";
+        System.arraycopy(args, 0, options, 2, args.length);
+
+        PrintStream originalOut = System.out;
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(buffer, true, StandardCharsets.UTF_8));
+        try {
+            MigrationManager.info(InfoOptions.parse(options));
+        } finally {
+            System.setOut(originalOut);
+        }
+        // В System.out пишет и журнал; записи компактного вывода разделены табуляцией
+        return buffer.toString(StandardCharsets.UTF_8).lines()
+                .filter(line -> line.contains("\t") || line.startsWith("# next"))
+                .toList();
+    }
+}
@@ -0,0 +1,104 @@
+package migrations;
+
+import database.DatabaseDialects;
+import migration_utils.MigrationCancellation;
+import migration_utils.MigrationExecutor;
+import migration_utils.MigrationPlan;
+import migration_utils.MigrationTemplates;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import utils.PropertiesUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.*;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Прерывание выполняющейся миграции по бюджету времени, откат транзакции и запись прерванной миграции.
+ */
+class MigrationCancellationTest {
+
+    private static final String DROP_SCHEMA = """
+        DROP TABLE IF EXISTS cancel_items;
+        DROP TABLE IF EXISTS migration_history;
+    """;
+
+    private Connection connection;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        connection = DriverManager.getConnection(PropertiesUtils.getProperty("db.url"),
+                PropertiesUtils.getProperty("db.username"), PropertiesUtils.getProperty("db.password"));
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute(DROP_SCHEMA);
+            stmt.execute(DatabaseDialects.get().createHistoryTable());
+            stmt.execute("CREATE TABLE cancel_items (id INT)");
+        }
+        connection.setAutoCommit(false);
+    }
+
+    @AfterEach
+    void tearDown() throws SQLException {
+        connection.setAutoCommit(true);
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute(DROP_SCHEMA);
+        }
+        connection.close();
+    }
+
+    @Test
+    void testMigrationBudgetCancelsRunningStatement(@TempDir Path directory) throws IOException, SQLException {
+        Path path = directory.resolve("V7__slow.sql");
+        Files.writeString(path, """
+                INSERT INTO cancel_items VALUES (1);
+                SELECT COUNT(*) FROM SYSTEM_RANGE(1, 1000000) a, SYSTEM_RANGE(1, 1000000) b
+                WHERE MOD(a."X" + b."X", 1000003) < 0;
+                """);
+        File file = path.toFile();
+
+        long start = System.currentTimeMillis();
+        try (MigrationCancellation cancellation = new MigrationCancellation(200)) {
+            cancellation.attach(connection);
+            cancellation.beginMigration(file, MigrationPlan.TYPE_SQL);
+            SQLException error = assertThrows(SQLException.class, () -> MigrationExecutor.execute(connection,
+                    MigrationExecutor.prepare(file, MigrationTemplates.defaultPlaceholders()), null, cancellation));
+            assertTrue(cancellation.isCancelled());
+            cancellation.handleFailure(connection, error);
+        }
+        assertTrue(System.currentTimeMillis() - start < 10_000, "Запрос не был прерван");
+
+        try (Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM cancel_items")) {
+            assertTrue(rs.next());
+            assertEquals(0, rs.getInt(1));
+        }
+        try (Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT status, reverted FROM migration_history WHERE version = '7'")) {
+            assertTrue(rs.next());
+            assertFalse(rs.getBoolean("status"));
+            assertFalse(rs.getBoolean("reverted"));
+        }
+
+        MigrationPlan plan = MigrationPlan.build(connection, List.of(file), List.of());
+        assertEquals(List.of(file), plan.getPendingFiles());
+    }
+
+    @Test
+    void testCheckpointFailsAfterCancel() throws SQLException {
+        try (MigrationCancellation cancellation = new MigrationCancellation(0)) {
+            cancellation.checkpoint();
+            cancellation.cancel("проверка");
+
+            SQLException error = assertThrows(SQLException.class, cancellation::checkpoint);
+            assertEquals("57014", error.getSQLState());
+            assertTrue(error.getMessage().contains("проверка"));
+        }
+    }
+}
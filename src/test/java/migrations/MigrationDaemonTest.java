@@ -0,0 +1,64 @@
+package migrations;
+
+import migration_utils.MigrationDaemon;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Протокол демона миграций: одна строка команды от клиента, вывод команды в ответ.
+ */
+class MigrationDaemonTest {
+
+    @Test
+    void testNestedCommandsAreRejected(@TempDir Path directory) throws Exception {
+        Path socket = directory.resolve("daemon.sock");
+        Thread daemon = Thread.ofPlatform().name("daemon-test").start(() -> MigrationDaemon.start(socket.toString()));
+        try {
+            awaitSocket(socket);
+
+            assertTrue(send(socket, "daemon").contains("не выполняется внутри демона"));
+            assertTrue(send(socket, "client migrate").contains("не выполняется внутри демона"));
+            assertTrue(daemon.isAlive(), "Демон продолжает принимать команды");
+        } finally {
+            send(socket, "shutdown");
+            daemon.join(TimeUnit.SECONDS.toMillis(10));
+        }
+        assertFalse(daemon.isAlive(), "Демон остановлен командой shutdown");
+    }
+
+    private static void awaitSocket(Path socket) throws Exception {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (System.nanoTime() < deadline) {
+            if (Files.exists(socket)) {
+                try (SocketChannel ignored = SocketChannel.open(UnixDomainSocketAddress.of(socket))) {
+                    return;
+                } catch (IOException e) {
+                    // Сокет создан, но демон еще не принимает соединения
+                }
+            }
+            Thread.sleep(20);
+        }
+        fail("Демон не запустился");
+    }
+
+    private static String send(Path socket, String command) throws IOException {
+        try (SocketChannel channel = SocketChannel.open(StandardProtocolFamily.UNIX)) {
+            channel.connect(UnixDomainSocketAddress.of(socket));
+            Channels.newOutputStream(channel).write((command + "\n").getBytes(StandardCharsets.UTF_8));
+            channel.shutdownOutput();
+            return new String(Channels.newInputStream(channel).readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -1,11 +1,25 @@
 package migrations;
 
 
+import migration_utils.MigrationExecutor;
 import migration_utils.MigrationFileReader;
+import migration_utils.MigrationTemplates;
+import migration_utils.PreparedMigration;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -18,6 +32,59 @@ public class MigrationFileReaderTest {
         assertEquals("10", version);
     }
 
+    @Test
+    void testGetRepeatableKey() {
+        File file = new File("R__create_views.sql");
+        assertEquals("R__create_views", MigrationFileReader.getRepeatableKey(file));
+    }
+
+    @Test
+    void testCompressedMigrationHasChecksumOfPlainScript(@TempDir Path directory) throws IOException, SQLException {
+        String sql = "CREATE TABLE t (id INT);\nINSERT INTO t VALUES (1);\n";
+        Path compressed = directory.resolve("V7__data.sql.gz");
+        try (Writer writer = new OutputStreamWriter(
+                new GZIPOutputStream(Files.newOutputStream(compressed)), StandardCharsets.UTF_8)) {
+            writer.write(sql);
+        }
+
+        assertTrue(MigrationFileReader.isCompressed(compressed.toFile()));
+        assertEquals(MigrationFileReader.calculateChecksum(sql),
+                MigrationFileReader.calculateChecksum(compressed.toFile()));
+        assertEquals(sql, MigrationFileReader.readSqlFromFile(compressed.toFile()));
+        assertEquals(List.of(compressed.toFile()),
+                MigrationFileReader.findMigrationFiles(directory.toString()));
+        assertEquals("R__views", MigrationFileReader.getRepeatableKey(new File("R__views.sql.gz")));
+
+        PreparedMigration migration = MigrationExecutor.prepare(compressed.toFile(), Map.of());
+        List<String> statements = new ArrayList<>();
+        String checksum = MigrationExecutor.forEachStatement(migration,
+                (statement, copyData) -> statements.add(statement.sql()));
+        assertTrue(migration.isStreamed());
+        assertEquals(List.of("CREATE TABLE t (id INT)", "INSERT INTO t VALUES (1)"), statements);
+        assertEquals(MigrationFileReader.calculateChecksum(sql), checksum);
+    }
+
+    @Test
+    void testCompressedChecksumIsCachedUntilFileChanges(@TempDir Path directory) throws IOException {
+        String sql = "INSERT INTO t VALUES (1);\n";
+        Path compressed = directory.resolve("V8__data.sql.gz");
+        try (Writer writer = new OutputStreamWriter(
+                new GZIPOutputStream(Files.newOutputStream(compressed)), StandardCharsets.UTF_8)) {
+            writer.write(sql);
+        }
+        File file = compressed.toFile();
+        long lastModified = file.lastModified();
+        assertEquals(MigrationFileReader.calculateChecksum(sql), MigrationTemplates.checksum(file));
+
+        // Файл того же размера и с той же датой изменения повторно не распаковывается
+        Files.write(compressed, new byte[(int) file.length()]);
+        assertTrue(file.setLastModified(lastModified));
+        assertEquals(MigrationFileReader.calculateChecksum(sql), MigrationTemplates.checksum(file));
+
+        assertTrue(file.setLastModified(lastModified - 60_000));
+        assertThrows(RuntimeException.class, () -> MigrationTemplates.checksum(file));
+    }
+
     @Test
     void testThrowExceptionForInvalidDirectory() {
         String directoryPath = "invalidDirectory";
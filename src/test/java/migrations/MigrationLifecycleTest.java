@@ -0,0 +1,100 @@
+package migrations;
+
+import migration_utils.MigrationManager;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import utils.PropertiesUtils;
+
+import java.sql.*;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Полный цикл {@code migrate} и {@code rollback} на встроенной базе данных из тестовой конфигурации.
+ */
+class MigrationLifecycleTest {
+
+    private static final String CREATE_SCHEMA = """
+        CREATE SEQUENCE IF NOT EXISTS authors_id_seq;
+        CREATE SEQUENCE IF NOT EXISTS genres_id_seq;
+        CREATE SEQUENCE IF NOT EXISTS books_id_seq;
+        CREATE TABLE IF NOT EXISTS authors (id INTEGER DEFAULT NEXT VALUE FOR authors_id_seq PRIMARY KEY, name VARCHAR(255));
+        CREATE TABLE IF NOT EXISTS genres (id INTEGER DEFAULT NEXT VALUE FOR genres_id_seq PRIMARY KEY, name VARCHAR(255));
+        CREATE TABLE IF NOT EXISTS books (
+            id INTEGER DEFAULT NEXT VALUE FOR books_id_seq PRIMARY KEY,
+            title VARCHAR(255),
+            author_id INTEGER REFERENCES authors (id),
+            genre_id INTEGER REFERENCES genres (id),
+            rating NUMERIC(2, 1)
+        );
+    """;
+
+    private static final String DROP_SCHEMA = """
+        DROP TABLE IF EXISTS books;
+        DROP TABLE IF EXISTS authors;
+        DROP TABLE IF EXISTS genres;
+        DROP SEQUENCE IF EXISTS authors_id_seq;
+        DROP SEQUENCE IF EXISTS genres_id_seq;
+        DROP SEQUENCE IF EXISTS books_id_seq;
+        DROP TABLE IF EXISTS migration_history;
+        DROP TABLE IF EXISTS migration_state;
+    """;
+
+    private Connection connection;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        connection = DriverManager.getConnection(PropertiesUtils.getProperty("db.url"),
+                PropertiesUtils.getProperty("db.username"), PropertiesUtils.getProperty("db.password"));
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute(DROP_SCHEMA);
+            stmt.execute(CREATE_SCHEMA);
+        }
+    }
+
+    @AfterEach
+    void tearDown() throws SQLException {
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute(DROP_SCHEMA);
+        }
+        connection.close();
+    }
+
+    @Test
+    void testMigrateAndRollback() throws SQLException {
+        MigrationManager.migrate();
+
+        assertEquals(3, count("SELECT COUNT(*) FROM migration_history WHERE reverted = FALSE"));
+        assertEquals(5, count("SELECT COUNT(*) FROM genres"));
+        assertEquals(0, count("SELECT COUNT(*) FROM books"));
+
+        MigrationManager.rollback(1);
+
+        assertEquals(2, count("SELECT COUNT(*) FROM migration_history WHERE reverted = FALSE"));
+        assertEquals(0, count("SELECT COUNT(*) FROM migration_state"));
+        assertEquals(0, count("SELECT COUNT(*) FROM genres"));
+
+        MigrationManager.rollbackToTag("1");
+
+        assertEquals(1, count("SELECT COUNT(*) FROM migration_history WHERE reverted = FALSE"));
+        assertEquals(5, count("SELECT COUNT(*) FROM books"));
+    }
+
+    @Test
+    void testMigrateIsIdempotent() throws SQLException {
+        MigrationManager.migrate();
+        MigrationManager.migrate();
+
+        assertEquals(3, count("SELECT COUNT(*) FROM migration_history WHERE reverted = FALSE"));
+        assertEquals(1, count("SELECT COUNT(*) FROM migration_state"));
+        assertEquals(5, count("SELECT COUNT(*) FROM genres"));
+    }
+
+    private int count(String sql) throws SQLException {
+        try (Statement stmt = connection.createStatement(); ResultSet rs = stmt.executeQuery(sql)) {
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package migrations;
+
+import migration_utils.MigrationLinter;
+import migration_utils.MigrationLinter.Finding;
+import migration_utils.MigrationLinter.Severity;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Правила линтера миграций и номера строк замечаний.
+ */
+class MigrationLinterTest {
+
+    @Test
+    void testRulesReportSeverityFileAndLine(@TempDir Path directory) throws IOException {
+        Path path = directory.resolve("V5__risky.sql");
+        Files.writeString(path, """
+                -- create index on books (title)
+                CREATE INDEX books_title_idx ON books (title);
+                CREATE INDEX CONCURRENTLY books_rating_idx ON books (rating);
+                ALTER TABLE books ADD COLUMN token UUID DEFAULT gen_random_uuid();
+                ALTER TABLE books ADD COLUMN created_at TIMESTAMP DEFAULT now();
+                UPDATE books
+                SET rating = 0;
+                UPDATE books SET rating = 1 WHERE id = 1;
+                DELETE FROM authors;
+                ALTER TABLE books
+                    ALTER COLUMN rating TYPE NUMERIC(3, 1);
+                TRUNCATE genres CASCADE;
+                SELECT 'DELETE FROM genres';
+                """);
+
+        List<Finding> findings = MigrationLinter.lint(List.of(path.toFile()));
+
+        assertEquals(List.of(
+                new Finding(Severity.WARNING, "V5__risky.sql", 2, "create-index-without-concurrently", null),
+                new Finding(Severity.ERROR, "V5__risky.sql", 4, "add-column-volatile-default", null),
+                new Finding(Severity.WARNING, "V5__risky.sql", 6, "update-without-where", null),
+                new Finding(Severity.WARNING, "V5__risky.sql", 9, "delete-without-where", null),
+                new Finding(Severity.WARNING, "V5__risky.sql", 10, "column-type-change", null),
+                new Finding(Severity.ERROR, "V5__risky.sql", 12, "truncate-cascade", null)),
+                findings.stream().map(f -> new Finding(f.severity(), f.file(), f.line(), f.rule(), null)).toList());
+        assertTrue(findings.getFirst().message().contains("books"), findings.getFirst().message());
+    }
+
+    @Test
+    void testTablesCreatedInSameFileAreSkipped(@TempDir Path directory) throws IOException {
+        Path first = directory.resolve("V6__new_table.sql");
+        Files.writeString(first, """
+                CREATE TABLE reviews (id INT, book_id INT);
+                CREATE INDEX reviews_book_idx ON reviews (book_id);
+                ALTER TABLE reviews ADD COLUMN token UUID DEFAULT gen_random_uuid();
+                """);
+        Path second = directory.resolve("V7__existing_table.sql");
+        Files.writeString(second, "CREATE INDEX reviews_id_idx ON reviews (id);\n");
+
+        List<Finding> findings = MigrationLinter.lint(List.of(first.toFile(), second.toFile()));
+
+        assertEquals(1, findings.size(), findings.toString());
+        assertEquals("V7__existing_table.sql", findings.getFirst().file());
+    }
+
+    @Test
+    void testWhereInsideSubqueryDoesNotCount(@TempDir Path directory) throws IOException {
+        Path path = directory.resolve("V8__subqueries.sql");
+        Files.writeString(path, """
+                UPDATE books SET rating = (SELECT max(rating) FROM books b WHERE b.author_id = 1);
+                DELETE FROM genres WHERE id IN (SELECT genre_id FROM books WHERE rating < 1);
+                UPDATE books SET rating = (SELECT 1) WHERE id = 2;
+                """);
+
+        List<Finding> findings = MigrationLinter.lint(List.of(path.toFile()));
+
+        assertEquals(1, findings.size(), findings.toString());
+        assertEquals("update-without-where", findings.getFirst().rule());
+        assertEquals(1, findings.getFirst().line());
+    }
+
+    @Test
+    void testUnknownPolicyFallsBackToWarn() {
+        System.setProperty("lint.policy", "abrot");
+        try {
+            assertEquals(MigrationLinter.Policy.WARN, MigrationLinter.policyFromProperties());
+        } finally {
+            System.clearProperty("lint.policy");
+        }
+        assertEquals(MigrationLinter.Policy.OFF, MigrationLinter.policyFromProperties());
+    }
+
+    @Test
+    void testBundledMigrations() {
+        File file = new File("src/main/resources/migrations/V2__delete_data_from_all_tables.sql");
+
+        List<Finding> findings = MigrationLinter.lint(List.of(file));
+
+        assertEquals(List.of(1, 2, 3), findings.stream().map(Finding::line).toList());
+        assertTrue(findings.stream().allMatch(f -> "delete-without-where".equals(f.rule())));
+    }
+}
@@ -1,19 +1,29 @@
 package migrations;
 
+import migration_utils.InfoOptions;
 import migration_utils.MigrationManager;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import utils.PropertiesUtils;
 
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
 import java.sql.*;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
 
 class MigrationManagerTest {
 
     private Connection connection;
 
-    private static final String CREATE_TABLE_IF_NOT_EXISTS = """
-        CREATE TABLE IF NOT EXISTS migration_history (
+    /**
+     * Таблица истории первой версии схемы: без колонок {@code type}, {@code checksum} и других.
+     */
+    private static final String CREATE_V1_HISTORY_TABLE = """
+        CREATE TABLE migration_history (
             id SERIAL PRIMARY KEY,
             version VARCHAR(255) NOT NULL UNIQUE,
             description VARCHAR(255),
@@ -23,7 +33,10 @@ class MigrationManagerTest {
         )
     """;
 
-    private static final String CLEAR_TABLE = "TRUNCATE TABLE migration_history";
+    private static final String DROP_TABLES = """
+        DROP TABLE IF EXISTS migration_history;
+        DROP TABLE IF EXISTS migration_state;
+    """;
 
     @BeforeEach
     void setUp() throws Exception {
@@ -35,14 +48,15 @@ class MigrationManagerTest {
         connection = DriverManager.getConnection(url, user, password);
 
         try (Statement stmt = connection.createStatement()) {
-            stmt.execute(CREATE_TABLE_IF_NOT_EXISTS);
+            stmt.execute(DROP_TABLES);
+            stmt.execute(CREATE_V1_HISTORY_TABLE);
         }
     }
 
     @AfterEach
     void tearDown() throws SQLException {
         try (Statement stmt = connection.createStatement()) {
-            stmt.execute(CLEAR_TABLE);
+            stmt.execute(DROP_TABLES);
         }
         connection.close();
     }
@@ -58,16 +72,8 @@ class MigrationManagerTest {
             ps.executeUpdate();
         }
 
-        MigrationManager.getLastAppliedMigration();
-
-        String query = "SELECT version FROM migration_history WHERE status = TRUE ORDER BY applied_at DESC LIMIT 1";
-        try (Statement stmt = connection.createStatement(); ResultSet rs = stmt.executeQuery(query)) {
-            if (rs.next()) {
-                assert "1.0.0".equals(rs.getString("version")) : "Last applied migration version should be 1.0.0";
-            } else {
-                assert false : "No applied migrations found";
-            }
-        }
+        assertEquals("1.0.0", MigrationManager.getLastAppliedMigration(),
+                "Таблица истории первой версии обновляется перед чтением");
     }
 
     @Test
@@ -139,12 +145,20 @@ class MigrationManagerTest {
             ps.executeUpdate();
         }
 
-        MigrationManager.info();
-
-        String query = "SELECT COUNT(*) AS count FROM migration_history";
-        try (Statement stmt = connection.createStatement(); ResultSet rs = stmt.executeQuery(query)) {
-            rs.next();
-            assert rs.getInt("count") == 2 : "There should be 2 migrations in the database";
+        PrintStream originalOut = System.out;
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(buffer, true, StandardCharsets.UTF_8));
+        try {
+            MigrationManager.info(InfoOptions.parse(new String[]{"--format", "compact"}));
+        } finally {
+            System.setOut(originalOut);
         }
+        List<String> rows = buffer.toString(StandardCharsets.UTF_8).lines()
+                .filter(line -> line.contains("\t"))
+                .toList();
+
+        assertEquals(2, rows.size(), "Таблица истории первой версии обновляется перед выводом");
+        assertTrue(rows.get(0).startsWith("1.0.0\tSQL\t"), rows.get(0));
+        assertTrue(rows.get(1).startsWith("1.1.0\tSQL\t"), rows.get(1));
     }
 }
@@ -0,0 +1,78 @@
+package migrations;
+
+import migration_utils.MigrationPrefetcher;
+import migration_utils.PreparedMigration;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MigrationPrefetcherTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void testPrefetchInVersionOrder() throws IOException {
+        List<File> files = new ArrayList<>();
+        for (int i = 1; i <= 10; i++) {
+            files.add(write("V" + i + "__step.sql", "INSERT INTO ${schema}.t VALUES (" + i + ");\nSELECT 1;"));
+        }
+
+        try (MigrationPrefetcher prefetcher = new MigrationPrefetcher(files, Map.of("schema", "tenant"), 2)) {
+            for (int i = 1; i <= 10; i++) {
+                PreparedMigration migration = prefetcher.next();
+                assertEquals(files.get(i - 1), migration.file());
+                assertEquals(2, migration.statements().size());
+                assertEquals("INSERT INTO tenant.t VALUES (" + i + ")", migration.statements().get(0).sql());
+            }
+            assertFalse(prefetcher.hasNext());
+        }
+    }
+
+    @Test
+    void testErrorAfterPrecedingMigrations() throws IOException {
+        List<File> files = List.of(
+                write("V1__ok.sql", "SELECT 1;"),
+                write("V2__broken.sql", "SELECT ${missing};"),
+                write("V3__ok.sql", "SELECT 3;"));
+
+        try (MigrationPrefetcher prefetcher = new MigrationPrefetcher(files, Map.of(), 4)) {
+            assertEquals(files.get(0), prefetcher.next().file());
+            assertThrows(IllegalArgumentException.class, prefetcher::next);
+            assertFalse(prefetcher.hasNext());
+        }
+    }
+
+    @Test
+    void testVirtualMachineErrorDoesNotBlockNext() throws IOException {
+        List<File> files = List.of(write("V1__step.sql", "SELECT ${value};"));
+        Map<String, String> placeholders = new HashMap<>() {
+            @Override
+            public String get(Object key) {
+                throw new StackOverflowError("placeholder");
+            }
+        };
+
+        try (MigrationPrefetcher prefetcher = new MigrationPrefetcher(files, placeholders, 1)) {
+            assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+                assertThrows(StackOverflowError.class, prefetcher::next);
+            });
+            assertFalse(prefetcher.hasNext());
+        }
+    }
+
+    private File write(String name, String sql) throws IOException {
+        return Files.writeString(directory.resolve(name), sql).toFile();
+    }
+}
@@ -0,0 +1,127 @@
+package migrations;
+
+import migration_utils.MigrationRehearsal;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import utils.PropertiesUtils;
+
+import java.sql.*;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Выбор сервера копии и выполнение плана ожидающих миграций при репетиции. Встроенная база данных
+ * из тестовой конфигурации выступает в роли копии.
+ */
+class MigrationRehearsalTest {
+
+    private static final String CREATE_SCHEMA = """
+        CREATE SEQUENCE IF NOT EXISTS authors_id_seq;
+        CREATE SEQUENCE IF NOT EXISTS genres_id_seq;
+        CREATE SEQUENCE IF NOT EXISTS books_id_seq;
+        CREATE TABLE IF NOT EXISTS authors (id INTEGER DEFAULT NEXT VALUE FOR authors_id_seq PRIMARY KEY, name VARCHAR(255));
+        CREATE TABLE IF NOT EXISTS genres (id INTEGER DEFAULT NEXT VALUE FOR genres_id_seq PRIMARY KEY, name VARCHAR(255));
+    """;
+
+    private static final String CREATE_BOOKS = """
+        CREATE TABLE IF NOT EXISTS books (
+            id INTEGER DEFAULT NEXT VALUE FOR books_id_seq PRIMARY KEY,
+            title VARCHAR(255),
+            author_id INTEGER REFERENCES authors (id),
+            genre_id INTEGER REFERENCES genres (id),
+            rating NUMERIC(2, 1)
+        );
+    """;
+
+    private static final String DROP_SCHEMA = """
+        DROP TABLE IF EXISTS books;
+        DROP TABLE IF EXISTS authors;
+        DROP TABLE IF EXISTS genres;
+        DROP SEQUENCE IF EXISTS authors_id_seq;
+        DROP SEQUENCE IF EXISTS genres_id_seq;
+        DROP SEQUENCE IF EXISTS books_id_seq;
+        DROP TABLE IF EXISTS migration_history;
+        DROP TABLE IF EXISTS migration_state;
+    """;
+
+    private Connection connection;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        connection = DriverManager.getConnection(PropertiesUtils.getProperty("db.url"),
+                PropertiesUtils.getProperty("db.username"), PropertiesUtils.getProperty("db.password"));
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute(DROP_SCHEMA);
+            stmt.execute(CREATE_SCHEMA);
+        }
+    }
+
+    @AfterEach
+    void tearDown() throws SQLException {
+        connection.setAutoCommit(true);
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute(DROP_SCHEMA);
+        }
+        connection.close();
+    }
+
+    @Test
+    void testCloneOnTargetServerByDefault() {
+        MigrationRehearsal.CloneServer server = MigrationRehearsal.resolveServer(
+                "jdbc:postgresql://db.example.com:5432/shop?ssl=true", "", "_rehearsal_1");
+
+        assertEquals("shop", server.source());
+        assertEquals("jdbc:postgresql://db.example.com:5432/postgres?ssl=true", server.adminUrl());
+        assertEquals("jdbc:postgresql://db.example.com:5432/shop_rehearsal_1?ssl=true", server.cloneUrl());
+        assertFalse(server.separate());
+    }
+
+    @Test
+    void testCloneOnRehearsalServer() {
+        MigrationRehearsal.CloneServer server = MigrationRehearsal.resolveServer(
+                "jdbc:postgresql://db.example.com:5432/shop", "jdbc:postgresql://localhost:5433/postgres",
+                "_rehearsal_1");
+
+        assertEquals("jdbc:postgresql://localhost:5433/postgres", server.adminUrl());
+        assertEquals("jdbc:postgresql://localhost:5433/shop_rehearsal_1", server.cloneUrl());
+        assertTrue(server.separate());
+
+        assertFalse(MigrationRehearsal.resolveServer("jdbc:postgresql://localhost:5433/shop",
+                "jdbc:postgresql://localhost:5433/maintenance", "_rehearsal_1").separate());
+        assertThrows(IllegalArgumentException.class, () -> MigrationRehearsal.resolveServer(
+                "jdbc:postgresql://db.example.com:5432/shop", "localhost:5433", "_rehearsal_1"));
+    }
+
+    @Test
+    void testRunPendingPlan() throws SQLException {
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute(CREATE_BOOKS);
+        }
+
+        List<MigrationRehearsal.StatementTiming> timings = MigrationRehearsal.runPendingPlan(connection);
+
+        assertEquals("COMMIT", timings.getLast().migration());
+        assertEquals(List.of("V1__insert_data_into_every_table.sql", "V2__delete_data_from_all_tables.sql",
+                        "V3__insert_data_into_genres.sql", "COMMIT"),
+                timings.stream().map(MigrationRehearsal.StatementTiming::migration).distinct().toList());
+        assertEquals(5, count("SELECT COUNT(*) FROM genres"));
+    }
+
+    @Test
+    void testFailedPlanRollsBackAndKeepsError() throws SQLException {
+        // Таблицы books нет: третий запрос V1 завершается ошибкой после вставки авторов и жанров
+        SQLException error = assertThrows(SQLException.class, () -> MigrationRehearsal.runPendingPlan(connection));
+
+        assertTrue(error.getMessage().toLowerCase().contains("books"), error.getMessage());
+        assertEquals(0, count("SELECT COUNT(*) FROM authors"));
+    }
+
+    private int count(String sql) throws SQLException {
+        try (Statement stmt = connection.createStatement(); ResultSet rs = stmt.executeQuery(sql)) {
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+}
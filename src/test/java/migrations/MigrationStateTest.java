@@ -0,0 +1,125 @@
+package migrations;
+
+import database.DatabaseDialects;
+import migration_utils.MigrationExecutor;
+import migration_utils.MigrationState;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import utils.PropertiesUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.*;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Быстрая проверка актуальности: хэш набора миграций и его сверка с таблицей {@code migration_state}.
+ */
+class MigrationStateTest {
+
+    private static final String DROP_SCHEMA = """
+        DROP TABLE IF EXISTS migration_state;
+        DROP TABLE IF EXISTS migration_history;
+    """;
+
+    private Connection connection;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        connection = DriverManager.getConnection(PropertiesUtils.getProperty("db.url"),
+                PropertiesUtils.getProperty("db.username"), PropertiesUtils.getProperty("db.password"));
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute(DROP_SCHEMA);
+            stmt.execute(DatabaseDialects.get().createHistoryTable());
+        }
+    }
+
+    @AfterEach
+    void tearDown() throws SQLException {
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute(DROP_SCHEMA);
+        }
+        connection.close();
+    }
+
+    @Test
+    void testDigestChangesWithMigrationContent(@TempDir Path directory) throws IOException {
+        Path migration = directory.resolve("V1__init.sql");
+        Files.writeString(migration, "CREATE TABLE state_items (id INT);");
+        List<File> migrations = List.of(migration.toFile());
+
+        String digest = MigrationState.digest(migrations, List.of());
+        assertEquals(digest, MigrationState.digest(migrations, List.of()));
+
+        Files.writeString(migration, "CREATE TABLE state_items (id BIGINT);");
+        assertNotEquals(digest, MigrationState.digest(migrations, List.of()));
+    }
+
+    @Test
+    void testUpToDateChecksContentOnlyWhenMetadataChanges(@TempDir Path directory)
+            throws IOException, SQLException {
+        Path migration = directory.resolve("V1__init.sql");
+        Files.writeString(migration, "CREATE TABLE state_items (id INT);");
+        List<File> migrations = List.of(migration.toFile());
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute(DatabaseDialects.get().createStateTable());
+        }
+        MigrationExecutor.recordBaseline(connection, "1", "0");
+        String filesDigest = MigrationState.filesDigest(migrations, List.of());
+        MigrationState.write(connection, MigrationState.digest(migrations, List.of()), filesDigest);
+
+        assertTrue(MigrationState.isUpToDate(connection, migrations, List.of()));
+
+        // Та же миграция с другой датой изменения: содержимое совпадает, хэш метаданных обновляется
+        assertTrue(migration.toFile().setLastModified(migration.toFile().lastModified() - 60_000));
+        assertTrue(MigrationState.isUpToDate(connection, migrations, List.of()));
+        String updatedFilesDigest = MigrationState.filesDigest(migrations, List.of());
+        assertNotEquals(filesDigest, updatedFilesDigest);
+        try (Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT files_digest FROM migration_state")) {
+            assertTrue(rs.next());
+            assertEquals(updatedFilesDigest, rs.getString(1));
+        }
+
+        Files.writeString(migration, "CREATE TABLE state_items (id BIGINT);");
+        assertFalse(MigrationState.isUpToDate(connection, migrations, List.of()));
+    }
+
+    @Test
+    void testUpToDateAfterWriteUntilHistoryChanges(@TempDir Path directory) throws IOException, SQLException {
+        Path migration = directory.resolve("V1__init.sql");
+        Files.writeString(migration, "CREATE TABLE state_items (id INT);");
+        List<File> migrations = List.of(migration.toFile());
+        String digest = MigrationState.digest(migrations, List.of());
+        String filesDigest = MigrationState.filesDigest(migrations, List.of());
+
+        assertFalse(MigrationState.isUpToDate(connection, migrations, List.of()), "Таблицы состояния еще нет");
+
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute(DatabaseDialects.get().createStateTable());
+        }
+        MigrationExecutor.recordBaseline(connection, "1", "0");
+        MigrationState.write(connection, digest, filesDigest);
+        assertTrue(MigrationState.isUpToDate(connection, migrations, List.of()));
+
+        MigrationState.write(connection, "def", null);
+        assertFalse(MigrationState.isUpToDate(connection, migrations, List.of()), "Сохранен хэш другого набора");
+
+        MigrationState.write(connection, digest, filesDigest);
+        MigrationExecutor.recordBaseline(connection, "2", "0");
+        assertFalse(MigrationState.isUpToDate(connection, migrations, List.of()),
+                "История пополнилась после записи состояния");
+
+        MigrationState.write(connection, digest, filesDigest);
+        assertTrue(MigrationState.isUpToDate(connection, migrations, List.of()));
+
+        MigrationState.invalidate(connection);
+        assertFalse(MigrationState.isUpToDate(connection, migrations, List.of()));
+    }
+}
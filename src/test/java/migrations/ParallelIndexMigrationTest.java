@@ -0,0 +1,156 @@
+package migrations;
+
+import database.ConnectionManager;
+import database.DatabaseDialects;
+import migration_utils.MigrationDirectives;
+import migration_utils.MigrationExecutor;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import utils.PropertiesUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.*;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Нетранзакционная миграция с параллельным созданием индексов на встроенной базе данных.
+ */
+class ParallelIndexMigrationTest {
+
+    private static final String DROP_SCHEMA = """
+        DROP TABLE IF EXISTS idx_a;
+        DROP TABLE IF EXISTS idx_b;
+        DROP TABLE IF EXISTS idx_c;
+        DROP TABLE IF EXISTS migration_history;
+    """;
+
+    private Connection connection;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        connection = DriverManager.getConnection(PropertiesUtils.getProperty("db.url"),
+                PropertiesUtils.getProperty("db.username"), PropertiesUtils.getProperty("db.password"));
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute(DROP_SCHEMA);
+            stmt.execute(DatabaseDialects.get().createHistoryTable());
+        }
+        connection.setAutoCommit(false);
+    }
+
+    @AfterEach
+    void tearDown() throws SQLException {
+        connection.setAutoCommit(true);
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute(DROP_SCHEMA);
+        }
+        connection.close();
+    }
+
+    @Test
+    void testBuildIndexesInParallelAndRecordMigration(@TempDir Path directory) throws IOException, SQLException {
+        Path file = directory.resolve("V1__indexes.sql");
+        Files.writeString(file, """
+                -- Индексы для отчетов
+                -- transactional: false
+                -- parallel-indexes: 3
+
+                CREATE TABLE idx_a (id INT, x INT, y INT);
+                CREATE TABLE idx_b (id INT, x INT);
+                CREATE TABLE idx_c (id INT, x INT);
+                INSERT INTO idx_a VALUES (1, 2, 3);
+                CREATE INDEX idx_a_x ON idx_a (x);
+                CREATE INDEX idx_a_y ON idx_a (y);
+                CREATE UNIQUE INDEX IF NOT EXISTS idx_b_x ON idx_b (x);
+                --
+                -- Name: idx_c_x; Type: INDEX
+                --
+                CREATE INDEX idx_c_x ON idx_c (x);
+                INSERT INTO idx_b VALUES (1, 1);
+                CREATE INDEX idx_b_id ON idx_b (id);
+                """);
+
+        MigrationExecutor.execute(connection, file.toFile());
+        connection.commit();
+
+        try (Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM information_schema.indexes "
+                     + "WHERE index_name IN ('idx_a_x', 'idx_a_y', 'idx_b_x', 'idx_c_x', 'idx_b_id')")) {
+            assertTrue(rs.next());
+            assertEquals(5, rs.getInt(1));
+        }
+        try (Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT status FROM migration_history WHERE version = '1'")) {
+            assertTrue(rs.next());
+            assertTrue(rs.getBoolean(1));
+        }
+    }
+
+    @Test
+    void testFailedIndexBuildIsNotRecorded(@TempDir Path directory) throws IOException, SQLException {
+        Path file = directory.resolve("V2__broken_index.sql");
+        Files.writeString(file, """
+                -- transactional: false
+                -- parallel-indexes: 2
+                CREATE TABLE idx_a (id INT, x INT);
+                CREATE INDEX idx_a_x ON idx_a (x);
+                CREATE INDEX idx_a_missing ON idx_a (missing_column);
+                """);
+
+        assertThrows(SQLException.class, () -> MigrationExecutor.execute(connection, file.toFile()));
+        connection.commit();
+
+        try (Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM migration_history WHERE version = '2'")) {
+            assertTrue(rs.next());
+            assertEquals(0, rs.getInt(1));
+        }
+    }
+
+    @Test
+    void testParallelismIsCappedByFreePoolConnections(@TempDir Path directory) throws IOException, SQLException {
+        Path file = directory.resolve("V3__pooled_indexes.sql");
+        Files.writeString(file, """
+                -- transactional: false
+                -- parallel-indexes: 3
+                CREATE TABLE idx_a (id INT, x INT);
+                CREATE TABLE idx_b (id INT, x INT);
+                CREATE TABLE idx_c (id INT, x INT);
+                CREATE INDEX idx_a_x ON idx_a (x);
+                CREATE INDEX idx_b_x ON idx_b (x);
+                CREATE INDEX idx_c_x ON idx_c (x);
+                """);
+
+        // Трем построениям не хватит двух соединений пула: без ограничения третье ждало бы соединения
+        System.setProperty("db.pool.borrow.timeout.ms", "500");
+        ConnectionManager.enablePooling(2);
+        try {
+            MigrationExecutor.execute(connection, file.toFile());
+            connection.commit();
+        } finally {
+            ConnectionManager.disablePooling();
+            System.clearProperty("db.pool.borrow.timeout.ms");
+        }
+
+        try (Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM information_schema.indexes "
+                     + "WHERE index_name IN ('idx_a_x', 'idx_b_x', 'idx_c_x')")) {
+            assertTrue(rs.next());
+            assertEquals(3, rs.getInt(1));
+        }
+    }
+
+    @Test
+    void testParallelIndexesRequireNonTransactionalMigration() {
+        assertEquals(new MigrationDirectives(false, 4, Map.of()),
+                MigrationDirectives.parse("-- transactional: false\n-- parallel-indexes: 4\nSELECT 1;"));
+        assertEquals(MigrationDirectives.DEFAULT, MigrationDirectives.parse("SELECT 1;\n-- transactional: false"));
+        assertThrows(IllegalArgumentException.class,
+                () -> MigrationDirectives.parse("-- parallel-indexes: 4\nCREATE INDEX i ON t (x);"));
+    }
+}
@@ -0,0 +1,105 @@
+package migrations;
+
+import database.DatabaseDialects;
+import migration_utils.MigrationCancellation;
+import migration_utils.MigrationExecutor;
+import migration_utils.MigrationTemplates;
+import migration_utils.ReplicationLagThrottle;
+import migration_utils.ReplicationLagThrottle.Lag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import utils.PropertiesUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.*;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Приостановка миграций при отставании реплик с подставленным источником сведений об отставании.
+ */
+class ReplicationLagThrottleTest {
+
+    @Test
+    void testAwaitPausesUntilLagIsAcceptable() throws SQLException {
+        Deque<Lag> lags = new ArrayDeque<>(List.of(new Lag(5000, 0), new Lag(2000, 0), new Lag(100, 0)));
+        ReplicationLagThrottle throttle = new ReplicationLagThrottle(connection -> lags.poll(), 1000, 0, 10_000, 1, 100);
+
+        throttle.await(null);
+
+        assertTrue(lags.isEmpty());
+    }
+
+    @Test
+    void testAwaitFailsAfterMaxWait() {
+        ReplicationLagThrottle throttle = new ReplicationLagThrottle(connection -> new Lag(0, 10_000_000),
+                1000, 1024, 50, 5, 100);
+
+        IllegalStateException error = assertThrows(IllegalStateException.class, () -> throttle.await(null));
+        assertTrue(error.getMessage().contains("50 мс"), error.getMessage());
+        assertTrue(throttle.getWaitedMs() >= 50);
+    }
+
+    @Test
+    void testCancellationInterruptsWait() {
+        try (MigrationCancellation cancellation = new MigrationCancellation(0)) {
+            ReplicationLagThrottle throttle = new ReplicationLagThrottle(connection -> new Lag(5000, 0),
+                    1000, 0, 60_000, 30_000, 100, cancellation);
+            Thread.ofVirtual().start(() -> {
+                try {
+                    Thread.sleep(100);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                cancellation.cancel("тест");
+            });
+
+            long start = System.currentTimeMillis();
+            SQLException error = assertThrows(SQLException.class, () -> throttle.await(null));
+            assertEquals("57014", error.getSQLState());
+            assertTrue(System.currentTimeMillis() - start < 10_000, "Ожидание не было прервано");
+        }
+    }
+
+    @Test
+    void testLagCheckedAfterChangedRowsInsideMigration(@TempDir Path directory) throws IOException, SQLException {
+        Path file = directory.resolve("V1__fill.sql");
+        Files.writeString(file, """
+                CREATE TABLE lag_rows (id INT);
+                INSERT INTO lag_rows SELECT * FROM SYSTEM_RANGE(1, 50);
+                INSERT INTO lag_rows SELECT * FROM SYSTEM_RANGE(1, 5);
+                INSERT INTO lag_rows SELECT * FROM SYSTEM_RANGE(1, 20);
+                """);
+        AtomicInteger measurements = new AtomicInteger();
+        ReplicationLagThrottle throttle = new ReplicationLagThrottle(connection -> {
+            measurements.incrementAndGet();
+            return new Lag(0, 0);
+        }, 1000, 0, 1000, 1, 20);
+
+        try (Connection connection = DriverManager.getConnection(PropertiesUtils.getProperty("db.url"),
+                PropertiesUtils.getProperty("db.username"), PropertiesUtils.getProperty("db.password"));
+             Statement stmt = connection.createStatement()) {
+            stmt.execute("DROP TABLE IF EXISTS lag_rows");
+            stmt.execute("DROP TABLE IF EXISTS migration_history");
+            stmt.execute(DatabaseDialects.get().createHistoryTable());
+            connection.setAutoCommit(false);
+            try {
+                MigrationExecutor.execute(connection, MigrationExecutor.prepare(file.toFile(),
+                        MigrationTemplates.defaultPlaceholders()), throttle, null);
+            } finally {
+                connection.rollback();
+                connection.setAutoCommit(true);
+                stmt.execute("DROP TABLE IF EXISTS lag_rows");
+                stmt.execute("DROP TABLE IF EXISTS migration_history");
+            }
+        }
+
+        assertEquals(2, measurements.get());
+    }
+}
@@ -0,0 +1,106 @@
+package migrations;
+
+import database.DatabaseDialects;
+import migration_utils.MigrationExecutor;
+import migration_utils.MigrationManager;
+import migration_utils.SchemaFingerprint;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import utils.PropertiesUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.*;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Отпечаток схемы, сохраняемый после миграции, и обнаружение изменений схемы в обход миграций.
+ */
+class SchemaFingerprintTest {
+
+    private static final String DROP_SCHEMA = """
+        DROP TABLE IF EXISTS drift_users;
+        DROP TABLE IF EXISTS migration_history;
+    """;
+
+    private Connection connection;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        connection = DriverManager.getConnection(PropertiesUtils.getProperty("db.url"),
+                PropertiesUtils.getProperty("db.username"), PropertiesUtils.getProperty("db.password"));
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute(DROP_SCHEMA);
+            stmt.execute(DatabaseDialects.get().createHistoryTable());
+        }
+        connection.setAutoCommit(false);
+    }
+
+    @AfterEach
+    void tearDown() throws SQLException {
+        connection.setAutoCommit(true);
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute(DROP_SCHEMA);
+        }
+        connection.close();
+    }
+
+    @Test
+    void testFingerprintStoredWithMigrationMatchesSchema(@TempDir Path directory) throws IOException, SQLException {
+        applyMigration(directory);
+
+        String digest;
+        String objects;
+        try (Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT schema_fingerprint, schema_objects FROM migration_history "
+                     + "WHERE version = '1'")) {
+            assertTrue(rs.next());
+            digest = rs.getString(1);
+            objects = rs.getString(2);
+        }
+        assertNotNull(digest);
+        assertEquals(64, digest.length());
+
+        SchemaFingerprint stored = SchemaFingerprint.decode(digest, objects);
+        assertTrue(stored.objects().stream().anyMatch(o -> o.kind().equals("column")
+                && o.name().endsWith("drift_users.email")));
+        assertTrue(stored.objects().stream().noneMatch(o -> o.name().contains("migration_history")));
+
+        SchemaFingerprint actual = SchemaFingerprint.capture(connection);
+        assertEquals(digest, actual.digest());
+        assertEquals(List.of(), actual.diff(stored));
+        assertEquals(List.of(), MigrationManager.drift());
+    }
+
+    @Test
+    void testDriftReportsChangedObjects(@TempDir Path directory) throws IOException, SQLException {
+        applyMigration(directory);
+
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("ALTER TABLE drift_users ADD COLUMN nickname VARCHAR(50)");
+            stmt.execute("ALTER TABLE drift_users ALTER COLUMN email VARCHAR(500)");
+            stmt.execute("DROP INDEX drift_users_email_idx");
+        }
+        connection.commit();
+
+        List<String> differences = MigrationManager.drift();
+        assertTrue(differences.contains("добавлен column public.drift_users.nickname"), differences.toString());
+        assertTrue(differences.contains("изменен column public.drift_users.email"), differences.toString());
+        assertTrue(differences.contains("удален index public.drift_users_email_idx"), differences.toString());
+    }
+
+    private void applyMigration(Path directory) throws IOException, SQLException {
+        Path file = directory.resolve("V1__users.sql");
+        Files.writeString(file, """
+                CREATE TABLE drift_users (id INT PRIMARY KEY, email VARCHAR(255) NOT NULL);
+                CREATE INDEX drift_users_email_idx ON drift_users (email);
+                """);
+        MigrationExecutor.execute(connection, file.toFile());
+        connection.commit();
+    }
+}
@@ -0,0 +1,74 @@
+package migrations;
+
+import database.DatabaseDialects;
+import migration_utils.MigrationDirectives;
+import migration_utils.MigrationExecutor;
+import migration_utils.SessionSettings;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import utils.PropertiesUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.*;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Директива {@code -- set:} с параметрами сеанса миграции.
+ */
+class SessionSettingsTest {
+
+    @Test
+    void testSetDirectiveParsing() {
+        MigrationDirectives directives = MigrationDirectives.parse("""
+                -- set: maintenance_work_mem=2GB, max_parallel_maintenance_workers=8
+                -- set: search_path='app, public', Work_Mem = 64MB
+                CREATE INDEX i ON t (x);
+                """);
+
+        assertEquals(Map.of("maintenance_work_mem", "2GB", "max_parallel_maintenance_workers", "8",
+                "search_path", "app, public", "work_mem", "64MB"), directives.settings());
+        assertEquals(List.of("maintenance_work_mem", "max_parallel_maintenance_workers", "search_path", "work_mem"),
+                List.copyOf(directives.settings().keySet()));
+        assertEquals("maintenance_work_mem=2GB, max_parallel_maintenance_workers=8, search_path=app, public, "
+                + "work_mem=64MB", SessionSettings.format(directives.settings()));
+
+        assertThrows(IllegalArgumentException.class, () -> MigrationDirectives.parse("-- set: work_mem\nSELECT 1;"));
+        assertThrows(IllegalArgumentException.class, () -> MigrationDirectives.parse("-- set: work-mem=1MB\nSELECT 1;"));
+        assertThrows(IllegalArgumentException.class, () -> MigrationDirectives.parse("-- set: work_mem=\nSELECT 1;"));
+    }
+
+    @Test
+    void testUnsupportedSettingsAreSkipped(@TempDir Path directory) throws IOException, SQLException {
+        Path file = directory.resolve("V1__settings.sql");
+        Files.writeString(file, """
+                -- set: work_mem=256MB
+                CREATE TABLE settings_items (id INT);
+                """);
+
+        try (Connection connection = DriverManager.getConnection(PropertiesUtils.getProperty("db.url"),
+                PropertiesUtils.getProperty("db.username"), PropertiesUtils.getProperty("db.password"));
+             Statement stmt = connection.createStatement()) {
+            stmt.execute("DROP TABLE IF EXISTS settings_items");
+            stmt.execute("DROP TABLE IF EXISTS migration_history");
+            stmt.execute(DatabaseDialects.get().createHistoryTable());
+            try {
+                MigrationExecutor.execute(connection, file.toFile());
+
+                try (ResultSet rs = stmt.executeQuery(
+                        "SELECT status, session_settings FROM migration_history WHERE version = '1'")) {
+                    assertTrue(rs.next());
+                    assertTrue(rs.getBoolean("status"));
+                    assertNull(rs.getString("session_settings"), "Диалект h2 не поддерживает параметры сеанса");
+                }
+            } finally {
+                stmt.execute("DROP TABLE IF EXISTS settings_items");
+                stmt.execute("DROP TABLE IF EXISTS migration_history");
+            }
+        }
+    }
+}
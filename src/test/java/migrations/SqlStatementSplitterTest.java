@@ -0,0 +1,123 @@
+package migrations;
+
+import migration_utils.SqlStatementSplitter;
+import migration_utils.SqlStatementSplitter.SqlStatement;
+import org.junit.jupiter.api.Test;
+
+import java.io.StringReader;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SqlStatementSplitterTest {
+
+    @Test
+    void testSplitSimpleStatements() {
+        List<SqlStatement> statements = SqlStatementSplitter.split("DELETE FROM books;\nDELETE FROM authors;\n");
+
+        assertEquals(2, statements.size());
+        assertEquals("DELETE FROM books", statements.get(0).sql());
+        assertEquals(1, statements.get(0).line());
+        assertEquals("DELETE FROM authors", statements.get(1).sql());
+        assertEquals(2, statements.get(1).line());
+    }
+
+    @Test
+    void testIgnoreSemicolonsInLiteralsAndComments() {
+        String sql = """
+                -- комментарий; с точкой с запятой
+                INSERT INTO genres (name) VALUES ('a;b'), ('it''s;');
+                /* блок; /* вложенный; */ */
+                SELECT "col;umn" FROM t;
+                SELECT E'\\';' AS x;
+                """;
+        List<SqlStatement> statements = SqlStatementSplitter.split(sql);
+
+        assertEquals(3, statements.size());
+        assertTrue(statements.get(0).sql().endsWith("('it''s;')"));
+        assertEquals(2, statements.get(0).line());
+        assertEquals(4, statements.get(1).line());
+        assertEquals("SELECT E'\\';' AS x", statements.get(2).sql());
+    }
+
+    @Test
+    void testKeepDollarQuotedBlocksTogether() {
+        String sql = """
+                DO $$ BEGIN PERFORM 1; END $$;
+                CREATE FUNCTION f() RETURNS int AS $body$ SELECT 1; $body$ LANGUAGE sql;
+                """;
+        List<SqlStatement> statements = SqlStatementSplitter.split(sql);
+
+        assertEquals(2, statements.size());
+        assertEquals("DO $$ BEGIN PERFORM 1; END $$", statements.get(0).sql());
+        assertTrue(statements.get(1).sql().endsWith("LANGUAGE sql"));
+    }
+
+    @Test
+    void testSkipCommentOnlyTail() {
+        List<SqlStatement> statements = SqlStatementSplitter.split("SELECT 1;\n-- конец\n");
+        assertEquals(1, statements.size());
+    }
+
+    @Test
+    void testCopyFromStdinData() throws Exception {
+        String sql = """
+                COPY genres (id, name) FROM STDIN;
+                1\tfantasy
+                2\t\\N
+                \\.
+                SELECT 1;
+                """;
+        List<SqlStatement> statements = SqlStatementSplitter.split(sql);
+
+        assertEquals(2, statements.size());
+        assertTrue(statements.get(0).isCopyFromStdin());
+        assertEquals("1\tfantasy\n2\t\\N\n", statements.get(0).copyData());
+        assertEquals("SELECT 1", statements.get(1).sql());
+        assertEquals(5, statements.get(1).line());
+
+        // Непрочитанные при потоковом разборе данные пропускаются
+        SqlStatementSplitter splitter = new SqlStatementSplitter(new StringReader(sql));
+        assertEquals("COPY genres (id, name) FROM STDIN", splitter.next().sql());
+        assertEquals("SELECT 1", splitter.next().sql());
+    }
+
+    @Test
+    void testCopyFromStdinAfterComments() {
+        String sql = """
+                --
+                -- Data for Name: genres; Type: TABLE DATA; Schema: public; Owner: -
+                --
+
+                /* выгружено pg_dump */
+                COPY public.genres (id, name) FROM stdin;
+                1\tfantasy
+                \\.
+                SELECT 1;
+                """;
+        List<SqlStatement> statements = SqlStatementSplitter.split(sql);
+
+        assertEquals(2, statements.size());
+        assertTrue(statements.get(0).isCopyFromStdin());
+        assertEquals("1\tfantasy\n", statements.get(0).copyData());
+        assertEquals("SELECT 1", statements.get(1).sql());
+        assertFalse(new SqlStatement("-- COPY t FROM STDIN\nSELECT 1", 1).isCopyFromStdin());
+    }
+
+    @Test
+    void testCopyDataAcrossReadBuffers() {
+        StringBuilder data = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            data.append(i).append("\tgenre ").append(i).append('\n');
+        }
+        String sql = "COPY genres (id, name) FROM STDIN;\n" + data + "\\.\nSELECT 'a;b';\n";
+        List<SqlStatement> statements = SqlStatementSplitter.split(sql);
+
+        assertEquals(2, statements.size());
+        assertEquals(data.toString(), statements.get(0).copyData());
+        assertEquals("SELECT 'a;b'", statements.get(1).sql());
+        assertEquals(5003, statements.get(1).line());
+    }
+}
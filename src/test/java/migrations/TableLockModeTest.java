@@ -0,0 +1,43 @@
+package migrations;
+
+import migration_utils.TableLockMode;
+import org.junit.jupiter.api.Test;
+
+import static migration_utils.TableLockMode.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Режимы блокировок, которые нужны запросам миграций, и матрица конфликтов PostgreSQL.
+ */
+class TableLockModeTest {
+
+    @Test
+    void testRequiredMode() {
+        assertEquals(ACCESS_SHARE, TableLockMode.requiredBy("SELECT * FROM books"));
+        assertEquals(ROW_SHARE, TableLockMode.requiredBy("SELECT * FROM books FOR UPDATE"));
+        assertEquals(ROW_EXCLUSIVE, TableLockMode.requiredBy("-- перенос\nINSERT INTO books SELECT * FROM old_books"));
+        assertEquals(ROW_EXCLUSIVE, TableLockMode.requiredBy("WITH moved AS (DELETE FROM a RETURNING *) SELECT 1"));
+        assertEquals(SHARE, TableLockMode.requiredBy("CREATE INDEX books_title_idx ON books (title)"));
+        assertEquals(SHARE_UPDATE_EXCLUSIVE,
+                TableLockMode.requiredBy("create unique index concurrently books_isbn_idx on books (isbn)"));
+        assertEquals(ACCESS_EXCLUSIVE, TableLockMode.requiredBy("ALTER TABLE books ADD COLUMN isbn TEXT"));
+        assertEquals(ACCESS_EXCLUSIVE, TableLockMode.requiredBy("VACUUM FULL books"));
+    }
+
+    @Test
+    void testConflictMatrix() {
+        for (TableLockMode first : TableLockMode.values()) {
+            for (TableLockMode second : TableLockMode.values()) {
+                assertEquals(first.conflictsWith(second), second.conflictsWith(first), first + " / " + second);
+            }
+            assertTrue(first.conflictsWith(ACCESS_EXCLUSIVE));
+        }
+        assertFalse(ROW_EXCLUSIVE.conflictsWith(ROW_EXCLUSIVE));
+        assertFalse(SHARE.conflictsWith(SHARE));
+        assertTrue(SHARE.conflictsWith(ROW_EXCLUSIVE));
+        assertTrue(SHARE_UPDATE_EXCLUSIVE.conflictsWith(SHARE_UPDATE_EXCLUSIVE));
+        assertFalse(ACCESS_SHARE.conflictsWith(EXCLUSIVE));
+        assertEquals(ROW_EXCLUSIVE, TableLockMode.fromPgName("RowExclusiveLock"));
+        assertNull(TableLockMode.fromPgName("SIReadLock"));
+    }
+}
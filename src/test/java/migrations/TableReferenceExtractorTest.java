@@ -0,0 +1,34 @@
+package migrations;
+
+import migration_utils.TableReferenceExtractor;
+import org.junit.jupiter.api.Test;
+
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TableReferenceExtractorTest {
+
+    @Test
+    void testExtractDdlAndDmlTargets() {
+        assertEquals(Set.of("books"), TableReferenceExtractor.extract("ALTER TABLE IF EXISTS books ADD COLUMN isbn TEXT"));
+        assertEquals(Set.of("public.books"),
+                TableReferenceExtractor.extract("CREATE INDEX CONCURRENTLY books_title_idx ON public.books (title)"));
+        assertEquals(Set.of("books", "authors"), TableReferenceExtractor.extract(
+                "UPDATE books SET author_id = a.id FROM authors a WHERE a.name = books.author_name"));
+        assertEquals(Set.of("\"Genres\""), TableReferenceExtractor.extract("TRUNCATE TABLE \"Genres\" CASCADE"));
+    }
+
+    @Test
+    void testIgnoreCommentsLiteralsAndKeywords() {
+        Set<String> tables = TableReferenceExtractor.extract("""
+                -- DELETE FROM audit
+                INSERT INTO genres (name) VALUES ('from nowhere')
+                ON CONFLICT DO NOTHING
+                """);
+
+        assertEquals(Set.of("genres"), tables);
+        assertTrue(TableReferenceExtractor.extract("SELECT 1").isEmpty());
+    }
+}
@@ -0,0 +1,112 @@
+package migrations;
+
+import migration_utils.MigrationFileReader;
+import migration_utils.MigrationManager;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import utils.PropertiesUtils;
+
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Числовое сравнение версий при откате: версия {@code 10} новее версии {@code 9}.
+ */
+class VersionOrderingTest {
+
+    private static final String CREATE_SCHEMA = """
+        CREATE SEQUENCE IF NOT EXISTS authors_id_seq;
+        CREATE SEQUENCE IF NOT EXISTS genres_id_seq;
+        CREATE SEQUENCE IF NOT EXISTS books_id_seq;
+        CREATE TABLE IF NOT EXISTS authors (id INTEGER DEFAULT NEXT VALUE FOR authors_id_seq PRIMARY KEY, name VARCHAR(255));
+        CREATE TABLE IF NOT EXISTS genres (id INTEGER DEFAULT NEXT VALUE FOR genres_id_seq PRIMARY KEY, name VARCHAR(255));
+        CREATE TABLE IF NOT EXISTS books (
+            id INTEGER DEFAULT NEXT VALUE FOR books_id_seq PRIMARY KEY,
+            title VARCHAR(255),
+            author_id INTEGER REFERENCES authors (id),
+            genre_id INTEGER REFERENCES genres (id),
+            rating NUMERIC(2, 1)
+        );
+    """;
+
+    private static final String DROP_SCHEMA = """
+        DROP TABLE IF EXISTS books;
+        DROP TABLE IF EXISTS authors;
+        DROP TABLE IF EXISTS genres;
+        DROP SEQUENCE IF EXISTS authors_id_seq;
+        DROP SEQUENCE IF EXISTS genres_id_seq;
+        DROP SEQUENCE IF EXISTS books_id_seq;
+        DROP TABLE IF EXISTS migration_history;
+        DROP TABLE IF EXISTS migration_state;
+    """;
+
+    private Connection connection;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        connection = DriverManager.getConnection(PropertiesUtils.getProperty("db.url"),
+                PropertiesUtils.getProperty("db.username"), PropertiesUtils.getProperty("db.password"));
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute(DROP_SCHEMA);
+            stmt.execute(CREATE_SCHEMA);
+        }
+        MigrationManager.migrate();
+        // Миграции V9 и V10, файлы которых уже удалены из каталога миграций
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("INSERT INTO migration_history (version, description, status, type) "
+                    + "VALUES ('9', 'nine', TRUE, 'SQL'), ('10', 'ten', TRUE, 'SQL')");
+        }
+    }
+
+    @AfterEach
+    void tearDown() throws SQLException {
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute(DROP_SCHEMA);
+        }
+        connection.close();
+    }
+
+    @Test
+    void testCompareVersionsNumerically() {
+        assertTrue(MigrationFileReader.compareVersions("10", "9") > 0);
+        assertTrue(MigrationFileReader.compareVersions("1.0.0", "1.1.0") < 0);
+        assertEquals(0, MigrationFileReader.compareVersions("2", "2.0"));
+    }
+
+    @Test
+    void testRollbackRevertsHighestVersion() throws SQLException {
+        MigrationManager.rollback(1);
+
+        assertEquals(List.of("10"), revertedVersions());
+    }
+
+    @Test
+    void testRollbackToTagRevertsNewerVersions() throws SQLException {
+        MigrationManager.rollbackToTag("9");
+
+        assertEquals(List.of("10"), revertedVersions());
+        assertEquals(5, count("SELECT COUNT(*) FROM genres"), "Миграции до тега выполнены повторно");
+    }
+
+    private List<String> revertedVersions() throws SQLException {
+        List<String> versions = new ArrayList<>();
+        try (Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT version FROM migration_history WHERE reverted = TRUE")) {
+            while (rs.next()) {
+                versions.add(rs.getString(1));
+            }
+        }
+        return versions;
+    }
+
+    private int count(String sql) throws SQLException {
+        try (Statement stmt = connection.createStatement(); ResultSet rs = stmt.executeQuery(sql)) {
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package monitoring;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Сообщения о ходе выполнения и оценка оставшегося времени по опросам {@code pg_stat_progress_*}.
+ */
+class StatementProgressMonitorTest {
+
+    private static long seconds(long value) {
+        return TimeUnit.SECONDS.toNanos(value);
+    }
+
+    @Test
+    void testEstimateUsesFirstPhaseFromStatementStart() {
+        StatementProgressMonitor.Progress progress = new StatementProgressMonitor.Progress("V1 строка 3", 0);
+
+        String message = progress.describe(seconds(10), "building index", 50L, 100L, null);
+
+        assertEquals("Выполняется V1 строка 3 (10 с): building index, выполнено 50,0%, до конца этапа ~10 с",
+                message.replace('.', ','));
+    }
+
+    @Test
+    void testEstimateRestartsWithEachPhase() {
+        StatementProgressMonitor.Progress progress = new StatementProgressMonitor.Progress("V1", 0);
+        progress.describe(seconds(10), "scanning table", 90L, 100L, null);
+
+        String started = progress.describe(seconds(20), "sorting live tuples", 10L, 100L, null);
+        assertFalse(started.contains("до конца этапа"), "Скорость нового этапа еще неизвестна: " + started);
+
+        // 50 единиц за 10 с этапа: оставшиеся 40 единиц — около 8 с, а не 20 с по времени с начала запроса
+        String estimated = progress.describe(seconds(30), "sorting live tuples", 60L, 100L, null);
+        assertTrue(estimated.endsWith("до конца этапа ~8 с"), estimated);
+    }
+
+    @Test
+    void testRowRateBetweenPolls() {
+        StatementProgressMonitor.Progress progress = new StatementProgressMonitor.Progress("V2", 0);
+
+        assertTrue(progress.describe(seconds(5), "COPY FROM", null, null, 5_000L).endsWith("строк: 5000 (1000 строк/с)"));
+        assertTrue(progress.describe(seconds(10), "COPY FROM", null, null, 20_000L).endsWith("строк: 20000 (3000 строк/с)"));
+    }
+}
@@ -0,0 +1,114 @@
+package report;
+
+import database.DatabaseDialects;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import utils.PropertiesUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.*;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Экспорт истории миграций в несколько форматов за один проход на встроенной базе данных.
+ */
+class MakeReportTest {
+
+    private static final int ROWS = 3000;
+
+    private Connection connection;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        connection = DriverManager.getConnection(PropertiesUtils.getProperty("db.url"),
+                PropertiesUtils.getProperty("db.username"), PropertiesUtils.getProperty("db.password"));
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("DROP TABLE IF EXISTS migration_history");
+            stmt.execute(DatabaseDialects.get().createHistoryTable());
+        }
+        try (PreparedStatement insert = connection.prepareStatement(
+                "INSERT INTO migration_history (version, description, status, applied_at) VALUES (?, ?, TRUE, ?)")) {
+            for (int i = 1; i <= ROWS; i++) {
+                insert.setString(1, String.valueOf(i));
+                insert.setString(2, i == 1 ? "quote \" and, comma" : "Migration V" + i + "__step.sql");
+                insert.setTimestamp(3, Timestamp.valueOf("2024-05-01 10:00:00.25"));
+                insert.addBatch();
+            }
+            insert.executeBatch();
+        }
+    }
+
+    @AfterEach
+    void tearDown() throws SQLException {
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("DROP TABLE IF EXISTS migration_history");
+        }
+        connection.close();
+    }
+
+    @Test
+    void testExportAllFormatsInOnePass(@TempDir Path directory) throws IOException {
+        MakeReport.export(directory, "history", List.of("csv", "json", "ndjson", "columnar"));
+
+        List<String> csv = Files.readAllLines(directory.resolve("history.csv"), StandardCharsets.UTF_8);
+        assertEquals(ROWS + 1, csv.size());
+        assertEquals("id,version,description,status,reverted,applied_at", csv.get(0));
+        assertEquals("1,1,\"quote \"\" and, comma\",true,false,2024-05-01 10:00:00.25", csv.get(1));
+
+        List<String> ndjson = Files.readAllLines(directory.resolve("history.ndjson"), StandardCharsets.UTF_8);
+        assertEquals(ROWS, ndjson.size());
+        assertEquals("{\"id\": 1, \"version\": \"1\", \"description\": \"quote \\\" and, comma\", \"status\": true, "
+                + "\"reverted\": false, \"applied_at\": \"2024-05-01 10:00:00.25\"}", ndjson.get(0));
+
+        List<String> json = Files.readAllLines(directory.resolve("history.json"), StandardCharsets.UTF_8);
+        assertEquals("[", json.get(0));
+        assertEquals("  " + ndjson.get(0) + ",", json.get(1));
+        assertEquals("]", json.get(json.size() - 1));
+
+        byte[] columnar = Files.readAllBytes(directory.resolve("history.fwcr"));
+        assertArrayEquals("FWCR".getBytes(StandardCharsets.US_ASCII), Arrays.copyOf(columnar, 4));
+        assertEquals(0, columnar[columnar.length - 1]);
+    }
+
+    @Test
+    void testRejectUnknownFormat(@TempDir Path directory) {
+        assertThrows(IllegalArgumentException.class,
+                () -> MakeReport.export(directory, "history", List.of("csv", "xml")));
+    }
+
+    @Test
+    void testUtf8EncodingAcrossSmallBuffer() throws IOException {
+        String text = "ascii кириллица 日本 😀 конец";
+        byte[] expected = text.getBytes(StandardCharsets.UTF_8);
+
+        byte[] encoded = new byte[text.length() * Utf8.MAX_BYTES_PER_CHAR];
+        assertEquals(expected.length, Utf8.encodedLength(text, 0, text.length()));
+        assertEquals(expected.length, Utf8.encode(text, 0, text.length(), encoded, 0));
+        assertArrayEquals(expected, Arrays.copyOf(encoded, expected.length));
+
+        // Буфер меньше текста: части не разделяют суррогатную пару
+        ByteArrayOutputStream sink = new ByteArrayOutputStream();
+        try (ReportOutput out = new ReportOutput(Channels.newChannel(sink), 7)) {
+            out.writeText(text);
+        }
+        assertArrayEquals(expected, sink.toByteArray());
+
+        // Непарный суррогат заменяется на '?' во всех форматах
+        String unpaired = "a\uD83Db";
+        assertEquals(3, Utf8.encodedLength(unpaired, 0, unpaired.length()));
+        assertEquals(3, Utf8.encode(unpaired, 0, unpaired.length(), encoded, 0));
+        assertArrayEquals(new byte[]{'a', '?', 'b'}, Arrays.copyOf(encoded, 3));
+    }
+}
@@ -0,0 +1,41 @@
+package utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class PlaceholderTemplateTest {
+
+    @Test
+    void testRenderMultiplePlaceholders() {
+        PlaceholderTemplate template = PlaceholderTemplate.compile(
+                "CREATE TABLE ${schema}.books () TABLESPACE ${tablespace}; GRANT SELECT ON ${schema}.books TO app;",
+                "${", "}");
+
+        assertEquals(Set.of("schema", "tablespace"), template.getNames());
+        assertEquals("CREATE TABLE tenant_1.books () TABLESPACE fast; GRANT SELECT ON tenant_1.books TO app;",
+                template.render(Map.of("schema", "tenant_1", "tablespace", "fast")::get));
+        assertEquals("CREATE TABLE tenant_2.books () TABLESPACE slow; GRANT SELECT ON tenant_2.books TO app;",
+                template.render(Map.of("schema", "tenant_2", "tablespace", "slow")::get));
+    }
+
+    @Test
+    void testKeepUnresolvedAndDollarQuotes() {
+        PlaceholderTemplate template = PlaceholderTemplate.compile("jdbc:{HOST}:{PORT}/{DB} DO $$ {} $$", "{", "}");
+
+        assertEquals("jdbc:localhost:{PORT}/db DO $$ {} $$",
+                template.render(Map.of("HOST", "localhost", "DB", "db")::get));
+    }
+
+    @Test
+    void testLiteralTemplate() {
+        PlaceholderTemplate template = PlaceholderTemplate.compile("SELECT 1; DO $$ BEGIN END $$;", "${", "}");
+
+        assertTrue(template.isLiteral());
+        assertEquals("SELECT 1; DO $$ BEGIN END $$;", template.render(name -> "x"));
+    }
+}